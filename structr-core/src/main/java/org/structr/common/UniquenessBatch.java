@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.graph.Identity;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.app.App;
+import org.structr.core.app.Query;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.property.PropertyKey;
+
+/**
+ * Prefetches the existing values of unique properties for all objects that
+ * are validated in a transaction. Instead of one query per object, the values
+ * of all objects of a given type and key are looked up with a small number of
+ * queries when the first object of that type and key is validated.
+ *
+ * The batch is bound to the current thread between {@link #begin} and {@link #end}.
+ */
+public class UniquenessBatch {
+
+	private static final Logger logger                        = LoggerFactory.getLogger(UniquenessBatch.class);
+	private static final ThreadLocal<UniquenessBatch> current = new ThreadLocal<>();
+
+	private final Map<String, Map<Object, List<Identity>>> cache = new HashMap<>();
+	private Collection<GraphObject> objects                      = null;
+	private int batchSize                                        = 0;
+
+	private UniquenessBatch(final Collection<GraphObject> objects, final int batchSize) {
+
+		this.objects   = objects;
+		this.batchSize = batchSize;
+	}
+
+	public static void begin(final Collection<GraphObject> objects, final int batchSize) {
+		current.set(new UniquenessBatch(objects, batchSize));
+	}
+
+	public static void end() {
+		current.remove();
+	}
+
+	/**
+	 * Returns the identities of all objects of the given type that have the
+	 * given value for the given key, or null if the value was not prefetched
+	 * and must be looked up separately.
+	 */
+	static List<Identity> lookup(final GraphObject object, final Class type, final PropertyKey key, final Object value) {
+
+		final UniquenessBatch batch = current.get();
+		if (batch != null && isBatchable(value)) {
+
+			final boolean isNode               = object instanceof NodeInterface;
+			final String cacheKey              = (isNode ? "N:" : "R:") + type.getName() + "." + key.jsonName();
+			Map<Object, List<Identity>> values = batch.cache.get(cacheKey);
+
+			if (values == null) {
+
+				values = batch.prefetch(isNode, type, key);
+				batch.cache.put(cacheKey, values);
+			}
+
+			return values.get(value);
+		}
+
+		return null;
+	}
+
+	// ----- private methods -----
+	private Map<Object, List<Identity>> prefetch(final boolean isNode, final Class type, final PropertyKey key) {
+
+		final Map<Object, List<Identity>> result = new HashMap<>();
+		final App app                            = StructrApp.getInstance();
+
+		for (final GraphObject obj : objects) {
+
+			if (isNode == (obj instanceof NodeInterface) && type.isInstance(obj)) {
+
+				final Object value = obj.getProperty(key);
+				if (isBatchable(value)) {
+
+					result.put(value, new LinkedList<>());
+				}
+			}
+		}
+
+		final List<Object> values = new ArrayList<>(result.keySet());
+
+		try {
+
+			for (int i=0; i<values.size(); i+=batchSize) {
+
+				final Query query = isNode ? app.nodeQuery(type) : app.relationshipQuery(type);
+
+				query.and();
+
+				for (final Object value : values.subList(i, Math.min(i + batchSize, values.size()))) {
+					query.or(key, value);
+				}
+
+				for (final Object found : query.getAsList()) {
+
+					final GraphObject graphObject = (GraphObject)found;
+					final List<Identity> ids      = result.get(graphObject.getProperty(key));
+
+					if (ids != null) {
+						ids.add(graphObject.getPropertyContainer().getId());
+					}
+				}
+			}
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("Unable to prefetch values for uniqueness check of {}.{}: {}", type.getSimpleName(), key.jsonName(), fex.getMessage());
+
+			// fall back to separate lookups
+			result.clear();
+		}
+
+		return result;
+	}
+
+	/**
+	 * Only values whose equality in Java matches the equality in the
+	 * database are batched, blank strings are searched differently.
+	 */
+	private static boolean isBatchable(final Object value) {
+
+		if (value instanceof String) {
+			return StringUtils.isNotBlank((String)value);
+		}
+
+		return value instanceof Number || value instanceof Boolean || value instanceof Enum;
+	}
+}
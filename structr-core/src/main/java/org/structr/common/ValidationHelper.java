@@ -541,6 +541,26 @@ public class ValidationHelper {
 					type = object.getClass();
 				}
 
+				// use prefetched values if the object is validated as part of a batch
+				final List<Identity> prefetched = UniquenessBatch.lookup(object, type, key, value);
+				if (prefetched != null) {
+
+					final Identity identity = object.getPropertyContainer().getId();
+
+					for (final Identity found : prefetched) {
+
+						if (!identity.equals(found)) {
+
+							errorBuffer.add(new UniqueToken(object.getType(), key, object.getUuid()));
+
+							// error!
+							return false;
+						}
+					}
+
+					return true;
+				}
+
 				try {
 
 					if (object instanceof NodeInterface) {
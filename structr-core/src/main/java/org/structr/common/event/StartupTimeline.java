@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.common.event;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang3.exception.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.core.GraphObject;
+import org.structr.core.GraphObjectMap;
+import org.structr.core.property.BooleanProperty;
+import org.structr.core.property.LongProperty;
+import org.structr.core.property.StringProperty;
+
+/**
+ * Records the duration of the individual startup phases (module scan,
+ * service start, schema compilation, index update) so they can be
+ * inspected after the fact. Steps that run after startup, e.g. a schema
+ * reload, are recorded as well, the number of entries is limited.
+ *
+ * Usage:
+ *
+ * <pre>
+ * try (final StartupTimeline.Step step = StartupTimeline.begin(Phase.SchemaCompile, "compile")) {
+ *     ...
+ *     step.success();
+ * }
+ * </pre>
+ */
+public class StartupTimeline {
+
+	private static final Logger logger                = LoggerFactory.getLogger(StartupTimeline.class);
+	private static final Queue<Entry> entries         = new ConcurrentLinkedQueue<>();
+	private static final AtomicInteger size           = new AtomicInteger();
+	private static final long jvmStartTime            = ManagementFactory.getRuntimeMXBean().getStartTime();
+	private static final int MAX_ENTRIES              = 1000;
+
+	private static final StringProperty _phase        = new StringProperty("phase");
+	private static final StringProperty _name         = new StringProperty("name");
+	private static final StringProperty _thread       = new StringProperty("thread");
+	private static final LongProperty _startTimestamp = new LongProperty("startTimestamp");
+	private static final LongProperty _offset         = new LongProperty("offset");
+	private static final LongProperty _duration       = new LongProperty("duration");
+	private static final BooleanProperty _success     = new BooleanProperty("success");
+
+	public enum Phase {
+		ModuleScan, Service, SchemaCompile, IndexUpdate
+	}
+
+	/**
+	 * Starts a new step. The step is recorded when it is closed.
+	 *
+	 * @param phase the startup phase
+	 * @param name the name of the step, e.g. the service name
+	 *
+	 * @return the step
+	 */
+	public static Step begin(final Phase phase, final String name) {
+		return new Step(phase, name);
+	}
+
+	/**
+	 * Returns all recorded steps, ordered by start time.
+	 *
+	 * @return the entries
+	 */
+	public static List<Entry> getEntries() {
+
+		final List<Entry> list = new ArrayList<>(entries);
+
+		list.sort(Comparator.comparingLong(Entry::getStartTimestamp));
+
+		return list;
+	}
+
+	public static void clear() {
+
+		entries.clear();
+		size.set(0);
+	}
+
+	// ----- private methods -----
+	private static void add(final Entry entry) {
+
+		entries.add(entry);
+
+		if (size.incrementAndGet() > MAX_ENTRIES && entries.poll() != null) {
+			size.decrementAndGet();
+		}
+	}
+
+	// ----- nested classes -----
+	public static class Step implements AutoCloseable {
+
+		private final long startTimestamp = System.currentTimeMillis();
+		private final long startNanos     = System.nanoTime();
+		private final String thread       = Thread.currentThread().getName();
+		private boolean success           = false;
+		private boolean closed            = false;
+		private Phase phase               = null;
+		private String name               = null;
+
+		private Step(final Phase phase, final String name) {
+
+			this.phase = phase;
+			this.name  = name;
+		}
+
+		public void success() {
+			this.success = true;
+		}
+
+		@Override
+		public void close() {
+
+			if (!closed) {
+
+				closed = true;
+
+				add(new Entry(phase, name, thread, startTimestamp, (System.nanoTime() - startNanos) / 1_000_000L, success));
+			}
+		}
+	}
+
+	public static class Entry {
+
+		private final String thread;
+		private final String name;
+		private final Phase phase;
+		private final long startTimestamp;
+		private final long duration;
+		private final boolean success;
+
+		private Entry(final Phase phase, final String name, final String thread, final long startTimestamp, final long duration, final boolean success) {
+
+			this.phase          = phase;
+			this.name           = name;
+			this.thread         = thread;
+			this.startTimestamp = startTimestamp;
+			this.duration       = duration;
+			this.success        = success;
+		}
+
+		public Phase getPhase() {
+			return phase;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getThread() {
+			return thread;
+		}
+
+		public long getStartTimestamp() {
+			return startTimestamp;
+		}
+
+		/**
+		 * Returns the start time of this step in milliseconds relative
+		 * to the start of the JVM.
+		 *
+		 * @return the offset
+		 */
+		public long getOffset() {
+			return startTimestamp - jvmStartTime;
+		}
+
+		public long getDuration() {
+			return duration;
+		}
+
+		public boolean isSuccess() {
+			return success;
+		}
+
+		public GraphObject toGraphObject() {
+
+			final GraphObject result = new GraphObjectMap();
+
+			try {
+
+				result.setProperty(_phase,          phase.name());
+				result.setProperty(_name,           name);
+				result.setProperty(_thread,         thread);
+				result.setProperty(_startTimestamp, startTimestamp);
+				result.setProperty(_offset,         getOffset());
+				result.setProperty(_duration,       duration);
+				result.setProperty(_success,        success);
+
+			} catch (Throwable t) {
+				logger.error(ExceptionUtils.getStackTrace(t));
+			}
+
+			return result;
+		}
+	}
+}
@@ -18,10 +18,13 @@
  */
 package org.structr.common.fulltext;
 
+import java.util.Collections;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObjectMap;
+import org.structr.core.property.PropertyKey;
 
 /**
  *
@@ -35,6 +38,10 @@ public class DummyFulltextIndexer implements FulltextIndexer {
 		logger.warn("No fulltext indexer installed, this is a dummy implementation that does nothing.");
 	}
 
+	@Override
+	public void removeFromFulltextIndex(final String uuid) throws FrameworkException {
+	}
+
 	@Override
 	public GraphObjectMap getContextObject(String searchTerm, String text, int contextLength) {
 
@@ -42,4 +49,17 @@ public class DummyFulltextIndexer implements FulltextIndexer {
 
 		return new GraphObjectMap();
 	}
+
+	@Override
+	public boolean supportsFulltextQuery(final PropertyKey key) {
+		return false;
+	}
+
+	@Override
+	public List<String> fulltextQuery(final String searchTerm) throws FrameworkException {
+
+		logger.warn("No fulltext indexer installed, this is a dummy implementation that does nothing.");
+
+		return Collections.emptyList();
+	}
 }
@@ -18,13 +18,28 @@
  */
 package org.structr.common.fulltext;
 
+import java.util.List;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObjectMap;
+import org.structr.core.property.PropertyKey;
 
 /**
  */
 public interface FulltextIndexer {
 
 	void addToFulltextIndex(final Indexable indexable) throws FrameworkException;
+	void removeFromFulltextIndex(final String uuid) throws FrameworkException;
 	GraphObjectMap getContextObject(final String searchTerm, final String text, final int contextLength);
+
+	/**
+	 * Indicates whether fulltext queries on the given key can be answered
+	 * by this indexer instead of the database.
+	 */
+	boolean supportsFulltextQuery(final PropertyKey key);
+
+	/**
+	 * Returns the UUIDs of all indexed documents matching the given search
+	 * term, ordered by relevance.
+	 */
+	List<String> fulltextQuery(final String searchTerm) throws FrameworkException;
 }
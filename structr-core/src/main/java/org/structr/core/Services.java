@@ -38,11 +38,17 @@ import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
@@ -70,6 +76,7 @@ import org.structr.common.VersionHelper;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.event.RuntimeEventLog;
+import org.structr.common.event.StartupTimeline;
 import org.structr.core.app.StructrApp;
 import org.structr.core.graph.FlushCachesCommand;
 import org.structr.core.graph.ManageDatabasesCommand;
@@ -309,26 +316,39 @@ public class Services implements StructrServices {
 		logger.info("Starting services: {}", configuredServiceClasses.stream().map(Class::getSimpleName).collect(Collectors.toList()));
 
 		final boolean maintenanceEnabled = Settings.MaintenanceModeEnabled.getValue();
+		final int threadCount            = Math.max(1, Settings.ServicesStartThreads.getValue(4));
+		final ExecutorService executor   = threadCount > 1 ? Executors.newFixedThreadPool(threadCount, new ServiceStartThreadFactory()) : null;
 
-		for (final Class serviceClass : configuredServiceClasses) {
+		try {
 
-			final StopServiceForMaintenanceMode stopAnnotation  = (StopServiceForMaintenanceMode)serviceClass.getAnnotation(StopServiceForMaintenanceMode.class);
-			final StartServiceInMaintenanceMode startAnnotation = (StartServiceInMaintenanceMode)serviceClass.getAnnotation(StartServiceInMaintenanceMode.class);
+			// services on the same dependency level can be started concurrently,
+			// the next level is started after all services of a level are done
+			for (final List<Class> level : getServiceClassesByDependencyLevel(configuredServiceClasses)) {
 
-			if (maintenanceEnabled == false || (stopAnnotation == null && startAnnotation == null) || (stopAnnotation != null && startAnnotation != null)) {
+				final List<Class> serviceClasses = new LinkedList<>();
 
-				try {
+				for (final Class serviceClass : level) {
 
-					final String activeServiceName = getNameOfActiveService(serviceClass);
-					startService(serviceClass, activeServiceName, false);
+					final StopServiceForMaintenanceMode stopAnnotation  = (StopServiceForMaintenanceMode)serviceClass.getAnnotation(StopServiceForMaintenanceMode.class);
+					final StartServiceInMaintenanceMode startAnnotation = (StartServiceInMaintenanceMode)serviceClass.getAnnotation(StartServiceInMaintenanceMode.class);
+
+					if (maintenanceEnabled == false || (stopAnnotation == null && startAnnotation == null) || (stopAnnotation != null && startAnnotation != null)) {
+
+						serviceClasses.add(serviceClass);
 
-				} catch (FrameworkException ex) {
-					logger.warn("Service {} failed to start: {}", serviceClass.getSimpleName(), ex.getMessage());
+					} else {
+
+						logger.warn("Service {} not started in maintenance mode", serviceClass.getSimpleName());
+					}
 				}
 
-			} else {
+				startServices(serviceClasses, executor, serviceClass -> startServiceOnInitialization(serviceClass, getNameOfActiveService(serviceClass)));
+			}
+
+		} finally {
 
-				logger.warn("Service {} not started in maintenance mode", serviceClass.getSimpleName());
+			if (executor != null) {
+				executor.shutdown();
 			}
 		}
 
@@ -560,11 +580,13 @@ public class Services implements StructrServices {
 			// so we don't instantiate it again since all the entities are already
 			// known to the ClassLoader and we would miss the code in all the static
 			// initializers.
-			try {
+			try (final StartupTimeline.Step step = StartupTimeline.begin(StartupTimeline.Phase.ModuleScan, configurationClass)) {
 
 				configuration = (ConfigurationProvider)Class.forName(configurationClass).newInstance();
 				configuration.initialize(licenseManager);
 
+				step.success();
+
 			} catch (Throwable t) {
 
 				logger.error("Unable to instantiate configration provider of type {}: {}", configurationClass, t);
@@ -626,9 +648,10 @@ public class Services implements StructrServices {
 
 	public ServiceResult startService(final Class serviceClass, final String serviceName, final boolean disableRetry) throws FrameworkException {
 
-		String errorMessage  = serviceClass.getSimpleName() + " " + serviceName + " failed to start.";
-		boolean waitAndRetry = true;
-		boolean isVital      = false;
+		final StartupTimeline.Step step = StartupTimeline.begin(StartupTimeline.Phase.Service, "default".equals(serviceName) ? serviceClass.getSimpleName() : serviceClass.getSimpleName() + "." + serviceName);
+		String errorMessage             = serviceClass.getSimpleName() + " " + serviceName + " failed to start.";
+		boolean waitAndRetry            = true;
+		boolean isVital                 = false;
 
 		try {
 
@@ -688,6 +711,8 @@ public class Services implements StructrServices {
 					waitAndRetry = false;
 
 					// success
+					step.success();
+
 					return new ServiceResult(true);
 
 				} else if (!disableRetry && isVital && !waitAndRetry) {
@@ -729,6 +754,7 @@ public class Services implements StructrServices {
 		} finally {
 
 			reloading.readLock().unlock();
+			step.close();
 		}
 
 		return new ServiceResult(errorMessage, false);
@@ -812,14 +838,8 @@ public class Services implements StructrServices {
 	@Override
 	public <T extends Service> Map<String, T> getServices(final Class<T> type) {
 
-		Map<String, Service> serviceMap = serviceCache.get(type);
-		if (serviceMap == null) {
-
-			serviceMap = new ConcurrentHashMap<>();
-			serviceCache.put(type, serviceMap);
-		}
-
-		return (Map)serviceMap;
+		// services may be started concurrently
+		return (Map)serviceCache.computeIfAbsent(type, k -> new ConcurrentHashMap<>());
 	}
 
 	public <T extends Service> T getServiceImplementation(final Class<T> type) {
@@ -912,9 +932,8 @@ public class Services implements StructrServices {
 
 	public List<Class> getCongfiguredServiceClasses() {
 
-		final String[] names                  = Settings.Services.getValue("").split("[ ,]+");
-		final Map<Class, Class> dependencyMap = new LinkedHashMap<>();
-		final List<Class> classes             = new LinkedList<>();
+		final String[] names      = Settings.Services.getValue("").split("[ ,]+");
+		final List<Class> classes = new LinkedList<>();
 
 		for (final String name : names) {
 
@@ -929,19 +948,7 @@ public class Services implements StructrServices {
 			}
 		}
 
-		// extract annotation information for service dependency tree
-		for (final Class service : classes) {
-
-			final ServiceDependency annotation = (ServiceDependency)service.getAnnotation(ServiceDependency.class);
-			if (annotation != null) {
-
-				final Class dependency = annotation.value();
-				if (dependency != null) {
-
-					dependencyMap.put(service, dependency);
-				}
-			}
-		}
+		final Map<Class, Class> dependencyMap = getDependencyMap(classes);
 
 		// sort classes according to dependency order..
 		classes.sort((s1, s2) -> {
@@ -1143,7 +1150,7 @@ public class Services implements StructrServices {
 		System.exit(1);
 	}
 
-	private int recursiveGetHierarchyLevel(final Map<Class, Class> dependencyMap, final Set<String> alreadyCalculated, final Class c, final int depth) {
+	private static int recursiveGetHierarchyLevel(final Map<Class, Class> dependencyMap, final Set<String> alreadyCalculated, final Class c, final int depth) {
 
 		// stop at level 20
 		if (depth > 20) {
@@ -1162,6 +1169,89 @@ public class Services implements StructrServices {
 		}
 	}
 
+	/**
+	 * Groups the given service classes by the level in the dependency
+	 * tree, i.e. a service can only depend on services in a lower level.
+	 */
+	public static List<List<Class>> getServiceClassesByDependencyLevel(final List<Class> classes) {
+
+		final Map<Class, Class> dependencyMap  = getDependencyMap(classes);
+		final Map<Integer, List<Class>> levels = new TreeMap<>();
+
+		for (final Class serviceClass : classes) {
+
+			final int level = recursiveGetHierarchyLevel(dependencyMap, new LinkedHashSet<>(), serviceClass, 0);
+
+			levels.computeIfAbsent(level, k -> new LinkedList<>()).add(serviceClass);
+		}
+
+		return new LinkedList<>(levels.values());
+	}
+
+	private static Map<Class, Class> getDependencyMap(final List<Class> classes) {
+
+		final Map<Class, Class> dependencyMap = new LinkedHashMap<>();
+
+		// extract annotation information for service dependency tree
+		for (final Class service : classes) {
+
+			final ServiceDependency annotation = (ServiceDependency)service.getAnnotation(ServiceDependency.class);
+			if (annotation != null) {
+
+				final Class dependency = annotation.value();
+				if (dependency != null) {
+
+					dependencyMap.put(service, dependency);
+				}
+			}
+		}
+
+		return dependencyMap;
+	}
+
+	/**
+	 * Starts the given services with the given starter and waits until all
+	 * of them are done. The services are started concurrently if there is
+	 * an executor and more than one service.
+	 */
+	public static void startServices(final List<Class> serviceClasses, final ExecutorService executor, final Consumer<Class> starter) {
+
+		if (executor == null || serviceClasses.size() < 2) {
+
+			serviceClasses.forEach(starter);
+			return;
+		}
+
+		final List<Future> futures = new LinkedList<>();
+
+		for (final Class serviceClass : serviceClasses) {
+
+			futures.add(executor.submit(() -> starter.accept(serviceClass)));
+		}
+
+		for (final Future future : futures) {
+
+			try {
+
+				future.get();
+
+			} catch (ExecutionException | InterruptedException ex) {
+				logger.warn("Exception while starting services", ex);
+			}
+		}
+	}
+
+	private void startServiceOnInitialization(final Class serviceClass, final String serviceName) {
+
+		try {
+
+			startService(serviceClass, serviceName, false);
+
+		} catch (FrameworkException ex) {
+			logger.warn("Service {} failed to start: {}", serviceClass.getSimpleName(), ex.getMessage());
+		}
+	}
+
 	private void removeService(final Class type, final String name) {
 		getServices(type).remove(name);
 	}
@@ -1178,6 +1268,16 @@ public class Services implements StructrServices {
 	}
 
 	// ----- nested classes -----
+	private static class ServiceStartThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable r) {
+			return new Thread(r, "ServiceStarter" + count.incrementAndGet());
+		}
+	}
+
 	private class SystemInfoSender extends Thread {
 
 		public SystemInfoSender() {
@@ -55,13 +55,11 @@ public class BulkFixNodePropertiesCommand extends NodeServiceCommand implements
 			final Class type = SchemaHelper.getEntityClassForRawType(entityTypeName);
 			if (type != null) {
 
-				final DatabaseService db                  = StructrApp.getInstance(securityContext).getDatabaseService();
-				final NodeFactory factory                 = new NodeFactory(securityContext);
-				final Iterable<AbstractNode> nodeIterator = Iterables.map(factory, db.getNodesByLabel(entityTypeName));
+				final int threads = getThreadCount(attributes);
 
 				logger.info("Trying to fix properties of all {} nodes", type.getSimpleName() );
 
-				long nodeCount = bulkGraphOperation(securityContext, nodeIterator, 100, "FixNodeProperties", new BulkGraphOperation<AbstractNode>() {
+				final BulkGraphOperation<AbstractNode> operation = new BulkGraphOperation<AbstractNode>() {
 
 					private void fixProperty(AbstractNode node, Property propertyToFix) {
 
@@ -138,7 +136,22 @@ public class BulkFixNodePropertiesCommand extends NodeServiceCommand implements
 
 						return true;
 					}
-				});
+				};
+
+				final long nodeCount;
+
+				if (threads > 1) {
+
+					nodeCount = bulkGraphOperation(securityContext, app -> app.nodeQuery(type), 100, "FixNodeProperties-" + entityTypeName, operation, threads, isRestart(attributes));
+
+				} else {
+
+					final DatabaseService db                  = StructrApp.getInstance(securityContext).getDatabaseService();
+					final NodeFactory factory                 = new NodeFactory(securityContext);
+					final Iterable<AbstractNode> nodeIterator = Iterables.map(factory, db.getNodesByLabel(entityTypeName));
+
+					nodeCount = bulkGraphOperation(securityContext, nodeIterator, 100, "FixNodeProperties", operation);
+				}
 
 				logger.info("Fixed {} nodes", nodeCount);
 
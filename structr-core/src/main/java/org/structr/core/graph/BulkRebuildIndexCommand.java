@@ -28,6 +28,7 @@ import org.structr.common.SecurityContext;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.fulltext.Indexable;
+import org.structr.core.app.Query;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
@@ -36,6 +37,9 @@ import org.structr.core.entity.AbstractRelationship;
  * Rebuild index for nodes or relationships of given type.
  *
  * Use 'type' argument for node type, and 'relType' for relationship type.
+ * With 'threads' > 1, the objects are processed in parallel and the
+ * operation can be resumed after an interruption, see
+ * {@link PartitionedBulkOperation}. Use 'restart' to start over.
  *
  */
 public class BulkRebuildIndexCommand extends NodeServiceCommand implements MaintenanceCommand, TransactionPostProcess {
@@ -48,17 +52,19 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 		final String mode       = (String) attributes.get("mode");
 		final String entityType = (String) attributes.get("type");
 		final String relType    = (String) attributes.get("relType");
+		final int threads       = getThreadCount(attributes);
+		final boolean restart   = isRestart(attributes);
 
 		if (mode == null || "nodesOnly".equals(mode)) {
-			rebuildNodeIndex(entityType);
+			rebuildNodeIndex(entityType, threads, restart);
 		}
 
 		if (mode == null || "relsOnly".equals(mode)) {
-			rebuildRelationshipIndex(relType);
+			rebuildRelationshipIndex(relType, threads, restart);
 		}
 
 		if ("fulltext".equals(mode)) {
-			rebuildFulltextIndex();
+			rebuildFulltextIndex(threads, restart);
 		}
 	}
 
@@ -82,13 +88,7 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 	}
 
 	// ----- private methods -----
-	private void rebuildNodeIndex(final String entityType) {
-
-		final NodeFactory nodeFactory = new NodeFactory(SecurityContext.getSuperUserInstance());
-		final DatabaseService graphDb = (DatabaseService) arguments.get("graphDb");
-		Iterable<AbstractNode> nodes  = null;
-
-		nodes = Iterables.map(nodeFactory, graphDb.getNodesByTypeProperty(entityType));
+	private void rebuildNodeIndex(final String entityType, final int threads, final boolean restart) {
 
 		if (entityType == null) {
 
@@ -99,7 +99,7 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 			info("Starting (re-)indexing all nodes of type {}", entityType);
 		}
 
-		long count = bulkGraphOperation(securityContext, nodes, 1000, "RebuildNodeIndex", new BulkGraphOperation<AbstractNode>() {
+		final BulkGraphOperation<AbstractNode> operation = new BulkGraphOperation<AbstractNode>() {
 
 			@Override
 			public boolean handleGraphObject(SecurityContext securityContext, AbstractNode node) {
@@ -118,16 +118,28 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 			public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
 				logger.warn("Unable to index node: {}", t.getMessage());
 			}
-		});
+		};
+
+		final long count;
+
+		if (threads > 1) {
+
+			final Class type = entityType != null ? StructrApp.getConfiguration().getNodeEntityClass(entityType) : null;
+
+			count = bulkGraphOperation(securityContext, app -> type != null ? app.nodeQuery(type) : (Query)app.nodeQuery(), 1000, "RebuildNodeIndex" + (entityType != null ? "-" + entityType : ""), operation, threads, restart);
+
+		} else {
+
+			final NodeFactory nodeFactory = new NodeFactory(SecurityContext.getSuperUserInstance());
+			final DatabaseService graphDb = (DatabaseService) arguments.get("graphDb");
+
+			count = bulkGraphOperation(securityContext, Iterables.map(nodeFactory, graphDb.getNodesByTypeProperty(entityType)), 1000, "RebuildNodeIndex", operation);
+		}
 
 		info("Done with (re-)indexing {} nodes", count);
 	}
 
-	private void rebuildRelationshipIndex(final String relType) {
-
-		final RelationshipFactory relFactory               = new RelationshipFactory(SecurityContext.getSuperUserInstance());
-		final DatabaseService graphDb                      = (DatabaseService) arguments.get("graphDb");
-		final Iterable<AbstractRelationship> relationships = Iterables.map(relFactory, graphDb.getRelationshipsByType(relType));
+	private void rebuildRelationshipIndex(final String relType, final int threads, final boolean restart) {
 
 		if (relType == null) {
 
@@ -139,7 +151,7 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 
 		}
 
-		long count = bulkGraphOperation(securityContext, relationships, 1000, "RebuildRelIndex", new BulkGraphOperation<AbstractRelationship>() {
+		final BulkGraphOperation<AbstractRelationship> operation = new BulkGraphOperation<AbstractRelationship>() {
 
 			@Override
 			public boolean handleGraphObject(SecurityContext securityContext, AbstractRelationship rel) {
@@ -158,18 +170,30 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 			public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
 				logger.warn("Unable to index relationship: {}", t.getMessage());
 			}
-		});
+		};
+
+		final long count;
+
+		if (threads > 1) {
+
+			final Class type = relType != null ? StructrApp.getConfiguration().getRelationshipEntityClass(relType) : null;
+
+			count = bulkGraphOperation(securityContext, app -> type != null ? app.relationshipQuery(type) : (Query)app.relationshipQuery(), 1000, "RebuildRelIndex" + (relType != null ? "-" + relType : ""), operation, threads, restart);
+
+		} else {
+
+			final RelationshipFactory relFactory = new RelationshipFactory(SecurityContext.getSuperUserInstance());
+			final DatabaseService graphDb        = (DatabaseService) arguments.get("graphDb");
+
+			count = bulkGraphOperation(securityContext, Iterables.map(relFactory, graphDb.getRelationshipsByType(relType)), 1000, "RebuildRelIndex", operation);
+		}
 
 		info("Done with (re-)indexing {} relationships", count);
 	}
 
-	private void rebuildFulltextIndex() {
-
-		final NodeFactory nodeFactory   = new NodeFactory(SecurityContext.getSuperUserInstance());
-		final DatabaseService graphDb   = (DatabaseService) arguments.get("graphDb");
-		final Iterable<Indexable> nodes = Iterables.map(nodeFactory, graphDb.getNodesByLabel("Indexable"));
+	private void rebuildFulltextIndex(final int threads, final boolean restart) {
 
-		bulkGraphOperation(securityContext, nodes, 1000, "RebuildFulltextIndex", new BulkGraphOperation<Indexable>() {
+		final BulkGraphOperation<Indexable> operation = new BulkGraphOperation<Indexable>() {
 
 			@Override
 			public boolean handleGraphObject(SecurityContext securityContext, Indexable indexable) throws FrameworkException {
@@ -188,7 +212,19 @@ public class BulkRebuildIndexCommand extends NodeServiceCommand implements Maint
 			public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
 				logger.warn("Unable to build fulltext index: {}", t.getMessage());
 			}
-		});
+		};
+
+		if (threads > 1) {
+
+			bulkGraphOperation(securityContext, app -> app.nodeQuery(Indexable.class), 1000, "RebuildFulltextIndex", operation, threads, restart);
+
+		} else {
+
+			final NodeFactory nodeFactory = new NodeFactory(SecurityContext.getSuperUserInstance());
+			final DatabaseService graphDb = (DatabaseService) arguments.get("graphDb");
+
+			bulkGraphOperation(securityContext, Iterables.map(nodeFactory, graphDb.getNodesByLabel("Indexable")), 1000, "RebuildFulltextIndex", operation);
+		}
 
 		info("Rebuilding fulltext index done.");
 	}
@@ -77,10 +77,15 @@ public class BulkSetNodePropertiesCommand extends NodeServiceCommand implements
 				nodes = Iterables.map(nodeFactory, graphDb.getAllNodes());
 			}
 
-			// remove "type" so it won't be set later
+			final int threads     = getThreadCount(properties);
+			final boolean restart = isRestart(properties);
+
+			// remove "type" and the control attributes so they won't be set later
 			properties.remove("type");
+			properties.remove("threads");
+			properties.remove("restart");
 
-			final long count = bulkGraphOperation(securityContext, nodes, 1000, "SetNodeProperties", new BulkGraphOperation<AbstractNode>() {
+			final BulkGraphOperation<AbstractNode> operation = new BulkGraphOperation<AbstractNode>() {
 
 				@Override
 				public boolean handleGraphObject(SecurityContext securityContext, AbstractNode node) {
@@ -141,7 +146,18 @@ public class BulkSetNodePropertiesCommand extends NodeServiceCommand implements
 				public void handleTransactionFailure(SecurityContext securityContext, Throwable t) {
 					logger.warn("Unable to set node properties: {}", t.getMessage() );
 				}
-			});
+			};
+
+			final long count;
+
+			if (threads > 1) {
+
+				count = bulkGraphOperation(securityContext, app -> app.nodeQuery(clazz), 1000, "SetNodeProperties-" + type, operation, threads, restart);
+
+			} else {
+
+				count = bulkGraphOperation(securityContext, nodes, 1000, "SetNodeProperties", operation);
+			}
 
 
 			logger.info("Fixed {} nodes ...", count);
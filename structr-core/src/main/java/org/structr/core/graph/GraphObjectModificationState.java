@@ -395,6 +395,23 @@ public class GraphObjectModificationState implements ModificationEvent {
 		return valid;
 	}
 
+	/**
+	 * Indicates whether this state will be validated in doValidationAndIndexing.
+	 */
+	boolean requiresValidation() {
+
+		switch (status & 0x000f) {
+
+			case 6:
+			case 4:
+			case 2:
+				return true;
+
+			default:
+				return false;
+		}
+	}
+
 	public long getValdationTime() {
 		return validationTime;
 	}
@@ -20,6 +20,7 @@ package org.structr.core.graph;
 
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
@@ -31,6 +32,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.BiPredicate;
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,6 +43,7 @@ import org.structr.api.graph.Relationship;
 import org.structr.api.graph.RelationshipType;
 import org.structr.common.RelType;
 import org.structr.common.SecurityContext;
+import org.structr.common.UniquenessBatch;
 import org.structr.common.error.ErrorBuffer;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
@@ -67,6 +70,7 @@ public class ModificationQueue {
 	private final Map<String, TransactionPostProcess> postProcesses                         = new LinkedHashMap<>();
 	private final Set<String> alreadyPropagated                                             = new LinkedHashSet<>();
 	private final Set<String> synchronizationKeys                                           = new TreeSet<>();
+	private final Set<String> flags                                                         = new HashSet<>();
 	private boolean doUpateChangelogIfEnabled                                               = true;
 	private long changelogUpdateTime                                                        = 0L;
 	private long outerCallbacksTime                                                         = 0L;
@@ -131,24 +135,52 @@ public class ModificationQueue {
 
 	public boolean doValidation(final SecurityContext securityContext, final ErrorBuffer errorBuffer, final boolean doValidation) throws FrameworkException {
 
-		long t0 = System.currentTimeMillis();
+		final Iterable<GraphObjectModificationState> sortedModifications = getSortedModifications();
+		final int batchSize                                              = Settings.UniqueValidationBatchSize.getValue(500);
+		final boolean batchUniqueness                                    = doValidation && batchSize > 0 && modifications.size() > 1;
+		long t0                                                          = System.currentTimeMillis();
+
+		// look up the values of unique properties for all objects at once
+		if (batchUniqueness) {
+
+			final List<GraphObject> objects = new ArrayList<>(modifications.size());
+
+			for (final GraphObjectModificationState state : sortedModifications) {
 
-		// do validation and indexing
-		for (final GraphObjectModificationState state : getSortedModifications()) {
+				if (state.requiresValidation() && !state.getGraphObject().getPropertyContainer().isStale()) {
 
-			PropertyContainer container = state.getGraphObject().getPropertyContainer();
-			if (container.isStale()) {
-				continue;
+					objects.add(state.getGraphObject());
+				}
 			}
 
-			// do callback according to entry state
-			boolean res = state.doValidationAndIndexing(this, securityContext, errorBuffer, doValidation);
+			UniquenessBatch.begin(objects, batchSize);
+		}
 
-			validationTime += state.getValdationTime();
-			indexingTime += state.getIndexingTime();
+		try {
 
-			if (!res) {
-				return false;
+			// do validation and indexing
+			for (final GraphObjectModificationState state : sortedModifications) {
+
+				PropertyContainer container = state.getGraphObject().getPropertyContainer();
+				if (container.isStale()) {
+					continue;
+				}
+
+				// do callback according to entry state
+				boolean res = state.doValidationAndIndexing(this, securityContext, errorBuffer, doValidation);
+
+				validationTime += state.getValdationTime();
+				indexingTime += state.getIndexingTime();
+
+				if (!res) {
+					return false;
+				}
+			}
+
+		} finally {
+
+			if (batchUniqueness) {
+				UniquenessBatch.end();
 			}
 		}
 
@@ -251,11 +283,13 @@ public class ModificationQueue {
 		alreadyPropagated.clear();
 		modifications.clear();
 		modificationEvents.clear();
+		flags.clear();
 	}
 
 	public void create(final Principal user, final NodeInterface node) {
 
 		getState(node).create();
+		updateFlags(node, null);
 
 		if (Settings.ChangelogEnabled.getValue() || Settings.UserChangelogEnabled.getValue()) {
 
@@ -301,6 +335,10 @@ public class ModificationQueue {
 
 		getState(node).modify(user, key, previousValue, newValue);
 
+		if (key != null) {
+			updateFlags(node, key);
+		}
+
 		if (key != null&& key.requiresSynchronization()) {
 			synchronizationKeys.add(key.getSynchronizationKey());
 		}
@@ -333,6 +371,7 @@ public class ModificationQueue {
 	public void delete(final Principal user, final NodeInterface node) {
 
 		getState(node).delete(false);
+		updateFlags(node, null);
 
 		if (Settings.ChangelogEnabled.getValue() || Settings.UserChangelogEnabled.getValue()) {
 
@@ -363,6 +402,10 @@ public class ModificationQueue {
 		return modificationEvents;
 	}
 
+	public boolean isFlagSet(final String flag) {
+		return flags.contains(flag);
+	}
+
 	public void postProcess(final String key, final TransactionPostProcess process) {
 
 		if (!postProcesses.containsKey(key)) {
@@ -521,6 +564,19 @@ public class ModificationQueue {
 	}
 
 	// ----- private methods -----
+	private void updateFlags(final NodeInterface node, final PropertyKey key) {
+
+		for (final Map.Entry<String, BiPredicate<NodeInterface, PropertyKey>> entry : TransactionCommand.getTransactionFlags().entrySet()) {
+
+			final String flag = entry.getKey();
+
+			if (!flags.contains(flag) && entry.getValue().test(node, key)) {
+
+				flags.add(flag);
+			}
+		}
+	}
+
 	private void modifyEndNodes(final Principal user, final NodeInterface startNode, final NodeInterface endNode, final RelationshipInterface rel, final boolean isDeletion) {
 
 		// only modify if nodes are accessible
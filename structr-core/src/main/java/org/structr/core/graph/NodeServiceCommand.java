@@ -24,10 +24,8 @@ import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.atomic.AtomicLong;
-import org.apache.commons.lang3.StringUtils;
+import java.util.function.Function;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.Predicate;
@@ -35,7 +33,9 @@ import org.structr.api.service.Command;
 import org.structr.common.Filter;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
 import org.structr.core.app.App;
+import org.structr.core.app.Query;
 import org.structr.core.app.StructrApp;
 import org.structr.util.Writable;
 
@@ -44,8 +44,7 @@ import org.structr.util.Writable;
  */
 public abstract class NodeServiceCommand extends Command {
 
-	private static final Logger logger                        = LoggerFactory.getLogger(NodeServiceCommand.class.getName());
-	private static final ArrayBlockingQueue<String> uuidQueue = new ArrayBlockingQueue<>(100000);
+	private static final Logger logger = LoggerFactory.getLogger(NodeServiceCommand.class.getName());
 
 	protected final Map<String, String> customHeaders = new LinkedHashMap();
 	protected final List<Object> customPayload        = new LinkedList<>();
@@ -158,6 +157,35 @@ public abstract class NodeServiceCommand extends Command {
 		return objectCount;
 	}
 
+	/**
+	 * Executes the given operation on all objects of the given query, with
+	 * the given number of worker threads. An interrupted operation resumes
+	 * where it stopped when it is run again with the same description,
+	 * unless <code>restart</code> is set.
+	 *
+	 * @param <T>
+	 * @param securityContext
+	 * @param query creates the query that provides the objects to operate on
+	 * @param commitCount
+	 * @param description
+	 * @param operation the operation to execute
+	 * @param threads the number of worker threads
+	 * @param restart discard the checkpoint of a previous run
+	 * @return the number of objects processed
+	 *
+	 * @see PartitionedBulkOperation
+	 */
+	public <T extends GraphObject> long bulkGraphOperation(final SecurityContext securityContext, final Function<App, Query<? extends T>> query, final int commitCount, final String description, final BulkGraphOperation<T> operation, final int threads, final boolean restart) {
+
+		final PartitionedBulkOperation<T> bulkOperation = new PartitionedBulkOperation<>(securityContext, description, query, operation).threads(threads).commitCount(commitCount);
+
+		if (restart) {
+			bulkOperation.restart();
+		}
+
+		return bulkOperation.run();
+	}
+
 	/**
 	 * Executes the given transaction until the stop condition evaluates to
 	 * <b>true</b>.
@@ -195,16 +223,7 @@ public abstract class NodeServiceCommand extends Command {
 	}
 
 	public static String getNextUuid() {
-
-		String uuid = null;
-
-		do {
-
-			uuid = uuidQueue.poll();
-
-		} while (uuid == null);
-
-		return uuid;
+		return UuidGenerator.getInstance().next();
 	}
 
 	// ----- public methods -----
@@ -229,6 +248,38 @@ public abstract class NodeServiceCommand extends Command {
 
 	}
 
+	/**
+	 * Returns the number of worker threads requested with the "threads"
+	 * attribute of a maintenance command, or 1 if none was given.
+	 */
+	protected int getThreadCount(final Map<String, Object> attributes) {
+
+		final Object value = attributes.get("threads");
+		if (value instanceof Number) {
+
+			return Math.max(1, ((Number)value).intValue());
+
+		} else if (value != null) {
+
+			try {
+
+				return Math.max(1, Integer.parseInt(value.toString()));
+
+			} catch (NumberFormatException nfex) {
+				logger.warn("Invalid value for threads: {}, using 1", value);
+			}
+		}
+
+		return 1;
+	}
+
+	protected boolean isRestart(final Map<String, Object> attributes) {
+
+		final Object value = attributes.get("restart");
+
+		return value != null && "true".equals(value.toString());
+	}
+
 	protected void duplicateLogToConsole (final String msg, final Object... data) {
 
 		// allow duplication of logging output to the console
@@ -253,31 +304,4 @@ public abstract class NodeServiceCommand extends Command {
 
 		}
 	}
-
-	// create uuid producer that fills the queue
-	static {
-
-		Thread uuidProducer = new Thread(new Runnable() {
-
-			@Override
-			public void run() {
-
-				// please do not stop :)
-				while (true) {
-
-					try {
-						while (true) {
-
-							uuidQueue.put(StringUtils.replace(UUID.randomUUID().toString(), "-", ""));
-						}
-
-					} catch (Throwable t) {	}
-				}
-			}
-
-		}, "UuidProducerThread");
-
-		uuidProducer.setDaemon(true);
-		uuidProducer.start();
-	}
 }
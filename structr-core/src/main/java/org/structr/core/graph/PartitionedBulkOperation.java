@@ -0,0 +1,439 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.Predicate;
+import org.structr.api.config.Settings;
+import org.structr.common.SecurityContext;
+import org.structr.core.GraphObject;
+import org.structr.core.app.App;
+import org.structr.core.app.Query;
+import org.structr.core.app.StructrApp;
+
+/**
+ * Executes a {@link BulkGraphOperation} on all objects of a query with
+ * multiple worker threads.
+ *
+ * The objects are partitioned into 256 contiguous UUID ranges, so every
+ * batch is a range query that can seek the UUID index. The range
+ * boundaries are interpolated between the smallest and the largest UUID
+ * of the query, so the partitions are of similar size for both random
+ * and time-ordered UUIDs. Each worker takes the next unprocessed
+ * partition and processes it in batches, in UUID order, each batch in
+ * its own transaction. The UUID of the last object of every
+ * committed batch is written to a checkpoint file, so an interrupted
+ * operation continues where it stopped when it is started again with the
+ * same name. The checkpoint file is removed when all partitions are done.
+ *
+ * Batches are processed at least once, so the operation should be
+ * idempotent.
+ */
+public class PartitionedBulkOperation<T extends GraphObject> {
+
+	private static final Logger logger     = LoggerFactory.getLogger(PartitionedBulkOperation.class.getName());
+	private static final String BOUNDARIES = "boundaries";
+	private static final String DONE       = "done";
+	private static final String MAX_ID     = "\uffff";
+	private static final int PARTITIONS    = 256;
+
+	private final ConcurrentLinkedQueue<Integer> partitions = new ConcurrentLinkedQueue<>();
+	private final AtomicBoolean stopped                     = new AtomicBoolean(false);
+	private final AtomicLong objectCount                    = new AtomicLong(0L);
+	private final Properties checkpoint                     = new Properties();
+	private final String[] boundaries                       = new String[PARTITIONS + 1];
+	private final Function<App, Query<? extends T>> query;
+	private final BulkGraphOperation<T> operation;
+	private final SecurityContext securityContext;
+	private final String name;
+	private final Path checkpointFile;
+	private int commitCount                                 = 1000;
+	private int threads                                     = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * @param securityContext
+	 * @param name unique name of the operation, used for logging and for the checkpoint file
+	 * @param query creates the query that selects the objects to operate on
+	 * @param operation the operation to execute
+	 */
+	public PartitionedBulkOperation(final SecurityContext securityContext, final String name, final Function<App, Query<? extends T>> query, final BulkGraphOperation<T> operation) {
+
+		this.securityContext = securityContext;
+		this.name            = name;
+		this.query           = query;
+		this.operation       = operation;
+		this.checkpointFile  = Paths.get(Settings.getBasePath()).resolve("maintenance").resolve(name.replaceAll("[^a-zA-Z0-9_\\-]+", "_") + ".checkpoint");
+	}
+
+	public PartitionedBulkOperation<T> threads(final int threads) {
+		this.threads = Math.max(1, threads);
+		return this;
+	}
+
+	public PartitionedBulkOperation<T> commitCount(final int commitCount) {
+		this.commitCount = Math.max(1, commitCount);
+		return this;
+	}
+
+	/**
+	 * Discards the checkpoint of a previous, interrupted run.
+	 */
+	public PartitionedBulkOperation<T> restart() {
+
+		try {
+
+			Files.deleteIfExists(checkpointFile);
+
+		} catch (IOException ioex) {
+			logger.warn("Unable to delete checkpoint file {}: {}", checkpointFile, ioex.getMessage());
+		}
+
+		return this;
+	}
+
+	/**
+	 * Runs the operation and returns the number of objects processed.
+	 */
+	public long run() {
+
+		readCheckpoint();
+
+		if (!initializeBoundaries()) {
+			return 0L;
+		}
+
+		int remaining = 0;
+
+		for (int i=0; i<PARTITIONS; i++) {
+
+			if (!DONE.equals(checkpoint.getProperty(key(i)))) {
+
+				partitions.add(i);
+				remaining++;
+			}
+		}
+
+		if (remaining < PARTITIONS) {
+			logger.info("{}: resuming from checkpoint, {} of {} partitions left", name, remaining, PARTITIONS);
+		}
+
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final List<Future<?>> futures  = new ArrayList<>();
+		final long start               = System.currentTimeMillis();
+		boolean complete               = true;
+
+		for (int i=0; i<threads; i++) {
+
+			final int worker = i + 1;
+
+			futures.add(executor.submit(() -> work(worker)));
+		}
+
+		for (final Future<?> future : futures) {
+
+			try {
+
+				complete &= Boolean.TRUE.equals(future.get());
+
+			} catch (Throwable t) {
+
+				logger.warn("{}: worker failed: {}", name, t.getMessage());
+				complete = false;
+			}
+		}
+
+		executor.shutdown();
+
+		final long duration = Math.max(1L, System.currentTimeMillis() - start);
+		final long count    = objectCount.get();
+
+		logger.info("{}: {} objects processed with {} workers in {} s ({} objects/s)", name, count, threads, duration / 1000, (count * 1000) / duration);
+
+		if (complete && !stopped.get()) {
+
+			try {
+
+				Files.deleteIfExists(checkpointFile);
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to delete checkpoint file {}: {}", checkpointFile, ioex.getMessage());
+			}
+
+		} else if (!complete) {
+
+			logger.warn("{}: not all partitions could be processed, run again to resume", name);
+		}
+
+		return count;
+	}
+
+	// ----- private methods -----
+	private boolean work(final int worker) {
+
+		final App app                   = StructrApp.getInstance(securityContext);
+		final Predicate<Long> condition = operation.getCondition();
+		final long start                = System.currentTimeMillis();
+		boolean complete                = true;
+		long workerCount                = 0L;
+		Integer partition               = null;
+
+		while (!stopped.get() && (partition = partitions.poll()) != null) {
+
+			final String lower    = boundaries[partition];
+			final String upper    = boundaries[partition + 1];
+			String lastId         = checkpoint.getProperty(key(partition));
+			boolean partitionDone = false;
+
+			while (!partitionDone && !stopped.get()) {
+
+				List<? extends T> batch = null;
+				boolean committed       = false;
+
+				try {
+
+					try (final Tx tx = app.tx(operation.doValidation(), operation.doCallbacks(), operation.doNotifications())) {
+
+						// continue after the last processed object, or start at the lower bound (inclusive)
+						batch = query.apply(app)
+							.includeHidden()
+							.andRange(GraphObject.id, lastId != null ? lastId : lower, upper, lastId == null, false)
+							.sort(GraphObject.id)
+							.pageSize(commitCount)
+							.page(1)
+							.getAsList();
+
+						for (final T obj : batch) {
+
+							if (condition != null && !condition.accept(objectCount.get())) {
+
+								stopped.set(true);
+								break;
+							}
+
+							try {
+
+								if (operation.handleGraphObject(securityContext, obj)) {
+
+									objectCount.incrementAndGet();
+									workerCount++;
+								}
+
+							} catch (Throwable t) {
+
+								operation.handleThrowable(securityContext, t, obj);
+							}
+						}
+
+						tx.success();
+					}
+
+					// the transaction is committed when it is closed, so the
+					// batch counts only if closing it did not fail
+					committed = true;
+
+				} catch (Throwable t) {
+
+					operation.handleTransactionFailure(securityContext, t);
+				}
+
+				if (!committed) {
+
+					// leave the partition at the last committed batch for the next run
+					complete = false;
+					break;
+				}
+
+				if (batch.isEmpty() || batch.size() < commitCount) {
+
+					partitionDone = true;
+
+				} else {
+
+					lastId = batch.get(batch.size() - 1).getUuid();
+				}
+
+				if (!stopped.get()) {
+					writeCheckpoint(partition, partitionDone ? DONE : lastId);
+				}
+			}
+
+			final long duration = Math.max(1L, System.currentTimeMillis() - start);
+
+			logger.info("{}: worker {} finished partition {}, {} objects processed ({} objects/s)", name, worker, String.format("%02x", partition), workerCount, (workerCount * 1000) / duration);
+		}
+
+		return complete;
+	}
+
+	/**
+	 * Reads the partition boundaries from the checkpoint, or interpolates
+	 * them between the smallest and the largest UUID of the query. The
+	 * boundaries are stored with the checkpoint so that a resumed run
+	 * uses the same partitions.
+	 */
+	private boolean initializeBoundaries() {
+
+		final String stored = checkpoint.getProperty(BOUNDARIES);
+		if (stored != null) {
+
+			final String[] parts = stored.split(",", -1);
+			if (parts.length == PARTITIONS + 1) {
+
+				System.arraycopy(parts, 0, boundaries, 0, parts.length);
+				return true;
+			}
+
+			logger.warn("{}: invalid partition boundaries in checkpoint, starting from the beginning", name);
+
+			checkpoint.clear();
+		}
+
+		final App app = StructrApp.getInstance(securityContext);
+		String min    = null;
+		String max    = null;
+
+		try (final Tx tx = app.tx(false, false, false)) {
+
+			final T first = query.apply(app).includeHidden().sort(GraphObject.id, false).pageSize(1).page(1).getFirst();
+			final T last  = query.apply(app).includeHidden().sort(GraphObject.id, true).pageSize(1).page(1).getFirst();
+
+			if (first != null && last != null) {
+
+				min = first.getUuid();
+				max = last.getUuid();
+			}
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.warn("{}: unable to determine partition boundaries: {}", name, t.getMessage());
+			return false;
+		}
+
+		final BigInteger from = toNumber(min);
+		final BigInteger to   = toNumber(max);
+
+		// the outer boundaries are open, so objects outside of the sampled range are not missed
+		boundaries[0]          = "";
+		boundaries[PARTITIONS] = MAX_ID;
+
+		for (int i=1; i<PARTITIONS; i++) {
+
+			if (from != null && to != null && from.compareTo(to) < 0) {
+
+				boundaries[i] = toId(from.add(to.subtract(from).multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(PARTITIONS))));
+
+			} else {
+
+				// no usable sample, split the whole UUID range evenly
+				boundaries[i] = String.format("%02x", i);
+			}
+		}
+
+		checkpoint.setProperty(BOUNDARIES, String.join(",", boundaries));
+
+		return true;
+	}
+
+	private BigInteger toNumber(final String uuid) {
+
+		if (uuid == null) {
+			return null;
+		}
+
+		final String hex = uuid.replace("-", "");
+		if (hex.length() != 32) {
+			return null;
+		}
+
+		try {
+
+			return new BigInteger(hex, 16);
+
+		} catch (NumberFormatException nfex) {
+			return null;
+		}
+	}
+
+	private String toId(final BigInteger value) {
+		return String.format("%032x", value);
+	}
+
+	private String key(final int partition) {
+		return String.format("%02x", partition);
+	}
+
+	private void readCheckpoint() {
+
+		if (Files.exists(checkpointFile)) {
+
+			try (final InputStream in = Files.newInputStream(checkpointFile)) {
+
+				checkpoint.load(in);
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to read checkpoint file {}, starting from the beginning: {}", checkpointFile, ioex.getMessage());
+			}
+		}
+	}
+
+	private void writeCheckpoint(final int partition, final String value) {
+
+		synchronized (checkpoint) {
+
+			checkpoint.setProperty(key(partition), value);
+
+			try {
+
+				final Path tmp = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+
+				Files.createDirectories(checkpointFile.getParent());
+
+				try (final OutputStream out = Files.newOutputStream(tmp)) {
+					checkpoint.store(out, name);
+				}
+
+				Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+			} catch (IOException ioex) {
+				logger.warn("Unable to write checkpoint file {}: {}", checkpointFile, ioex.getMessage());
+			}
+		}
+	}
+}
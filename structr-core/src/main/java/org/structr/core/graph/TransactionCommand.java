@@ -19,10 +19,14 @@
 package org.structr.core.graph;
 
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiPredicate;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -50,10 +54,11 @@ import org.structr.core.scheduler.TransactionPostProcessQueue;
  */
 public class TransactionCommand {
 
-	private static final Logger logger                             = LoggerFactory.getLogger(TransactionCommand.class.getName());
-	private static final Set<StructrTransactionListener> listeners = new LinkedHashSet<>();
-	private static final ThreadLocal<TransactionCommand> commands  = new ThreadLocal<>();
-	private static final MultiSemaphore                  semaphore = new MultiSemaphore();
+	private static final Logger logger                                              = LoggerFactory.getLogger(TransactionCommand.class.getName());
+	private static final Set<StructrTransactionListener> listeners                  = new LinkedHashSet<>();
+	private static final Map<String, BiPredicate<NodeInterface, PropertyKey>> flags = new ConcurrentHashMap<>();
+	private static final ThreadLocal<TransactionCommand> commands                   = new ThreadLocal<>();
+	private static final MultiSemaphore                  semaphore                  = new MultiSemaphore();
 
 	private TransactionReference transaction             = null;
 	private ModificationQueue queue                      = null;
@@ -417,6 +422,35 @@ public class TransactionCommand {
 		return listeners;
 	}
 
+	/**
+	 * Registers a flag that is set for the current transaction when the
+	 * given condition accepts a created or deleted node (with a null key)
+	 * or a modified property of a node. Checking the flag is cheaper than
+	 * inspecting all modifications of the transaction.
+	 */
+	public static void registerTransactionFlag(final String flag, final BiPredicate<NodeInterface, PropertyKey> condition) {
+		flags.put(flag, condition);
+	}
+
+	public static Map<String, BiPredicate<NodeInterface, PropertyKey>> getTransactionFlags() {
+		return flags;
+	}
+
+	/**
+	 * Indicates whether the given flag was set in the current transaction,
+	 * returns false outside of a transaction.
+	 */
+	public static boolean isTransactionFlagSet(final String flag) {
+
+		final TransactionCommand cmd = commands.get();
+		if (cmd != null && cmd.queue != null) {
+
+			return cmd.queue.isFlagSet(flag);
+		}
+
+		return false;
+	}
+
 	public static void simpleBroadcastWarning(final String title, final String text, final Predicate<String> sessionIdPredicate) {
 
 		final Map<String, Object> messageData = new HashMap();
@@ -467,6 +501,21 @@ public class TransactionCommand {
 		}
 	}
 
+	/**
+	 * Returns the modifications of the current transaction that have not
+	 * been committed yet, or an empty collection outside of a transaction.
+	 */
+	public static Collection<ModificationEvent> getModificationEvents() {
+
+		final TransactionCommand cmd = commands.get();
+		if (cmd != null && cmd.queue != null) {
+
+			return cmd.queue.getModificationEvents();
+		}
+
+		return Collections.emptyList();
+	}
+
 	public static boolean inTransaction() {
 		return commands.get() != null;
 	}
@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.core.graph;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+
+/**
+ * Creates the UUIDs of new objects, as 32 lowercase hex characters without
+ * dashes.
+ *
+ * Each thread has its own random number generator, so there is no shared
+ * state between threads. The format is selected with the
+ * <code>database.uuid.mode</code> setting: <code>random</code> creates
+ * version 4 UUIDs, <code>timeordered</code> creates version 7 UUIDs whose
+ * first 48 bits are the creation time in milliseconds. Time-ordered UUIDs
+ * are strictly increasing per thread and roughly increasing overall, which
+ * keeps inserts into the UUID index local.
+ */
+public abstract class UuidGenerator {
+
+	private static final Logger logger                       = LoggerFactory.getLogger(UuidGenerator.class.getName());
+	private static final char[] HEX                          = "0123456789abcdef".toCharArray();
+	private static final SecureRandom seedSource             = new SecureRandom();
+	private static final ThreadLocal<UuidGenerator> random   = ThreadLocal.withInitial(RandomUuidGenerator::new);
+	private static final ThreadLocal<UuidGenerator> ordered  = ThreadLocal.withInitial(TimeOrderedUuidGenerator::new);
+
+	protected final SecureRandom secureRandom = createRandom();
+
+	/**
+	 * Returns the next UUID of this generator.
+	 */
+	public abstract String next();
+
+	/**
+	 * Returns the generator of the current thread for the configured mode.
+	 */
+	public static UuidGenerator getInstance() {
+
+		if ("timeordered".equals(Settings.UuidGeneratorMode.getValue())) {
+			return ordered.get();
+		}
+
+		return random.get();
+	}
+
+	/**
+	 * Returns a random UUID regardless of the configured mode, for values
+	 * that must not be predictable (tokens etc.).
+	 */
+	public static String randomUuid() {
+		return random.get().next();
+	}
+
+	// ----- protected methods -----
+	protected static String toHex(final long high, final long low) {
+
+		final char[] buf = new char[32];
+
+		for (int i=15; i>=0; i--) {
+			buf[15 - i] = HEX[(int)(high >>> (i * 4)) & 0xf];
+			buf[31 - i] = HEX[(int)(low  >>> (i * 4)) & 0xf];
+		}
+
+		return new String(buf);
+	}
+
+	// ----- private methods -----
+	private static SecureRandom createRandom() {
+
+		try {
+
+			// one generator per thread instead of the shared system generator,
+			// seeded once from the system generator
+			final SecureRandom secureRandom = SecureRandom.getInstance("SHA1PRNG");
+			final byte[] seed               = new byte[32];
+
+			seedSource.nextBytes(seed);
+			secureRandom.setSeed(seed);
+
+			return secureRandom;
+
+		} catch (NoSuchAlgorithmException nsaex) {
+			logger.warn("SHA1PRNG not available, using default SecureRandom implementation");
+		}
+
+		return new SecureRandom();
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Version 4 UUIDs: 122 random bits.
+	 */
+	public static class RandomUuidGenerator extends UuidGenerator {
+
+		@Override
+		public String next() {
+
+			final long high = (secureRandom.nextLong() & 0xffffffffffff0fffL) | 0x0000000000004000L;
+			final long low  = (secureRandom.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+
+			return toHex(high, low);
+		}
+	}
+
+	/**
+	 * Version 7 UUIDs: 48 bits of unix time in milliseconds, a 12 bit
+	 * counter that starts at a random value in every millisecond, and 62
+	 * random bits. If the counter overflows, the timestamp is advanced
+	 * by one millisecond, so the UUIDs of a thread never go backwards,
+	 * even if the clock does.
+	 */
+	public static class TimeOrderedUuidGenerator extends UuidGenerator {
+
+		private long lastTimestamp = 0L;
+		private int counter        = 0;
+
+		@Override
+		public String next() {
+
+			final long now = System.currentTimeMillis();
+
+			if (now > lastTimestamp) {
+
+				lastTimestamp = now;
+
+				// leave room for increments within the same millisecond
+				counter = secureRandom.nextInt(0x800);
+
+			} else if (++counter > 0xfff) {
+
+				lastTimestamp++;
+				counter = 0;
+			}
+
+			final long high = ((lastTimestamp & 0xffffffffffffL) << 16) | 0x7000L | counter;
+			final long low  = (secureRandom.nextLong() & 0x3fffffffffffffffL) | 0x8000000000000000L;
+
+			return toHex(high, low);
+		}
+	}
+}
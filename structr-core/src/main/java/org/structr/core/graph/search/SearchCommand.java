@@ -27,6 +27,7 @@ import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.ListIterator;
 import java.util.Map;
 import java.util.Set;
 import org.slf4j.Logger;
@@ -42,9 +43,11 @@ import org.structr.api.util.PagingIterable;
 import org.structr.api.util.ResultStream;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
+import org.structr.common.fulltext.FulltextIndexer;
 import org.structr.common.geo.GeoCodingResult;
 import org.structr.common.geo.GeoHelper;
 import org.structr.core.GraphObject;
+import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.AbstractRelationship;
@@ -257,9 +260,20 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 
 		// check for optional-only queries
 		// (some query types seem to allow no MUST occurs)
-		for (final Iterator<SearchAttribute> it = group.getSearchAttributes().iterator(); it.hasNext();) {
+		for (final ListIterator<SearchAttribute> it = group.getSearchAttributes().listIterator(); it.hasNext();) {
 
-			final SearchAttribute attr = it.next();
+			SearchAttribute attr = it.next();
+
+			// let the fulltext indexer answer fulltext queries it supports
+			if (attr instanceof PropertySearchAttribute && !attr.isExactMatch() && Occurrence.REQUIRED.equals(attr.getOccurrence()) && attr.getValue() instanceof String) {
+
+				final FulltextIndexer indexer = StructrApp.getInstance(securityContext).getFulltextIndexer();
+				if (indexer.supportsFulltextQuery(attr.getKey())) {
+
+					attr = getFulltextSource(indexer, (String)attr.getValue());
+					it.set(attr);
+				}
+			}
 
 			if (attr instanceof SearchAttributeGroup) {
 
@@ -304,6 +318,24 @@ public abstract class SearchCommand<S extends PropertyContainer, T extends Graph
 		}
 	}
 
+	private SourceSearchAttribute getFulltextSource(final FulltextIndexer indexer, final String searchTerm) throws FrameworkException {
+
+		final SourceSearchAttribute attr = new SourceSearchAttribute(Occurrence.REQUIRED);
+		final App app                    = StructrApp.getInstance(securityContext);
+
+		// results are ordered by relevance, stale index entries are ignored
+		for (final String uuid : indexer.fulltextQuery(searchTerm)) {
+
+			final GraphObject obj = isRelationshipSearch() ? app.getRelationshipById(uuid) : app.getNodeById(uuid);
+			if (obj != null) {
+
+				attr.addToResult(obj);
+			}
+		}
+
+		return attr;
+	}
+
 	private Set<T> mergeSources(List<SourceSearchAttribute> sources) {
 
 		final Set<T> mergedResult = new LinkedHashSet<>();
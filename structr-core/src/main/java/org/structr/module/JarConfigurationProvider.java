@@ -18,9 +18,10 @@
  */
 package org.structr.module;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
@@ -41,6 +42,9 @@ import java.util.Set;
 import java.util.TreeMap;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -48,10 +52,12 @@ import java.util.jar.Manifest;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.NullOutputStream;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.agent.Agent;
+import org.structr.api.config.Settings;
 import org.structr.api.service.LicenseManager;
 import org.structr.api.service.Service;
 import org.structr.common.DefaultFactoryDefinition;
@@ -1064,45 +1070,89 @@ public class JarConfigurationProvider implements ConfigurationProvider {
 	// ----- private methods -----
 	private void scanResources() {
 
-		Set<String> resourcePaths = getResourcesToScan();
-		for (String resourcePath : resourcePaths) {
+		final Set<String> resourcePaths               = getResourcesToScan();
+		final List<Future<StructrModuleInfo>> modules = new ArrayList<>();
+		final ExecutorService executor                = Executors.newFixedThreadPool(Math.max(1, Math.min(resourcePaths.size(), Runtime.getRuntime().availableProcessors())));
+		final long t0                                 = System.currentTimeMillis();
+		int indexed                                   = 0;
 
-			scanResource(resourcePath);
+		// JARs are read and verified in parallel, classes are loaded in the original order
+		for (final String resourcePath : resourcePaths) {
+
+			modules.add(executor.submit(() -> loadResource(resourcePath)));
 		}
 
-		logger.info("{} JARs scanned", resourcePaths.size());
+		executor.shutdown();
 
-	}
+		for (final Future<StructrModuleInfo> future : modules) {
 
-	private void scanResource(final String resourceName) {
+			try {
 
-		try {
+				final StructrModuleInfo module = future.get();
+				if (module != null) {
 
-			final StructrModuleInfo module = loadResource(resourceName);
-			if (module != null) {
+					if (module.getIndex() != null) {
+						indexed++;
+					}
 
-				importResource(module);
+					importResource(module);
 
-			} else {
+				} else {
 
-				logger.warn("Module was null!");
-			}
+					logger.warn("Module was null!");
+				}
 
-		} catch (IOException ignore) {}
+			} catch (Throwable t) {
+				logger.warn("Unable to scan resource: {}", t.getMessage());
+			}
+		}
 
+		logger.info("{} JARs scanned ({} with module index) in {} ms", resourcePaths.size(), indexed, System.currentTimeMillis() - t0);
 	}
 
 	private void importResource(final StructrModuleInfo module) throws IOException {
 
-		final Set<String> classes = module.getClasses();
+		final Map<String, String> index = module.getIndex();
+		final Set<String> classes       = module.getClasses();
+
+		for (final String className : module.getUnlicensedClasses()) {
+
+			// module is not licensed, only load functions as unlicensed
+			if (index == null || ModuleIndex.MODULE.equals(index.get(className))) {
+
+				try {
+
+					final Class clazz   = Class.forName(className);
+					final int modifiers = clazz.getModifiers();
+
+					// register entity classes
+					if (StructrModule.class.isAssignableFrom(clazz) && !(Modifier.isAbstract(modifiers))) {
+
+						// we need to make sure that a module is initialized exactly once
+						final StructrModule structrModule = (StructrModule) clazz.newInstance();
+
+						structrModule.registerModuleFunctions(licenseManager);
+
+					}
+
+				} catch (Throwable t) {
+					logger.warn("Error trying to load class {}: {}",  className, t.getMessage());
+				}
+			}
+		}
 
 		for (final String name : classes) {
 
 			String className = StringUtils.removeStart(name, ".");
 
+			// only the classes in the index need to be registered or initialized
+			if (index != null && !index.containsKey(className)) {
+				continue;
+			}
+
 			try {
 
-				// instantiate class..
+				// instantiate class, this also runs static initializers that register commands etc.
 				final Class clazz   = Class.forName(className);
 				final int modifiers = clazz.getModifiers();
 
@@ -1193,6 +1243,15 @@ public class JarConfigurationProvider implements ConfigurationProvider {
 						// only scan and load modules that are licensed
 						if (name != null) {
 
+							final JarEntry indexEntry = jarFile.getJarEntry(ModuleIndex.INDEX_PATH);
+							if (indexEntry != null && Settings.UseModuleIndex.getValue()) {
+
+								try (final InputStream in = jarFile.getInputStream(indexEntry)) {
+
+									ret.setIndex(ModuleIndex.read(in));
+								}
+							}
+
 							if (licenseManager == null || licenseManager.isModuleLicensed(name)) {
 
 								for (final Enumeration<? extends JarEntry> entries = jarFile.entries(); entries.hasMoreElements();) {
@@ -1203,7 +1262,9 @@ public class JarConfigurationProvider implements ConfigurationProvider {
 									if (entryName.endsWith(".class")) {
 
 										// cat entry > /dev/null (necessary to get signers below)
-										IOUtils.copy(jarFile.getInputStream(entry), new ByteArrayOutputStream(65535));
+										try (final InputStream in = jarFile.getInputStream(entry)) {
+											IOUtils.copy(in, NullOutputStream.NULL_OUTPUT_STREAM);
+										}
 
 										// verify module
 										if (licenseManager == null || licenseManager.isValid(entry.getCodeSigners())) {
@@ -1215,8 +1276,11 @@ public class JarConfigurationProvider implements ConfigurationProvider {
 											classes.add(fqcn);
 
 											if (licenseManager != null) {
+
 												// store licensing information
-												licenseManager.addLicensedClass(fqcn);
+												synchronized (licenseManager) {
+													licenseManager.addLicensedClass(fqcn);
+												}
 											}
 										}
 									}
@@ -1234,7 +1298,9 @@ public class JarConfigurationProvider implements ConfigurationProvider {
 									if (entryName.endsWith(".class")) {
 
 										// cat entry > /dev/null (necessary to get signers below)
-										IOUtils.copy(jarFile.getInputStream(entry), new ByteArrayOutputStream(65535));
+										try (final InputStream in = jarFile.getInputStream(entry)) {
+											IOUtils.copy(in, NullOutputStream.NULL_OUTPUT_STREAM);
+										}
 
 										// verify module
 										if (licenseManager == null || licenseManager.isValid(entry.getCodeSigners())) {
@@ -1242,24 +1308,8 @@ public class JarConfigurationProvider implements ConfigurationProvider {
 											final String fileEntry = entry.getName().replaceAll("[/]+", ".");
 											final String fqcn      = fileEntry.substring(0, fileEntry.length() - 6);
 
-											try {
-
-												final Class clazz   = Class.forName(fqcn);
-												final int modifiers = clazz.getModifiers();
-
-												// register entity classes
-												if (StructrModule.class.isAssignableFrom(clazz) && !(Modifier.isAbstract(modifiers))) {
-
-													// we need to make sure that a module is initialized exactly once
-													final StructrModule structrModule = (StructrModule) clazz.newInstance();
-
-													structrModule.registerModuleFunctions(licenseManager);
-
-												}
-
-											} catch (Throwable t) {
-												logger.warn("Error trying to load class {}: {}",  fqcn, t.getMessage());
-											}
+											// classes are loaded later, see importResource
+											ret.getUnlicensedClasses().add(fqcn);
 										}
 									}
 								}
@@ -1271,8 +1321,20 @@ public class JarConfigurationProvider implements ConfigurationProvider {
 
 		} else if (resource.endsWith(classesDir)) {
 
-			// this is for testing only!
-			addClassesRecursively(new File(resource), classesDir, classes);
+			final File indexFile = new File(resource, ModuleIndex.INDEX_PATH);
+			if (indexFile.exists() && Settings.UseModuleIndex.getValue()) {
+
+				try (final InputStream in = new FileInputStream(indexFile)) {
+
+					ret.setIndex(ModuleIndex.read(in));
+					classes.addAll(ret.getIndex().keySet());
+				}
+
+			} else {
+
+				// this is for testing only!
+				addClassesRecursively(new File(resource), classesDir, classes);
+			}
 
 		} else if (resource.endsWith(testClassesDir)) {
 
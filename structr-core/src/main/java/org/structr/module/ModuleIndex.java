@@ -0,0 +1,261 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.module;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Writer;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+import org.structr.agent.Agent;
+import org.structr.api.service.Service;
+import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.graph.MaintenanceCommand;
+import org.structr.core.graph.NodeInterface;
+
+/**
+ * The class index of a Structr JAR, created at build time, so that only
+ * the classes that the {@link JarConfigurationProvider} registers need to
+ * be loaded at startup instead of every class in the JAR.
+ *
+ * Classes that register themselves in a static initializer are indexed as
+ * well, so that they are initialized at startup like before.
+ *
+ * The index is a text file at {@link #INDEX_PATH} with one line per class,
+ * consisting of the category and the fully-qualified class name. It is
+ * written by running this class with the output directory of the module
+ * as the only argument, see the "module-index" execution in the POM.
+ */
+public class ModuleIndex {
+
+	public static final String INDEX_PATH   = "META-INF/structr/module.index";
+
+	public static final String NODE         = "node";
+	public static final String RELATIONSHIP = "relationship";
+	public static final String SERVICE      = "service";
+	public static final String AGENT        = "agent";
+	public static final String MODULE       = "module";
+	public static final String INITIALIZER  = "initializer";
+
+	/**
+	 * Static methods and fields that classes use to register themselves in
+	 * their static initializer, e.g. maintenance commands, websocket and
+	 * console commands or property parsers. Classes referencing one of them
+	 * are indexed and loaded at startup, so the registration still happens.
+	 */
+	private static final String[] REGISTRATION_MEMBERS = {
+		"registerMaintenanceCommand",
+		"registerMaintenanceTask",
+		"registerInitializationCallback",
+		"registerCommand",
+		"addCommand",
+		"parserMap"
+	};
+
+	public static void main(final String[] args) throws IOException {
+
+		if (args.length != 1) {
+
+			System.out.println("Usage: ModuleIndex <classes directory>");
+			return;
+		}
+
+		final Path classes = Paths.get(args[0]);
+		if (Files.isDirectory(classes)) {
+
+			final Map<String, String> index = build(classes, Thread.currentThread().getContextClassLoader());
+			final Path indexFile            = classes.resolve(INDEX_PATH);
+
+			Files.createDirectories(indexFile.getParent());
+
+			try (final Writer writer = Files.newBufferedWriter(indexFile, StandardCharsets.UTF_8)) {
+
+				writer.write("# Structr module index, created at build time\n");
+
+				for (final Entry<String, String> entry : index.entrySet()) {
+
+					writer.write(entry.getValue());
+					writer.write(" ");
+					writer.write(entry.getKey());
+					writer.write("\n");
+				}
+			}
+
+			System.out.println("Structr module index with " + index.size() + " classes written to " + indexFile);
+		}
+	}
+
+	/**
+	 * Returns the category of all classes in the given directory that need
+	 * to be registered at startup, sorted by class name. Classes are loaded
+	 * but not initialized.
+	 */
+	public static Map<String, String> build(final Path classes, final ClassLoader classLoader) throws IOException {
+
+		final Map<String, String> index = new TreeMap<>();
+
+		try (final Stream<Path> files = Files.walk(classes)) {
+
+			files.filter(p -> p.toString().endsWith(".class")).forEach(file -> {
+
+				final String relative  = classes.relativize(file).toString();
+				final String className = relative.substring(0, relative.length() - 6).replace(File.separatorChar, '.');
+
+				try {
+
+					String category = getCategory(Class.forName(className, false, classLoader));
+
+					if (category == null && referencesRegistration(Files.readAllBytes(file))) {
+						category = INITIALIZER;
+					}
+
+					if (category != null) {
+
+						index.put(className, category);
+					}
+
+				} catch (Throwable t) {
+					System.out.println("Unable to load class " + className + ": " + t.getMessage());
+				}
+			});
+		}
+
+		return index;
+	}
+
+	/**
+	 * Reads an index and returns the category of each class.
+	 */
+	public static Map<String, String> read(final InputStream input) throws IOException {
+
+		final Map<String, String> index = new TreeMap<>();
+		final BufferedReader reader     = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+		String line                     = null;
+
+		while ((line = reader.readLine()) != null) {
+
+			final String trimmed = line.trim();
+			if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+
+				final int pos = trimmed.indexOf(' ');
+				if (pos > 0) {
+
+					index.put(trimmed.substring(pos + 1).trim(), trimmed.substring(0, pos));
+				}
+			}
+		}
+
+		return index;
+	}
+
+	/**
+	 * Returns the index category of the given class, or null if the class
+	 * is not registered by the {@link JarConfigurationProvider}. Must match
+	 * the checks in JarConfigurationProvider#importResource.
+	 */
+	public static String getCategory(final Class clazz) {
+
+		final boolean isAbstract = Modifier.isAbstract(clazz.getModifiers());
+
+		if (NodeInterface.class.isAssignableFrom(clazz)) {
+			return NODE;
+		}
+
+		if (AbstractRelationship.class.isAssignableFrom(clazz) && !isAbstract) {
+			return RELATIONSHIP;
+		}
+
+		if (Service.class.isAssignableFrom(clazz) && !isAbstract) {
+			return SERVICE;
+		}
+
+		if (Agent.class.isAssignableFrom(clazz) && !isAbstract) {
+			return AGENT;
+		}
+
+		if (StructrModule.class.isAssignableFrom(clazz) && !isAbstract) {
+			return MODULE;
+		}
+
+		// maintenance commands register themselves when they are initialized
+		if (MaintenanceCommand.class.isAssignableFrom(clazz) && !isAbstract) {
+			return INITIALIZER;
+		}
+
+		return null;
+	}
+
+	/**
+	 * Indicates whether the given class file references one of the
+	 * {@link #REGISTRATION_MEMBERS}, i.e. whether its constant pool contains
+	 * a UTF-8 entry with exactly that name.
+	 */
+	static boolean referencesRegistration(final byte[] classFile) {
+
+		for (final String member : REGISTRATION_MEMBERS) {
+
+			final byte[] name  = member.getBytes(StandardCharsets.UTF_8);
+			final byte[] entry = new byte[name.length + 3];
+
+			// CONSTANT_Utf8 tag, followed by the length as an unsigned short
+			entry[0] = 1;
+			entry[1] = (byte)((name.length >> 8) & 0xff);
+			entry[2] = (byte)(name.length & 0xff);
+
+			System.arraycopy(name, 0, entry, 3, name.length);
+
+			if (indexOf(classFile, entry) >= 0) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	// ----- private methods -----
+	private static int indexOf(final byte[] data, final byte[] pattern) {
+
+		final int last = data.length - pattern.length;
+
+		outer:
+		for (int i=0; i<=last; i++) {
+
+			for (int j=0; j<pattern.length; j++) {
+
+				if (data[i + j] != pattern[j]) {
+					continue outer;
+				}
+			}
+
+			return i;
+		}
+
+		return -1;
+	}
+}
@@ -19,6 +19,7 @@
 package org.structr.module;
 
 import java.util.LinkedHashSet;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -31,6 +32,8 @@ public class StructrModuleInfo {
 	private final Set<String> properties = new LinkedHashSet<>();
 	private final Set<String> resources  = new LinkedHashSet<>();
 	private final Set<String> libraries  = new LinkedHashSet<>();
+	private final Set<String> unlicensed = new LinkedHashSet<>();
+	private Map<String, String> index    = null;
 	private String modulePath            = null;
 
 	public StructrModuleInfo(String modulePath) {
@@ -56,4 +59,24 @@ public class StructrModuleInfo {
 	public Set<String> getLibraries() {
 		return libraries;
 	}
+
+	/**
+	 * Classes of a module that is not licensed, only their module
+	 * functions are registered.
+	 */
+	public Set<String> getUnlicensedClasses() {
+		return unlicensed;
+	}
+
+	/**
+	 * Returns the build-time index of this module, or null if the module
+	 * has no index and all of its classes need to be inspected.
+	 */
+	public Map<String, String> getIndex() {
+		return index;
+	}
+
+	public void setIndex(final Map<String, String> index) {
+		this.index = index;
+	}
 }
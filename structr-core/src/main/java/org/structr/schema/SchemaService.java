@@ -56,6 +56,7 @@ import org.structr.common.error.ErrorToken;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.error.InstantiationErrorToken;
 import org.structr.common.error.InvalidSchemaToken;
+import org.structr.common.event.StartupTimeline;
 import org.structr.core.GraphObject;
 import org.structr.core.Services;
 import org.structr.core.app.App;
@@ -233,7 +234,7 @@ public class SchemaService implements Service {
 							SchemaRelationshipNode.clearPropagatingRelationshipTypes();
 
 							// compile all classes at once and register
-							final Map<String, Class> newTypes = nodeExtender.compile(errorBuffer);
+							final Map<String, Class> newTypes = compile(nodeExtender, errorBuffer);
 
 							for (final Class newType : newTypes.values()) {
 
@@ -518,7 +519,7 @@ public class SchemaService implements Service {
 				// critical section, only one thread should update the index at a time
 				if (updating.compareAndSet(false, true)) {
 
-					try {
+					try (final StartupTimeline.Step step = StartupTimeline.begin(StartupTimeline.Phase.IndexUpdate, "updateIndexConfiguration")) {
 
 						final Set<Class> whitelist    = new LinkedHashSet<>(Arrays.asList(GraphObject.class, NodeInterface.class));
 						final DatabaseService graphDb = StructrApp.getInstance().getDatabaseService();
@@ -572,6 +573,8 @@ public class SchemaService implements Service {
 
 						graphDb.updateIndexConfiguration(schemaIndexConfig, removedClassesConfig, Services.isTesting());
 
+						step.success();
+
 					} finally {
 
 						updating.set(false);
@@ -585,6 +588,20 @@ public class SchemaService implements Service {
 		indexUpdater.start();
 	}
 
+	private static Map<String, Class> compile(final NodeExtender nodeExtender, final ErrorBuffer errorBuffer) throws ClassNotFoundException {
+
+		try (final StartupTimeline.Step step = StartupTimeline.begin(StartupTimeline.Phase.SchemaCompile, "compile")) {
+
+			final Map<String, Class> newTypes = nodeExtender.compile(errorBuffer);
+
+			if (!errorBuffer.hasError()) {
+				step.success();
+			}
+
+			return newTypes;
+		}
+	}
+
 	private static Class getType(final String name) {
 
 		try { return Class.forName(name); } catch (ClassNotFoundException ignore) {}
@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.test.common;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import org.structr.api.service.ServiceDependency;
+import org.structr.common.event.StartupTimeline;
+import org.structr.common.event.StartupTimeline.Entry;
+import org.structr.common.event.StartupTimeline.Phase;
+import org.structr.core.GraphObject;
+import org.structr.core.Services;
+import org.structr.core.graph.NodeService;
+import org.structr.core.property.StringProperty;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the startup timeline and the concurrent start of services.
+ */
+public class StartupTimelineTest extends StructrTest {
+
+	@Test
+	public void testDependencyLevels() {
+
+		final List<List<Class>> levels = Services.getServiceClassesByDependencyLevel(Arrays.asList(ServiceD.class, ServiceB.class, ServiceA.class, ServiceC.class, ServiceE.class));
+
+		assertEquals("Services should be grouped into three levels", 3, levels.size());
+		assertEquals(Arrays.asList(ServiceA.class, ServiceE.class), levels.get(0));
+		assertEquals(Arrays.asList(ServiceB.class, ServiceC.class), levels.get(1));
+		assertEquals(Arrays.asList(ServiceD.class), levels.get(2));
+
+		assertTrue(Services.getServiceClassesByDependencyLevel(Collections.emptyList()).isEmpty());
+	}
+
+	@Test
+	public void testConcurrentStart() throws InterruptedException {
+
+		final List<Class> serviceClasses = Arrays.asList(ServiceA.class, ServiceB.class, ServiceC.class);
+		final ExecutorService executor   = Executors.newFixedThreadPool(3);
+		final CountDownLatch latch       = new CountDownLatch(serviceClasses.size());
+		final Set<Class> started         = ConcurrentHashMap.newKeySet();
+		final Set<String> threads        = ConcurrentHashMap.newKeySet();
+
+		try {
+
+			Services.startServices(serviceClasses, executor, serviceClass -> {
+
+				threads.add(Thread.currentThread().getName());
+				latch.countDown();
+
+				try {
+
+					// only returns early if all services are started at the same time
+					if (latch.await(10, TimeUnit.SECONDS)) {
+						started.add(serviceClass);
+					}
+
+				} catch (InterruptedException iex) {}
+			});
+
+		} finally {
+
+			executor.shutdown();
+		}
+
+		assertEquals("All services of a level should be started concurrently", serviceClasses.size(), started.size());
+		assertEquals(serviceClasses.size(), threads.size());
+		assertFalse(threads.contains(Thread.currentThread().getName()));
+	}
+
+	@Test
+	public void testSequentialStart() {
+
+		final List<Class> serviceClasses = Arrays.asList(ServiceA.class, ServiceB.class, ServiceC.class);
+		final List<Class> started        = new LinkedList<>();
+		final String thread              = Thread.currentThread().getName();
+
+		Services.startServices(serviceClasses, null, serviceClass -> {
+
+			assertEquals(thread, Thread.currentThread().getName());
+			started.add(serviceClass);
+		});
+
+		assertEquals("Services should be started in order without an executor", serviceClasses, started);
+
+		// a single service is started directly
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+
+			Services.startServices(Arrays.asList(ServiceD.class), executor, serviceClass -> {
+
+				assertEquals(thread, Thread.currentThread().getName());
+				started.add(serviceClass);
+			});
+
+		} finally {
+
+			executor.shutdown();
+		}
+
+		assertEquals(ServiceD.class, started.get(3));
+	}
+
+	@Test
+	public void testFailedStartDoesNotAbortLevel() {
+
+		final List<Class> serviceClasses = Arrays.asList(ServiceA.class, ServiceB.class, ServiceC.class);
+		final ExecutorService executor   = Executors.newFixedThreadPool(3);
+		final Set<Class> started         = ConcurrentHashMap.newKeySet();
+
+		try {
+
+			Services.startServices(serviceClasses, executor, serviceClass -> {
+
+				if (ServiceB.class.equals(serviceClass)) {
+					throw new IllegalStateException("Service failed");
+				}
+
+				started.add(serviceClass);
+			});
+
+		} finally {
+
+			executor.shutdown();
+		}
+
+		assertEquals(2, started.size());
+		assertTrue(started.contains(ServiceA.class));
+		assertTrue(started.contains(ServiceC.class));
+	}
+
+	@Test
+	public void testTimelineEntries() throws InterruptedException {
+
+		final String name = "test-" + System.nanoTime();
+
+		try (final StartupTimeline.Step step = StartupTimeline.begin(Phase.SchemaCompile, name + "-success")) {
+
+			Thread.sleep(20);
+			step.success();
+		}
+
+		try (final StartupTimeline.Step step = StartupTimeline.begin(Phase.SchemaCompile, name + "-failure")) {
+
+			// no success() call, e.g. because of an exception
+		}
+
+		final StartupTimeline.Step step = StartupTimeline.begin(Phase.IndexUpdate, name + "-closed-twice");
+		step.close();
+		step.close();
+
+		final List<Entry> entries = getEntries(name);
+
+		assertEquals("Each step should be recorded exactly once", 3, entries.size());
+
+		final Entry success = entries.get(0);
+		assertEquals(name + "-success", success.getName());
+		assertEquals(Phase.SchemaCompile, success.getPhase());
+		assertEquals(Thread.currentThread().getName(), success.getThread());
+		assertTrue(success.isSuccess());
+		assertTrue(success.getDuration() >= 20);
+		assertTrue(success.getOffset() > 0);
+
+		final Entry failure = entries.get(1);
+		assertEquals(name + "-failure", failure.getName());
+		assertFalse(failure.isSuccess());
+
+		final Entry closedTwice = entries.get(2);
+		assertEquals(Phase.IndexUpdate, closedTwice.getPhase());
+		assertFalse(closedTwice.isSuccess());
+
+		assertTrue("Entries should be ordered by start time", success.getStartTimestamp() <= failure.getStartTimestamp());
+
+		final GraphObject obj = success.toGraphObject();
+		assertEquals("SchemaCompile",  obj.getProperty(new StringProperty("phase")));
+		assertEquals(name + "-success", obj.getProperty(new StringProperty("name")));
+	}
+
+	@Test
+	public void testServiceStartIsRecorded() throws Exception {
+
+		// services of the test instance were started in setup
+		final Entry nodeService = StartupTimeline.getEntries().stream().filter(e -> Phase.Service.equals(e.getPhase()) && NodeService.class.getSimpleName().equals(e.getName())).findFirst().orElse(null);
+
+		assertNotNull("Service start should be recorded in the timeline", nodeService);
+		assertTrue(nodeService.isSuccess());
+
+		final Entry schema = StartupTimeline.getEntries().stream().filter(e -> Phase.SchemaCompile.equals(e.getPhase()) && e.isSuccess()).findFirst().orElse(null);
+
+		assertNotNull("Schema compilation should be recorded in the timeline", schema);
+
+		// a service that is not configured fails to start
+		assertFalse(Services.getInstance().startService(ServiceE.class, "default", true).isSuccess());
+
+		final List<Entry> failed = StartupTimeline.getEntries().stream().filter(e -> Phase.Service.equals(e.getPhase()) && ServiceE.class.getSimpleName().equals(e.getName())).collect(Collectors.toList());
+
+		assertEquals(1, failed.size());
+		assertFalse("Failed service start should be recorded as unsuccessful", failed.get(0).isSuccess());
+	}
+
+	// ----- private methods -----
+	private List<Entry> getEntries(final String prefix) {
+		return StartupTimeline.getEntries().stream().filter(e -> e.getName().startsWith(prefix)).collect(Collectors.toList());
+	}
+
+	// ----- nested classes -----
+	private static class ServiceA {}
+
+	@ServiceDependency(ServiceA.class)
+	private static class ServiceB {}
+
+	@ServiceDependency(ServiceA.class)
+	private static class ServiceC {}
+
+	@ServiceDependency(ServiceB.class)
+	private static class ServiceD {}
+
+	private static class ServiceE {}
+}
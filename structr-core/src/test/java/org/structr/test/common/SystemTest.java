@@ -986,6 +986,54 @@ public class SystemTest extends StructrTest {
 		}
 	}
 
+	@Test
+	public void testUuidGeneratorPerformance() {
+
+		final int num = 10000;
+
+		try {
+
+			for (final String mode : new String[] { "random", "timeordered" }) {
+
+				Settings.UuidGeneratorMode.setValue(mode);
+
+				try (final Tx tx = app.tx()) {
+
+					final long t0             = System.currentTimeMillis();
+					final List<TestOne> nodes = createTestNodes(TestOne.class, num);
+					final long t1             = System.currentTimeMillis();
+					String previous           = null;
+
+					System.out.println("Created " + num + " nodes with " + mode + " UUIDs in " + (t1-t0) + " ms");
+
+					for (final TestOne node : nodes) {
+
+						final String uuid = node.getUuid();
+
+						assertTrue("Invalid UUID " + uuid, uuid.matches("[a-f0-9]{32}"));
+
+						if ("timeordered".equals(mode) && previous != null) {
+							assertTrue("Time-ordered UUIDs must be increasing", previous.compareTo(uuid) < 0);
+						}
+
+						previous = uuid;
+					}
+
+					tx.success();
+				}
+			}
+
+		} catch (FrameworkException fex) {
+
+			fex.printStackTrace();
+			fail("Unexpected exception");
+
+		} finally {
+
+			Settings.UuidGeneratorMode.setValue("random");
+		}
+	}
+
 	@Test
 	public void testConcurrentIdenticalRelationshipCreation() {
 
@@ -28,13 +28,17 @@ import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import org.testng.annotations.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.DatabaseService;
+import org.structr.api.Predicate;
 import org.structr.api.Transaction;
 import org.structr.api.graph.Node;
 import org.structr.api.util.Iterables;
+import org.structr.api.config.Settings;
+import org.structr.common.SecurityContext;
 import org.structr.test.common.StructrTest;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.entity.Group;
@@ -42,8 +46,10 @@ import org.structr.test.core.entity.TestEleven;
 import org.structr.test.core.entity.TestOne;
 import org.structr.test.core.entity.TestTwo;
 import org.structr.core.graph.BulkCreateLabelsCommand;
+import org.structr.core.graph.BulkGraphOperation;
 import org.structr.core.graph.BulkRebuildIndexCommand;
 import org.structr.core.graph.BulkSetNodePropertiesCommand;
+import org.structr.core.graph.PartitionedBulkOperation;
 import org.structr.core.graph.SyncCommand;
 import org.structr.core.graph.Tx;
 import static org.testng.AssertJUnit.assertEquals;
@@ -426,4 +432,77 @@ public class MaintenanceTest extends StructrTest {
 			fail("Unexpected exception.");
 		}
 	}
+
+	@Test
+	public void testPartitionedBulkOperationResumesFromCheckpoint() {
+
+		final String name          = "PartitionedBulkOperationTest";
+		final Path checkpointFile  = Paths.get(Settings.getBasePath()).resolve("maintenance").resolve(name + ".checkpoint");
+		final Set<String> expected = new HashSet<>();
+		final Set<String> first    = ConcurrentHashMap.newKeySet();
+		final Set<String> second   = ConcurrentHashMap.newKeySet();
+
+		try {
+
+			try (final Tx tx = app.tx()) {
+
+				for (final TestOne test : createTestNodes(TestOne.class, 600)) {
+					expected.add(test.getUuid());
+				}
+
+				tx.success();
+			}
+
+			// first run stops after 100 objects
+			new PartitionedBulkOperation<>(securityContext, name, a -> a.nodeQuery(TestOne.class), new BulkGraphOperation<TestOne>() {
+
+				@Override
+				public boolean handleGraphObject(final SecurityContext securityContext, final TestOne obj) {
+
+					first.add(obj.getUuid());
+					return true;
+				}
+
+				@Override
+				public Predicate<Long> getCondition() {
+					return count -> count < 100;
+				}
+
+			}).threads(2).commitCount(2).run();
+
+			assertTrue("Interrupted operation should leave a checkpoint", Files.exists(checkpointFile));
+			assertTrue("Interrupted operation should not process all objects", first.size() < expected.size());
+
+			// second run continues from the checkpoint
+			final long count = new PartitionedBulkOperation<>(securityContext, name, a -> a.nodeQuery(TestOne.class), new BulkGraphOperation<TestOne>() {
+
+				@Override
+				public boolean handleGraphObject(final SecurityContext securityContext, final TestOne obj) {
+
+					second.add(obj.getUuid());
+					return true;
+				}
+
+			}).threads(2).commitCount(2).run();
+
+			final Set<String> processed = new HashSet<>(first);
+			processed.addAll(second);
+
+			assertEquals("All objects should be processed after resuming", expected, processed);
+			assertEquals("Second run should report the objects it processed", second.size(), count);
+			assertTrue("Second run should skip the batches committed in the first run", second.size() < expected.size());
+
+			// only the last batches of each worker may be processed twice
+			final Set<String> repeated = new HashSet<>(first);
+			repeated.retainAll(second);
+
+			assertTrue("Too many objects processed twice: " + repeated.size(), repeated.size() <= 8);
+			assertTrue("Checkpoint should be removed when the operation is complete", !Files.exists(checkpointFile));
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+	}
 }
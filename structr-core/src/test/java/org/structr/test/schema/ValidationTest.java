@@ -871,6 +871,69 @@ public class ValidationTest extends StructrTest {
 		}
 	}
 
+	@Test
+	public void testStringPropertyUniquenessInLargeTransaction() {
+
+		this.cleanDatabaseAndSchema();
+
+		try (final Tx tx = app.tx()) {
+
+			app.create(SchemaNode.class,
+				new NodeAttribute<>(AbstractNode.name, "Test"),
+				new NodeAttribute<>(new StringProperty("_testUnique"), "String!")
+			);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		final Class testType = StructrApp.getConfiguration().getNodeEntityClass("Test");
+		final PropertyKey key = StructrApp.key(testType, "testUnique");
+
+		assertNotNull(key);
+
+		try (final Tx tx = app.tx()) {
+
+			for (int i=0; i<1200; i++) {
+				app.create(testType, new NodeAttribute<>(key, "value" + i));
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			for (int i=2000; i<2100; i++) {
+				app.create(testType, new NodeAttribute<>(key, "value" + i));
+			}
+
+			// duplicate of an existing value
+			app.create(testType, new NodeAttribute<>(key, "value1100"));
+
+			tx.success();
+
+			fail("Uniqueness constraint violated!");
+
+		} catch (FrameworkException fex) {
+
+			final List<ErrorToken> tokens = fex.getErrorBuffer().getErrorTokens();
+			final ErrorToken token = tokens.get(0);
+
+			assertEquals("Invalid uniqueness validation result", 1,       tokens.size());
+			assertEquals("Invalid uniqueness validation result", 422, fex.getStatus());
+			assertEquals("Invalid uniqueness validation result", "testUnique", token.getProperty());
+			assertEquals("Invalid uniqueness validation result", "Test", token.getType());
+			assertEquals("Invalid uniqueness validation result", "already_taken", token.getToken());
+		}
+	}
+
 	@Test
 	public void testInheritedStringPropertyUniqueness() {
 
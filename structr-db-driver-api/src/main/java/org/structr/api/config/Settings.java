@@ -67,6 +67,7 @@ public class Settings {
 	public static final Setting<String> InstanceName             = new StringSetting(generalGroup,             "Application", "application.instance.name",             "", "The name of the Structr instance (displayed in the top right corner of structr-ui)");
 	public static final Setting<String> InstanceStage            = new StringSetting(generalGroup,             "Application", "application.instance.stage",            "", "The stage of the Structr instance (displayed in the top right corner of structr-ui)");
 	public static final Setting<String> MenuEntries              = new StringSetting(generalGroup,             "Application", "application.menu.main",                 "Dashboard,Pages,Files,Security,Schema,Data", "Comma-separated list of main menu entries in structr-ui. Everything not in this list will be moved into a sub-menu.");
+	public static final Setting<Boolean> UseModuleIndex          = new BooleanSetting(generalGroup,            "Application", "application.module.index",              true, "Use the class index that is created at build time to find the entity types, services and modules in each Structr JAR. If disabled or if a JAR has no index, all classes of the JAR are loaded at startup.");
 	public static final Setting<Integer> CypherConsoleMaxResults = new IntegerSetting(generalGroup,            "Application", "application.console.cypher.maxresults", 10, "The maximum number of results returned by a cypher query in the admin console. If a query yields more results, an error message is shown.");
 	public static final Setting<Boolean> DisableSendSystemInfo   = new BooleanSetting(generalGroup,            "Application", "application.systeminfo.disabled",       false, "Disables transmission of telemetry information. This information is used to improve the software and to better adapt to different hardware configurations.");
 	public static final Setting<String> BasePath                 = new StringSetting(generalGroup,             "Paths",       "base.path",                             ".", "Path of the Structr working directory. All files will be located relative to this directory.");
@@ -91,6 +92,7 @@ public class Settings {
 	public static final StringMultiChoiceSetting Services        = new StringMultiChoiceSetting(generalGroup,  "Services",    "configured.services",                   "NodeService SchemaService AgentService CronService HttpService", "Services that are listed in this configuration key will be started when Structr starts.");
 	public static final Setting<Integer> ServicesStartTimeout    = new IntegerSetting(generalGroup,            "Services",    "services.start.timeout",                30);
 	public static final Setting<Integer> ServicesStartRetries    = new IntegerSetting(generalGroup,            "Services",    "services.start.retries",                10);
+	public static final Setting<Integer> ServicesStartThreads    = new IntegerSetting(generalGroup,            "Services",    "services.start.threads",                4, "Maximum number of services that are started concurrently. Services are only started concurrently if their dependencies allow it, set this to 1 to start all services sequentially.");
 
 	public static final Setting<Integer> NodeServiceStartTimeout = new IntegerSetting(generalGroup,  "Services",    "nodeservice.start.timeout",     30);
 	public static final Setting<Integer> NodeServiceStartRetries = new IntegerSetting(generalGroup,  "Services",    "nodeservice.start.retries",     3);
@@ -121,11 +123,17 @@ public class Settings {
 	public static final Setting<Boolean> GzipCompression         = new BooleanSetting(serverGroup, "HTTP Settings", "httpservice.gzip.enabled",             true,  "Use GZIP compression for HTTP transfers");
 	public static final Setting<Boolean> Async                   = new BooleanSetting(serverGroup, "HTTP Settings", "httpservice.async",                    true,  "Whether the HttpServices uses asynchronous request handling. Disable this option if you encounter problems with HTTP responses.");
 	public static final Setting<Boolean> HttpBasicAuthEnabled    = new BooleanSetting(serverGroup, "HTTP Settings", "httpservice.httpbasicauth.enabled",    false, "Enables HTTP Basic Auth support for pages and files");
+	public static final Setting<Integer> HttpMinThreads          = new IntegerSetting(serverGroup, "HTTP Settings", "httpservice.threads.min",              8,     "Minimum number of threads in the request thread pool of the HTTP server");
+	public static final Setting<Integer> HttpMaxThreads          = new IntegerSetting(serverGroup, "HTTP Settings", "httpservice.threads.max",              200,   "Maximum number of threads in the request thread pool of the HTTP server. This limits the number of requests that can be processed concurrently.");
+	public static final Setting<Integer> HttpThreadIdleTimeout   = new IntegerSetting(serverGroup, "HTTP Settings", "httpservice.threads.idletimeout",      60000, "Time in milliseconds after which idle request threads are stopped");
+	public static final Setting<Integer> AsyncRenderThreads      = new IntegerSetting(serverGroup, "HTTP Settings", "httpservice.async.render.threads",     0,     "Number of threads used for asynchronous page rendering. The default value of 0 creates threads on demand without limit.");
+	public static final Setting<Boolean> HttpPrecompressed       = new BooleanSetting(serverGroup, "HTTP Settings", "httpservice.precompressed.enabled",    false, "Deliver precompressed variants of static files (e.g. <code>app.js.br</code> or <code>app.js.gz</code> next to <code>app.js</code>) to clients that accept the respective encoding");
 	public static final Setting<Boolean> JsonIndentation         = new BooleanSetting(serverGroup, "HTTP Settings", "json.indentation",                     true,  "Whether JSON output should be indented (beautified) or compacted");
 	public static final Setting<Boolean> HtmlIndentation         = new BooleanSetting(serverGroup, "HTTP Settings", "html.indentation",                     true,  "Whether the page source should be indented (beautified) or compacted. Note: Does not work for template/content nodes which contain raw HTML");
 	public static final Setting<Boolean> WsIndentation           = new BooleanSetting(serverGroup, "HTTP Settings", "ws.indentation",                       false, "Prettyprints websocket responses if set to true.");
 	public static final Setting<Integer> SessionTimeout          = new IntegerSetting(serverGroup, "HTTP Settings", "application.session.timeout",          1800,  "The session timeout for HTTP sessions. Unit is seconds. Default is 1800.");
 	public static final Setting<Integer> MaxSessionsPerUser      = new IntegerSetting(serverGroup, "HTTP Settings", "application.session.max.number",       -1,    "The maximum number of active sessions per user. Default is -1 (unlimited).");
+	public static final Setting<Integer> SessionSavePeriod       = new IntegerSetting(serverGroup, "HTTP Settings", "application.session.saveperiod",        60,    "Minimum time in seconds between two database updates of the last access time of an otherwise unchanged session. Capped at half the session timeout.");
 	public static final Setting<Boolean> ClearSessionsOnStartup  = new BooleanSetting(serverGroup, "HTTP Settings", "application.session.clear.onstartup",  false, "Clear all sessions on startup if set to true.");
 	public static final Setting<Boolean> ClearSessionsOnShutdown = new BooleanSetting(serverGroup, "HTTP Settings", "application.session.clear.onshutdown", false, "Clear all sessions on shutdown if set to true.");
 
@@ -161,7 +169,10 @@ public class Settings {
 	public static final Setting<String> TenantIdentifier             = new StringSetting(databaseGroup,  "hidden",                  "database.tenant.identifier",       "");
 	public static final Setting<Integer> RelationshipCacheSize       = new IntegerSetting(databaseGroup, "Caching",                 "database.cache.relationship.size", 500000);
 	public static final Setting<Integer> NodeCacheSize               = new IntegerSetting(databaseGroup, "Caching",                 "database.cache.node.size",         100000, "Size of the database driver node cache");
+	public static final Setting<Integer> RelationshipOffHeapSize     = new IntegerSetting(databaseGroup, "Caching",                 "database.cache.relationship.offheap.size", 0, "Size (MB) of the off-heap second-level cache that keeps the properties of relationships evicted from the relationship cache. 0 disables the off-heap cache.");
+	public static final Setting<Integer> NodeOffHeapSize             = new IntegerSetting(databaseGroup, "Caching",                 "database.cache.node.offheap.size",         0, "Size (MB) of the off-heap second-level cache that keeps the properties of nodes evicted from the node cache. 0 disables the off-heap cache.");
 	public static final Setting<Integer> UuidCacheSize               = new IntegerSetting(databaseGroup, "hidden",                  "database.cache.uuid.size",         1000000, "Size of the database driver relationship cache");
+	public static final Setting<String> UuidGeneratorMode            = new ChoiceSetting(databaseGroup,  "UUIDs",                   "database.uuid.mode",               "random", Settings.getStringsAsSet("random", "timeordered"), "Format of the UUIDs of new objects. <code>random</code> creates random (version 4) UUIDs, <code>timeordered</code> creates UUIDs that start with a timestamp (version 7), so that new objects are appended to the end of the UUID index.");
 	public static final Setting<Boolean> ForceResultStreaming        = new BooleanSetting(databaseGroup, "Result Streaming",        "database.result.lazy",             false, "Forces Structr to use lazy evaluation for relationship queries");
 	public static final Setting<Boolean> CypherDebugLogging          = new BooleanSetting(databaseGroup, "Debugging",               "log.cypher.debug",                 false, "Turns on debug logging for the generated Cypher queries");
 	public static final Setting<Boolean> CypherDebugLoggingPing      = new BooleanSetting(databaseGroup, "Debugging",               "log.cypher.debug.ping",            false, "Turns on debug logging for the generated Cypher queries of the websocket PING command. Can only be used in conjunction with log.cypher.debug");
@@ -185,7 +196,16 @@ public class Settings {
 	public static final Setting<Integer> IndexingLimit               = new IntegerSetting(applicationGroup, "Filesystem",   "application.filesystem.indexing.limit",           50000, "Maximum number of words to be indexed per file.");
 	public static final Setting<Integer> IndexingMinLength           = new IntegerSetting(applicationGroup, "Filesystem",   "application.filesystem.indexing.minlength",       3,     "Minimum length of words to be indexed");
 	public static final Setting<Integer> IndexingMaxLength           = new IntegerSetting(applicationGroup, "Filesystem",   "application.filesystem.indexing.maxlength",       30,    "Maximum length of words to be indexed");
+	public static final Setting<String> IndexingMode                 = new ChoiceSetting(applicationGroup,  "Filesystem",   "application.filesystem.indexing.mode",            "graph", Settings.getStringsAsSet("graph", "segments", "both"), "Defines where fulltext indexing results are stored.<dl><dt>graph</dt><dd>stores the most frequent words as IndexedWord nodes</dd><dt>segments</dt><dd>stores all words in an on-disk inverted index that answers fulltext queries on <code>extractedContent</code> with ranked results</dd><dt>both</dt><dd>does both</dd></dl>");
+	public static final Setting<String> IndexingSegmentsPath         = new StringSetting(applicationGroup,  "Filesystem",   "application.filesystem.indexing.segments.path",   "fulltext" + File.separator, "Path of the on-disk fulltext index. IMPORTANT: Path is relative to base.path");
+	public static final Setting<Integer> IndexingSegmentsFlushSize   = new IntegerSetting(applicationGroup, "Filesystem",   "application.filesystem.indexing.segments.flushsize",   1000, "Number of documents buffered in memory before a new fulltext index segment is written");
+	public static final Setting<Integer> IndexingSegmentsMergeFactor = new IntegerSetting(applicationGroup, "Filesystem",   "application.filesystem.indexing.segments.mergefactor", 10,   "Number of similarly-sized fulltext index segments that are merged into one in the background");
+	public static final Setting<Boolean> ContentDeduplication        = new BooleanSetting(applicationGroup, "Filesystem",   "application.filesystem.deduplication.enabled",    false, "If enabled, files with identical content share a single copy on disk. Requires a file system with hard link support.");
+	public static final Setting<Integer> ContentDeduplicationMinSize = new IntegerSetting(applicationGroup, "Filesystem",   "application.filesystem.deduplication.minsize",    4096,  "Minimum size (bytes) of a file to be deduplicated");
+	public static final Setting<Integer> ThumbnailWorkers            = new IntegerSetting(applicationGroup, "Filesystem",   "application.filesystem.thumbnails.workers",       0,     "Number of threads that create thumbnails. 0 means one thread per processor.");
+	public static final Setting<Integer> ThumbnailCacheSize          = new IntegerSetting(applicationGroup, "Filesystem",   "application.filesystem.thumbnails.cachesize",     32,    "Maximum size (MB) of the in-memory cache of thumbnails, which is shared by images with identical content");
 	public static final Setting<Boolean> FollowSymlinks              = new BooleanSetting(applicationGroup, "Filesystem",   "application.filesystem.mount.followsymlinks",     true);
+	public static final Setting<Integer> FilePathIndexSize           = new IntegerSetting(applicationGroup, "Filesystem",   "application.filesystem.pathindex.size",           100000, "Maximum number of files and folders in the in-memory path index that is used to resolve absolute paths");
 	public static final Setting<String> DefaultUploadFolder          = new StringSetting(applicationGroup,  "Filesystem",   "application.uploads.folder",                      "", "The default path for files uploaded via the UploadServlet (available from Structr 2.1+)");
 
 	public static final Setting<Boolean> FeedItemIndexingEnabled            = new BooleanSetting(applicationGroup, "Indexing",   "application.feeditem.indexing.enabled",            true,  "Whether indexing is enabled for type FeedItem");
@@ -206,6 +226,12 @@ public class Settings {
 	public static final Setting<Integer> RemoteDocumentIndexingMinLength    = new IntegerSetting(applicationGroup, "Indexing",   "application.remotedocument.indexing.minlength",    3,     "Minimum length of words to be indexed for RemoteDocument");
 	public static final Setting<Integer> RemoteDocumentIndexingMaxLength    = new IntegerSetting(applicationGroup, "Indexing",   "application.remotedocument.indexing.maxlength",    30,    "Maximum length of words to be indexed for RemoteDocument");
 
+	public static final Setting<Integer> FlowForkThreads          = new IntegerSetting(applicationGroup, "Flows",        "application.flows.fork.threads",              Runtime.getRuntime().availableProcessors(), "Maximum number of forked flow branches that are executed concurrently");
+	public static final Setting<Integer> FlowForEachThreads       = new IntegerSetting(applicationGroup, "Flows",        "application.flows.foreach.threads",           Runtime.getRuntime().availableProcessors(), "Maximum number of iterations of parallel ForEach flow elements that are executed concurrently. Each iteration runs in its own read-only transaction and only sees committed data.");
+
+	public static final Setting<Integer> DataFeedUpdateThreads    = new IntegerSetting(applicationGroup, "Data Feeds",   "application.feeds.update.threads",            8, "Maximum number of data feeds that are updated concurrently. Each feed is updated in its own transaction.");
+	public static final Setting<Integer> DataFeedUpdatesPerHost   = new IntegerSetting(applicationGroup, "Data Feeds",   "application.feeds.update.perhost",            2, "Maximum number of concurrent requests to a single remote host when data feeds are updated.");
+
 	public static final Setting<String> HttpProxyUrl              = new StringSetting(applicationGroup,  "Proxy",        "application.proxy.http.url",                  "");
 	public static final Setting<String> HttpProxyUser             = new StringSetting(applicationGroup,  "Proxy",        "application.proxy.http.username",             "");
 	public static final Setting<String> HttpProxyPassword         = new StringSetting(applicationGroup,  "Proxy",        "application.proxy.http.password",             "");
@@ -216,6 +242,7 @@ public class Settings {
 
 	public static final Setting<Boolean> SchemaAutoMigration      = new BooleanSetting(applicationGroup, "Schema",       "application.schema.automigration",            false, "Enable automatic migration of schema information between versions (if possible -- may delete schema nodes)");
 	public static final Setting<Boolean> AllowUnknownPropertyKeys = new BooleanSetting(applicationGroup, "Schema",       "application.schema.allowunknownkeys",         false, "Enables get() and set() built-in functions to use property keys that are not defined in the schema.");
+	public static final Setting<Integer> UniqueValidationBatchSize = new IntegerSetting(applicationGroup, "Schema",      "application.schema.uniquevalidation.batchsize", 500,  "Maximum number of values that are checked in a single query when unique properties of a transaction with more than one modified object are validated. Set to 0 to check each value separately.");
 	public static final Setting<Boolean> logMissingLocalizations  = new BooleanSetting(applicationGroup, "Localization", "application.localization.logmissing",         false, "Turns on logging for requested but non-existing localizations.");
 	public static final Setting<String> SchemaDeploymentFormat    = new ChoiceSetting(applicationGroup,  "Deployment",   "deployment.schema.format",                    "tree", Settings.getStringsAsSet("file", "tree"), "Configures how the schema is exported in a deployment export. <code>file</code> exports the schema as a single file. <code>tree</code> exports the schema as a tree where methods/function properties are written to single files in a tree structure.");
 	public static final Setting<String> GlobalSecret              = new StringSetting(applicationGroup,  "Encryption",   "application.encryption.secret",               null,   "Sets the global secret for encrypted string properties. Using this configuration setting is one of several possible ways to set the secret, and it is not recommended for production environments because the key can easily be read by an attacker with scripting access.");
@@ -289,6 +316,10 @@ public class Settings {
 	public static final Setting<String> PdfResourceProvider      = new StringSetting(servletsGroup,  "hidden", "pdfservlet.resourceprovider",      "org.structr.web.common.UiResourceProvider");
 	public static final Setting<String> PdfResolveProperties     = new StringSetting(servletsGroup,  "PdfServlet", "pdfservlet.resolveproperties",     "AbstractNode.name", "Specifies the list of properties that are be used to resolve entities from URL paths.");
 	public static final Setting<String> PdfCustomResponseHeaders = new TextSetting(servletsGroup,    "PdfServlet", "pdfservlet.customresponseheaders", "Strict-Transport-Security:max-age=60,X-Content-Type-Options:nosniff,X-Frame-Options:SAMEORIGIN,X-XSS-Protection:1;mode=block", "List of custom response headers that will be added to every HTTP response");
+	public static final Setting<Integer> PdfRendererPoolSize     = new IntegerSetting(servletsGroup, "PdfServlet", "pdfservlet.renderer.poolsize",     2, "Maximum number of concurrent wkhtmltopdf processes for the PDF servlet and the pdf() function. Further requests wait for a free renderer.");
+	public static final Setting<Integer> PdfRendererTimeout      = new IntegerSetting(servletsGroup, "PdfServlet", "pdfservlet.renderer.timeout",      120, "Maximum time in seconds a PDF request waits for a free renderer.");
+	public static final Setting<Integer> PdfCacheSize            = new IntegerSetting(servletsGroup, "PdfServlet", "pdfservlet.cache.size",            100, "Maximum number of rendered PDF documents that are kept in memory. Set to 0 to disable the cache.");
+	public static final Setting<Integer> PdfCacheTimeout         = new IntegerSetting(servletsGroup, "PdfServlet", "pdfservlet.cache.timeout",         600, "Time in seconds a rendered PDF document is reused. Documents created by the pdf() function are discarded earlier when data is modified.");
 
 	public static final Setting<String> WebsocketServletPath       = new StringSetting(servletsGroup,  "hidden", "websocketservlet.path",              "/structr/ws/*", "URL pattern for WebSockets. Do not change unless you know what you are doing.");
 	public static final Setting<String> WebsocketServletClass      = new StringSetting(servletsGroup,  "hidden", "websocketservlet.class",             "org.structr.websocket.servlet.WebSocketServlet", "FQCN of servlet class to use for WebSockets. Do not change unless you know what you are doing.");
@@ -375,6 +406,9 @@ public class Settings {
 	public static final Setting<String> EventSourceResourceProvider  = new StringSetting(servletsGroup,  "hidden", "eventsourceservlet.resourceprovider",      "org.structr.web.common.UiResourceProvider");
 	public static final Setting<String> EventSourceDefaultView       = new StringSetting(servletsGroup,  "hidden", "eventsourceservlet.defaultview",           "public");
 	public static final Setting<Integer> EventSourceOutputDepth      = new IntegerSetting(servletsGroup, "hidden", "eventsourceservlet.outputdepth",	   1);
+	public static final Setting<Integer> EventSourceSendThreads      = new IntegerSetting(servletsGroup, "EventSourceServlet", "eventsourceservlet.sendthreads",      4, "Number of threads that send queued events to connected clients.");
+	public static final Setting<Integer> EventSourceQueueSize        = new IntegerSetting(servletsGroup, "EventSourceServlet", "eventsourceservlet.queuesize",        1000, "Maximum number of pending events per connection. Clients that fall behind are disconnected and catch up from the replay buffer when they reconnect.");
+	public static final Setting<Integer> EventSourceReplayBufferSize = new IntegerSetting(servletsGroup, "EventSourceServlet", "eventsourceservlet.replaybuffersize", 1000, "Number of recent events that are kept for clients that reconnect with a Last-Event-ID header. Set to 0 to disable replay.");
 
 	public static final Setting<String> HealthCheckServletPath       = new StringSetting(servletsGroup,  "hidden", "healthcheckservlet.path",                  "/structr/health");
 	public static final Setting<String> HealthCheckServletClass      = new StringSetting(servletsGroup,  "hidden", "healthcheckservlet.class",                 "org.structr.rest.servlet.HealthCheckServlet");
@@ -541,6 +575,11 @@ public class Settings {
 	public static final Setting<String> LDAPPropertyMapping = new StringSetting(ldapGroup,  "General", "ldap.propertymapping", "{ sn: name, email: eMail }", "Mapping from LDAP properties to Structr properties");
 	public static final Setting<String> LDAPGroupNames      = new StringSetting(ldapGroup,  "General", "ldap.groupnames", "{ group: member, groupOfNames: member, groupOfUniqueNames: uniqueMember }", "LDAP objectclass tuples for group and member identification.");
 	public static final Setting<Integer> LDAPUpdateInterval = new IntegerSetting(ldapGroup, "General", "ldap.updateinterval", 600, "Update interval for group synchronization in seconds.");
+	public static final Setting<Integer> LDAPPoolSize       = new IntegerSetting(ldapGroup, "General", "ldap.poolsize", 4, "Maximum number of pooled connections to the LDAP server. The pool is shared by group synchronization and authentication.");
+	public static final Setting<Integer> LDAPPageSize       = new IntegerSetting(ldapGroup, "General", "ldap.pagesize", 1000, "Page size for LDAP search results, set to 0 to disable paged results.");
+	public static final Setting<Integer> LDAPBatchSize      = new IntegerSetting(ldapGroup, "General", "ldap.batchsize", 100, "Maximum number of group members that are resolved with a single LDAP search.");
+	public static final Setting<Boolean> LDAPDeltaSync      = new BooleanSetting(ldapGroup, "General", "ldap.deltasync", false, "Only update users and group memberships that have changed since the last synchronization, based on the delta attribute.");
+	public static final Setting<String> LDAPDeltaAttribute  = new StringSetting(ldapGroup,  "General", "ldap.deltaattribute", "modifyTimestamp", "Operational attribute that is used to detect changes for delta synchronization, e.g. modifyTimestamp or uSNChanged.");
 
 	// miscellaneous settings
 	public static final Setting<String> PaymentPaypalMode      = new StringSetting(miscGroup,  "Payment Options", "paypal.mode",         "");
@@ -581,7 +620,7 @@ public class Settings {
 		return setting;
 	}
 
-	public static Setting<String> getOrCreateStringSetting(final String... keys) {
+	public static synchronized Setting<String> getOrCreateStringSetting(final String... keys) {
 
 		final String key        = StringUtils.join(toLowerCase(keys), ".");
 		Setting<String> setting = settings.get(key);
@@ -602,7 +641,7 @@ public class Settings {
 		return setting;
 	}
 
-	public static Setting<Integer> getOrCreateIntegerSetting(final String... keys) {
+	public static synchronized Setting<Integer> getOrCreateIntegerSetting(final String... keys) {
 
 		final String key        = StringUtils.join(toLowerCase(keys), ".");
 		Setting<Integer> setting = settings.get(key);
@@ -623,7 +662,7 @@ public class Settings {
 		return setting;
 	}
 
-	public static Setting<Boolean> getOrCreateBooleanSetting(final String... keys) {
+	public static synchronized Setting<Boolean> getOrCreateBooleanSetting(final String... keys) {
 
 		final String key         = StringUtils.join(toLowerCase(keys), ".");
 		Setting<Boolean> setting = settings.get(key);
@@ -804,7 +843,7 @@ public class Settings {
 		groups.put(group.getKey(), group);
 	}
 
-	static void registerSetting(final Setting setting) {
+	static synchronized void registerSetting(final Setting setting) {
 
 		final Setting oldSetting = settings.get(setting.getKey());
 
@@ -816,7 +855,7 @@ public class Settings {
 		settings.put(setting.getKey(), setting);
 	}
 
-	static void unregisterSetting(final Setting setting) {
+	static synchronized void unregisterSetting(final Setting setting) {
 		settings.remove(setting.getKey());
 	}
 
@@ -26,6 +26,7 @@ import java.util.stream.StreamSupport;
 import org.structr.api.graph.Cardinality;
 import org.structr.common.PropertyView;
 import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
 import org.structr.core.app.StructrApp;
 import org.structr.core.graph.NodeInterface;
 import org.structr.schema.SchemaService;
@@ -49,6 +50,7 @@ public interface Mailbox extends NodeInterface {
 		type.addStringArrayProperty("folders",                   PropertyView.Ui).setIndexed(true);
 		type.addEnumProperty("mailProtocol",                     PropertyView.Ui).setEnums("pop3,imaps").setIndexed(true).setRequired(true);
 		type.addIntegerProperty("port",                          PropertyView.Ui).setIndexed(true);
+		type.addStringProperty("folderSyncState");
 		type.addFunctionProperty("availableFoldersOnServer",     PropertyView.Ui).setReadFunction("{return Structr.this.getAvailableFoldersOnServer()}").setIndexed(false);
 
 		type.addPropertyGetter("host",                     String.class);
@@ -57,6 +59,8 @@ public interface Mailbox extends NodeInterface {
 		type.addPropertyGetter("overrideMailEntityType",   String.class);
 		type.addPropertyGetter("mailProtocol",             Object.class);
 		type.addPropertyGetter("port",      		       Integer.class);
+		type.addPropertyGetter("folderSyncState",          String.class);
+		type.addPropertySetter("folderSyncState",          String.class);
 
 		type.addMethod("getFolders")
 				.setReturnType("String[]")
@@ -82,6 +86,8 @@ public interface Mailbox extends NodeInterface {
 	String[] getFolders();
 	Object getMailProtocol();
 	Integer getPort();
+	String getFolderSyncState();
+	void setFolderSyncState(final String folderSyncState) throws FrameworkException;
 
 	static List<String> getAvailableFoldersOnServerImpl(final Mailbox mailbox, final SecurityContext securityContext) {
 		Iterable<String> result = StructrApp.getInstance(securityContext).command(org.structr.mail.service.FetchFoldersCommand.class).execute(mailbox);
@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.mail.service;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import java.lang.reflect.Type;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The synchronization state of a single IMAP folder: the UIDVALIDITY value of
+ * the folder and the highest UID that was imported. The states of all folders
+ * of a mailbox are stored as JSON in the folderSyncState property.
+ */
+public class FolderSyncState {
+
+	private static final Type mapType = new TypeToken<LinkedHashMap<String, FolderSyncState>>() {}.getType();
+	private static final Gson gson    = new Gson();
+
+	private long uidValidity = 0L;
+	private long lastUid     = 0L;
+
+	public FolderSyncState(final long uidValidity, final long lastUid) {
+
+		this.uidValidity = uidValidity;
+		this.lastUid     = lastUid;
+	}
+
+	public long getUidValidity() {
+		return uidValidity;
+	}
+
+	public long getLastUid() {
+		return lastUid;
+	}
+
+	public static Map<String, FolderSyncState> read(final String json) {
+
+		if (StringUtils.isNotBlank(json)) {
+
+			try {
+
+				final Map<String, FolderSyncState> map = gson.fromJson(json, mapType);
+				if (map != null) {
+
+					return map;
+				}
+
+			} catch (JsonSyntaxException ignore) {
+				// start over with an empty state
+			}
+		}
+
+		return new LinkedHashMap<>();
+	}
+
+	public static String write(final Map<String, FolderSyncState> states) {
+		return gson.toJson(states, mapType);
+	}
+}
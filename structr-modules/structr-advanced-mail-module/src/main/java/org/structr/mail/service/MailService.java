@@ -19,6 +19,8 @@
 package org.structr.mail.service;
 
 import com.google.gson.Gson;
+import com.sun.mail.imap.IMAPFolder;
+import com.sun.mail.imap.IMAPStore;
 import com.sun.mail.util.BASE64DecoderStream;
 import com.sun.mail.util.MailConnectException;
 import java.io.IOException;
@@ -42,6 +44,7 @@ import java.util.regex.Pattern;
 import javax.activation.DataSource;
 import javax.mail.AuthenticationFailedException;
 import javax.mail.BodyPart;
+import javax.mail.FetchProfile;
 import javax.mail.Folder;
 import javax.mail.Header;
 import javax.mail.Message;
@@ -50,10 +53,14 @@ import javax.mail.Multipart;
 import javax.mail.Part;
 import javax.mail.Session;
 import javax.mail.Store;
+import javax.mail.UIDFolder;
+import javax.mail.event.MessageCountAdapter;
+import javax.mail.event.MessageCountEvent;
 import javax.mail.internet.MimeUtility;
 import org.apache.commons.lang.ArrayUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.BooleanSetting;
 import org.structr.api.config.IntegerSetting;
 import org.structr.api.config.Setting;
 import org.structr.api.config.Settings;
@@ -93,11 +100,15 @@ public class MailService extends Thread implements RunnableService, MailServiceI
 	private boolean run                                     = false;
 	private Set<Class> supportedCommands                    = null;
 	private Set<Mailbox> processingMailboxes                = null;
+	private Set<Mailbox> pendingMailboxes                   = null;
+	private Map<String, IdleWatcher> idleWatchers           = null;
 	private int maxConnectionRetries                        = 5;
 
-	public static final Setting<Integer> maxEmails          = new IntegerSetting(Settings.smtpGroup, "MailService", "mail.maxemails",          25,                  "The number of mails which are checked");
+	public static final Setting<Integer> maxEmails          = new IntegerSetting(Settings.smtpGroup, "MailService", "mail.maxemails",          25,                  "The maximum number of new mails which are imported per folder and update cycle. IMAP folders are synchronized incrementally, remaining mails are imported in the next cycle.");
 	public static final Setting<Integer> updateInterval     = new IntegerSetting(Settings.smtpGroup, "MailService", "mail.updateinterval",     30000,               "The interval in which the mailbox is checked. Unit is milliseconds");
 	public static final Setting<String> attachmentBasePath  = new StringSetting (Settings.smtpGroup, "MailService", "mail.attachmentbasepath", "/mail/attachments", "The path in structrs virtual filesystem where attachments are downloaded to");
+	public static final Setting<Integer> fetchBatchSize     = new IntegerSetting(Settings.smtpGroup, "MailService", "mail.fetchbatchsize",     50,                  "The number of IMAP messages whose envelope and headers are fetched in a single request");
+	public static final Setting<Boolean> idleEnabled        = new BooleanSetting(Settings.smtpGroup, "MailService", "mail.idle",               false,               "Use IMAP IDLE to import new mails immediately if the server supports it. Keeps one connection per configured folder open.");
 
 	public MailService() {
 
@@ -108,18 +119,30 @@ public class MailService extends Thread implements RunnableService, MailServiceI
 		supportedCommands.add(FetchFoldersCommand.class);
 
 		processingMailboxes = ConcurrentHashMap.newKeySet();
+		pendingMailboxes    = ConcurrentHashMap.newKeySet();
+		idleWatchers        = new ConcurrentHashMap<>();
 
 		super.setDaemon(true);
 	}
 
+	/**
+	 * Fetches the mails of the given mailbox in the background. If the
+	 * mailbox is already being processed, e.g. by the update cycle while an
+	 * IDLE watcher reports new mails, another fetch is run when the current
+	 * one has finished.
+	 */
 	public void fetchMails(final Mailbox mb) {
 
-		if (processingMailboxes.contains(mb)) {
+		if (!processingMailboxes.add(mb)) {
 
-			return;
-		} else {
+			pendingMailboxes.add(mb);
+
+			// the running task may have finished before the re-fetch was marked
+			if (!processingMailboxes.add(mb)) {
+				return;
+			}
 
-			processingMailboxes.add(mb);
+			pendingMailboxes.remove(mb);
 		}
 
 		MailFetchTask task = new MailFetchTask(mb);
@@ -197,7 +220,12 @@ public class MailService extends Thread implements RunnableService, MailServiceI
 
 	@Override
 	public void stopService() {
+
 		this.run = false;
+
+		for (final IdleWatcher watcher : idleWatchers.values()) {
+			watcher.stopWatching();
+		}
 	}
 
 	@Override
@@ -483,8 +511,23 @@ public class MailService extends Thread implements RunnableService, MailServiceI
 
 		try (Tx tx = app.tx()) {
 
+			final Set<String> mailboxIds = new LinkedHashSet<>();
+
 			// Fetch mails for each mailbox found
-			app.nodeQuery(Mailbox.class).getResultStream().forEach(this::fetchMails);
+			for (final Mailbox mailbox : app.nodeQuery(Mailbox.class).getResultStream()) {
+
+				mailboxIds.add(mailbox.getUuid());
+				fetchMails(mailbox);
+			}
+
+			// stop watching deleted mailboxes
+			for (final IdleWatcher watcher : idleWatchers.values()) {
+
+				if (!mailboxIds.contains(watcher.mailbox.getUuid())) {
+					watcher.stopWatching();
+				}
+			}
+
 			tx.success();
 
 		} catch (FrameworkException ex) {
@@ -569,6 +612,28 @@ public class MailService extends Thread implements RunnableService, MailServiceI
 		return null;
 	}
 
+	private boolean supportsIdle(final Store store) throws MessagingException {
+		return store instanceof IMAPStore && ((IMAPStore)store).hasCapability("IDLE");
+	}
+
+	private void startIdleWatcher(final Mailbox mailbox, final String folderName) {
+
+		final String key = getKey(mailbox, folderName);
+
+		if (run && !idleWatchers.containsKey(key)) {
+
+			final IdleWatcher watcher = new IdleWatcher(mailbox, folderName);
+
+			if (idleWatchers.putIfAbsent(key, watcher) == null) {
+				watcher.start();
+			}
+		}
+	}
+
+	private String getKey(final Mailbox mailbox, final String folderName) {
+		return mailbox.getUuid() + "/" + folderName;
+	}
+
 	private String decodeText (final String text) {
 
 		try {
@@ -584,6 +649,9 @@ public class MailService extends Thread implements RunnableService, MailServiceI
 
 	//////////////////////////////////////////////////////////////// Nested classes
 	private class MailFetchTask implements Runnable {
+
+		private final App app     = StructrApp.getInstance();
+		private final Gson gson   = new Gson();
 		private final Mailbox mailbox;
 
 		public MailFetchTask(final Mailbox mailbox) {
@@ -609,6 +677,14 @@ public class MailService extends Thread implements RunnableService, MailServiceI
 						fetchMessagesInFolder(store.getFolder(folder));
 					}
 
+					if (idleEnabled.getValue(false) && supportsIdle(store)) {
+
+						for (final String folder : folders) {
+
+							startIdleWatcher(mailbox, folder);
+						}
+					}
+
 					store.close();
 
 				}
@@ -620,6 +696,11 @@ public class MailService extends Thread implements RunnableService, MailServiceI
 			}
 
 			processingMailboxes.remove(mailbox);
+
+			// run the fetch that was requested while this one was running
+			if (pendingMailboxes.remove(mailbox)) {
+				fetchMails(mailbox);
+			}
 		}
 
 		private void fetchMessagesInFolder (final Folder folder) {
@@ -628,150 +709,318 @@ public class MailService extends Thread implements RunnableService, MailServiceI
 
 				try {
 
-					Gson gson = new Gson();
-
 					folder.open(Folder.READ_ONLY);
 
-					Message[] messages = folder.getMessages();
+					if (folder instanceof UIDFolder) {
 
-					ArrayUtils.reverse(messages);
+						fetchMessagesByUID(folder, (UIDFolder)folder);
 
-					App app = StructrApp.getInstance();
+					} else {
+
+						// no stable UIDs (POP3), check the newest messages
+						final Message[] messages = folder.getMessages();
+						final int limit          = maxEmails.getValue(25);
+
+						ArrayUtils.reverse(messages);
 
-					for (int i = 0; i < messages.length; i++) {
-						// Limit fetched emails
-						if (i >= maxEmails.getValue(25)) {
-							break;
+						for (int i = 0; i < messages.length && i < limit; i++) {
+
+							importMessage(messages[i], -1L, 0L);
 						}
+					}
 
-						Message message = messages[i];
+					//close the store and folder objects
+					folder.close(false);
+
+				} catch (MessagingException ex) {
+					logger.error("Error while updating Mails: ", ex);
+				} catch (FrameworkException | IOException ex) {
+					logger.error("Error while updating Mails: ", ex);
+				} catch (Throwable ex) {
+					logger.error("Error while updating Mails: ", ex);
+				}
+			}
+		}
 
-						PropertyMap pm = new PropertyMap();
+		/**
+		 * Imports the messages whose UID is higher than the last UID that was
+		 * imported from this folder, oldest first. Envelope and headers are
+		 * fetched in batches, message content is only loaded for new messages.
+		 */
+		private void fetchMessagesByUID(final Folder folder, final UIDFolder uidFolder) throws MessagingException, FrameworkException, IOException {
 
-						final String from = message.getFrom() != null ? Arrays.stream(message.getFrom()).map((a) -> a != null ? decodeText(a.toString()) : "").reduce("", (a, b) -> a.equals("") ? b : a + "," + b) : "";
-						final String to   = message.getRecipients(Message.RecipientType.TO) != null ? Arrays.stream(message.getRecipients(Message.RecipientType.TO)).map((a) -> a != null ? decodeText(a.toString()) : "").reduce("", (a, b) -> a.equals("") ? b : a + "," + b) : "";
-						final String cc   = message.getRecipients(Message.RecipientType.CC) != null ? Arrays.stream(message.getRecipients(Message.RecipientType.CC)).map((a) -> a != null ? decodeText(a.toString()) : "").reduce("", (a, b) -> a.equals("") ? b : a + "," + b) : "";
-						final String bcc  = message.getRecipients(Message.RecipientType.BCC) != null ? Arrays.stream(message.getRecipients(Message.RecipientType.BCC)).map((a) -> a != null ? decodeText(a.toString()) : "").reduce("", (a, b) -> a.equals("") ? b : a + "," + b) : "";
+			final String folderName     = folder.getFullName();
+			final long uidValidity      = uidFolder.getUIDValidity();
+			final FolderSyncState state = getFolderSyncState(folderName);
+			final int limit             = maxEmails.getValue(25);
+			final int batchSize         = Math.max(1, fetchBatchSize.getValue(50));
+			final FetchProfile profile  = new FetchProfile();
+			Message[] messages          = null;
+			long lastUid                = 0L;
+			int count                   = 0;
 
-						try (Tx tx = app.tx()) {
+			if (state != null && state.getUidValidity() == uidValidity) {
 
-							// Allow mail instance class to be overriden by custom types to enable special mail handling
-							Class<? extends EMailMessage> entityClass = EMailMessage.class;
+				lastUid  = state.getLastUid();
+				messages = uidFolder.getMessagesByUID(lastUid + 1, UIDFolder.LASTUID);
 
-							final String entityType = mailbox.getOverrideMailEntityType();
-							if (entityType != null && entityType.length() > 0) {
-								Class overrideClass = StructrApp.getConfiguration().getNodeEntityClass(entityType);
-								if (overrideClass != null && EMailMessage.class.isAssignableFrom(overrideClass)) {
+			} else {
 
-									entityClass = overrideClass;
-								} else {
+				// first synchronization or the server has reassigned all UIDs, start with the newest messages
+				final int messageCount = folder.getMessageCount();
 
-									logger.warn("Mailbox[" + mailbox.getUuid() + "] has invalid overrideMailEntityType set. Given type is not found or does not extend EMailMessage.");
-								}
-							}
+				messages = messageCount > 0 ? folder.getMessages(Math.max(1, messageCount - limit + 1), messageCount) : new Message[0];
+			}
 
+			profile.add(UIDFolder.FetchProfileItem.UID);
+			profile.add(FetchProfile.Item.ENVELOPE);
 
-							String messageId = null;
-							String inReplyTo = null;
+			if (folder instanceof IMAPFolder) {
+				profile.add(IMAPFolder.FetchProfileItem.HEADERS);
+			}
 
-							Enumeration en = message.getAllHeaders();
-							Map<String, String> headers = new HashMap<>();
-							while (en.hasMoreElements()) {
-								Header header = (Header) en.nextElement();
-								if (header.getName().equals("Message-ID") || header.getName().equals("Message-Id")) {
-									messageId = header.getValue();
-								} else if (header.getName().equals("In-Reply-To") || header.getName().equals("References")) {
-									inReplyTo = header.getValue();
-								}
-								headers.put(header.getName(), header.getValue());
-							}
+			for (int i = 0; i < messages.length && count < limit; i += batchSize) {
 
-							EMailMessage existingEMailMessage = null;
+				final Message[] batch = Arrays.copyOfRange(messages, i, Math.min(i + batchSize, messages.length));
 
-							// Try to match via messageId first
-							if (messageId != null) {
-								existingEMailMessage = app.nodeQuery(entityClass).and(StructrApp.key(EMailMessage.class, "messageId"), messageId).getFirst();
-							}
-							// If messageId can't be matched, use fallback
-							if (existingEMailMessage == null) {
-								existingEMailMessage = app.nodeQuery(entityClass).and(StructrApp.key(EMailMessage.class, "subject"), message.getSubject()).and(StructrApp.key(EMailMessage.class, "from"), from).and(StructrApp.key(EMailMessage.class, "to"), to).and(StructrApp.key(EMailMessage.class, "receivedDate"), message.getReceivedDate()).and(StructrApp.key(EMailMessage.class, "sentDate"), message.getSentDate()).getFirst();
-							}
+				folder.fetch(batch, profile);
+
+				for (final Message message : batch) {
 
-							if (existingEMailMessage == null) {
+					final long uid = uidFolder.getUID(message);
 
-								pm.put(StructrApp.key(EMailMessage.class, "subject"), message.getSubject());
-								pm.put(StructrApp.key(EMailMessage.class, "from"), from);
+					// a UID range always contains the newest message, even if it was already imported
+					if (uid > lastUid && count < limit) {
 
+						importMessage(message, uid, uidValidity);
 
-								final Pattern pattern = Pattern.compile(".* <(.*)>");
-								final Matcher matcher = pattern.matcher(from);
-								if (matcher.matches()) {
-									pm.put(StructrApp.key(EMailMessage.class, "fromMail"), matcher.group(1));
-								} else {
-									pm.put(StructrApp.key(EMailMessage.class, "fromMail"), from);
-								}
+						lastUid = uid;
+						count++;
+					}
+				}
+			}
+		}
 
-								pm.put(StructrApp.key(EMailMessage.class, "to"), to);
-								pm.put(StructrApp.key(EMailMessage.class, "cc"), cc);
-								pm.put(StructrApp.key(EMailMessage.class, "bcc"), bcc);
-								pm.put(StructrApp.key(EMailMessage.class, "folder"), message.getFolder().getFullName());
-								pm.put(StructrApp.key(EMailMessage.class, "receivedDate"), message.getReceivedDate());
-								pm.put(StructrApp.key(EMailMessage.class, "sentDate"), message.getSentDate());
-								pm.put(StructrApp.key(EMailMessage.class, "mailbox"), mailbox);
-								pm.put(StructrApp.key(EMailMessage.class, "header"), gson.toJson(headers));
+		/**
+		 * Creates a new message node unless the message already exists. If a UID
+		 * is given, the synchronization state of the folder is updated in the same
+		 * transaction.
+		 */
+		private void importMessage(final Message message, final long uid, final long uidValidity) throws MessagingException, FrameworkException, IOException {
 
-								if (messageId != null) {
-									pm.put(StructrApp.key(EMailMessage.class, "messageId"), messageId);
-								}
+			PropertyMap pm = new PropertyMap();
 
-								if (inReplyTo != null) {
-									pm.put(StructrApp.key(EMailMessage.class, "inReplyTo"), inReplyTo);
-								}
+			final String from = message.getFrom() != null ? Arrays.stream(message.getFrom()).map((a) -> a != null ? decodeText(a.toString()) : "").reduce("", (a, b) -> a.equals("") ? b : a + "," + b) : "";
+			final String to   = message.getRecipients(Message.RecipientType.TO) != null ? Arrays.stream(message.getRecipients(Message.RecipientType.TO)).map((a) -> a != null ? decodeText(a.toString()) : "").reduce("", (a, b) -> a.equals("") ? b : a + "," + b) : "";
+			final String cc   = message.getRecipients(Message.RecipientType.CC) != null ? Arrays.stream(message.getRecipients(Message.RecipientType.CC)).map((a) -> a != null ? decodeText(a.toString()) : "").reduce("", (a, b) -> a.equals("") ? b : a + "," + b) : "";
+			final String bcc  = message.getRecipients(Message.RecipientType.BCC) != null ? Arrays.stream(message.getRecipients(Message.RecipientType.BCC)).map((a) -> a != null ? decodeText(a.toString()) : "").reduce("", (a, b) -> a.equals("") ? b : a + "," + b) : "";
 
-								// Handle content extraction
-								String content = null;
-								String htmlContent = null;
-								final Object contentObj = message.getContent();
+			try (Tx tx = app.tx()) {
 
-								List<File> attachments = new ArrayList<>();
+				// Allow mail instance class to be overriden by custom types to enable special mail handling
+				Class<? extends EMailMessage> entityClass = EMailMessage.class;
 
-								if (message.getContentType().contains("multipart")) {
+				final String entityType = mailbox.getOverrideMailEntityType();
+				if (entityType != null && entityType.length() > 0) {
+					Class overrideClass = StructrApp.getConfiguration().getNodeEntityClass(entityType);
+					if (overrideClass != null && EMailMessage.class.isAssignableFrom(overrideClass)) {
 
-									final Map<String, String> result = handleMultipart(mailbox, message.getSubject(), (Multipart)contentObj, attachments);
-									content = result.get("content");
-									htmlContent = result.get("htmlContent");
+						entityClass = overrideClass;
+					} else {
 
-								} else if (message.getContentType().contains("text/plain")){
+						logger.warn("Mailbox[" + mailbox.getUuid() + "] has invalid overrideMailEntityType set. Given type is not found or does not extend EMailMessage.");
+					}
+				}
 
-									content = contentObj.toString();
 
-								} else if (message.getContentType().contains("text/html")) {
+				String messageId = null;
+				String inReplyTo = null;
 
-									htmlContent = contentObj.toString();
-								}
+				Enumeration en = message.getAllHeaders();
+				Map<String, String> headers = new HashMap<>();
+				while (en.hasMoreElements()) {
+					Header header = (Header) en.nextElement();
+					if (header.getName().equals("Message-ID") || header.getName().equals("Message-Id")) {
+						messageId = header.getValue();
+					} else if (header.getName().equals("In-Reply-To") || header.getName().equals("References")) {
+						inReplyTo = header.getValue();
+					}
+					headers.put(header.getName(), header.getValue());
+				}
 
-								pm.put(StructrApp.key(EMailMessage.class, "content"), content);
-								pm.put(StructrApp.key(EMailMessage.class, "htmlContent"), htmlContent);
-								pm.put(StructrApp.key(EMailMessage.class, "attachedFiles"), attachments);
+				EMailMessage existingEMailMessage = null;
 
-								app.create(entityClass, pm);
-							}
+				// Try to match via messageId first
+				if (messageId != null) {
+					existingEMailMessage = app.nodeQuery(entityClass).and(StructrApp.key(EMailMessage.class, "messageId"), messageId).getFirst();
+				}
+				// If messageId can't be matched, use fallback
+				if (existingEMailMessage == null) {
+					existingEMailMessage = app.nodeQuery(entityClass).and(StructrApp.key(EMailMessage.class, "subject"), message.getSubject()).and(StructrApp.key(EMailMessage.class, "from"), from).and(StructrApp.key(EMailMessage.class, "to"), to).and(StructrApp.key(EMailMessage.class, "receivedDate"), message.getReceivedDate()).and(StructrApp.key(EMailMessage.class, "sentDate"), message.getSentDate()).getFirst();
+				}
+
+				if (existingEMailMessage == null) {
+
+					pm.put(StructrApp.key(EMailMessage.class, "subject"), message.getSubject());
+					pm.put(StructrApp.key(EMailMessage.class, "from"), from);
+
+
+					final Pattern pattern = Pattern.compile(".* <(.*)>");
+					final Matcher matcher = pattern.matcher(from);
+					if (matcher.matches()) {
+						pm.put(StructrApp.key(EMailMessage.class, "fromMail"), matcher.group(1));
+					} else {
+						pm.put(StructrApp.key(EMailMessage.class, "fromMail"), from);
+					}
+
+					pm.put(StructrApp.key(EMailMessage.class, "to"), to);
+					pm.put(StructrApp.key(EMailMessage.class, "cc"), cc);
+					pm.put(StructrApp.key(EMailMessage.class, "bcc"), bcc);
+					pm.put(StructrApp.key(EMailMessage.class, "folder"), message.getFolder().getFullName());
+					pm.put(StructrApp.key(EMailMessage.class, "receivedDate"), message.getReceivedDate());
+					pm.put(StructrApp.key(EMailMessage.class, "sentDate"), message.getSentDate());
+					pm.put(StructrApp.key(EMailMessage.class, "mailbox"), mailbox);
+					pm.put(StructrApp.key(EMailMessage.class, "header"), gson.toJson(headers));
+
+					if (messageId != null) {
+						pm.put(StructrApp.key(EMailMessage.class, "messageId"), messageId);
+					}
 
-							tx.success();
+					if (inReplyTo != null) {
+						pm.put(StructrApp.key(EMailMessage.class, "inReplyTo"), inReplyTo);
+					}
+
+					// Handle content extraction
+					String content = null;
+					String htmlContent = null;
+					final Object contentObj = message.getContent();
+
+					List<File> attachments = new ArrayList<>();
+
+					if (message.getContentType().contains("multipart")) {
+
+						final Map<String, String> result = handleMultipart(mailbox, message.getSubject(), (Multipart)contentObj, attachments);
+						content = result.get("content");
+						htmlContent = result.get("htmlContent");
+
+					} else if (message.getContentType().contains("text/plain")){
+
+						content = contentObj.toString();
+
+					} else if (message.getContentType().contains("text/html")) {
+
+						htmlContent = contentObj.toString();
+					}
+
+					pm.put(StructrApp.key(EMailMessage.class, "content"), content);
+					pm.put(StructrApp.key(EMailMessage.class, "htmlContent"), htmlContent);
+					pm.put(StructrApp.key(EMailMessage.class, "attachedFiles"), attachments);
+
+					app.create(entityClass, pm);
+				}
+
+				if (uid >= 0) {
+
+					final Map<String, FolderSyncState> states = FolderSyncState.read(mailbox.getFolderSyncState());
+
+					states.put(message.getFolder().getFullName(), new FolderSyncState(uidValidity, uid));
+					mailbox.setFolderSyncState(FolderSyncState.write(states));
+				}
+
+				tx.success();
+			}
+		}
+
+		private FolderSyncState getFolderSyncState(final String folderName) throws FrameworkException {
+
+			try (final Tx tx = app.tx()) {
+
+				final FolderSyncState state = FolderSyncState.read(mailbox.getFolderSyncState()).get(folderName);
+
+				tx.success();
+
+				return state;
+			}
+		}
+	}
+
+	private class IdleWatcher extends Thread {
+
+		private final Mailbox mailbox;
+		private final String folderName;
+		private Store store      = null;
+		private Folder folder    = null;
+		private boolean running  = true;
+
+		public IdleWatcher(final Mailbox mailbox, final String folderName) {
+
+			super("MailIdleWatcher-" + mailbox.getUuid() + "-" + folderName);
+
+			this.mailbox    = mailbox;
+			this.folderName = folderName;
+
+			setDaemon(true);
+		}
+
+		@Override
+		public void run() {
+
+			try {
+
+				store = connectToStore(mailbox);
+
+				if (store != null && store.isConnected()) {
+
+					folder = store.getFolder(folderName);
+					folder.open(Folder.READ_ONLY);
+
+					folder.addMessageCountListener(new MessageCountAdapter() {
+
+						@Override
+						public void messagesAdded(final MessageCountEvent e) {
+							fetchMails(mailbox);
 						}
+					});
+
+					while (running && MailService.this.run) {
+
+						// blocks until the server notifies us about changes
+						((IMAPFolder)folder).idle();
 					}
+				}
 
-					//close the store and folder objects
-					folder.close(false);
+			} catch (Throwable t) {
 
-				} catch (MessagingException ex) {
-					logger.error("Error while updating Mails: ", ex);
-				} catch (FrameworkException | IOException ex) {
-					logger.error("Error while updating Mails: ", ex);
-				} catch (Throwable ex) {
-					logger.error("Error while updating Mails: ", ex);
+				if (running) {
+					logger.info("IMAP IDLE for folder {} of mailbox[{}] ended: {}", folderName, mailbox.getUuid(), t.getMessage());
 				}
+
+			} finally {
+
+				close();
+				idleWatchers.remove(getKey(mailbox, folderName), this);
 			}
 		}
+
+		public void stopWatching() {
+
+			running = false;
+			close();
+		}
+
+		private void close() {
+
+			try {
+
+				if (folder != null && folder.isOpen()) {
+					folder.close(false);
+				}
+
+				if (store != null && store.isConnected()) {
+					store.close();
+				}
+
+			} catch (MessagingException ignore) {}
+		}
 	}
 }
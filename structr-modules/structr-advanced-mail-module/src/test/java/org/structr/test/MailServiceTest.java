@@ -0,0 +1,287 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.test;
+
+import com.icegreen.greenmail.imap.ImapHostManager;
+import com.icegreen.greenmail.user.GreenMailUser;
+import com.icegreen.greenmail.util.DummySSLSocketFactory;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import java.security.Security;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.StructrApp;
+import org.structr.core.function.CryptFunction;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyMap;
+import org.structr.mail.entity.EMailMessage;
+import org.structr.mail.entity.Mailbox;
+import org.structr.mail.service.FolderSyncState;
+import org.structr.mail.service.MailService;
+import org.structr.test.web.StructrUiTest;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MailServiceTest extends StructrUiTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(MailServiceTest.class.getName());
+
+	static {
+
+		// accept the self-signed certificate of the IMAPS test server
+		Security.setProperty("ssl.SocketFactory.provider", DummySSLSocketFactory.class.getName());
+	}
+
+	private GreenMail greenMail     = null;
+	private GreenMailUser user      = null;
+	private MailService mailService = null;
+
+	@BeforeMethod
+	public void startMailServer() throws Exception {
+
+		CryptFunction.setEncryptionKey("structr");
+
+		MailService.updateInterval.setValue(Integer.MAX_VALUE);
+
+		greenMail = new GreenMail(ServerSetupTest.IMAPS);
+		greenMail.start();
+
+		user = greenMail.setUser("test@localhost", "test", "secret");
+
+		mailService = new MailService();
+		mailService.startService();
+	}
+
+	@AfterMethod
+	public void stopMailServer() {
+
+		mailService.stopService();
+		greenMail.stop();
+
+		MailService.maxEmails.setValue(MailService.maxEmails.getDefaultValue());
+		MailService.idleEnabled.setValue(MailService.idleEnabled.getDefaultValue());
+		MailService.updateInterval.setValue(MailService.updateInterval.getDefaultValue());
+	}
+
+	@Test
+	public void testIncrementalFetchImportsNewMessagesOnly() {
+
+		deliver("Message 1", "Message 2", "Message 3");
+
+		final Mailbox mailbox = createMailbox();
+
+		mailService.fetchMails(mailbox);
+
+		final FolderSyncState state = waitForSyncState(mailbox, 3);
+
+		assertEquals("UIDVALIDITY of the folder should be stored", getUidValidity(), state.getUidValidity());
+		assertEquals("All messages should be imported", 3, getSubjects().size());
+
+		// remove the imported messages so that a second import would not be hidden by the duplicate check
+		try (final Tx tx = app.tx()) {
+
+			for (final EMailMessage message : app.nodeQuery(EMailMessage.class).getAsList()) {
+				app.delete(message);
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		deliver("Message 4", "Message 5");
+
+		mailService.fetchMails(mailbox);
+
+		waitForSyncState(mailbox, 5);
+
+		assertEquals("Only messages with a UID higher than the last imported UID should be fetched", List.of("Message 4", "Message 5"), getSubjects());
+	}
+
+	@Test
+	public void testUidValidityResetImportsNewestMessages() {
+
+		MailService.maxEmails.setValue(2);
+
+		deliver("Message 1", "Message 2", "Message 3");
+
+		final Mailbox mailbox = createMailbox();
+
+		// a stored state whose UIDVALIDITY does not match the server must be discarded, including its last UID
+		try (final Tx tx = app.tx()) {
+
+			final Map<String, FolderSyncState> states = new LinkedHashMap<>();
+
+			states.put("INBOX", new FolderSyncState(getUidValidity() + 1, 100L));
+
+			mailbox.setFolderSyncState(FolderSyncState.write(states));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		mailService.fetchMails(mailbox);
+
+		final FolderSyncState state = waitForSyncState(mailbox, 3);
+
+		assertEquals("UIDVALIDITY of the folder should be replaced", getUidValidity(), state.getUidValidity());
+		assertEquals("The newest mail.maxemails messages should be imported after a reset", List.of("Message 2", "Message 3"), getSubjects());
+	}
+
+	@Test
+	public void testIdleImportsNewMessages() {
+
+		MailService.idleEnabled.setValue(true);
+
+		deliver("Message 1");
+
+		final Mailbox mailbox = createMailbox();
+
+		mailService.fetchMails(mailbox);
+
+		waitForSyncState(mailbox, 1);
+
+		// give the watcher time to open the folder and enter IDLE
+		try { Thread.sleep(2000); } catch (InterruptedException ignore) {}
+
+		// no further fetchMails() call, the IDLE watcher must pick up the new message
+		deliver("Message 2");
+
+		waitForSyncState(mailbox, 2);
+
+		assertEquals("New message should be imported by the IDLE watcher", List.of("Message 1", "Message 2"), getSubjects());
+	}
+
+	// ----- private methods -----
+	private Mailbox createMailbox() {
+
+		try (final Tx tx = app.tx()) {
+
+			final Map<String, Object> data = new LinkedHashMap<>();
+
+			data.put("name",         "test");
+			data.put("host",         "localhost");
+			data.put("port",         ServerSetupTest.IMAPS.getPort());
+			data.put("user",         "test");
+			data.put("password",     "secret");
+			data.put("mailProtocol", "imaps");
+			data.put("folders",      new String[] { "INBOX" });
+
+			final Mailbox mailbox = app.create(Mailbox.class, PropertyMap.inputTypeToJavaType(securityContext, Mailbox.class, data));
+
+			tx.success();
+
+			return mailbox;
+
+		} catch (FrameworkException fex) {
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		return null;
+	}
+
+	private void deliver(final String... subjects) {
+
+		for (final String subject : subjects) {
+			user.deliver(GreenMailUtil.createTextEmail("test@localhost", "sender@localhost", subject, "Content of " + subject, ServerSetupTest.IMAPS));
+		}
+	}
+
+	private long getUidValidity() {
+
+		try {
+
+			final ImapHostManager manager = greenMail.getManagers().getImapHostManager();
+
+			return manager.getInbox(user).getUidValidity();
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+
+		return 0L;
+	}
+
+	private FolderSyncState waitForSyncState(final Mailbox mailbox, final long lastUid) {
+
+		final long timeout    = System.currentTimeMillis() + 30000;
+		FolderSyncState state = null;
+
+		while (System.currentTimeMillis() < timeout) {
+
+			try (final Tx tx = app.tx()) {
+
+				state = FolderSyncState.read(mailbox.getFolderSyncState()).get("INBOX");
+
+				tx.success();
+
+			} catch (FrameworkException fex) {
+				logger.warn("", fex);
+				fail("Unexpected exception.");
+			}
+
+			if (state != null && state.getLastUid() >= lastUid) {
+				break;
+			}
+
+			try { Thread.sleep(100); } catch (InterruptedException ignore) {}
+		}
+
+		assertNotNull("Folder was not synchronized", state);
+		assertTrue("Folder was not synchronized up to UID " + lastUid, state.getLastUid() >= lastUid);
+
+		return state;
+	}
+
+	private List<String> getSubjects() {
+
+		try (final Tx tx = app.tx()) {
+
+			final List<String> subjects = app.nodeQuery(EMailMessage.class).sort(StructrApp.key(EMailMessage.class, "subject")).getAsList().stream().map(m -> (String)m.getProperty(StructrApp.key(EMailMessage.class, "subject"))).collect(Collectors.toList());
+
+			tx.success();
+
+			return subjects;
+
+		} catch (FrameworkException fex) {
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		return null;
+	}
+}
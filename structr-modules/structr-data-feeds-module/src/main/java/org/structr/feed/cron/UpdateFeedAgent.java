@@ -18,11 +18,22 @@
  */
 package org.structr.feed.cron;
 
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.agent.Agent;
 import org.structr.agent.ReturnValue;
 import org.structr.agent.Task;
+import org.structr.api.config.Settings;
 import org.structr.common.SecurityContext;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
@@ -30,7 +41,9 @@ import org.structr.core.graph.Tx;
 import org.structr.feed.entity.DataFeed;
 
 /**
- *
+ * Updates all data feeds that are due. Feeds are updated concurrently, each
+ * in its own transaction, with a limited number of concurrent requests per
+ * remote host.
  */
 public class UpdateFeedAgent<T extends DataFeed> extends Agent<T> {
 
@@ -41,19 +54,59 @@ public class UpdateFeedAgent<T extends DataFeed> extends Agent<T> {
 
 		logger.debug("Processing task {}", task.getClass().getName());
 
-		final App app = StructrApp.getInstance();
+		final Map<String, Queue<String>> feedsByHost = new LinkedHashMap<>();
+		final App app                                = StructrApp.getInstance();
+
 		try (final Tx tx = app.tx(true, true, false)) {
 
 			for (DataFeed feed : task.getWorkObjects()) {
 
-				logger.debug("Updating data feed {} if due", feed.getProperty(DataFeed.name));
+				if (DataFeed.isUpdateDue(feed)) {
 
-				feed.updateIfDue(SecurityContext.getSuperUserInstance());
+					feedsByHost.computeIfAbsent(getHost(feed.getUrl()), k -> new ConcurrentLinkedQueue<>()).add(feed.getUuid());
+				}
 			}
 
 			tx.success();
 		}
 
+		if (!feedsByHost.isEmpty()) {
+
+			final int perHost                = Math.max(1, Settings.DataFeedUpdatesPerHost.getValue());
+			final int threads                = Math.max(1, Settings.DataFeedUpdateThreads.getValue());
+			final ExecutorService executor   = Executors.newFixedThreadPool(threads);
+			final List<Future> futures       = new ArrayList<>();
+
+			try {
+
+				// each worker processes the queue of a single host, so at most perHost requests go to the same host at a time
+				for (final Queue<String> queue : feedsByHost.values()) {
+
+					final int workers = Math.min(perHost, queue.size());
+
+					for (int i=0; i<workers; i++) {
+
+						futures.add(executor.submit(() -> {
+
+							String uuid = null;
+
+							while ((uuid = queue.poll()) != null) {
+								update(uuid);
+							}
+						}));
+					}
+				}
+
+				for (final Future future : futures) {
+					future.get();
+				}
+
+			} finally {
+
+				executor.shutdown();
+			}
+		}
+
 		return ReturnValue.Success;
 	}
 
@@ -66,4 +119,46 @@ public class UpdateFeedAgent<T extends DataFeed> extends Agent<T> {
 	public boolean createEnclosingTransaction() {
 		return false;
 	}
+
+	// ----- private methods -----
+	private void update(final String uuid) {
+
+		final App app = StructrApp.getInstance();
+
+		try (final Tx tx = app.tx(true, true, false)) {
+
+			final DataFeed feed = app.get(DataFeed.class, uuid);
+			if (feed != null) {
+
+				logger.debug("Updating data feed {} if due", feed.getProperty(DataFeed.name));
+
+				feed.updateIfDue(SecurityContext.getSuperUserInstance());
+			}
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.warn("Unable to update data feed {}: {}", uuid, t.getMessage());
+		}
+	}
+
+	private String getHost(final String url) {
+
+		if (url != null) {
+
+			try {
+
+				final String host = URI.create(url).getHost();
+				if (host != null) {
+
+					return host.toLowerCase();
+				}
+
+			} catch (IllegalArgumentException ignore) {}
+		}
+
+		// feeds without a valid host are grouped together
+		return "";
+	}
 }
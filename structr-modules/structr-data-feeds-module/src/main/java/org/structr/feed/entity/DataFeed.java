@@ -26,16 +26,25 @@ import com.rometools.rome.feed.synd.SyndFeed;
 import com.rometools.rome.io.FeedException;
 import com.rometools.rome.io.SyndFeedInput;
 import com.rometools.rome.io.XmlReader;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.Reader;
+import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
+import java.net.URLConnection;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import org.structr.api.graph.Cardinality;
 import org.structr.api.schema.JsonObjectType;
 import org.structr.api.schema.JsonSchema;
@@ -71,6 +80,9 @@ public interface DataFeed extends NodeInterface {
 		type.addDateProperty("lastUpdated",    PropertyView.Ui);  // last updated
 		type.addLongProperty("maxAge",         PropertyView.Ui);  // maximum age of the oldest feed entry in milliseconds
 		type.addIntegerProperty("maxItems",    PropertyView.Ui);  // maximum number of feed entries to retain
+		type.addStringProperty("etag");                           // entity tag of the last response, used for conditional requests
+		type.addStringProperty("lastModified");                   // Last-Modified header of the last response, used for conditional requests
+		type.addStringProperty("contentHash");                    // SHA-256 hash of the last feed document
 
 		type.addPropertyGetter("items",            Iterable.class);
 		type.addPropertyGetter("url",              String.class);
@@ -163,12 +175,17 @@ public interface DataFeed extends NodeInterface {
 		}
 	}
 
-	static void updateIfDue(final DataFeed thisFeed, final SecurityContext ctx) {
+	static boolean isUpdateDue(final DataFeed thisFeed) {
 
 		final Date lastUpdate = thisFeed.getLastUpdated();
 		final Long interval   = thisFeed.getUpdateInterval();
 
-		if (lastUpdate == null || (interval != null && new Date().after(new Date(lastUpdate.getTime() + interval)))) {
+		return lastUpdate == null || (interval != null && new Date().after(new Date(lastUpdate.getTime() + interval)));
+	}
+
+	static void updateIfDue(final DataFeed thisFeed, final SecurityContext ctx) {
+
+		if (isUpdateDue(thisFeed)) {
 
 			// Update feed and clean-up afterwards
 			thisFeed.updateFeed(ctx, true);
@@ -181,88 +198,148 @@ public interface DataFeed extends NodeInterface {
 		final String remoteUrl = thisFeed.getUrl();
 		if (StringUtils.isNotBlank(remoteUrl)) {
 
-			final App app = StructrApp.getInstance(ctx);
+			final Logger logger = LoggerFactory.getLogger(DataFeed.class);
+			final App app       = StructrApp.getInstance(ctx);
 
 			try {
 
-				final PropertyKey<Date> dateKey  = StructrApp.key(FeedItem.class, "pubDate");
-				final PropertyKey<String> urlKey = StructrApp.key(FeedItem.class, "url");
-				final URL remote                 = new URL(remoteUrl);
-				final SyndFeedInput input        = new SyndFeedInput();
+				final PropertyKey<Date> dateKey           = StructrApp.key(FeedItem.class, "pubDate");
+				final PropertyKey<String> urlKey          = StructrApp.key(FeedItem.class, "url");
+				final PropertyKey<String> guidKey         = StructrApp.key(FeedItem.class, "guid");
+				final PropertyKey<DataFeed> feedKey       = StructrApp.key(FeedItem.class, "feed");
+				final PropertyKey<String> etagKey         = StructrApp.key(DataFeed.class, "etag");
+				final PropertyKey<String> lastModifiedKey = StructrApp.key(DataFeed.class, "lastModified");
+				final PropertyKey<String> contentHashKey  = StructrApp.key(DataFeed.class, "contentHash");
+				final URLConnection connection            = new URL(remoteUrl).openConnection();
 
-				try (final Reader reader = new XmlReader(remote)) {
+				connection.setConnectTimeout(Settings.HttpConnectTimeout.getValue() * 1000);
+				connection.setReadTimeout(Settings.HttpSocketTimeout.getValue() * 1000);
 
-					final SyndFeed      feed      = input.build(reader);
-					final List<SyndEntry> entries = feed.getEntries();
+				if (connection instanceof HttpURLConnection) {
 
-					thisFeed.setProperty(StructrApp.key(DataFeed.class, "feedType"),    feed.getFeedType());
-					thisFeed.setProperty(StructrApp.key(DataFeed.class, "description"), feed.getDescription());
+					final String etag         = thisFeed.getProperty(etagKey);
+					final String lastModified = thisFeed.getProperty(lastModifiedKey);
 
-					final List<FeedItem> newItems = Iterables.toList(thisFeed.getItems());
+					// conditional request, unchanged feeds are answered with 304 Not Modified
+					if (etag != null) {
+						connection.setRequestProperty("If-None-Match", etag);
+					}
 
-					for (final SyndEntry entry : entries) {
+					if (lastModified != null) {
+						connection.setRequestProperty("If-Modified-Since", lastModified);
+					}
+				}
 
-						final PropertyMap props = new PropertyMap();
+				if (connection instanceof HttpURLConnection && ((HttpURLConnection)connection).getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
 
-						final String link = entry.getLink();
+					logger.debug("Feed {} not modified since last update", remoteUrl);
 
-						// Check if item with this link is already attached to this feed
-						if (!newItems.stream().anyMatch(existingFeedItem -> existingFeedItem.getProperty(urlKey).equals(link))) {
+				} else {
 
-							props.put(urlKey,                                        entry.getLink());
-							props.put(StructrApp.key(FeedItem.class, "name"),        entry.getTitle());
-							props.put(StructrApp.key(FeedItem.class, "author"),      entry.getAuthor());
-							props.put(StructrApp.key(FeedItem.class, "comments"),    entry.getComments());
+					final byte[] content;
 
-							if(entry.getDescription() != null) {
-								props.put(StructrApp.key(FeedItem.class, "description"), entry.getDescription().getValue());
-							}
+					try (final InputStream is = connection.getInputStream()) {
+						content = IOUtils.toByteArray(is);
+					}
 
-							final FeedItem item = app.create(FeedItem.class, props);
-							item.setProperty(dateKey, entry.getPublishedDate());
+					// servers without conditional request support: skip parsing if the document is unchanged
+					final String contentHash = DigestUtils.sha256Hex(content);
+					if (contentHash.equals(thisFeed.getProperty(contentHashKey))) {
 
-							final List<FeedItemContent> itemContents = new LinkedList<>();
-							final List<FeedItemEnclosure> itemEnclosures = new LinkedList<>();
+						logger.debug("Feed {} unchanged since last update", remoteUrl);
 
-							//Get and add all contents
-							final List<SyndContent> contents = entry.getContents();
-							for (final SyndContent content : contents) {
+					} else {
 
-								final FeedItemContent itemContent = app.create(FeedItemContent.class);
-								itemContent.setValue(content.getValue());
+						final String contentType  = connection.getContentType();
+						final SyndFeedInput input = new SyndFeedInput();
 
-								itemContents.add(itemContent);
-							}
+						try (final Reader reader = contentType != null ? new XmlReader(new ByteArrayInputStream(content), contentType) : new XmlReader(new ByteArrayInputStream(content))) {
 
-							//Get and add all enclosures
-							final List<SyndEnclosure> enclosures = entry.getEnclosures();
-							for (final SyndEnclosure enclosure : enclosures){
+							final SyndFeed      feed      = input.build(reader);
+							final List<SyndEntry> entries = feed.getEntries();
+							final Set<String> knownUrls   = new HashSet<>();
+							final Set<String> knownGuids  = new HashSet<>();
 
-								final FeedItemEnclosure itemEnclosure = app.create(FeedItemEnclosure.class);
+							thisFeed.setProperty(StructrApp.key(DataFeed.class, "feedType"),    feed.getFeedType());
+							thisFeed.setProperty(StructrApp.key(DataFeed.class, "description"), feed.getDescription());
 
-								itemEnclosure.setProperty(StructrApp.key(FeedItemEnclosure.class, "url"),             enclosure.getUrl());
-								itemEnclosure.setProperty(StructrApp.key(FeedItemEnclosure.class, "enclosureLength"), enclosure.getLength());
-								itemEnclosure.setProperty(StructrApp.key(FeedItemEnclosure.class, "enclosureType"),   enclosure.getType());
+							for (final FeedItem existingItem : thisFeed.getItems()) {
 
-								itemEnclosures.add(itemEnclosure);
+								knownUrls.add(existingItem.getProperty(urlKey));
+								knownGuids.add(existingItem.getProperty(guidKey));
 							}
 
-							item.setProperty(StructrApp.key(FeedItem.class, "contents"),   itemContents);
-							item.setProperty(StructrApp.key(FeedItem.class, "enclosures"), itemEnclosures);
+							for (final SyndEntry entry : entries) {
+
+								final PropertyMap props = new PropertyMap();
+
+								final String link = entry.getLink();
+								final String guid = entry.getUri();
+
+								// Check if item with this guid or link is already attached to this feed
+								if (!(guid != null && knownGuids.contains(guid)) && !(link != null && knownUrls.contains(link))) {
+
+									props.put(urlKey,                                        entry.getLink());
+									props.put(guidKey,                                       guid);
+									props.put(feedKey,                                       thisFeed);
+									props.put(StructrApp.key(FeedItem.class, "name"),        entry.getTitle());
+									props.put(StructrApp.key(FeedItem.class, "author"),      entry.getAuthor());
+									props.put(StructrApp.key(FeedItem.class, "comments"),    entry.getComments());
 
-							newItems.add(item);
+									if(entry.getDescription() != null) {
+										props.put(StructrApp.key(FeedItem.class, "description"), entry.getDescription().getValue());
+									}
 
-							final Logger logger = LoggerFactory.getLogger(DataFeed.class);
-							logger.debug("Created new item: {} ({}) ", item.getProperty(FeedItem.name), item.getProperty(dateKey));
+									final FeedItem item = app.create(FeedItem.class, props);
+									item.setProperty(dateKey, entry.getPublishedDate());
+
+									final List<FeedItemContent> itemContents = new LinkedList<>();
+									final List<FeedItemEnclosure> itemEnclosures = new LinkedList<>();
+
+									//Get and add all contents
+									final List<SyndContent> contents = entry.getContents();
+									for (final SyndContent content : contents) {
+
+										final FeedItemContent itemContent = app.create(FeedItemContent.class);
+										itemContent.setValue(content.getValue());
+
+										itemContents.add(itemContent);
+									}
+
+									//Get and add all enclosures
+									final List<SyndEnclosure> enclosures = entry.getEnclosures();
+									for (final SyndEnclosure enclosure : enclosures){
+
+										final FeedItemEnclosure itemEnclosure = app.create(FeedItemEnclosure.class);
+
+										itemEnclosure.setProperty(StructrApp.key(FeedItemEnclosure.class, "url"),             enclosure.getUrl());
+										itemEnclosure.setProperty(StructrApp.key(FeedItemEnclosure.class, "enclosureLength"), enclosure.getLength());
+										itemEnclosure.setProperty(StructrApp.key(FeedItemEnclosure.class, "enclosureType"),   enclosure.getType());
+
+										itemEnclosures.add(itemEnclosure);
+									}
+
+									item.setProperty(StructrApp.key(FeedItem.class, "contents"),   itemContents);
+									item.setProperty(StructrApp.key(FeedItem.class, "enclosures"), itemEnclosures);
+
+									knownUrls.add(link);
+									knownGuids.add(guid);
+
+									logger.debug("Created new item: {} ({}) ", item.getProperty(FeedItem.name), item.getProperty(dateKey));
+								}
+							}
 						}
+
+						thisFeed.setProperty(contentHashKey, contentHash);
 					}
 
-					thisFeed.setProperty(StructrApp.key(DataFeed.class, "items"),       newItems);
-					thisFeed.setProperty(StructrApp.key(DataFeed.class, "lastUpdated"), new Date());
+					thisFeed.setProperty(etagKey,         connection.getHeaderField("ETag"));
+					thisFeed.setProperty(lastModifiedKey, connection.getHeaderField("Last-Modified"));
 				}
 
+				thisFeed.setProperty(StructrApp.key(DataFeed.class, "lastUpdated"), new Date());
+
 			} catch (IllegalArgumentException | IOException | FeedException | FrameworkException ex) {
-				final Logger logger = LoggerFactory.getLogger(DataFeed.class);
 				logger.error("Error while updating feed", ex);
 			}
 		}
@@ -60,6 +60,7 @@ public interface FeedItem extends NodeInterface, Indexable {
 		type.addLongProperty("checksum",           PropertyView.Ui).setIndexed(true).setReadOnly(true);
 		type.addIntegerProperty("cacheForSeconds", PropertyView.Ui);
 		type.addIntegerProperty("version",         PropertyView.Ui).setIndexed(true).setReadOnly(true);
+		type.addStringProperty("guid").setIndexed(true);  // unique identifier of the feed entry, if provided
 
 		type.addPropertyGetter("url",              String.class);
 		type.addPropertyGetter("contentType",      String.class);
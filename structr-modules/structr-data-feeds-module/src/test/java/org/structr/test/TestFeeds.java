@@ -20,16 +20,33 @@ package org.structr.test;
 
 import com.jayway.restassured.RestAssured;
 import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.commons.lang3.StringUtils;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.Matchers.hasSize;
 import org.testng.annotations.Test;
+import org.structr.api.config.Settings;
+import org.structr.api.util.Iterables;
 import org.structr.core.app.StructrApp;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.Tx;
+import org.structr.feed.cron.UpdateFeedAgent;
+import org.structr.feed.cron.UpdateFeedTask;
 import org.structr.feed.entity.DataFeed;
+import org.structr.feed.entity.FeedItem;
 import org.structr.test.web.StructrUiTest;
 import org.structr.web.entity.User;
+import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertTrue;
 import static org.testng.AssertJUnit.fail;
 
 /**
@@ -143,4 +160,285 @@ public class TestFeeds extends StructrUiTest {
 				.get("/RemoteDocument");
 
 	}
+
+	@Test
+	public void testConditionalUpdate() {
+
+		final FeedServer server = new FeedServer(0);
+
+		server.setItems("first", "second", "first");
+
+		try {
+
+			server.start();
+
+			final String url = server.getUrl("/feed");
+			DataFeed feed    = null;
+
+			// initial update on creation, duplicate guids within the same document are ignored
+			try (final Tx tx = app.tx()) {
+
+				feed = app.create(DataFeed.class, new NodeAttribute<>(StructrApp.key(DataFeed.class, "url"), url));
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals("Invalid number of feed items", 2, Iterables.count(feed.getItems()));
+				assertEquals("ETag was not stored", server.getETag(), feed.getProperty(StructrApp.key(DataFeed.class, "etag")));
+				assertEquals("Invalid number of full responses", 1, server.fullResponses.get());
+
+				tx.success();
+			}
+
+			// unchanged feed is answered with 304
+			try (final Tx tx = app.tx()) {
+
+				feed.updateFeed(securityContext);
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals("Invalid number of feed items", 2, Iterables.count(feed.getItems()));
+				assertEquals("Invalid number of requests", 2, server.requests.get());
+				assertEquals("Unchanged feed should not be downloaded again", 1, server.fullResponses.get());
+
+				tx.success();
+			}
+
+			// changed feed, only the new item is created
+			server.setItems("third", "second", "first");
+
+			try (final Tx tx = app.tx()) {
+
+				feed.updateFeed(securityContext);
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				final List<FeedItem> items = Iterables.toList(feed.getItems());
+
+				assertEquals("Invalid number of feed items", 3, items.size());
+				assertEquals("Invalid number of full responses", 2, server.fullResponses.get());
+
+				tx.success();
+			}
+
+			// server without conditional request support, unchanged content is not parsed again
+			server.setSupportsConditionalRequests(false);
+
+			try (final Tx tx = app.tx()) {
+
+				feed.updateFeed(securityContext);
+
+				tx.success();
+			}
+
+			try (final Tx tx = app.tx()) {
+
+				assertEquals("Invalid number of feed items", 3, Iterables.count(feed.getItems()));
+				assertEquals("Invalid number of full responses", 3, server.fullResponses.get());
+
+				tx.success();
+			}
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+
+		} finally {
+
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testParallelUpdate() {
+
+		final FeedServer server = new FeedServer(50);
+		final int count         = 10;
+
+		server.setItems("first", "second");
+		server.setSupportsConditionalRequests(false);
+
+		try {
+
+			server.start();
+
+			try (final Tx tx = app.tx()) {
+
+				for (int i=0; i<count; i++) {
+
+					app.create(DataFeed.class,
+						new NodeAttribute<>(StructrApp.key(DataFeed.class, "url"),            server.getUrl("/feed" + i)),
+						new NodeAttribute<>(StructrApp.key(DataFeed.class, "updateInterval"), 1L)
+					);
+				}
+
+				tx.success();
+			}
+
+			server.reset();
+			server.setItems("first", "second", "third");
+
+			Thread.sleep(10);
+
+			new UpdateFeedAgent<>().processTask(new UpdateFeedTask<>());
+
+			assertEquals("All feeds should have been updated", count, server.requests.get());
+			assertTrue("Maximum number of concurrent requests per host exceeded", server.maxConcurrentRequests.get() <= Settings.DataFeedUpdatesPerHost.getValue());
+
+			try (final Tx tx = app.tx()) {
+
+				for (final DataFeed feed : app.nodeQuery(DataFeed.class).getAsList()) {
+
+					assertEquals("Invalid number of feed items", 3, Iterables.count(feed.getItems()));
+				}
+
+				tx.success();
+			}
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+
+		} finally {
+
+			server.stop();
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Local RSS server that supports ETag-based conditional requests.
+	 */
+	private static class FeedServer {
+
+		private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+		private final AtomicInteger concurrentRequests    = new AtomicInteger();
+		private final AtomicInteger fullResponses         = new AtomicInteger();
+		private final AtomicInteger requests              = new AtomicInteger();
+		private volatile boolean conditionalRequests      = true;
+		private volatile String[] items                   = new String[0];
+		private HttpServer server                         = null;
+		private final long delay;
+
+		public FeedServer(final long delay) {
+			this.delay = delay;
+		}
+
+		public void start() throws IOException {
+
+			server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+
+			server.createContext("/", this::handle);
+			server.setExecutor(Executors.newCachedThreadPool());
+			server.start();
+		}
+
+		public void stop() {
+
+			if (server != null) {
+				server.stop(0);
+			}
+		}
+
+		public void reset() {
+
+			maxConcurrentRequests.set(0);
+			fullResponses.set(0);
+			requests.set(0);
+		}
+
+		public String getUrl(final String path) {
+			return "http://127.0.0.1:" + server.getAddress().getPort() + path;
+		}
+
+		public void setItems(final String... items) {
+			this.items = items;
+		}
+
+		public void setSupportsConditionalRequests(final boolean conditionalRequests) {
+			this.conditionalRequests = conditionalRequests;
+		}
+
+		public String getETag() {
+			return "\"" + StringUtils.join(items, "-") + "\"";
+		}
+
+		// ----- private methods -----
+		private void handle(final HttpExchange exchange) throws IOException {
+
+			final int concurrent = concurrentRequests.incrementAndGet();
+
+			maxConcurrentRequests.accumulateAndGet(concurrent, Math::max);
+			requests.incrementAndGet();
+
+			try {
+
+				if (delay > 0) {
+					Thread.sleep(delay);
+				}
+
+				final String etag = getETag();
+
+				if (conditionalRequests && etag.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+
+					exchange.sendResponseHeaders(304, -1);
+
+				} else {
+
+					final byte[] data = getDocument().getBytes(StandardCharsets.UTF_8);
+
+					if (conditionalRequests) {
+						exchange.getResponseHeaders().add("ETag", etag);
+					}
+
+					exchange.getResponseHeaders().add("Content-Type", "application/rss+xml; charset=UTF-8");
+					exchange.sendResponseHeaders(200, data.length);
+
+					try (final OutputStream out = exchange.getResponseBody()) {
+						out.write(data);
+					}
+
+					fullResponses.incrementAndGet();
+				}
+
+			} catch (InterruptedException iex) {
+
+				exchange.sendResponseHeaders(500, -1);
+
+			} finally {
+
+				concurrentRequests.decrementAndGet();
+				exchange.close();
+			}
+		}
+
+		private String getDocument() {
+
+			final StringBuilder buf = new StringBuilder();
+
+			buf.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+			buf.append("<rss version=\"2.0\"><channel><title>Test</title><link>http://127.0.0.1/</link><description>Test feed</description>");
+
+			for (final String item : items) {
+
+				buf.append("<item><title>").append(item).append("</title>");
+				buf.append("<link>http://127.0.0.1/").append(item).append("</link>");
+				buf.append("<guid>urn:test:").append(item).append("</guid></item>");
+			}
+
+			buf.append("</channel></rss>");
+
+			return buf.toString();
+		}
+	}
 }
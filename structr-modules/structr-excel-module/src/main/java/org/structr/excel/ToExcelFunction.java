@@ -18,23 +18,25 @@
  */
 package org.structr.excel;
 
+import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import org.apache.poi.ss.usermodel.Cell;
 import org.apache.poi.ss.usermodel.Comment;
 import org.apache.poi.ss.usermodel.CreationHelper;
 import org.apache.poi.ss.usermodel.Drawing;
-import org.apache.poi.ss.usermodel.Workbook;
-import org.apache.poi.xssf.usermodel.XSSFCell;
-import org.apache.poi.xssf.usermodel.XSSFRow;
-import org.apache.poi.xssf.usermodel.XSSFSheet;
-import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.xssf.streaming.SXSSFSheet;
+import org.apache.poi.xssf.streaming.SXSSFWorkbook;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
 import org.structr.core.GraphObjectMap;
@@ -45,11 +47,13 @@ import org.structr.core.property.PropertyKey;
 import org.structr.schema.action.ActionContext;
 import org.structr.schema.action.Function;
 import org.structr.schema.parser.DatePropertyParser;
+import org.structr.web.entity.File;
 
 public class ToExcelFunction extends Function<Object, Object> {
 
-	public static final String ERROR_MESSAGE_TO_EXCEL    = "Usage: ${to_excel(nodes, propertiesOrView[, includeHeader[, localizeHeader[, headerLocalizationDomain[, maxCellLength[, overflowMode]]]]])}. Example: ${to_excel(find('Page'), 'ui')}";
-	public static final String ERROR_MESSAGE_TO_EXCEL_JS = "Usage: ${{Structr.to_excel(nodes, propertiesOrView[, includeHeader[, localizeHeader[, headerLocalizationDomain[, maxCellLength[, overflowMode]]]]])}}. Example: ${{Structr.to_excel(Structr.find('Page'), 'ui'))}}";
+	public static final String ERROR_MESSAGE_TO_EXCEL    = "Usage: ${to_excel(nodes, propertiesOrView[, includeHeader[, localizeHeader[, headerLocalizationDomain[, maxCellLength[, overflowMode[, output]]]]]])}. Example: ${to_excel(find('Page'), 'ui')}";
+	public static final String ERROR_MESSAGE_TO_EXCEL_JS = "Usage: ${{Structr.to_excel(nodes, propertiesOrView[, includeHeader[, localizeHeader[, headerLocalizationDomain[, maxCellLength[, overflowMode[, output]]]]]])}}. Example: ${{Structr.to_excel(Structr.find('Page'), 'ui'))}}";
+
 
 	@Override
 	public String getName() {
@@ -58,7 +62,7 @@ public class ToExcelFunction extends Function<Object, Object> {
 
 	@Override
 	public String getSignature() {
-		return "nodes, propertiesOrView [, ih, lh, ld, ml, om ]";
+		return "nodes, propertiesOrView [, ih, lh, ld, ml, om, output ]";
 	}
 
 	@Override
@@ -71,14 +75,16 @@ public class ToExcelFunction extends Function<Object, Object> {
 
 		try {
 
-			assertArrayHasMinLengthAndMaxLengthAndAllElementsNotNull(sources, 2, 7);
+			assertArrayHasMinLengthAndMaxLengthAndAllElementsNotNull(sources, 2, 8);
 
-			if ( !(sources[0] instanceof List) ) {
+			if ( !(sources[0] instanceof Iterable) ) {
 				logParameterError(caller, sources, ctx.isJavaScriptContext());
 				return "ERROR: First parameter must be a collection! ".concat(usage(ctx.isJavaScriptContext()));
 			}
 
-			final List<GraphObject> nodes           = (List)sources[0];
+			// nodes are consumed lazily, so result streams are never materialized
+			final Iterator nodes                    = ((Iterable)sources[0]).iterator();
+			Object output                           = null;
 			boolean includeHeader                   = true;
 			boolean localizeHeader                  = false;
 			String headerLocalizationDomain         = null;
@@ -87,14 +93,14 @@ public class ToExcelFunction extends Function<Object, Object> {
 			String propertyView                     = null;
 			List<String> properties                 = null;
 
-			// we are using size() instead of isEmpty() because NativeArray.isEmpty() always returns true
-			if (nodes.size() == 0) {
+			if (!nodes.hasNext()) {
 				logger.warn("to_excel(): Can not create Excel if no nodes are given!");
 				logParameterError(caller, sources, ctx.isJavaScriptContext());
 				return "";
 			}
 
 			switch (sources.length) {
+				case 8: output = sources[7];
 				case 7: overflowMode = sources[6].toString();
 				case 6: maxCellLength = Math.min(maxCellLength, (Integer)sources[5]);
 				case 5: headerLocalizationDomain = sources[4].toString();
@@ -128,16 +134,44 @@ public class ToExcelFunction extends Function<Object, Object> {
 				}
 			}
 
+			if (output != null && !(output instanceof File)) {
+				logParameterError(caller, sources, ctx.isJavaScriptContext());
+				return "ERROR: Output parameter must be a file! ".concat(usage(ctx.isJavaScriptContext()));
+			}
+
+			SXSSFWorkbook wb = null;
+
 			try {
 
-				final Workbook wb = writeExcel(nodes, propertyView, properties, includeHeader, localizeHeader, headerLocalizationDomain, ctx.getLocale(), maxCellLength, overflowMode);
-				final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-				wb.write(baos);
-				return baos.toString("ISO-8859-1");
+				wb = writeExcel(nodes, propertyView, properties, includeHeader, localizeHeader, headerLocalizationDomain, ctx.getLocale(), maxCellLength, overflowMode);
+
+				if (output instanceof File) {
+
+					final File file = (File)output;
+
+					try (final OutputStream out = new BufferedOutputStream(file.getOutputStream(true, false))) {
+						wb.write(out);
+					}
+
+					return file;
+
+				} else {
+
+					final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+					wb.write(baos);
+					return baos.toString("ISO-8859-1");
+				}
 
 			} catch (Throwable t) {
 				logger.warn("to_excel(): Exception occurred", t);
 				return "";
+
+			} finally {
+
+				// remove temporary files of the streaming workbook
+				if (wb != null) {
+					wb.dispose();
+				}
 			}
 
 		} catch (IllegalArgumentException e) {
@@ -157,33 +191,40 @@ public class ToExcelFunction extends Function<Object, Object> {
 		return "Creates Excel from given data";
 	}
 
-	public Workbook writeExcel(final List list, final String propertyView, final List<String> properties, final boolean includeHeader, final boolean localizeHeader, final String headerLocalizationDomain, final Locale locale, final Integer maxCellLength, final String overflowMode) throws IOException {
+	/**
+	 * Writes the objects of the given iterator into a streaming workbook that
+	 * keeps only a window of rows in memory and flushes all other rows to a
+	 * temporary file. The caller must dispose the workbook after writing it.
+	 */
+	public SXSSFWorkbook writeExcel(final Iterator iterator, final String propertyView, final List<String> properties, final boolean includeHeader, final boolean localizeHeader, final String headerLocalizationDomain, final Locale locale, final Integer maxCellLength, final String overflowMode) throws IOException {
 
-		final Workbook workbook = new XSSFWorkbook();
+		final SXSSFWorkbook workbook = new SXSSFWorkbook(null, SXSSFWorkbook.DEFAULT_WINDOW_SIZE, true);
 		final CreationHelper factory = workbook.getCreationHelper();
-		final XSSFSheet sheet = (XSSFSheet) workbook.createSheet();
+		final SXSSFSheet sheet = workbook.createSheet();
 		final Drawing drawing = sheet.createDrawingPatriarch();
+		final boolean hasFirst = iterator.hasNext();
+		final Object first = hasFirst ? iterator.next() : null;
 
 		int rowCount = 0;
 		int cellCount = 0;
 
-		XSSFRow currentRow = null;
-		XSSFCell cell = null;
+		Row currentRow = null;
+		Cell cell = null;
 
 		if (includeHeader) {
 
-			currentRow = (XSSFRow)sheet.createRow(rowCount++);
+			currentRow = sheet.createRow(rowCount++);
 			cellCount = 0;
 
 			if (propertyView != null) {
 
-				final Object obj = list.get(0);
+				final Object obj = first;
 
 				if (obj instanceof GraphObject) {
 
 					for (PropertyKey key : ((GraphObject)obj).getPropertyKeys(propertyView)) {
 
-						cell = (XSSFCell)currentRow.createCell(cellCount++);
+						cell = currentRow.createCell(cellCount++);
 
 						String value = key.dbName();
 						if (localizeHeader) {
@@ -198,7 +239,7 @@ public class ToExcelFunction extends Function<Object, Object> {
 					}
 
 				} else {
-					cell = (XSSFCell)currentRow.createCell(cellCount++);
+					cell = currentRow.createCell(cellCount++);
 					cell.setCellValue("Error: Object is not of type GraphObject, can not determine properties of view for header row");
 				}
 
@@ -206,7 +247,7 @@ public class ToExcelFunction extends Function<Object, Object> {
 
 				for (final String colName : properties) {
 
-					cell = (XSSFCell)currentRow.createCell(cellCount++);
+					cell = currentRow.createCell(cellCount++);
 					String value = colName;
 					if (localizeHeader) {
 						try {
@@ -221,9 +262,12 @@ public class ToExcelFunction extends Function<Object, Object> {
 			}
 		}
 
-		for (final Object obj : list) {
+		boolean hasNext = hasFirst;
+		Object obj = first;
 
-			currentRow = (XSSFRow)sheet.createRow(rowCount++);
+		while (hasNext) {
+
+			currentRow = sheet.createRow(rowCount++);
 			cellCount = 0;
 
 			if (propertyView != null) {
@@ -234,13 +278,13 @@ public class ToExcelFunction extends Function<Object, Object> {
 
 						final Object value = ((GraphObject)obj).getProperty(key);
 
-						cell = (XSSFCell)currentRow.createCell(cellCount++);
+						cell = currentRow.createCell(cellCount++);
 
 						writeToCell(factory, drawing, cell, value, maxCellLength, overflowMode);
 					}
 
 				} else {
-					cell = (XSSFCell)currentRow.createCell(cellCount++);
+					cell = currentRow.createCell(cellCount++);
 					cell.setCellValue("Error: Object is not of type GraphObject, can not determine properties of object");
 				}
 
@@ -252,7 +296,7 @@ public class ToExcelFunction extends Function<Object, Object> {
 
 					for (final String colName : properties) {
 						final Object value = convertedMap.get(colName);
-						cell = (XSSFCell)currentRow.createCell(cellCount++);
+						cell = currentRow.createCell(cellCount++);
 
 						writeToCell(factory, drawing, cell, value, maxCellLength, overflowMode);
 					}
@@ -264,7 +308,7 @@ public class ToExcelFunction extends Function<Object, Object> {
 					for (final String colName : properties) {
 						final PropertyKey key = StructrApp.key(obj.getClass(), colName);
 						final Object value = graphObj.getProperty(key);
-						cell = (XSSFCell)currentRow.createCell(cellCount++);
+						cell = currentRow.createCell(cellCount++);
 
 						writeToCell(factory, drawing, cell, value, maxCellLength, overflowMode);
 					}
@@ -275,12 +319,15 @@ public class ToExcelFunction extends Function<Object, Object> {
 
 					for (final String colName : properties) {
 						final Object value = map.get(colName);
-						cell = (XSSFCell)currentRow.createCell(cellCount++);
+						cell = currentRow.createCell(cellCount++);
 
 						writeToCell(factory, drawing, cell, value, maxCellLength, overflowMode);
 					}
 				}
 			}
+
+			hasNext = iterator.hasNext();
+			obj = hasNext ? iterator.next() : null;
 		}
 
 		return workbook;
@@ -322,7 +369,7 @@ public class ToExcelFunction extends Function<Object, Object> {
 		return result;
 	}
 
-	public void writeToCell(final CreationHelper factory, final Drawing drawing, final XSSFCell cell, final Object value, final Integer maxCellLength, final String overflowMode) {
+	public void writeToCell(final CreationHelper factory, final Drawing drawing, final Cell cell, final Object value, final Integer maxCellLength, final String overflowMode) {
 
 		final String cellValue = escapeForExcel(value);
 
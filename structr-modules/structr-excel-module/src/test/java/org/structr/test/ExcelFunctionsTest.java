@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.test;
+
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Iterator;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.poi.ss.usermodel.Row;
+import org.apache.poi.ss.usermodel.Sheet;
+import org.apache.poi.xssf.usermodel.XSSFWorkbook;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.util.ResultStream;
+import org.structr.core.entity.Group;
+import org.structr.core.graph.Tx;
+import org.structr.excel.ToExcelFunction;
+import org.structr.schema.action.ActionContext;
+import org.structr.test.web.StructrUiTest;
+import org.structr.web.entity.File;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.fail;
+import org.testng.annotations.Test;
+
+public class ExcelFunctionsTest extends StructrUiTest {
+
+	private static final Logger logger = LoggerFactory.getLogger(ExcelFunctionsTest.class.getName());
+
+	@Test
+	public void testToExcelStreamsResultIntoFile() {
+
+		try (final Tx tx = app.tx()) {
+
+			for (int i=0; i<200; i++) {
+				app.create(Group.class, "group" + StringUtils.leftPad(Integer.toString(i), 4, "0"));
+			}
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.warn("", t);
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			final ActionContext ctx       = new ActionContext(securityContext, null);
+			final File output             = app.create(File.class, "export.xlsx");
+			final ResultStream<Group> src = app.nodeQuery(Group.class).sort(Group.name).getResultStream();
+
+			final Object result = new ToExcelFunction().apply(ctx, null, new Object[] { src, Arrays.asList("name"), true, false, "", 1000, "o", output });
+
+			assertEquals("to_excel() should return the output file", output, result);
+
+			try (final InputStream in = output.getInputStream(); final XSSFWorkbook workbook = new XSSFWorkbook(in)) {
+
+				final Sheet sheet         = workbook.getSheetAt(0);
+				final Iterator<Row> rows  = sheet.rowIterator();
+
+				assertEquals("name", rows.next().getCell(0).getStringCellValue());
+
+				for (int i=0; i<200; i++) {
+					assertEquals("group" + StringUtils.leftPad(Integer.toString(i), 4, "0"), rows.next().getCell(0).getStringCellValue());
+				}
+
+				assertFalse("Document should contain one row per object", rows.hasNext());
+			}
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.warn("", t);
+			fail("Unexpected exception");
+		}
+	}
+
+	@Test
+	public void testToExcelRejectsInvalidOutput() {
+
+		try (final Tx tx = app.tx()) {
+
+			app.create(Group.class, "group");
+
+			final ActionContext ctx = new ActionContext(securityContext, null);
+			final Object result     = new ToExcelFunction().apply(ctx, null, new Object[] { app.nodeQuery(Group.class).getResultStream(), "public", true, false, "", 1000, "o", "response" });
+
+			assertEquals("to_excel() should reject outputs other than files", "ERROR: Output parameter must be a file! " + new ToExcelFunction().usage(false), result);
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			logger.warn("", t);
+			fail("Unexpected exception");
+		}
+	}
+}
@@ -28,7 +28,9 @@ import org.structr.common.error.FrameworkException;
 import org.structr.core.datasources.DataSources;
 import org.structr.core.entity.AbstractSchemaNode;
 import org.structr.core.function.Functions;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.flow.datasource.FlowContainerDataSource;
+import org.structr.flow.engine.FlowExecutionPlanInvalidator;
 import org.structr.flow.impl.FlowFunction;
 import org.structr.module.StructrModule;
 import org.structr.schema.SourceFile;
@@ -39,7 +41,8 @@ import org.structr.schema.action.Actions;
  */
 public class FlowModule implements StructrModule {
 
-	private static final Logger logger = LoggerFactory.getLogger(FlowModule.class.getName());
+	private static final Logger logger                                   = LoggerFactory.getLogger(FlowModule.class.getName());
+	private static final FlowExecutionPlanInvalidator planInvalidator    = new FlowExecutionPlanInvalidator();
 
 	@Override
 	public void onLoad(final LicenseManager licenseManager) {
@@ -47,6 +50,8 @@ public class FlowModule implements StructrModule {
 		final boolean licensed = licenseManager == null || licenseManager.isModuleLicensed(getName());
 
 		DataSources.put(licensed, getName(), "flowDataSource", new FlowContainerDataSource());
+
+		TransactionCommand.registerTransactionListener(planInvalidator);
 	}
 
 	@Override
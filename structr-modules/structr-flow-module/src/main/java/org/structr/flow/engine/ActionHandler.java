@@ -32,6 +32,6 @@ public class ActionHandler implements FlowHandler<Action> {
 
 		flowElement.execute(context);
 
-		return flowElement.next();
+		return context.next(flowElement);
 	}
 }
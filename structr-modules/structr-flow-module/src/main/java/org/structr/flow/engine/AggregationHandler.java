@@ -18,17 +18,41 @@
  */
 package org.structr.flow.engine;
 
+import java.util.List;
 import org.structr.flow.api.Aggregation;
 import org.structr.flow.api.FlowHandler;
 import org.structr.flow.api.FlowElement;
+import org.structr.flow.impl.FlowAggregate;
 
 public class AggregationHandler implements FlowHandler<Aggregation> {
 
 	@Override
 	public FlowElement handle(Context context, Aggregation flowElement) throws FlowException {
 
-		flowElement.aggregate(context);
-		return flowElement.next();
+		if (flowElement instanceof FlowAggregate && context.isCollectingAggregation(((FlowAggregate)flowElement).getUuid())) {
 
+			// parallel loop iteration, the input is folded in iteration order after all iterations are done
+			final FlowAggregate aggregate = (FlowAggregate)flowElement;
+
+			context.addCollectedAggregation(aggregate.getUuid(), aggregate.getInput(context));
+
+		} else {
+
+			flowElement.aggregate(context);
+		}
+
+		return context.next(flowElement);
+
+	}
+
+	/**
+	 * Folds the inputs collected by parallel loop iterations into the given
+	 * context, in iteration order.
+	 */
+	public static void fold(final Context context, final FlowAggregate aggregate, final List<Object> inputs) throws FlowException {
+
+		for (final Object input : inputs) {
+			aggregate.aggregate(context, input);
+		}
 	}
 }
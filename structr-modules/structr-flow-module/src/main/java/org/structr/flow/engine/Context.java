@@ -22,11 +22,17 @@ import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.stream.Collectors;
 
 import org.structr.common.SecurityContext;
 import org.structr.core.GraphObject;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.property.PropertyKey;
+import org.structr.flow.api.FlowElement;
 import org.structr.flow.impl.FlowBaseNode;
+import org.structr.flow.impl.FlowNode;
+import org.structr.flow.impl.FlowSwitch;
 import org.structr.schema.action.ActionContext;
 
 /**
@@ -39,6 +45,11 @@ public class Context {
 	private Map<String,Object> parameters 		= new HashMap<>();
 	private Map<String,Object> currentData 		= new HashMap<>();
 	private Queue<Future> forkPromises			= new ConcurrentLinkedQueue<>();
+	private Map<String,NodeInterface> resolved	= new HashMap<>();
+	private FlowExecutionPlan plan				= null;
+	private Map<String,List<Object>> collected	= null;
+	private AtomicBoolean cancelled				= null;
+	private AtomicBoolean forkCancelled			= null;
 	private GraphObject thisObject   			= null;
 	private Object result            			= null;
 	private FlowError error          			= null;
@@ -52,6 +63,10 @@ public class Context {
 		this.parameters = deepCopyMap(context.parameters);
 		this.currentData = deepCopyMap(context.currentData);
 		this.forkPromises = deepCopyQueue(context.forkPromises);
+		this.plan = context.plan;
+		this.resolved = context.resolved;
+		this.collected = context.collected;
+		this.cancelled = context.cancelled;
 	}
 
 	public Context(final GraphObject thisObject) {
@@ -137,6 +152,128 @@ public class Context {
 		return this.forkPromises;
 	}
 
+	public FlowExecutionPlan getExecutionPlan() {
+		return plan;
+	}
+
+	public void setExecutionPlan(final FlowExecutionPlan plan) {
+		this.plan = plan;
+	}
+
+	/**
+	 * Returns the value of the given relationship property of the given
+	 * flow element, using the compiled execution plan if available.
+	 */
+	public <T> T resolve(final FlowBaseNode node, final PropertyKey<T> key) {
+
+		if (plan != null) {
+			return plan.resolve(this, node, key);
+		}
+
+		return node.getProperty(key);
+	}
+
+	public FlowElement next(final FlowElement element) {
+
+		if (element instanceof FlowSwitch) {
+			return resolve((FlowSwitch)element, FlowSwitch.switchDefault);
+		}
+
+		if (element instanceof FlowNode) {
+			return resolve((FlowNode)element, FlowNode.next);
+		}
+
+		return element.next();
+	}
+
+	/**
+	 * Discards all entities resolved so far. Must be called before a context
+	 * is used in a different thread or transaction.
+	 */
+	public void clearResolvedNodes() {
+		this.resolved = new HashMap<>();
+	}
+
+	/**
+	 * Makes this context record the inputs of the given aggregations instead
+	 * of evaluating them, so they can be folded in order later.
+	 */
+	public void collectAggregations(final Collection<String> aggregationIds) {
+
+		this.collected = new HashMap<>();
+
+		for (final String id : aggregationIds) {
+			this.collected.put(id, new ArrayList<>());
+		}
+	}
+
+	public boolean isCollectingAggregation(final String aggregationId) {
+		return collected != null && collected.containsKey(aggregationId);
+	}
+
+	public void addCollectedAggregation(final String aggregationId, final Object value) {
+		collected.get(aggregationId).add(value);
+	}
+
+	public List<Object> getCollectedAggregation(final String aggregationId) {
+
+		if (collected != null) {
+
+			final List<Object> values = collected.get(aggregationId);
+			if (values != null) {
+
+				return values;
+			}
+		}
+
+		return Collections.emptyList();
+	}
+
+	public void setCancellation(final AtomicBoolean cancelled) {
+		this.cancelled = cancelled;
+	}
+
+	public boolean isCancelled() {
+		return cancelled != null && cancelled.get();
+	}
+
+	/**
+	 * Cancels all executions that share the cancellation flag of this
+	 * context, they stop before their next step.
+	 */
+	public void cancel() {
+
+		if (cancelled != null) {
+			cancelled.set(true);
+		}
+	}
+
+	/**
+	 * Returns the cancellation flag shared by the branches forked from this
+	 * context since the last join, so that the first failing branch can
+	 * cancel the others.
+	 */
+	public synchronized AtomicBoolean getForkCancellation() {
+
+		if (forkCancelled == null) {
+			forkCancelled = new AtomicBoolean(false);
+		}
+
+		return forkCancelled;
+	}
+
+	public synchronized void clearForkCancellation() {
+		forkCancelled = null;
+	}
+
+	NodeInterface getResolvedNode(final String uuid) {
+		return resolved.get(uuid);
+	}
+
+	void putResolvedNode(final String uuid, final NodeInterface node) {
+		resolved.put(uuid, node);
+	}
+
 	public ActionContext getActionContext(final SecurityContext securityContext, final FlowBaseNode node) {
 		ActionContext ctx = new ActionContext(securityContext);
 
@@ -160,6 +297,10 @@ public class Context {
 		this.result = context.result;
 		this.error = context.error;
 		this.forkPromises = deepCopyQueue(context.forkPromises);
+		this.plan = context.plan;
+		this.resolved = context.resolved;
+		this.collected = context.collected;
+		this.cancelled = context.cancelled;
 	}
 
 	private <Q> Queue<Q> deepCopyQueue(Queue<Q> q) {
@@ -22,6 +22,7 @@ import org.structr.flow.api.FlowHandler;
 import org.structr.flow.api.DataSource;
 import org.structr.flow.api.FlowElement;
 import org.structr.flow.api.Decision;
+import org.structr.flow.impl.FlowDecision;
 
 /**
  *
@@ -31,7 +32,7 @@ public class DecisionHandler implements FlowHandler<Decision> {
 	@Override
 	public FlowElement handle(final Context context, final Decision flowElement) throws FlowException {
 
-		final DataSource condition = flowElement.getCondition();
+		final DataSource condition = getCondition(context, flowElement);
 
 		if (condition != null) {
 
@@ -39,19 +40,37 @@ public class DecisionHandler implements FlowHandler<Decision> {
 
 			if (isTrue(value)) {
 
-				return flowElement.getTrueElement();
+				return getTarget(context, flowElement, true);
 
 			} else {
 
-				return flowElement.getFalseElement();
+				return getTarget(context, flowElement, false);
 			}
 		} else {
 
-			return flowElement.getFalseElement();
+			return getTarget(context, flowElement, false);
 		}
 	}
 
 	// ----- private methods -----
+	private DataSource getCondition(final Context context, final Decision decision) {
+
+		if (decision instanceof FlowDecision) {
+			return context.resolve((FlowDecision)decision, FlowDecision.condition);
+		}
+
+		return decision.getCondition();
+	}
+
+	private FlowElement getTarget(final Context context, final Decision decision, final boolean value) {
+
+		if (decision instanceof FlowDecision) {
+			return context.resolve((FlowDecision)decision, value ? FlowDecision.trueElement : FlowDecision.falseElement);
+		}
+
+		return value ? decision.getTrueElement() : decision.getFalseElement();
+	}
+
 	private boolean isTrue(final Object value) {
 
 		if (value != null) {
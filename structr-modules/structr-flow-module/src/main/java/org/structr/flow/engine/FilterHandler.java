@@ -32,6 +32,6 @@ public class FilterHandler implements FlowHandler<Filter> {
 
 		flowElement.filter(context);
 
-		return flowElement.next();
+		return context.next(flowElement);
 	}
 }
@@ -36,8 +36,22 @@ public class FlowEngine {
 
 	private static final Logger logger = LoggerFactory.getLogger(FlowEngine.class);
 	
-	private final Map<FlowType, FlowHandler> handlers 	= new EnumMap<>(FlowType.class);
-	private Context context                           	= null;
+	private static final Map<FlowType, FlowHandler> handlers 	= new EnumMap<>(FlowType.class);
+	private Context context                           			= null;
+
+	static {
+
+		handlers.put(FlowType.Action,   	new ActionHandler());
+		handlers.put(FlowType.Decision, 	new DecisionHandler());
+		handlers.put(FlowType.Return,   	new ReturnHandler());
+		handlers.put(FlowType.ForEach,  	new ForEachHandler());
+		handlers.put(FlowType.Store, 		new StoreHandler());
+		handlers.put(FlowType.Aggregation,  new AggregationHandler());
+		handlers.put(FlowType.Exception, 	new ExceptionHandler());
+		handlers.put(FlowType.Filter,		new FilterHandler());
+		handlers.put(FlowType.Fork,			new ForkHandler());
+		handlers.put(FlowType.Switch,       new SwitchHandler());
+	}
 
 	public FlowEngine() {
 		this((GraphObject)null);
@@ -48,9 +62,6 @@ public class FlowEngine {
 	}
 
 	public FlowEngine(final Context context) {
-
-		init();
-
 		this.context = context;
 	}
 
@@ -62,8 +73,17 @@ public class FlowEngine {
 
 		FlowElement current = step;
 
+		if (context.getExecutionPlan() == null && current != null) {
+			context.setExecutionPlan(FlowExecutionPlan.get(current.getFlowContainer()));
+		}
+
 		while (current != null) {
 
+			// stop early when a parallel sibling branch has failed
+			if (context.isCancelled()) {
+				return new FlowResult(context);
+			}
+
 			final FlowHandler handler = handlers.get(current.getFlowType());
 			if (handler != null) {
 
@@ -107,20 +127,6 @@ public class FlowEngine {
 	}
 
 	// ----- private methods -----
-	private void init() {
-
-		handlers.put(FlowType.Action,   	new ActionHandler());
-		handlers.put(FlowType.Decision, 	new DecisionHandler());
-		handlers.put(FlowType.Return,   	new ReturnHandler());
-		handlers.put(FlowType.ForEach,  	new ForEachHandler());
-		handlers.put(FlowType.Store, 		new StoreHandler());
-		handlers.put(FlowType.Aggregation,  new AggregationHandler());
-		handlers.put(FlowType.Exception, 	new ExceptionHandler());
-		handlers.put(FlowType.Filter,		new FilterHandler());
-		handlers.put(FlowType.Fork,			new ForkHandler());
-		handlers.put(FlowType.Switch,       new SwitchHandler());
-	}
-
 	private FlowResult handleException(final Context context, final FlowException exception, final FlowElement current) throws FrameworkException {
 		ThrowingElement throwingElement = exception.getThrowingElement();
 
@@ -0,0 +1,438 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.flow.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.NotFoundException;
+import org.structr.api.graph.Identity;
+import org.structr.api.graph.Node;
+import org.structr.common.PropertyView;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractRelationship;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.NodeFactory;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.property.PropertyKey;
+import org.structr.core.property.RelationProperty;
+import org.structr.flow.api.FlowElement;
+import org.structr.flow.impl.FlowAggregate;
+import org.structr.flow.impl.FlowBaseNode;
+import org.structr.flow.impl.FlowContainer;
+import org.structr.flow.impl.FlowDecision;
+import org.structr.flow.impl.FlowForEach;
+import org.structr.flow.impl.FlowNode;
+import org.structr.flow.impl.rels.FlowNodes;
+
+/**
+ * The compiled structure of a FlowContainer. All flow-internal relationships
+ * of the container's nodes are resolved once and stored as UUIDs, together
+ * with the database ID and type of every element and the immutable values of
+ * its flow properties (scripts, keys, operations), so that the engine does
+ * not have to traverse the graph or look up UUIDs for every step of every
+ * execution. Entities are instantiated from the stored database IDs at
+ * execution time to stay bound to the security context of the current
+ * execution.
+ *
+ * Plans are cached per container and discarded by the
+ * FlowExecutionPlanInvalidator whenever a transaction that modified a flow
+ * element or one of its relationships is committed. A transaction with
+ * uncommitted flow modifications neither uses nor fills the cache, so its
+ * changes are visible to its own executions and never outlive a rollback.
+ */
+public class FlowExecutionPlan {
+
+	private static final Logger logger                               = LoggerFactory.getLogger(FlowExecutionPlan.class);
+	private static final String FLOW_RELATIONSHIP_PACKAGE            = FlowNodes.class.getPackage().getName();
+	private static final String FLOW_ELEMENT_PACKAGE                 = FlowBaseNode.class.getPackage().getName();
+	private static final Map<String, FlowExecutionPlan> cache        = new ConcurrentHashMap<>();
+	private static volatile long generation                          = 0L;
+
+	private final Map<String, Element> elements                      = new HashMap<>();
+	private final Map<String, List<String>> loopAggregates           = new HashMap<>();
+	private final String containerId;
+	private final long planGeneration;
+
+	private FlowExecutionPlan(final FlowContainer container, final long planGeneration) {
+
+		this.containerId    = container.getUuid();
+		this.planGeneration = planGeneration;
+
+		compile(container);
+	}
+
+	/**
+	 * Returns the cached execution plan for the given container, compiling
+	 * it if necessary.
+	 */
+	public static FlowExecutionPlan get(final FlowContainer container) {
+
+		if (container == null) {
+			return null;
+		}
+
+		if (hasPendingFlowModifications()) {
+			return new FlowExecutionPlan(container, -1L);
+		}
+
+		final long currentGeneration = generation;
+
+		FlowExecutionPlan plan = cache.get(container.getUuid());
+		if (plan == null || plan.planGeneration != currentGeneration) {
+
+			plan = new FlowExecutionPlan(container, currentGeneration);
+
+			synchronized (cache) {
+
+				// do not cache a plan that was invalidated while it was being compiled
+				if (currentGeneration == generation) {
+					cache.put(container.getUuid(), plan);
+				}
+			}
+		}
+
+		return plan;
+	}
+
+	public static void invalidateAll() {
+
+		synchronized (cache) {
+
+			generation++;
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Returns whether the given object is part of the compiled structure of a
+	 * flow, i.e. whether modifying it must invalidate execution plans.
+	 */
+	public static boolean isFlowStructure(final GraphObject obj) {
+
+		if (obj instanceof FlowBaseNode || obj instanceof FlowContainer) {
+			return true;
+		}
+
+		return obj instanceof AbstractRelationship && FLOW_RELATIONSHIP_PACKAGE.equals(obj.getClass().getPackage().getName());
+	}
+
+	public String getContainerId() {
+		return containerId;
+	}
+
+	/**
+	 * Returns the value of the given property of the given node, using the
+	 * compiled structure if possible.
+	 */
+	public <T> T resolve(final Context context, final FlowBaseNode node, final PropertyKey<T> key) {
+
+		final Element element = elements.get(node.getUuid());
+		if (element == null) {
+
+			return node.getProperty(key);
+		}
+
+		if (element.values.containsKey(key.jsonName())) {
+
+			return (T)element.values.get(key.jsonName());
+		}
+
+		if (!element.relationships.containsKey(key.jsonName())) {
+
+			return node.getProperty(key);
+		}
+
+		final Object value = element.relationships.get(key.jsonName());
+		if (value == null) {
+
+			return null;
+		}
+
+		try {
+
+			if (value instanceof String) {
+
+				return (T)lookup(context, node, (String)value);
+			}
+
+			final List<NodeInterface> result = new ArrayList<>();
+
+			for (final String uuid : (List<String>)value) {
+
+				final NodeInterface target = lookup(context, node, uuid);
+				if (target != null) {
+
+					result.add(target);
+				}
+			}
+
+			return (T)result;
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("Unable to resolve compiled property {} of flow element {}: {}", key.jsonName(), node.getUuid(), fex.getMessage());
+		}
+
+		return node.getProperty(key);
+	}
+
+	/**
+	 * Returns the UUIDs of all FlowAggregate elements in the body of the
+	 * given loop, or null if the loop is not part of this plan.
+	 */
+	public List<String> getLoopAggregates(final FlowForEach forEach) {
+		return loopAggregates.get(forEach.getUuid());
+	}
+
+	// ----- private methods -----
+	private static boolean hasPendingFlowModifications() {
+
+		for (final ModificationEvent event : TransactionCommand.getModificationEvents()) {
+
+			if (isFlowStructure(event.getGraphObject())) {
+				return true;
+			}
+		}
+
+		return false;
+	}
+
+	private void compile(final FlowContainer container) {
+
+		// compile with full visibility, access checks happen when elements are resolved
+		final FlowContainer superUserContainer = lookupContainer(container);
+		if (superUserContainer == null) {
+			return;
+		}
+
+		final Iterable<FlowBaseNode> flowNodes = superUserContainer.getProperty(FlowContainer.flowNodes);
+		if (flowNodes == null) {
+			return;
+		}
+
+		final Map<String, FlowBaseNode> nodes = new HashMap<>();
+
+		for (final FlowBaseNode node : flowNodes) {
+
+			final Element element = new Element(node);
+
+			for (final PropertyKey key : StructrApp.getConfiguration().getPropertySet(node.getClass(), PropertyView.All)) {
+
+				if (key instanceof RelationProperty) {
+
+					if (isFlowRelationship((RelationProperty)key)) {
+
+						final Object value = node.getProperty(key);
+						if (value == null) {
+
+							element.relationships.put(key.jsonName(), null);
+
+						} else if (value instanceof NodeInterface) {
+
+							element.relationships.put(key.jsonName(), ((NodeInterface)value).getUuid());
+
+						} else if (value instanceof Iterable) {
+
+							final List<String> uuids = new ArrayList<>();
+
+							for (final Object target : (Iterable)value) {
+
+								if (target instanceof NodeInterface) {
+									uuids.add(((NodeInterface)target).getUuid());
+								}
+							}
+
+							element.relationships.put(key.jsonName(), uuids);
+						}
+					}
+
+				} else if (isFlowProperty(key)) {
+
+					final Object value = node.getProperty(key);
+					if (value == null || isImmutable(value)) {
+
+						element.values.put(key.jsonName(), value);
+					}
+				}
+			}
+
+			elements.put(node.getUuid(), element);
+			nodes.put(node.getUuid(), node);
+		}
+
+		for (final FlowBaseNode node : nodes.values()) {
+
+			if (node instanceof FlowForEach) {
+
+				final List<String> aggregates = new ArrayList<>();
+
+				collectAggregates(nodes, getTarget(node, FlowForEach.loopBody), aggregates, new HashSet<>());
+
+				loopAggregates.put(node.getUuid(), Collections.unmodifiableList(aggregates));
+			}
+		}
+	}
+
+	private void collectAggregates(final Map<String, FlowBaseNode> nodes, final String uuid, final List<String> aggregates, final Set<String> visited) {
+
+		if (uuid == null || !visited.add(uuid)) {
+			return;
+		}
+
+		final FlowBaseNode node = nodes.get(uuid);
+		if (node instanceof FlowAggregate) {
+
+			aggregates.add(uuid);
+		}
+
+		if (node instanceof FlowDecision) {
+
+			collectAggregates(nodes, getTarget(node, FlowDecision.trueElement), aggregates, visited);
+			collectAggregates(nodes, getTarget(node, FlowDecision.falseElement), aggregates, visited);
+
+		} else if (node instanceof FlowElement) {
+
+			collectAggregates(nodes, getTarget(node, FlowNode.next), aggregates, visited);
+		}
+	}
+
+	private String getTarget(final FlowBaseNode node, final PropertyKey key) {
+
+		final Element element = elements.get(node.getUuid());
+		if (element != null) {
+
+			final Object value = element.relationships.get(key.jsonName());
+			if (value instanceof String) {
+
+				return (String)value;
+			}
+		}
+
+		return null;
+	}
+
+	private FlowContainer lookupContainer(final FlowContainer container) {
+
+		try {
+
+			return (FlowContainer)StructrApp.getInstance().getNodeById(FlowContainer.class, container.getUuid());
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("Unable to compile execution plan for flow container {}: {}", container.getUuid(), fex.getMessage());
+		}
+
+		return null;
+	}
+
+	private boolean isFlowRelationship(final RelationProperty property) {
+		return property.getRelation() != null && FLOW_RELATIONSHIP_PACKAGE.equals(property.getRelation().getClass().getPackage().getName());
+	}
+
+	/**
+	 * Only the properties declared by the flow element types are cached,
+	 * inherited properties may be computed or change without a transaction.
+	 */
+	private boolean isFlowProperty(final PropertyKey key) {
+
+		final Class declaringClass = key.getDeclaringClass();
+
+		return declaringClass != null && declaringClass.getPackage() != null && FLOW_ELEMENT_PACKAGE.equals(declaringClass.getPackage().getName());
+	}
+
+	private boolean isImmutable(final Object value) {
+		return value instanceof String || value instanceof Number || value instanceof Boolean || value instanceof Enum;
+	}
+
+	private NodeInterface lookup(final Context context, final FlowBaseNode node, final String uuid) throws FrameworkException {
+
+		NodeInterface element = context.getResolvedNode(uuid);
+		if (element == null) {
+
+			element = instantiate(node.getSecurityContext(), uuid);
+			if (element == null) {
+
+				element = StructrApp.getInstance(node.getSecurityContext()).getNodeById(uuid);
+			}
+
+			if (element != null) {
+
+				context.putResolvedNode(uuid, element);
+			}
+		}
+
+		return element;
+	}
+
+	/**
+	 * Instantiates the element with the given UUID from its compiled
+	 * database ID and type, without a UUID lookup. Returns null if the
+	 * element is not part of this plan or not visible.
+	 */
+	private NodeInterface instantiate(final SecurityContext securityContext, final String uuid) {
+
+		final Element element = elements.get(uuid);
+		if (element != null) {
+
+			try {
+
+				final Node node = StructrApp.getInstance().getDatabaseService().getNodeById(element.id);
+				if (node != null) {
+
+					return (NodeInterface)new NodeFactory(securityContext).instantiateWithType(node, element.type, null, false);
+				}
+
+			} catch (NotFoundException nfex) {
+				// deleted in the meantime
+			}
+		}
+
+		return null;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * The compiled data of a single flow element.
+	 */
+	private static class Element {
+
+		private final Map<String, Object> relationships = new HashMap<>();
+		private final Map<String, Object> values        = new HashMap<>();
+		private final Identity id;
+		private final Class type;
+
+		Element(final FlowBaseNode node) {
+
+			this.id   = node.getNode().getId();
+			this.type = node.getClass();
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.flow.engine;
+
+import java.util.Collection;
+import java.util.Map;
+import org.structr.api.Predicate;
+import org.structr.common.SecurityContext;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.graph.ModificationEvent;
+
+/**
+ * Discards cached flow execution plans after a transaction that modified
+ * the structure of a flow has been committed.
+ */
+public class FlowExecutionPlanInvalidator implements StructrTransactionListener {
+
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents) {
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents) {
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			if (FlowExecutionPlan.isFlowStructure(event.getGraphObject())) {
+
+				FlowExecutionPlan.invalidateAll();
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void simpleBroadcast(final String messageName, final Map<String, Object> data, final Predicate<String> sessionIdPredicate) {
+	}
+}
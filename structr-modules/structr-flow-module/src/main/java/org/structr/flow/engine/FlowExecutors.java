@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.flow.engine;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.structr.api.config.Settings;
+import org.structr.common.SecurityContext;
+
+/**
+ * Bounded executors for the concurrent parts of flow execution: a fixed
+ * thread pool for forked branches and a work-stealing pool for parallel
+ * ForEach iterations. Both are created lazily and sized from the settings.
+ */
+public class FlowExecutors {
+
+	private static ExecutorService forkExecutor   = null;
+	private static volatile ForkJoinPool loopPool = null;
+
+	public static synchronized ExecutorService getForkExecutor() {
+
+		if (forkExecutor == null) {
+
+			final AtomicInteger count = new AtomicInteger();
+
+			forkExecutor = Executors.newFixedThreadPool(Math.max(1, Settings.FlowForkThreads.getValue()), r -> {
+
+				final Thread thread = new Thread(r, "FlowFork-" + count.incrementAndGet());
+				thread.setDaemon(true);
+
+				return thread;
+			});
+		}
+
+		return forkExecutor;
+	}
+
+	public static synchronized ForkJoinPool getLoopPool() {
+
+		if (loopPool == null) {
+
+			final AtomicInteger count = new AtomicInteger();
+
+			loopPool = new ForkJoinPool(Math.max(1, Settings.FlowForEachThreads.getValue()), pool -> {
+
+				final ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+				thread.setName("FlowForEach-" + count.incrementAndGet());
+
+				return thread;
+
+			}, null, false);
+		}
+
+		return loopPool;
+	}
+
+	/**
+	 * Returns whether the current thread executes a parallel loop iteration.
+	 * Nested loops run sequentially in that case, a worker joining on tasks
+	 * of the same pool could otherwise pick up an unrelated iteration while
+	 * its own transaction is still open.
+	 */
+	public static boolean isLoopWorker() {
+
+		final Thread thread = Thread.currentThread();
+
+		return thread instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread)thread).getPool() == loopPool;
+	}
+
+	/**
+	 * Returns a security context for the same user that can be used in a
+	 * different thread.
+	 */
+	public static SecurityContext getBranchSecurityContext(final SecurityContext securityContext) {
+
+		if (securityContext == null || securityContext.isSuperUserSecurityContext()) {
+			return SecurityContext.getSuperUserInstance();
+		}
+
+		return SecurityContext.getInstance(securityContext.getUser(false), securityContext.getAccessMode());
+	}
+}
@@ -18,11 +18,20 @@
  */
 package org.structr.flow.engine;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
+import org.structr.api.util.Iterables;
+import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.core.graph.Tx;
 import org.structr.flow.api.*;
 import org.structr.flow.impl.*;
 
@@ -34,26 +43,33 @@ public class ForEachHandler implements FlowHandler<FlowForEach>, ThrowingElement
 	@Override
 	public FlowElement handle(final Context context, final FlowForEach flowElement) throws FlowException {
 
-		final DataSource dataSource   = flowElement.getDataSource();
+		final DataSource dataSource   = context.resolve(flowElement, FlowForEach.dataSource);
 
 		if (dataSource != null) {
 
 			final FlowEngine engine = new FlowEngine(context);
-			final FlowNode loopBody = flowElement.getLoopBody();
+			final FlowNode loopBody = context.resolve(flowElement, FlowForEach.loopBody);
 
 			if (loopBody != null) {
 
-				final Object data = dataSource.get(context);
+				final Object data             = dataSource.get(context);
+				final List<String> aggregates = getLoopAggregates(context, flowElement, loopBody);
 
 				// Special handling for FlowAggregate to ensure it's properly reset for nested loops.
-				FlowElement element = loopBody;
-
 				final Context cleanedLoopContext = new Context(context);
-				traverseAndEvaluate(element, (el) -> {
-					if (el instanceof FlowAggregate) {
-						cleanedLoopContext.setData(((FlowAggregate) el).getUuid(), null);
-					}
-				});
+				for (final String aggregate : aggregates) {
+					cleanedLoopContext.setData(aggregate, null);
+				}
+
+				// iterations run in their own transactions, so they would not see uncommitted changes of the current one
+				if (data instanceof Iterable && flowElement.isParallel() && !FlowExecutors.isLoopWorker() && TransactionCommand.getModificationEvents().isEmpty()) {
+
+					executeParallel(context, cleanedLoopContext, flowElement, loopBody, Iterables.toList((Iterable)data), aggregates);
+
+					context.setData(flowElement.getUuid(), data);
+
+					return context.next(flowElement);
+				}
 
 				Context loopContext = new Context(cleanedLoopContext);
 
@@ -61,6 +77,11 @@ public class ForEachHandler implements FlowHandler<FlowForEach>, ThrowingElement
 
 					for (final Object o : ((Iterable) data)) {
 
+						// stop when the enclosing parallel iteration has been cancelled
+						if (context.isCancelled()) {
+							break;
+						}
+
 						// Provide current element data for loop context and write evaluation result into main context data for this loop element
 						loopContext.setData(flowElement.getUuid(), o);
 						try {
@@ -70,7 +91,7 @@ public class ForEachHandler implements FlowHandler<FlowForEach>, ThrowingElement
 
 							throw new FlowException(ex, this);
 						}
-						loopContext = openNewContext(context, loopContext, flowElement);
+						loopContext = openNewContext(context, loopContext, aggregates);
 
 						// Break when an intermediate result or error occurs
 						if (context.hasResult() || context.hasError()) {
@@ -92,8 +113,8 @@ public class ForEachHandler implements FlowHandler<FlowForEach>, ThrowingElement
 					}
 				}
 
-				for (Map.Entry<String,Object> entry : getAggregationData(loopContext, flowElement).entrySet()) {
-					context.setData(entry.getKey(), entry.getValue());
+				for (final String aggregate : aggregates) {
+					context.setData(aggregate, loopContext.getData(aggregate));
 				}
 				context.setData(flowElement.getUuid(), data);
 
@@ -101,30 +122,173 @@ public class ForEachHandler implements FlowHandler<FlowForEach>, ThrowingElement
 
 		}
 
-		return flowElement.next();
+		return context.next(flowElement);
 	}
 
-	private Map<String,Object> getAggregationData(final Context context, final FlowElement flowElement) {
-		Map<String,Object> aggregateData = new HashMap<>();
+	/**
+	 * Executes each iteration in its own read-only transaction on the bounded
+	 * loop pool. Iterations only see committed data, so parallel execution is
+	 * only used if the current transaction has no pending modifications, and
+	 * an iteration that modifies data fails and is rolled back. Aggregations
+	 * are not evaluated in the iterations, their inputs are collected and
+	 * folded in iteration order in the current transaction once all
+	 * iterations have finished. The first failing iteration cancels all
+	 * others: queued iterations are not started, and running iterations
+	 * check the shared flag before every step and every element of a nested
+	 * loop and are rolled back.
+	 */
+	private void executeParallel(final Context context, final Context cleanedLoopContext, final FlowForEach flowElement, final FlowNode loopBody, final List<Object> items, final List<String> aggregates) throws FlowException {
+
+		final SecurityContext securityContext = FlowExecutors.getBranchSecurityContext(flowElement.getSecurityContext());
+		final List<Future<Context>> futures   = new ArrayList<>(items.size());
+		final AtomicBoolean cancelled         = new AtomicBoolean(false);
+		final String loopBodyId               = loopBody.getUuid();
+
+		for (final Object item : items) {
+
+			final Context iterationContext = new Context(cleanedLoopContext);
+
+			iterationContext.clearResolvedNodes();
+			iterationContext.collectAggregations(aggregates);
+			iterationContext.setCancellation(cancelled);
+			iterationContext.setData(flowElement.getUuid(), item);
+
+			futures.add(FlowExecutors.getLoopPool().submit(() -> executeIteration(securityContext, iterationContext, loopBodyId, cancelled)));
+		}
 
-		FlowElement currentElement = ((FlowForEach)flowElement).getLoopBody();
+		final Context foldContext = new Context(cleanedLoopContext);
+		final App app             = StructrApp.getInstance(flowElement.getSecurityContext());
 
-		traverseAndEvaluate(currentElement, (el) -> {
-			if (el instanceof FlowAggregate) {
+		try {
+
+			final List<FlowAggregate> aggregateElements = new ArrayList<>();
+
+			for (final String aggregate : aggregates) {
+
+				final FlowAggregate element = app.get(FlowAggregate.class, aggregate);
+				if (element != null) {
+
+					aggregateElements.add(element);
+				}
+			}
+
+			for (final Future<Context> future : futures) {
+
+				final Context iterationContext = future.get();
+
+				if (iterationContext.hasError()) {
+
+					cancel(cancelled, futures);
+					context.error(iterationContext.getError());
+
+					return;
+				}
+
+				for (final FlowAggregate aggregate : aggregateElements) {
+					AggregationHandler.fold(foldContext, aggregate, iterationContext.getCollectedAggregation(aggregate.getUuid()));
+				}
+			}
+
+			for (final String aggregate : aggregates) {
+				context.setData(aggregate, foldContext.getData(aggregate));
+			}
+
+		} catch (FlowException ex) {
+
+			cancel(cancelled, futures);
+
+			throw ex;
+
+		} catch (ExecutionException ex) {
+
+			cancel(cancelled, futures);
+
+			final Throwable cause = ex.getCause();
+
+			throw new FlowException(cause instanceof java.lang.Exception ? (java.lang.Exception)cause : ex, this);
 
-				aggregateData.put(((FlowAggregate) el).getUuid(), context.getData(((FlowAggregate) el).getUuid()));
+		} catch (InterruptedException | FrameworkException ex) {
+
+			cancel(cancelled, futures);
+
+			throw new FlowException(ex, this);
+		}
+	}
+
+	private Context executeIteration(final SecurityContext securityContext, final Context context, final String loopBodyId, final AtomicBoolean cancelled) throws FrameworkException {
+
+		if (context.isCancelled()) {
+			return context;
+		}
+
+		final App app = StructrApp.getInstance(securityContext);
+
+		try (final Tx tx = app.tx()) {
+
+			final FlowNode loopBody = app.get(FlowNode.class, loopBodyId);
+			if (loopBody != null) {
+
+				new FlowEngine(context).execute(context, loopBody);
+			}
+
+			// changes could not be rolled back together with the calling transaction, so they are never committed
+			if (!context.hasError() && !TransactionCommand.getModificationEvents().isEmpty()) {
+				context.error(new FlowError("Parallel ForEach loops must not modify data, use a sequential loop instead."));
+			}
+
+		} catch (FrameworkException ex) {
+
+			cancelled.set(true);
+			throw ex;
+		}
+
+		if (context.hasError()) {
+			cancelled.set(true);
+		}
+
+		return context;
+	}
+
+	private void cancel(final AtomicBoolean cancelled, final List<Future<Context>> futures) {
+
+		// running iterations stop at their next step
+		cancelled.set(true);
+
+		// tasks of a ForkJoinPool ignore interrupts, this only removes queued iterations
+		for (final Future<Context> future : futures) {
+			future.cancel(false);
+		}
+	}
+
+	private List<String> getLoopAggregates(final Context context, final FlowForEach flowElement, final FlowNode loopBody) {
+
+		final FlowExecutionPlan plan = context.getExecutionPlan();
+		if (plan != null) {
+
+			final List<String> aggregates = plan.getLoopAggregates(flowElement);
+			if (aggregates != null) {
+
+				return aggregates;
+			}
+		}
+
+		final List<String> aggregates = new ArrayList<>();
+
+		traverseAndEvaluate(loopBody, (el) -> {
+			if (el instanceof FlowAggregate) {
+				aggregates.add(((FlowAggregate) el).getUuid());
 			}
 		});
 
-		return aggregateData;
+		return aggregates;
 	}
 
-	private Context openNewContext(final Context context, Context loopContext, final FlowElement flowElement) {
+	private Context openNewContext(final Context context, final Context loopContext, final List<String> aggregates) {
 		final Context newContext = new Context(context);
 
-		for (Map.Entry<String,Object> entry : getAggregationData(loopContext, flowElement).entrySet()) {
+		for (final String aggregate : aggregates) {
 
-			newContext.setData(entry.getKey(), entry.getValue());
+			newContext.setData(aggregate, loopContext.getData(aggregate));
 		}
 
 		return newContext;
@@ -31,13 +31,12 @@ import org.structr.core.graph.TransactionCommand;
 import org.structr.core.graph.Tx;
 import org.structr.flow.api.FlowElement;
 import org.structr.flow.api.FlowHandler;
+import org.structr.flow.api.FlowResult;
 import org.structr.flow.api.Fork;
 import org.structr.flow.impl.FlowFork;
 import org.structr.flow.impl.FlowNode;
 
 import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 
 /**
@@ -46,27 +45,39 @@ import java.util.concurrent.Future;
 public class ForkHandler implements FlowHandler<FlowFork> {
 
 	private static final Logger logger = LoggerFactory.getLogger(ForkHandler.class);
-	private static final ExecutorService threadExecutor = Executors.newSingleThreadExecutor();
 
 	@Override
 	public FlowElement handle(Context context, FlowFork flowElement) throws FlowException {
 
-		FlowNode forkBody = flowElement.getForkBody();
+		FlowNode forkBody = context.resolve(flowElement, FlowFork.forkBody);
 
 		if (forkBody != null) {
 
 			Context forkContext = new Context(context);
+
+			// the fork runs in its own thread and transaction, the first failing branch cancels its siblings
+			forkContext.clearResolvedNodes();
+			forkContext.setCancellation(context.getForkCancellation());
 			ForkTask task = new ForkTask(forkContext, flowElement.getSecurityContext().getCachedUserId(), forkBody.getUuid(), flowElement.getUuid());
 
-			TransactionCommand.queuePostProcessProcedure(() -> {
-				// Could be written into context for future additions like a FlowJoin element
-				Future<Object> future = threadExecutor.submit(task);
+			if (TransactionCommand.getModificationEvents().isEmpty()) {
+
+				// nothing to commit first, start now so that a FlowForkJoin can wait for the branch
+				Future<Object> future = FlowExecutors.getForkExecutor().submit(task);
 				context.queueForkFuture(future);
-			});
+
+			} else {
+
+				// the branch would not see uncommitted changes of the current transaction
+				TransactionCommand.queuePostProcessProcedure(() -> {
+					Future<Object> future = FlowExecutors.getForkExecutor().submit(task);
+					context.queueForkFuture(future);
+				});
+			}
 
 		}
 
-		return flowElement.next();
+		return context.next(flowElement);
 	}
 
 
@@ -124,12 +135,12 @@ public class ForkHandler implements FlowHandler<FlowFork> {
 		@Override
 		public Object call() throws Exception {
 
-			if (securityContext != null) {
+			if (securityContext != null && !context.isCancelled()) {
 				final App app = StructrApp.getInstance(securityContext);
 
 				if (startNode != null && fork != null) {
 
-					Object result = null;
+					FlowResult result = null;
 
 					try (final Tx tx = app.tx()) {
 
@@ -139,7 +150,20 @@ public class ForkHandler implements FlowHandler<FlowFork> {
 
 						result = engine.execute(context, startNode);
 
-						tx.success();
+						if (result.getError() != null) {
+
+							context.cancel();
+
+						} else if (!context.isCancelled()) {
+
+							// failed and cancelled branches are rolled back
+							tx.success();
+						}
+
+					} catch (Exception ex) {
+
+						context.cancel();
+						throw ex;
 					}
 
 					return result;
@@ -34,12 +34,12 @@ public class SwitchHandler implements FlowHandler<Switch> {
 
 			FlowSwitch switchElement = (FlowSwitch)flowElement;
 
-			DataSource _ds = switchElement.getProperty(FlowSwitch.dataSource);
+			DataSource _ds = context.resolve(switchElement, FlowSwitch.dataSource);
 			if (_ds != null) {
 
 				Object data = _ds.get(context);
 
-				Iterable<FlowSwitchCase> cases = switchElement.getProperty(FlowSwitch.cases);
+				Iterable<FlowSwitchCase> cases = context.resolve(switchElement, FlowSwitch.cases);
 
 				if (cases != null) {
 
@@ -48,7 +48,7 @@ public class SwitchHandler implements FlowHandler<Switch> {
 						final Object caseValue = switchCase.getProperty(FlowSwitchCase.switchCase);
 						if (caseValue != null && data != null && caseValue.equals(data.toString())) {
 
-							return switchCase.getProperty(FlowSwitchCase.next);
+							return context.resolve(switchCase, FlowSwitchCase.next);
 						}
 					}
 				}
@@ -56,6 +56,6 @@ public class SwitchHandler implements FlowHandler<Switch> {
 
 		}
 
-		return flowElement.next();
+		return context.next(flowElement);
 	}
 }
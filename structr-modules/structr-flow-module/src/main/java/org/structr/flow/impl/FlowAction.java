@@ -47,12 +47,12 @@ public class FlowAction extends FlowActionNode implements DataSource, Deployable
 	@Override
 	public void execute(final Context context) throws FlowException {
 
-		final String _script = getProperty(script);
+		final String _script = context.resolve(this, script);
 		if (_script != null) {
 
 			try {
 
-				final DataSource _dataSource = getProperty(FlowAction.dataSource);
+				final DataSource _dataSource = context.resolve(this, FlowAction.dataSource);
 
 				// make data available to action if present
 				if (_dataSource != null) {
@@ -50,19 +50,44 @@ public class FlowAggregate extends FlowNode implements Aggregation, DataSource,
 	@Override
 	public void aggregate(Context context) throws FlowException {
 
+		final DataSource ds = context.resolve(this, dataSource);
+		if (ds != null) {
+
+			aggregate(context, ds.get(context));
+		}
+	}
+
+	/**
+	 * Returns the value this aggregation consumes in the current iteration.
+	 */
+	public Object getInput(final Context context) throws FlowException {
+
+		final DataSource ds = context.resolve(this, dataSource);
+		if (ds != null) {
+
+			return ds.get(context);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Folds the given input value into the aggregation result.
+	 */
+	public void aggregate(final Context context, final Object input) throws FlowException {
+
 		try {
 
-			String _script = getProperty(script);
-			DataSource ds = getProperty(dataSource);
-			DataSource startValue = getProperty(startValueSource);
+			String _script = context.resolve(this, script);
+			DataSource startValue = context.resolve(this, startValueSource);
 
-			if (_script != null && startValue != null && ds != null) {
+			if (_script != null && startValue != null) {
 
 				if (context.getData(getUuid()) == null) {
 					context.setData(getUuid(), startValue.get(context));
 				}
 
-				context.setAggregation(getUuid(), ds.get(context));
+				context.setAggregation(getUuid(), input);
 
 				Object result = Scripting.evaluate(context.getActionContext(securityContext, this), this, "${" + _script.trim() + "}", "FlowAggregate(" + getUuid() + ")");
 
@@ -82,7 +107,7 @@ public class FlowAggregate extends FlowNode implements Aggregation, DataSource,
 
 		if (context.getData(getUuid()) == null) {
 
-			DataSource startValue = getProperty(startValueSource);
+			DataSource startValue = context.resolve(this, startValueSource);
 
 			if (startValue != null) {
 
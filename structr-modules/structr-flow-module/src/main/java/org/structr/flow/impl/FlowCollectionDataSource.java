@@ -44,7 +44,7 @@ public class FlowCollectionDataSource extends FlowDataSource implements Deployab
 	@Override
 	public Object get(final Context context) throws FlowException {
 
-		List<DataSource> sources = Iterables.toList(getProperty(dataSources));
+		List<DataSource> sources = Iterables.toList(context.resolve(this, dataSources));
 		List<Object> result      = new ArrayList<>();
 
 		if (sources != null && sources.size() > 0) {
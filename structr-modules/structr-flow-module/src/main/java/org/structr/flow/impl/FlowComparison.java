@@ -50,15 +50,15 @@ public class FlowComparison extends FlowCondition implements DataSource, Deploya
 	@Override
 	public Object get(final Context context) throws FlowException {
 
-		final List<DataSource> _dataSources = Iterables.toList(getProperty(dataSources));
+		final List<DataSource> _dataSources = Iterables.toList(context.resolve(this, dataSources));
 		if (_dataSources.isEmpty()) {
 
 			return false;
 		}
 
 
-		final DataSource _dataSource = getProperty(dataSource);
-		final Operation op = getProperty(operation);
+		final DataSource _dataSource = context.resolve(this, dataSource);
+		final Operation op = context.resolve(this, operation);
 
 		if (_dataSource == null || op == null) {
 			return false;
@@ -68,7 +68,7 @@ public class FlowComparison extends FlowCondition implements DataSource, Deploya
 
 		Boolean result = true;
 
-		for (final DataSource _ds : getProperty(dataSources)) {
+		for (final DataSource _ds : context.resolve(this, dataSources)) {
 
 			Object data = _ds.get(context);
 
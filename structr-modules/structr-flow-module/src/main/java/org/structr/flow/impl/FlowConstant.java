@@ -47,8 +47,8 @@ public class FlowConstant extends FlowBaseNode implements DataSource, Deployable
 	@Override
 	public Object get(Context context) {
 
-		ConstantType cType = getProperty(constantType);
-		Object val =  getProperty(value);
+		ConstantType cType = context.resolve(this, constantType);
+		Object val =  context.resolve(this, value);
 
 		if (val != null) {
 
@@ -52,13 +52,13 @@ public class FlowDataSource extends FlowBaseNode implements DataSource, Deployab
 
 		if (!context.hasData(getUuid())) {
 
-			final DataSource _ds = getProperty(dataSource);
+			final DataSource _ds = context.resolve(this, dataSource);
 			if (_ds != null) {
 				Object data = _ds.get(context);
 				context.setData(getUuid(), data);
 			}
 
-			final String _script = getProperty(query);
+			final String _script = context.resolve(this, query);
 			if (_script != null) {
 
 				try {
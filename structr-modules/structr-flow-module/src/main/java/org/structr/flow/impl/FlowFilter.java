@@ -62,8 +62,8 @@ public class FlowFilter extends FlowNode implements DataSource, Filter, Deployab
 	@Override
 	public void filter(Context context) throws FlowException {
 
-		DataSource ds = getProperty(dataSource);
-		FlowCondition condition = getProperty(FlowFilter.condition);
+		DataSource ds = context.resolve(this, dataSource);
+		FlowCondition condition = context.resolve(this, FlowFilter.condition);
 
 		if (ds != null) {
 			Object data = ds.get(context);
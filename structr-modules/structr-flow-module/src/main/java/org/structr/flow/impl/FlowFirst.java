@@ -31,7 +31,7 @@ public class FlowFirst extends FlowDataSource {
 	@Override
 	public Object get(final Context context) throws FlowException {
 
-		final DataSource _dataSource = getProperty(dataSource);
+		final DataSource _dataSource = context.resolve(this, dataSource);
 
 		if (_dataSource != null) {
 
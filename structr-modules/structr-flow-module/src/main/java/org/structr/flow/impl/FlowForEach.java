@@ -20,6 +20,7 @@ package org.structr.flow.impl;
 
 import org.structr.common.PropertyView;
 import org.structr.common.View;
+import org.structr.core.property.BooleanProperty;
 import org.structr.core.property.EndNode;
 import org.structr.core.property.EndNodes;
 import org.structr.core.property.Property;
@@ -42,9 +43,10 @@ public class FlowForEach extends FlowNode implements ForEach, DataSource, Deploy
 	public static final Property<DataSource> dataSource             = new StartNode<>("dataSource", FlowDataInput.class);
 	public static final Property<Iterable<FlowBaseNode>> dataTarget = new EndNodes<>("dataTarget", FlowDataInput.class);
 	public static final Property<FlowNode> loopBody                 = new EndNode<>("loopBody", FlowForEachBody.class);
+	public static final Property<Boolean> parallel                  = new BooleanProperty("parallel").defaultValue(false);
 
-	public static final View defaultView = new View(FlowForEach.class, PropertyView.Public, dataSource, loopBody, isStartNodeOfContainer);
-	public static final View uiView      = new View(FlowForEach.class, PropertyView.Ui,     dataSource, loopBody, isStartNodeOfContainer);
+	public static final View defaultView = new View(FlowForEach.class, PropertyView.Public, dataSource, loopBody, parallel, isStartNodeOfContainer);
+	public static final View uiView      = new View(FlowForEach.class, PropertyView.Ui,     dataSource, loopBody, parallel, isStartNodeOfContainer);
 
 
 	@Override
@@ -57,6 +59,10 @@ public class FlowForEach extends FlowNode implements ForEach, DataSource, Deploy
 		return getProperty(loopBody);
 	}
 
+	public boolean isParallel() {
+		return getProperty(parallel);
+	}
+
 	@Override
 	public Object get(Context context) {
 		return context.getData(getUuid());
@@ -68,6 +74,7 @@ public class FlowForEach extends FlowNode implements ForEach, DataSource, Deploy
 
 		result.put("id", this.getUuid());
 		result.put("type", this.getClass().getSimpleName());
+		result.put("parallel", this.getProperty(parallel));
 		result.put("visibleToPublicUsers", this.getProperty(visibleToPublicUsers));
 		result.put("visibleToAuthenticatedUsers", this.getProperty(visibleToAuthenticatedUsers));
 
@@ -74,7 +74,7 @@ public class FlowFork extends FlowNode implements Fork, DataSource, DeployableEn
 		// Call get while handling the fork process to clear local data and cache given data from dataSource
 		context.setData(getUuid(), null);
 
-		DataSource _ds = getProperty(dataSource);
+		DataSource _ds = context.resolve(this, dataSource);
 
 		if (_ds != null) {
 			context.setData(getUuid(), _ds.get(context));
@@ -94,7 +94,7 @@ public class FlowFork extends FlowNode implements Fork, DataSource, DeployableEn
 
 		if (data == null) {
 
-			DataSource _ds = getProperty(dataSource);
+			DataSource _ds = context.resolve(this, dataSource);
 			if (_ds != null) {
 				data = _ds.get(context);
 				context.setData(getUuid(), data);
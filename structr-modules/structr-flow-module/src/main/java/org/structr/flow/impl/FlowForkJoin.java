@@ -21,26 +21,33 @@ package org.structr.flow.impl;
 import org.structr.common.PropertyView;
 import org.structr.common.View;
 import org.structr.core.property.EndNode;
+import org.structr.core.property.EndNodes;
 import org.structr.core.property.Property;
 import org.structr.flow.api.Action;
+import org.structr.flow.api.DataSource;
+import org.structr.flow.api.FlowResult;
 import org.structr.flow.api.ThrowingElement;
 import org.structr.flow.engine.Context;
 import org.structr.flow.engine.FlowException;
+import org.structr.flow.impl.rels.FlowDataInput;
 import org.structr.flow.impl.rels.FlowExceptionHandlerNodes;
 import org.structr.module.api.DeployableEntity;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 
-public class FlowForkJoin extends FlowNode implements Action, DeployableEntity, ThrowingElement {
+public class FlowForkJoin extends FlowNode implements Action, DataSource, DeployableEntity, ThrowingElement {
 
+	public static final Property<Iterable<FlowBaseNode>> dataTarget		= new EndNodes<>("dataTarget", FlowDataInput.class);
 	public static final Property<FlowExceptionHandler> exceptionHandler 	= new EndNode<>("exceptionHandler", FlowExceptionHandlerNodes.class);
 
-	public static final View defaultView 									= new View(FlowAction.class, PropertyView.Public, exceptionHandler, isStartNodeOfContainer);
-	public static final View uiView      									= new View(FlowAction.class, PropertyView.Ui, exceptionHandler, isStartNodeOfContainer);
+	public static final View defaultView 									= new View(FlowAction.class, PropertyView.Public, exceptionHandler, isStartNodeOfContainer, dataTarget);
+	public static final View uiView      									= new View(FlowAction.class, PropertyView.Ui, exceptionHandler, isStartNodeOfContainer, dataTarget);
 
 	@Override
 	public FlowExceptionHandler getExceptionHandler(Context context) {
@@ -60,26 +67,74 @@ public class FlowForkJoin extends FlowNode implements Action, DeployableEntity,
 		return result;
 	}
 
+	/**
+	 * Waits for all branches forked since the last join and provides their
+	 * results in the order in which the branches were forked. The first
+	 * failing branch cancels all others.
+	 */
 	@Override
 	public void execute(Context context) throws FlowException {
 
+		final Queue<Future> futures = context.getForkFutures();
+		final List<Object> results  = new ArrayList<>();
+
 		try {
 
-			Queue<Future> futures = context.getForkFutures();
+			Future f = null;
+			while ((f = futures.poll()) != null) {
+
+				// invoke get to force the promise to resolve and thus waiting for thread termination
+				final Object value = f.get();
+
+				if (value instanceof FlowResult) {
+
+					final FlowResult result = (FlowResult)value;
+
+					if (result.getError() != null) {
 
-			while(futures.size() > 0) {
-				//Poll head and invoke get to force the promise to resolve and thus waiting for thread termination
-				Future f = futures.poll();
-				if (f != null) {
-					f.get();
+						cancel(context, futures);
+						context.error(result.getError());
+
+						return;
+					}
+
+					results.add(result.getResult());
+
+				} else {
+
+					results.add(null);
 				}
 			}
 
+			context.setData(getUuid(), results);
+
 		} catch (ExecutionException | InterruptedException ex) {
 
+			cancel(context, futures);
+
 			throw new FlowException(ex, this);
 
+		} finally {
+
+			// branches forked after this join get a new cancellation flag
+			context.clearForkCancellation();
 		}
+	}
 
+	@Override
+	public Object get(final Context context) throws FlowException {
+		return context.getData(getUuid());
+	}
+
+	// ----- private methods -----
+	private void cancel(final Context context, final Queue<Future> futures) {
+
+		// running branches stop at their next step
+		context.getForkCancellation().set(true);
+
+		Future f = null;
+		while ((f = futures.poll()) != null) {
+			f.cancel(true);
+		}
 	}
 }
@@ -54,9 +54,9 @@ public class FlowGetProperty extends FlowDataSource {
 	@Override
 	public Object get(final Context context) throws FlowException {
 
-		final DataSource _nodeSource = getProperty(nodeSource);
-		final DataSource _nameSource = getProperty(propertyNameSource);
-		final String _propertyName   = getProperty(propertyName);
+		final DataSource _nodeSource = context.resolve(this, nodeSource);
+		final DataSource _nameSource = context.resolve(this, propertyNameSource);
+		final String _propertyName   = context.resolve(this, propertyName);
 
 		if (_nodeSource != null && (_nameSource != null || _propertyName != null) ) {
 
@@ -51,7 +51,7 @@ public class FlowIsTrue extends FlowCondition {
 	@Override
 	public Object get(final Context context) throws FlowException {
 
-		final List<DataSource> _dataSources = Iterables.toList(getProperty(FlowIsTrue.dataSources));
+		final List<DataSource> _dataSources = Iterables.toList(context.resolve(this, FlowIsTrue.dataSources));
 		if (_dataSources.isEmpty()) {
 
 			return false;
@@ -59,7 +59,7 @@ public class FlowIsTrue extends FlowCondition {
 
 		Boolean result = null;
 
-		for (final DataSource _dataSource : getProperty(FlowIsTrue.dataSources)) {
+		for (final DataSource _dataSource : context.resolve(this, FlowIsTrue.dataSources)) {
 
 			result = combine(result, FlowLogicCondition.getBoolean(context, _dataSource));
 		}
@@ -54,8 +54,8 @@ public class FlowKeyValue extends FlowBaseNode implements DataSource, Deployable
 	@Override
 	public Object get(final Context context) throws FlowException {
 
-		final String _key   = getProperty(key);
-		final DataSource _ds = getProperty(dataSource);
+		final String _key   = context.resolve(this, key);
+		final DataSource _ds = context.resolve(this, dataSource);
 
 		if (_key != null && _ds != null) {
 
@@ -50,7 +50,7 @@ public class FlowLog extends FlowActionNode implements DeployableEntity, Throwin
 
 	@Override
 	public void execute(final Context context) throws FlowException {
-		String _script = getProperty(script);
+		String _script = context.resolve(this, script);
 		if (_script == null) {
 			_script = "data";
 		}
@@ -59,7 +59,7 @@ public class FlowLog extends FlowActionNode implements DeployableEntity, Throwin
 
 		try {
 
-			final DataSource _dataSource = getProperty(dataSource);
+			final DataSource _dataSource = context.resolve(this, dataSource);
 
 			// make data available to action if present
 			if (_dataSource != null) {
@@ -52,21 +52,21 @@ public abstract class FlowLogicCondition extends FlowCondition implements Deploy
 	@Override
 	public Object get(final Context context) throws FlowException {
 
-		final List<FlowCondition> _dataSources = Iterables.toList(getProperty(dataSources));
+		final List<FlowCondition> _dataSources = Iterables.toList(context.resolve(this, dataSources));
 		if (_dataSources.isEmpty()) {
 
 			return false;
 		}
 
 
-		if (StreamSupport.stream(getProperty(dataSources).spliterator(), false).count() == 1) {
+		if (StreamSupport.stream(context.resolve(this, dataSources).spliterator(), false).count() == 1) {
 
-			return combine(null, getBoolean(context, getProperty(dataSources).iterator().next()));
+			return combine(null, getBoolean(context, context.resolve(this, dataSources).iterator().next()));
 		}
 
 		Boolean result = null;
 
-		for (final FlowCondition _dataSource : getProperty(dataSources)) {
+		for (final FlowCondition _dataSource : context.resolve(this, dataSources)) {
 
 			result = combine(result, getBoolean(context, _dataSource));
 		}
@@ -53,13 +53,13 @@ public class FlowNotEmpty extends FlowCondition implements DataSource, Deployabl
 	@Override
 	public Object get(final Context context) throws FlowException {
 
-		final List<DataSource> _dataSources = Iterables.toList(getProperty(dataSources));
+		final List<DataSource> _dataSources = Iterables.toList(context.resolve(this, dataSources));
 		if (_dataSources.isEmpty()) {
 
 			return false;
 		}
 
-		for (final DataSource _dataSource : getProperty(dataSources)) {
+		for (final DataSource _dataSource : context.resolve(this, dataSources)) {
 
 			Object currentData = _dataSource.get(context);
 			if (currentData == null) {
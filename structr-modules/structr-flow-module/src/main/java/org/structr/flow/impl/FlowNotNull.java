@@ -50,13 +50,13 @@ public class FlowNotNull extends FlowCondition implements DataSource, Deployable
 	@Override
 	public Object get(final Context context) throws FlowException {
 
-		final List<DataSource> _dataSources = Iterables.toList(getProperty(dataSources));
+		final List<DataSource> _dataSources = Iterables.toList(context.resolve(this, dataSources));
 		if (_dataSources.isEmpty()) {
 
 			return false;
 		}
 
-		for (final DataSource _dataSource : getProperty(dataSources)) {
+		for (final DataSource _dataSource : context.resolve(this, dataSources)) {
 
 			if (_dataSource.get(context) == null) {
 				return false;
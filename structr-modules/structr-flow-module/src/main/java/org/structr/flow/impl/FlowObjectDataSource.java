@@ -48,7 +48,7 @@ public class FlowObjectDataSource extends FlowDataSource {
 
 		final Map<String, Object> result = new LinkedHashMap<>();
 
-		for (final FlowKeyValue _keySource : getProperty(keyValueSources)) {
+		for (final FlowKeyValue _keySource : context.resolve(this, keyValueSources)) {
 
 			final Object item = _keySource.get(context);
 			if (item != null && item instanceof KeyValue) {
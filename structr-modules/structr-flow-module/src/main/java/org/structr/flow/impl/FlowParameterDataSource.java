@@ -43,7 +43,7 @@ public class FlowParameterDataSource extends FlowBaseNode implements DataSource,
 	@Override
 	public Object get(Context context) throws FlowException {
 
-		final String _key = getProperty(key);
+		final String _key = context.resolve(this, key);
 		if (_key != null) {
 
 			return context.getParameter(_key);
@@ -42,8 +42,8 @@ public class FlowParameterInput extends FlowBaseNode implements DeployableEntity
 
 
 	public void process(final Context context, final Context functionContext) throws FlowException {
-		DataSource _ds = getProperty(dataSource);
-		String _key = getProperty(key);
+		DataSource _ds = context.resolve(this, dataSource);
+		String _key = context.resolve(this, key);
 
 		if(_ds != null && _key != null) {
 			Object data = _ds.get(context);
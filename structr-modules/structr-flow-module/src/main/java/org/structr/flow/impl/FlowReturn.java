@@ -54,8 +54,8 @@ public class FlowReturn extends FlowNode implements Return, DeployableEntity, Th
 	@Override
 	public Object getResult(final Context context) throws FlowException {
 
-		final DataSource ds = getProperty(dataSource);
-		final String _script = getProperty(result);
+		final DataSource ds = context.resolve(this, dataSource);
+		final String _script = context.resolve(this, result);
 
 		String script = _script;
 		if (script == null || script.equals("")) {
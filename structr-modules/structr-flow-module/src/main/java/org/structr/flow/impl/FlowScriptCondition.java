@@ -51,9 +51,9 @@ public class FlowScriptCondition extends FlowCondition implements 	DeployableEnt
 
 		try {
 
-			final DataSource _ds = getProperty(dataSource);
-			final DataSource _sc = getProperty(scriptSource);
-			final String _script = getProperty(script);
+			final DataSource _ds = context.resolve(this, dataSource);
+			final DataSource _sc = context.resolve(this, scriptSource);
+			final String _script = context.resolve(this, script);
 			final String _dynamicScript = _sc != null ? (String)_sc.get(context) : null;
 
 
@@ -54,9 +54,9 @@ public class FlowStore extends FlowNode implements Store, DataSource, Deployable
 	@Override
 	public void handleStorage(Context context) throws FlowException {
 
-		Operation op = getProperty(operation);
-		String _key = getProperty(key);
-		DataSource ds = getProperty(dataSource);
+		Operation op = context.resolve(this, operation);
+		String _key = context.resolve(this, key);
+		DataSource ds = context.resolve(this, dataSource);
 
 		if(op != null && _key != null ) {
 
@@ -82,7 +82,7 @@ public class FlowStore extends FlowNode implements Store, DataSource, Deployable
 	@Override
 	public Object get(Context context) {
 
-		Operation op = getProperty(operation);
+		Operation op = context.resolve(this, operation);
 
 		try {
 
@@ -63,11 +63,11 @@ public class FlowTypeQuery extends FlowBaseNode implements DataSource, Deployabl
 
 		try (Tx tx = app.tx()) {
 
-			Class clazz = StructrApp.getConfiguration().getNodeEntityClass(getProperty(dataType));
+			Class clazz = StructrApp.getConfiguration().getNodeEntityClass(context.resolve(this, dataType));
 
 			JSONObject jsonObject = null;
 
-			final String queryString = getProperty(query);
+			final String queryString = context.resolve(this, query);
 			if (queryString != null) {
 				jsonObject = new JSONObject(queryString);
 			}
@@ -188,7 +188,7 @@ public class FlowTypeQuery extends FlowBaseNode implements DataSource, Deployabl
 		if (value != null) {
 			try {
 
-				DataSource ds = getProperty(FlowTypeQuery.dataSource);
+				DataSource ds = context.resolve(this, FlowTypeQuery.dataSource);
 
 				if (ds != null) {
 
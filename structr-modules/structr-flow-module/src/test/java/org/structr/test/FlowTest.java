@@ -35,9 +35,11 @@ import java.util.stream.StreamSupport;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.Group;
 import org.structr.core.graph.NodeAttribute;
+import org.structr.flow.engine.FlowError;
 import org.structr.test.web.StructrUiTest;
 import org.structr.web.entity.User;
 import org.structr.web.entity.dom.DOMNode;
@@ -49,6 +51,8 @@ import org.structr.web.entity.html.Html;
 import org.structr.web.entity.html.Title;
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
 import static org.testng.AssertJUnit.fail;
 import org.w3c.dom.Node;
 
@@ -142,6 +146,241 @@ public class FlowTest extends StructrUiTest {
 
 	}
 
+	@Test
+	public void testParallelFlowForEach() {
+
+		FlowContainer container = null;
+
+		try (final Tx tx = app.tx()) {
+
+			container = app.create(FlowContainer.class, "testParallelFlowForEach");
+
+			final FlowForEach forEach = app.create(FlowForEach.class);
+			forEach.setProperty(FlowForEach.flowContainer, container);
+			forEach.setProperty(FlowForEach.parallel, true);
+			container.setProperty(FlowContainer.startNode, forEach);
+
+			final FlowDataSource ds = app.create(FlowDataSource.class);
+			ds.setProperty(FlowDataSource.query, "{return ['a','b','c','d','e','f','g','h','i'];}");
+			ds.setProperty(FlowDataSource.flowContainer, container);
+			forEach.setProperty(FlowForEach.dataSource, ds);
+
+			final FlowDataSource start = app.create(FlowDataSource.class);
+			start.setProperty(FlowDataSource.query, "'x'");
+			start.setProperty(FlowDataSource.flowContainer, container);
+
+			final FlowAggregate agg = app.create(FlowAggregate.class);
+			agg.setProperty(FlowAggregate.flowContainer, container);
+			agg.setProperty(FlowAggregate.dataSource, forEach);
+			agg.setProperty(FlowAggregate.startValueSource, start);
+			agg.setProperty(FlowAggregate.script, "{ return $.get('data') + $.get('currentData'); }");
+			forEach.setProperty(FlowForEach.loopBody, agg);
+
+			final FlowReturn ret = app.create(FlowReturn.class);
+			ret.setProperty(FlowReturn.flowContainer, container);
+			ret.setProperty(FlowReturn.dataSource, agg);
+			forEach.setProperty(FlowForEach.next, ret);
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			// iterations run concurrently, but aggregation must happen in iteration order
+			assertEquals("xabcdefghi", container.evaluate(securityContext, new HashMap<>()).iterator().next());
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testParallelFlowForEachWithDataAccess() {
+
+		FlowContainer readingLoop = null;
+		FlowContainer writingLoop = null;
+
+		try (final Tx tx = app.tx()) {
+
+			for (int i=1; i<=5; i++) {
+				app.create(Group.class, "g" + i);
+			}
+
+			// each iteration reads the name of its group in its own transaction
+			readingLoop = createParallelLoop("readingLoop", "{ return $.get('data').name.toUpperCase(); }");
+
+			// a single iteration modifies data, which is not allowed in parallel loops
+			writingLoop = createParallelLoop("writingLoop", "{ let group = $.get('data'); if (group.name === 'g3') { $.create('Group', 'name', 'illegal'); } return group.name; }");
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertEquals("xG1G2G3G4G5", readingLoop.evaluate(securityContext, new HashMap<>()).iterator().next());
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			final Object result = writingLoop.evaluate(securityContext, new HashMap<>()).iterator().next();
+
+			assertTrue("Modifying data in a parallel loop iteration should fail the loop", result instanceof FlowError);
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNull("Changes of a failed parallel loop iteration should be rolled back", app.nodeQuery(Group.class).andName("illegal").getFirst());
+
+			// uncommitted changes are only visible to a sequential loop
+			app.create(Group.class, "g6");
+
+			assertEquals("Parallel loop should run sequentially if the transaction has pending changes", "xG1G2G3G4G5G6", readingLoop.evaluate(securityContext, new HashMap<>()).iterator().next());
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testFlowExecutionPlanInvalidation() {
+
+		FlowContainer container = null;
+		FlowAction action       = null;
+		FlowReturn first        = null;
+		FlowReturn second       = null;
+
+		try (final Tx tx = app.tx()) {
+
+			container = app.create(FlowContainer.class, "testFlowExecutionPlan");
+
+			action = app.create(FlowAction.class);
+			action.setProperty(FlowAction.script, "{ return 1; }");
+			action.setProperty(FlowAction.flowContainer, container);
+
+			final FlowDataSource ds1 = app.create(FlowDataSource.class);
+			ds1.setProperty(FlowDataSource.query, "'first'");
+			ds1.setProperty(FlowDataSource.flowContainer, container);
+
+			final FlowDataSource ds2 = app.create(FlowDataSource.class);
+			ds2.setProperty(FlowDataSource.query, "'second'");
+			ds2.setProperty(FlowDataSource.flowContainer, container);
+
+			first = app.create(FlowReturn.class);
+			first.setProperty(FlowReturn.dataSource, ds1);
+			first.setProperty(FlowReturn.flowContainer, container);
+
+			second = app.create(FlowReturn.class);
+			second.setProperty(FlowReturn.dataSource, ds2);
+			second.setProperty(FlowReturn.flowContainer, container);
+
+			action.setProperty(FlowAction.next, first);
+			container.setProperty(FlowContainer.startNode, action);
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertEquals("first", container.evaluate(securityContext, new HashMap<>()).iterator().next());
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		// modifying the flow must invalidate the cached execution plan
+		try (final Tx tx = app.tx()) {
+
+			action.setProperty(FlowAction.next, second);
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertEquals("second", container.evaluate(securityContext, new HashMap<>()).iterator().next());
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		// uncommitted modifications are visible in their own transaction only
+		try (final Tx tx = app.tx()) {
+
+			action.setProperty(FlowAction.next, first);
+
+			assertEquals("first", container.evaluate(securityContext, new HashMap<>()).iterator().next());
+
+			// no tx.success(), the modification is rolled back
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertEquals("second", container.evaluate(securityContext, new HashMap<>()).iterator().next());
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
 	@Test
 	public void testFlowRepeater() {
 
@@ -225,6 +464,238 @@ public class FlowTest extends StructrUiTest {
 
 	}
 
+	@Test
+	public void testFlowForkJoin() {
+
+		FlowContainer container = null;
+
+		try (final Tx tx = app.tx()) {
+
+			container = app.create(FlowContainer.class, "testFlowForkJoin");
+
+			// the first branch finishes last
+			final FlowFork first = createFork(container, "{ $.sleep(500); return 'a'; }");
+			final FlowFork second = createFork(container, "'b'");
+			container.setProperty(FlowContainer.startNode, first);
+			first.setProperty(FlowFork.next, second);
+
+			final FlowForkJoin join = app.create(FlowForkJoin.class);
+			join.setProperty(FlowForkJoin.flowContainer, container);
+			second.setProperty(FlowFork.next, join);
+
+			final FlowReturn ret = app.create(FlowReturn.class);
+			ret.setProperty(FlowReturn.flowContainer, container);
+			ret.setProperty(FlowReturn.dataSource, join);
+			join.setProperty(FlowForkJoin.next, ret);
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			final List<Object> result = StreamSupport.stream(container.evaluate(securityContext, new HashMap<>()).spliterator(), false).collect(Collectors.toList());
+
+			assertEquals("Fork results should be joined in the order of the branches", Arrays.asList("a", "b"), result);
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testFlowForkCancellation() {
+
+		FlowContainer container = null;
+
+		try (final Tx tx = app.tx()) {
+
+			container = app.create(FlowContainer.class, "testFlowForkCancellation");
+
+			// the first branch fails because its action is connected to itself
+			final FlowAction failing = app.create(FlowAction.class);
+			failing.setProperty(FlowAction.flowContainer, container);
+			failing.setProperty(FlowAction.script, "{ return 1; }");
+			failing.setProperty(FlowAction.next, failing);
+
+			final FlowFork first = app.create(FlowFork.class);
+			first.setProperty(FlowFork.flowContainer, container);
+			first.setProperty(FlowFork.forkBody, failing);
+			container.setProperty(FlowContainer.startNode, first);
+
+			// the second branch is still running when the first one fails
+			final FlowAction waiting = app.create(FlowAction.class);
+			waiting.setProperty(FlowAction.flowContainer, container);
+			waiting.setProperty(FlowAction.script, "{ $.sleep(1000); }");
+
+			final FlowAction storing = app.create(FlowAction.class);
+			storing.setProperty(FlowAction.flowContainer, container);
+			storing.setProperty(FlowAction.script, "{ $.application_store_put('testFlowForkCancellation', true); }");
+			waiting.setProperty(FlowAction.next, storing);
+
+			final FlowFork second = app.create(FlowFork.class);
+			second.setProperty(FlowFork.flowContainer, container);
+			second.setProperty(FlowFork.forkBody, waiting);
+			first.setProperty(FlowFork.next, second);
+
+			final FlowForkJoin join = app.create(FlowForkJoin.class);
+			join.setProperty(FlowForkJoin.flowContainer, container);
+			second.setProperty(FlowFork.next, join);
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			final Object result = container.evaluate(securityContext, new HashMap<>()).iterator().next();
+
+			assertTrue("A failing branch should fail the join", result instanceof FlowError);
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		// give the second branch time to finish
+		try { Thread.sleep(2000); } catch (InterruptedException ex) {}
+
+		assertNull("A failing branch should cancel the other branches", Services.getInstance().getApplicationStore().get("testFlowForkCancellation"));
+	}
+
+	@Test
+	public void testParallelFlowForEachCancellation() {
+
+		FlowContainer container = null;
+
+		try (final Tx tx = app.tx()) {
+
+			container = app.create(FlowContainer.class, "testParallelFlowForEachCancellation");
+
+			final FlowForEach forEach = app.create(FlowForEach.class);
+			forEach.setProperty(FlowForEach.flowContainer, container);
+			forEach.setProperty(FlowForEach.parallel, true);
+			container.setProperty(FlowContainer.startNode, forEach);
+
+			final FlowDataSource ds = app.create(FlowDataSource.class);
+			ds.setProperty(FlowDataSource.query, "{ return [1, 2, 3, 4, 5, 6, 7, 8]; }");
+			ds.setProperty(FlowDataSource.flowContainer, container);
+			forEach.setProperty(FlowForEach.dataSource, ds);
+
+			// the first iteration fails because it modifies data, all others are still running
+			final FlowAction action = app.create(FlowAction.class);
+			action.setProperty(FlowAction.flowContainer, container);
+			action.setProperty(FlowAction.dataSource, forEach);
+			action.setProperty(FlowAction.script, "{ if ($.get('data') === 1) { $.create('Group', 'name', 'cancelling'); } else { $.sleep(1000); } }");
+			forEach.setProperty(FlowForEach.loopBody, action);
+
+			final FlowAction storing = app.create(FlowAction.class);
+			storing.setProperty(FlowAction.flowContainer, container);
+			storing.setProperty(FlowAction.dataSource, forEach);
+			storing.setProperty(FlowAction.script, "{ $.application_store_put('testParallelFlowForEachCancellation' + $.get('data'), true); }");
+			action.setProperty(FlowAction.next, storing);
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			final Object result = container.evaluate(securityContext, new HashMap<>()).iterator().next();
+
+			assertTrue("A failing iteration should fail the loop", result instanceof FlowError);
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		// give running iterations time to finish
+		try { Thread.sleep(2000); } catch (InterruptedException ex) {}
+
+		for (int i=2; i<=8; i++) {
+			assertNull("A failing iteration should cancel the other iterations", Services.getInstance().getApplicationStore().get("testParallelFlowForEachCancellation" + i));
+		}
+	}
+
+	private FlowContainer createParallelLoop(final String name, final String actionScript) throws FrameworkException {
+
+		final FlowContainer container = app.create(FlowContainer.class, name);
+
+		final FlowForEach forEach = app.create(FlowForEach.class);
+		forEach.setProperty(FlowForEach.flowContainer, container);
+		forEach.setProperty(FlowForEach.parallel, true);
+		container.setProperty(FlowContainer.startNode, forEach);
+
+		final FlowDataSource ds = app.create(FlowDataSource.class);
+		ds.setProperty(FlowDataSource.query, "{ return $.sort($.find('Group'), 'name'); }");
+		ds.setProperty(FlowDataSource.flowContainer, container);
+		forEach.setProperty(FlowForEach.dataSource, ds);
+
+		final FlowAction action = app.create(FlowAction.class);
+		action.setProperty(FlowAction.flowContainer, container);
+		action.setProperty(FlowAction.dataSource, forEach);
+		action.setProperty(FlowAction.script, actionScript);
+		forEach.setProperty(FlowForEach.loopBody, action);
+
+		final FlowDataSource start = app.create(FlowDataSource.class);
+		start.setProperty(FlowDataSource.query, "'x'");
+		start.setProperty(FlowDataSource.flowContainer, container);
+
+		final FlowAggregate agg = app.create(FlowAggregate.class);
+		agg.setProperty(FlowAggregate.flowContainer, container);
+		agg.setProperty(FlowAggregate.dataSource, action);
+		agg.setProperty(FlowAggregate.startValueSource, start);
+		agg.setProperty(FlowAggregate.script, "{ return $.get('data') + $.get('currentData'); }");
+		action.setProperty(FlowAction.next, agg);
+
+		final FlowReturn ret = app.create(FlowReturn.class);
+		ret.setProperty(FlowReturn.flowContainer, container);
+		ret.setProperty(FlowReturn.dataSource, agg);
+		forEach.setProperty(FlowForEach.next, ret);
+
+		return container;
+	}
+
+	private FlowFork createFork(final FlowContainer container, final String query) throws FrameworkException {
+
+		final FlowDataSource ds = app.create(FlowDataSource.class);
+		ds.setProperty(FlowDataSource.flowContainer, container);
+		ds.setProperty(FlowDataSource.query, query);
+
+		final FlowReturn ret = app.create(FlowReturn.class);
+		ret.setProperty(FlowReturn.flowContainer, container);
+		ret.setProperty(FlowReturn.dataSource, ds);
+
+		final FlowFork fork = app.create(FlowFork.class);
+		fork.setProperty(FlowFork.flowContainer, container);
+		fork.setProperty(FlowFork.forkBody, ret);
+
+		return fork;
+	}
+
 	private <T extends Node> T createElement(final Page page, final DOMNode parent, final String tag, final String... content) {
 
 		final T child = (T)page.createElement(tag);
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.ldap;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.lang.StringUtils;
+import org.apache.directory.api.ldap.model.exception.LdapException;
+import org.apache.directory.ldap.client.api.LdapConnection;
+import org.apache.directory.ldap.client.api.LdapNetworkConnection;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded pool of LDAP connections that are bound with the configured
+ * bind DN. Connections that were used to verify user credentials are bound
+ * with the configured bind DN again before they are returned to the pool.
+ */
+public class LDAPConnectionPool {
+
+	private static final Logger logger               = LoggerFactory.getLogger(LDAPConnectionPool.class);
+	private static final long borrowTimeout          = 30;
+
+	private final BlockingQueue<LdapConnection> idle = new LinkedBlockingQueue<>();
+	private final Semaphore permits;
+	private final String configuration;
+	private final String host;
+	private final int port;
+	private final boolean useSsl;
+	private final String bindDn;
+	private final String secret;
+	private final long timeout;
+	private volatile boolean closed                  = false;
+
+	public LDAPConnectionPool(final String host, final int port, final boolean useSsl, final String bindDn, final String secret, final long timeout, final int size) {
+
+		this.permits       = new Semaphore(Math.max(1, size));
+		this.configuration = getConfiguration(host, port, useSsl, bindDn, secret, timeout, size);
+		this.host          = host;
+		this.port          = port;
+		this.useSsl        = useSsl;
+		this.bindDn        = bindDn;
+		this.secret        = secret;
+		this.timeout       = timeout;
+	}
+
+	/**
+	 * Returns a connected and bound connection. The connection must be
+	 * returned with {@link #release} after use.
+	 */
+	public LdapConnection borrow() throws LdapException {
+
+		try {
+
+			if (!permits.tryAcquire(borrowTimeout, TimeUnit.SECONDS)) {
+				throw new LdapException("No LDAP connection available after " + borrowTimeout + " seconds");
+			}
+
+		} catch (InterruptedException iex) {
+
+			Thread.currentThread().interrupt();
+			throw new LdapException("Interrupted while waiting for an LDAP connection");
+		}
+
+		try {
+
+			LdapConnection connection = idle.poll();
+
+			while (connection != null && !connection.isConnected()) {
+
+				close(connection);
+				connection = idle.poll();
+			}
+
+			if (connection == null) {
+				connection = open();
+			}
+
+			return connection;
+
+		} catch (LdapException | RuntimeException ex) {
+
+			permits.release();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Returns a connection to the pool. Connections in an unknown state
+	 * must be released with reusable = false, they are closed.
+	 */
+	public void release(final LdapConnection connection, final boolean reusable) {
+
+		if (connection != null) {
+
+			if (reusable && !closed && connection.isConnected()) {
+
+				idle.offer(connection);
+
+			} else {
+
+				close(connection);
+			}
+
+			permits.release();
+		}
+	}
+
+	/**
+	 * Checks the given credentials with a pooled connection.
+	 */
+	public boolean canBind(final String dn, final String password) throws LdapException {
+
+		final LdapConnection connection = borrow();
+		boolean reusable                = false;
+		boolean success                 = false;
+
+		try {
+
+			connection.bind(dn, password);
+			success = true;
+
+		} catch (LdapException lex) {
+
+			logger.debug("Cannot bind {}: {}", dn, lex.getMessage());
+
+		} finally {
+
+			try {
+
+				// restore the identity of the pooled connection
+				bind(connection);
+				reusable = true;
+
+			} catch (LdapException lex) {
+
+				logger.debug("Unable to restore binding of pooled LDAP connection: {}", lex.getMessage());
+
+			} finally {
+
+				release(connection, reusable);
+			}
+		}
+
+		return success;
+	}
+
+	public String getConfiguration() {
+		return configuration;
+	}
+
+	public void close() {
+
+		closed = true;
+
+		LdapConnection connection = idle.poll();
+		while (connection != null) {
+
+			close(connection);
+			connection = idle.poll();
+		}
+	}
+
+	public static String getConfiguration(final String host, final int port, final boolean useSsl, final String bindDn, final String secret, final long timeout, final int size) {
+		return host + ":" + port + ":" + useSsl + ":" + bindDn + ":" + secret.hashCode() + ":" + timeout + ":" + size;
+	}
+
+	// ----- private methods -----
+	private LdapConnection open() throws LdapException {
+
+		final LdapConnection connection = new LdapNetworkConnection(host, port, useSsl);
+
+		connection.setTimeOut(timeout);
+
+		try {
+
+			if (!connection.connect()) {
+				throw new LdapException("Unable to connect to LDAP server " + host + ":" + port);
+			}
+
+			bind(connection);
+
+			return connection;
+
+		} catch (LdapException | RuntimeException ex) {
+
+			close(connection);
+			throw ex;
+		}
+	}
+
+	private void bind(final LdapConnection connection) throws LdapException {
+
+		if (StringUtils.isNotBlank(bindDn) && StringUtils.isNotBlank(secret)) {
+
+			connection.bind(bindDn, secret);
+
+		} else if (StringUtils.isNotBlank(bindDn)) {
+
+			connection.bind(bindDn);
+
+		} else {
+
+			connection.anonymousBind();
+		}
+	}
+
+	private void close(final LdapConnection connection) {
+
+		try {
+
+			connection.close();
+
+		} catch (IOException ioex) {
+			logger.debug("Unable to close LDAP connection: {}", ioex.getMessage());
+		}
+	}
+}
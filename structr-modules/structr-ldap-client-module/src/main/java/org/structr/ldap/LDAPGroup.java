@@ -52,6 +52,8 @@ public interface LDAPGroup extends Group {
 		type.addStringProperty("path",              PropertyView.Public, PropertyView.Ui);
 		type.addStringProperty("filter",            PropertyView.Public, PropertyView.Ui);
 		type.addStringProperty("scope",             PropertyView.Public, PropertyView.Ui);
+		type.addStringProperty("lastLDAPGroupState");
+		type.addStringProperty("lastLDAPMemberModification");
 
 		type.addPropertyGetter("distinguishedName", String.class);
 		type.addPropertySetter("distinguishedName", String.class);
@@ -21,7 +21,9 @@ package org.structr.ldap;
 import ch.qos.logback.classic.Level;
 import com.google.gson.GsonBuilder;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Base64;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -30,17 +32,23 @@ import java.util.Set;
 import org.apache.commons.lang.StringUtils;
 import org.apache.directory.api.ldap.codec.osgi.DefaultLdapCodecService;
 import org.apache.directory.api.ldap.codec.standalone.CodecFactoryUtil;
+import org.apache.directory.api.ldap.model.constants.SchemaConstants;
 import org.apache.directory.api.ldap.model.cursor.CursorException;
-import org.apache.directory.api.ldap.model.cursor.CursorLdapReferralException;
-import org.apache.directory.api.ldap.model.cursor.EntryCursor;
+import org.apache.directory.api.ldap.model.cursor.SearchCursor;
 import org.apache.directory.api.ldap.model.entry.Attribute;
 import org.apache.directory.api.ldap.model.entry.Entry;
 import org.apache.directory.api.ldap.model.entry.Value;
 import org.apache.directory.api.ldap.model.exception.LdapException;
 import org.apache.directory.api.ldap.model.exception.LdapInvalidAttributeValueException;
+import org.apache.directory.api.ldap.model.exception.LdapInvalidDnException;
+import org.apache.directory.api.ldap.model.message.SearchRequest;
+import org.apache.directory.api.ldap.model.message.SearchRequestImpl;
+import org.apache.directory.api.ldap.model.message.SearchResultDone;
 import org.apache.directory.api.ldap.model.message.SearchScope;
+import org.apache.directory.api.ldap.model.message.controls.PagedResults;
+import org.apache.directory.api.ldap.model.message.controls.PagedResultsImpl;
+import org.apache.directory.api.ldap.model.name.Dn;
 import org.apache.directory.ldap.client.api.LdapConnection;
-import org.apache.directory.ldap.client.api.LdapNetworkConnection;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.config.Settings;
@@ -52,8 +60,10 @@ import org.structr.api.service.StopServiceForMaintenanceMode;
 import org.structr.api.service.StructrServices;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.app.App;
+import org.structr.core.app.Query;
 import org.structr.core.app.StructrApp;
 import org.structr.core.entity.Group;
+import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 import org.structr.schema.SchemaService;
 
@@ -65,8 +75,8 @@ import org.structr.schema.SchemaService;
 @StopServiceForMaintenanceMode
 public class LDAPService extends Thread implements SingletonService {
 
-	private static final Logger logger   = LoggerFactory.getLogger(LDAPService.class.getName());
-	private final long connectionTimeout = 1000;
+	private static final Logger logger        = LoggerFactory.getLogger(LDAPService.class.getName());
+	private LDAPConnectionPool connectionPool = null;
 
 	public LDAPService() {
 
@@ -80,12 +90,8 @@ public class LDAPService extends Thread implements SingletonService {
 	public void synchronizeGroup(final LDAPGroup group)  throws IOException, LdapException, CursorException, FrameworkException {
 
 		final String scope                           = getScope();
-		final String secret                          = getSecret();
-		final String bindDn                          = getBindDN();
 		final String host                            = getHost();
 		final int port                               = getPort();
-		final boolean useSsl                         = getUseSSL();
-		final LdapConnection connection              = new LdapNetworkConnection(host, port, useSsl);
 		final String groupDn                         = group.getDistinguishedName();
 		final String groupFilter                     = group.getFilter();
 		final String groupScope                      = group.getScope();
@@ -101,72 +107,53 @@ public class LDAPService extends Thread implements SingletonService {
 			return;
 		}
 
-		connection.setTimeOut(connectionTimeout);
+		LDAPConnectionPool pool   = null;
+		LdapConnection connection = null;
+		boolean reusable          = false;
 
 		try {
 
-			if (connection.connect()) {
+			pool       = getConnectionPool();
+			connection = pool.borrow();
 
-				if (StringUtils.isNotBlank(bindDn) && StringUtils.isNotBlank(secret)) {
+			// decide which method to use for synchronization
+			if (useDistinguishedName) {
 
-					connection.bind(bindDn, secret);
+				logger.debug("Updating LDAPGroup {} ({}) with DN {} on LDAP server {}:{}..", groupName, group.getUuid(), groupDn, host, port);
 
-				} else if (StringUtils.isNotBlank(bindDn)) {
+				// use dn
+				updateWithGroupDn(group, connection, groupDn, scope);
 
-					connection.bind(bindDn);
-				}
-
-				// decide which method to use for synchronization
-				if (useDistinguishedName) {
-
-					logger.debug("Updating LDAPGroup {} ({}) with DN {} on LDAP server {}:{}..", groupName, group.getUuid(), groupDn, host, port);
-
-					// use dn
-					updateWithGroupDn(group, connection, groupDn, scope);
-
-				} else if (useFilterAndScope) {
-
-					// use filter + scope
-					logger.debug("Updating LDAPGroup {} ({}) with path {}, filter {} and scope {} on LDAP server {}:{}..", groupName, group.getUuid(), groupPath, groupFilter, groupScope, host, port);
+			} else if (useFilterAndScope) {
 
-					updateWithFilterAndScope(group, connection, groupPath, groupFilter, groupScope);
-				}
+				// use filter + scope
+				logger.debug("Updating LDAPGroup {} ({}) with path {}, filter {} and scope {} on LDAP server {}:{}..", groupName, group.getUuid(), groupPath, groupFilter, groupScope, host, port);
 
-				connection.unBind();
+				updateWithFilterAndScope(group, connection, groupPath, groupFilter, groupScope);
 			}
 
+			reusable = true;
+
 		} catch (Throwable t) {
 
 			logger.warn("Unable to sync group {}: {}", group.getName(), t.getMessage());
 
 		} finally {
 
-			connection.close();
+			if (pool != null) {
+				pool.release(connection, reusable);
+			}
 		}
 	}
 
 	public boolean canSuccessfullyBind(final String dn, final String secret) {
 
-		final String host               = getHost();
-		final int port                  = getPort();
-		final boolean useSsl            = getUseSSL();
-		final LdapConnection connection = new LdapNetworkConnection(host, port, useSsl);
-
-		connection.setTimeOut(connectionTimeout);
-
 		try {
-			if (connection.connect()) {
 
-				connection.bind(dn, secret);
-				connection.unBind();
-			}
+			return getConnectionPool().canBind(dn, secret);
 
-			connection.close();
-
-			return true;
-
-		} catch (LdapException | IOException ex) {
-			logger.warn("Cannot bind {} on LDAP server {}: {}", dn, (host + ":" + port), ex.getMessage());
+		} catch (LdapException ex) {
+			logger.warn("Cannot bind {} on LDAP server {}: {}", dn, (getHost() + ":" + getPort()), ex.getMessage());
 		}
 
 		return false;
@@ -204,8 +191,43 @@ public class LDAPService extends Thread implements SingletonService {
 		return Settings.LDAPUseSSL.getValue(false);
 	}
 
+	public boolean isDeltaSync() {
+		return Settings.LDAPDeltaSync.getValue(false);
+	}
+
+	public String getDeltaAttribute() {
+		return Settings.LDAPDeltaAttribute.getValue("modifyTimestamp");
+	}
+
 	// ----- private methods -----
-	private LDAPUser getOrCreateUser(final Entry userEntry) throws FrameworkException {
+	/**
+	 * Returns the connection pool for the current configuration. The pool is
+	 * replaced when the connection settings have changed.
+	 */
+	private synchronized LDAPConnectionPool getConnectionPool() {
+
+		final String host     = getHost();
+		final int port        = getPort();
+		final boolean useSsl  = getUseSSL();
+		final String bindDn   = getBindDN();
+		final String secret   = getSecret();
+		final long timeout    = Settings.LDAPConnectTimeout.getValue(1000);
+		final int size        = Settings.LDAPPoolSize.getValue(4);
+		final String config   = LDAPConnectionPool.getConfiguration(host, port, useSsl, bindDn, secret, timeout, size);
+
+		if (connectionPool == null || !config.equals(connectionPool.getConfiguration())) {
+
+			if (connectionPool != null) {
+				connectionPool.close();
+			}
+
+			connectionPool = new LDAPConnectionPool(host, port, useSsl, bindDn, secret, timeout, size);
+		}
+
+		return connectionPool;
+	}
+
+	private LDAPUser getOrCreateUser(final Entry userEntry, final Map<String, LDAPUser> existingUsers) throws FrameworkException {
 
 		final App app                = StructrApp.getInstance();
 		final PropertyMap attributes = new PropertyMap();
@@ -213,9 +235,11 @@ public class LDAPService extends Thread implements SingletonService {
 
 		if (originId != null) {
 
+			final String modification = getDeltaValue(userEntry);
+
 			attributes.put(StructrApp.key(LDAPUser.class, "originId"), originId);
 
-			LDAPUser user = app.nodeQuery(LDAPUser.class).and(attributes).getFirst();
+			LDAPUser user = existingUsers.get(originId);
 			if (user == null) {
 
 				logger.debug("Creating new user for originId {}", originId);
@@ -224,8 +248,15 @@ public class LDAPService extends Thread implements SingletonService {
 				if (user != null) {
 
 					logger.debug("User created: {}", user.getUuid());
+					existingUsers.put(originId, user);
 				}
 
+			} else if (isDeltaSync() && modification != null && modification.equals(user.getProperty(StructrApp.key(LDAPUser.class, "lastLDAPModification")))) {
+
+				logger.debug("Existing user {} found for originId {}, not modified since last synchronization", user.getUuid(), originId);
+
+				return user;
+
 			} else {
 
 				logger.debug("Existing user {} found for originId {}", user.getUuid(), originId);
@@ -233,6 +264,7 @@ public class LDAPService extends Thread implements SingletonService {
 
 			// update user
 			user.initializeFrom(userEntry);
+			user.setProperty(StructrApp.key(LDAPUser.class, "lastLDAPModification"), modification);
 
 			return user;
 
@@ -244,20 +276,40 @@ public class LDAPService extends Thread implements SingletonService {
 		return null;
 	}
 
-	// ----- private methods -----
 	private void updateWithGroupDn(final LDAPGroup group, final LdapConnection connection, final String groupDn, final String scope) throws IOException, LdapException, CursorException, FrameworkException {
 
+		final List<Entry> groupEntries = search(connection, groupDn, "(objectclass=*)", SearchScope.valueOf(scope));
+
+		updateMembers(group, connection, groupEntries, groupDn + "|" + scope);
+	}
+
+	private void updateWithFilterAndScope(final LDAPGroup group, final LdapConnection connection, final String path, final String groupFilter, final String groupScope) throws IOException, LdapException, CursorException, FrameworkException {
+
+		final List<Entry> groupEntries = search(connection, path, groupFilter, SearchScope.valueOf(groupScope));
+
+		updateMembers(group, connection, groupEntries, path + "|" + groupFilter + "|" + groupScope);
+	}
+
+	/**
+	 * Updates the members of the given group from the given LDAP group entries.
+	 * In delta mode, group membership is only replaced when one of the group
+	 * entries has changed since the last synchronization, otherwise only the
+	 * members that were modified since then are updated.
+	 */
+	private void updateMembers(final LDAPGroup group, final LdapConnection connection, final List<Entry> groupEntries, final String source) throws IOException, LdapException, CursorException, FrameworkException {
+
+		final PropertyKey<String> groupStateKey      = StructrApp.key(LDAPGroup.class, "lastLDAPGroupState");
+		final PropertyKey<String> memberStateKey     = StructrApp.key(LDAPGroup.class, "lastLDAPMemberModification");
 		final Map<String, String> possibleGroupNames = getGroupMapping();
-		final List<LDAPUser> members                 = new LinkedList<>();
 		final Set<String> memberDNs                  = new LinkedHashSet<>();
+		final String groupState                      = getGroupState(groupEntries, source);
+		final String lastMemberModification          = group.getProperty(memberStateKey);
 
 		// fetch DNs of all group members
-		try (final EntryCursor cursor = connection.search(groupDn, "(objectclass=*)", SearchScope.valueOf(scope))) {
-
-			while (cursor.next()) {
+		for (final Entry entry : groupEntries) {
 
-				final Entry entry           = cursor.get();
-				final Attribute objectClass = entry.get("objectclass");
+			final Attribute objectClass = entry.get("objectclass");
+			if (objectClass != null) {
 
 				for (final java.util.Map.Entry<String, String> groupEntry : possibleGroupNames.entrySet()) {
 
@@ -280,88 +332,343 @@ public class LDAPService extends Thread implements SingletonService {
 			}
 		}
 
-		// resolve users
-		for (final String memberDN : memberDNs) {
+		if (isDeltaSync() && groupState != null && lastMemberModification != null && groupState.equals(group.getProperty(groupStateKey))) {
 
-			try (final EntryCursor cursor = connection.search(memberDN, "(objectclass=*)", SearchScope.valueOf(scope))) {
+			// group entries unchanged, only update members that were modified since the last synchronization
+			final List<Entry> entries         = resolveMembers(connection, memberDNs, "(" + getDeltaAttribute() + ">=" + escapeFilterValue(lastMemberModification) + ")");
+			final Map<String, LDAPUser> users = getExistingUsers(entries);
 
-				while (cursor.next()) {
+			for (final Entry entry : entries) {
+				getOrCreateUser(entry, users);
+			}
+
+			logger.info("{} of {} users updated", entries.size(), memberDNs.size());
+
+			group.setProperty(memberStateKey, getMaxDeltaValue(entries, lastMemberModification));
+
+		} else {
+
+			final List<Entry> entries         = resolveMembers(connection, memberDNs, null);
+			final Map<String, LDAPUser> users = getExistingUsers(entries);
+			final List<LDAPUser> members      = new LinkedList<>();
+
+			for (final Entry entry : entries) {
 
-					final Entry entry   = cursor.get();
-					final LDAPUser user = getOrCreateUser(entry);
+				final LDAPUser user = getOrCreateUser(entry, users);
+				if (user != null) {
 
 					members.add(user);
 				}
 			}
+
+			logger.info("{} users updated", members.size());
+
+			// update members of group to new state (will remove all members that are not part of the group, as expected)
+			group.setProperty(StructrApp.key(Group.class, "members"), members);
+			group.setProperty(groupStateKey, groupState);
+			group.setProperty(memberStateKey, getMaxDeltaValue(entries, null));
 		}
+	}
+
+	/**
+	 * Resolves the given member DNs with one search per parent DN and batch,
+	 * using an OR filter over the relative DNs of the members. DNs that cannot
+	 * be expressed as a filter (multi-valued or escaped RDNs) are resolved
+	 * individually.
+	 */
+	private List<Entry> resolveMembers(final LdapConnection connection, final Set<String> memberDNs, final String additionalFilter) throws IOException, LdapException, CursorException {
+
+		final Map<String, Map<String, String[]>> byParent = new LinkedHashMap<>();
+		final List<String> unbatched                      = new LinkedList<>();
+		final List<Entry> entries                         = new LinkedList<>();
+		final int batchSize                               = Math.max(1, Settings.LDAPBatchSize.getValue(100));
+
+		for (final String memberDN : memberDNs) {
+
+			try {
+
+				final Dn dn       = new Dn(memberDN);
+				final String[] av = dn.isEmpty() ? null : parseRdn(dn.getRdn().getName());
+
+				if (av != null) {
+
+					byParent.computeIfAbsent(dn.getParent().getName(), k -> new LinkedHashMap<>()).put(getRdnKey(av), av);
+
+				} else {
+
+					unbatched.add(memberDN);
+				}
+
+			} catch (LdapInvalidDnException lex) {
+				logger.warn("Ignoring invalid member DN {}: {}", memberDN, lex.getMessage());
+			}
+		}
+
+		for (final java.util.Map.Entry<String, Map<String, String[]>> parent : byParent.entrySet()) {
 
-		logger.info("{} users updated: {}", members.size(), members);
+			final Map<String, String[]> rdns = parent.getValue();
+			final List<String[]> values      = new ArrayList<>(rdns.values());
 
-		// update members of group to new state (will remove all members that are not part of the group, as expected)
-		group.setProperty(StructrApp.key(Group.class, "members"), members);
+			for (int i=0; i<values.size(); i+=batchSize) {
+
+				final StringBuilder filter = new StringBuilder("(|");
+
+				for (final String[] av : values.subList(i, Math.min(values.size(), i + batchSize))) {
+					filter.append("(").append(av[0]).append("=").append(escapeFilterValue(av[1])).append(")");
+				}
+
+				filter.append(")");
+
+				for (final Entry entry : search(connection, parent.getKey(), combine(filter.toString(), additionalFilter), SearchScope.ONELEVEL)) {
+
+					// the filter may also match entries that contain one of the values in a non-RDN attribute
+					final String[] av = parseRdn(entry.getDn().getRdn().getName());
+					if (av != null && rdns.containsKey(getRdnKey(av))) {
+
+						entries.add(entry);
+					}
+				}
+			}
+		}
+
+		for (final String memberDN : unbatched) {
+			entries.addAll(search(connection, memberDN, combine("(objectclass=*)", additionalFilter), SearchScope.OBJECT));
+		}
+
+		return entries;
 	}
 
-	private void updateWithFilterAndScope(final LDAPGroup group, final LdapConnection connection, final String path, final String groupFilter, final String groupScope) throws IOException, LdapException, CursorException, FrameworkException {
+	/**
+	 * Runs a search with paged results and returns all entries. Referrals are ignored.
+	 */
+	private List<Entry> search(final LdapConnection connection, final String base, final String filter, final SearchScope scope) throws IOException, LdapException, CursorException {
 
-		final Map<String, String> possibleGroupNames = getGroupMapping();
-		final List<LDAPUser> members                 = new LinkedList<>();
-		final Set<String> memberDNs                  = new LinkedHashSet<>();
+		final List<Entry> entries = new LinkedList<>();
+		final int pageSize        = Settings.LDAPPageSize.getValue(1000);
+		byte[] cookie             = null;
 
-		// fetch DNs of all group members
-		try (final EntryCursor cursor = connection.search(path, groupFilter, SearchScope.valueOf(groupScope))) {
+		do {
 
-			while (cursor.next()) {
+			final SearchRequest request = new SearchRequestImpl();
 
-				try {
-					final Entry entry           = cursor.get();
-					final Attribute objectClass = entry.get("objectclass");
+			request.setBase(new Dn(base));
+			request.setFilter(filter);
+			request.setScope(scope);
+			request.addAttributes(SchemaConstants.ALL_USER_ATTRIBUTES, getDeltaAttribute());
 
-					for (final java.util.Map.Entry<String, String> groupEntry : possibleGroupNames.entrySet()) {
+			if (pageSize > 0) {
 
-						final String possibleGroupName  = groupEntry.getKey();
-						final String possibleMemberName = groupEntry.getValue();
+				final PagedResults pagedResults = new PagedResultsImpl();
 
-						if (objectClass.contains(possibleGroupName)) {
+				pagedResults.setSize(pageSize);
+				pagedResults.setCookie(cookie);
 
-							// add group members
-							final Attribute groupMembers = entry.get(possibleMemberName);
-							if (groupMembers != null) {
+				request.addControl(pagedResults);
+			}
 
-								for (final Value value : groupMembers) {
+			cookie = null;
 
-									memberDNs.add(value.getString());
-								}
-							}
-						}
+			try (final SearchCursor cursor = connection.search(request)) {
+
+				while (cursor.next()) {
+
+					if (cursor.isEntry()) {
+
+						entries.add(cursor.getEntry());
 					}
+				}
+
+				final SearchResultDone done = cursor.getSearchResultDone();
+				if (done != null && pageSize > 0) {
 
-				} catch (CursorLdapReferralException e) {
+					final PagedResults result = (PagedResults)done.getControl(PagedResults.OID);
+					if (result != null && result.getCookie() != null && result.getCookie().length > 0) {
 
-					// ignore, cannot be handled here yet
-					//logger.info("CursorLdapReferralException caught, info: {}, remaining DN: {}, resolved object: {}, result code: {}", e.getReferralInfo(), e.getRemainingDn(), e.getResolvedObject(), e.getResultCode());
+						cookie = result.getCookie();
+					}
 				}
 			}
+
+		} while (cookie != null);
+
+		return entries;
+	}
+
+	private Map<String, LDAPUser> getExistingUsers(final List<Entry> entries) throws FrameworkException {
+
+		final PropertyKey<String> originIdKey = StructrApp.key(LDAPUser.class, "originId");
+		final Map<String, LDAPUser> users     = new LinkedHashMap<>();
+		final List<String> originIds          = new ArrayList<>();
+		final int batchSize                   = Math.max(1, Settings.LDAPBatchSize.getValue(100));
+		final App app                         = StructrApp.getInstance();
+
+		for (final Entry entry : entries) {
+
+			final String originId = getOriginId(entry);
+			if (originId != null) {
+
+				originIds.add(originId);
+			}
 		}
 
-		// resolve users
-		for (final String memberDN : memberDNs) {
+		// fetch existing users with one query per batch instead of one query per member
+		for (int i=0; i<originIds.size(); i+=batchSize) {
 
-			try (final EntryCursor cursor = connection.search(memberDN, "(objectclass=*)", SearchScope.OBJECT)) {
+			final Query<LDAPUser> query = app.nodeQuery(LDAPUser.class).and();
 
-				while (cursor.next()) {
+			for (final String originId : originIds.subList(i, Math.min(originIds.size(), i + batchSize))) {
+				query.or(originIdKey, originId);
+			}
 
-					final Entry entry   = cursor.get();
-					final LDAPUser user = getOrCreateUser(entry);
+			for (final LDAPUser user : query.getAsList()) {
+				users.put(user.getOriginId(), user);
+			}
+		}
 
-					members.add(user);
+		return users;
+	}
+
+	private String getGroupState(final List<Entry> groupEntries, final String source) {
+
+		final String maxValue = getMaxDeltaValue(groupEntries, null);
+		if (maxValue != null) {
+
+			// the number of entries is included to detect deleted groups
+			return source + "|" + groupEntries.size() + "|" + maxValue;
+		}
+
+		return null;
+	}
+
+	private String getMaxDeltaValue(final List<Entry> entries, final String initialValue) {
+
+		String maxValue = initialValue;
+
+		for (final Entry entry : entries) {
+
+			final String value = getDeltaValue(entry);
+			if (value != null && (maxValue == null || compareDeltaValues(value, maxValue) > 0)) {
+
+				maxValue = value;
+			}
+		}
+
+		return maxValue;
+	}
+
+	private String getDeltaValue(final Entry entry) {
+
+		final Attribute attribute = entry.get(getDeltaAttribute());
+		if (attribute != null) {
+
+			try {
+
+				return attribute.getString();
+
+			} catch (LdapInvalidAttributeValueException lex) {
+				logger.debug("Invalid LDAP value for delta attribute, expected string: {}", attribute);
+			}
+		}
+
+		return null;
+	}
+
+	// ----- private static methods -----
+	/**
+	 * Compares numeric values (e.g. uSNChanged) numerically and all other
+	 * values (e.g. generalized time) lexicographically.
+	 */
+	static int compareDeltaValues(final String value1, final String value2) {
+
+		if (StringUtils.isNumeric(value1) && StringUtils.isNumeric(value2)) {
+
+			try {
+				return Long.compare(Long.parseLong(value1), Long.parseLong(value2));
+
+			} catch (NumberFormatException ignore) {}
+		}
+
+		return value1.compareTo(value2);
+	}
+
+	/**
+	 * Splits a single-valued RDN into type and unescaped value, or returns
+	 * null if the RDN is multi-valued or contains hex or BER encoded values.
+	 */
+	static String[] parseRdn(final String rdn) {
+
+		final int pos = rdn.indexOf('=');
+		if (pos <= 0) {
+
+			return null;
+		}
+
+		final StringBuilder value = new StringBuilder();
+		final int length          = rdn.length();
+
+		for (int i=pos+1; i<length; i++) {
+
+			final char c = rdn.charAt(i);
+
+			if (c == '\\') {
+
+				if (i + 1 >= length || isHexDigit(rdn.charAt(i + 1))) {
+					return null;
 				}
+
+				value.append(rdn.charAt(++i));
+
+			} else if (c == '+' || (c == '#' && i == pos + 1)) {
+
+				return null;
+
+			} else {
+
+				value.append(c);
+			}
+		}
+
+		return new String[] { rdn.substring(0, pos).trim(), value.toString().trim() };
+	}
+
+	/**
+	 * Escapes a filter assertion value according to RFC 4515.
+	 */
+	static String escapeFilterValue(final String value) {
+
+		final StringBuilder buf = new StringBuilder();
+
+		for (final char c : value.toCharArray()) {
+
+			switch (c) {
+
+				case '\\': buf.append("\\5c"); break;
+				case '*':  buf.append("\\2a"); break;
+				case '(':  buf.append("\\28"); break;
+				case ')':  buf.append("\\29"); break;
+				case '\0': buf.append("\\00"); break;
+				default:   buf.append(c);
 			}
 		}
 
-		logger.info("{} users updated: {}", members.size(), members);
+		return buf.toString();
+	}
+
+	private static String getRdnKey(final String[] av) {
+		return av[0].toLowerCase() + "=" + av[1].toLowerCase();
+	}
 
-		// update members of group to new state (will remove all members that are not part of the group, as expected)
-		group.setProperty(StructrApp.key(Group.class, "members"), members);
+	private static boolean isHexDigit(final char c) {
+		return (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+	}
+
+	private static String combine(final String filter, final String additionalFilter) {
+
+		if (additionalFilter != null) {
+			return "(&" + filter + additionalFilter + ")";
+		}
+
+		return filter;
 	}
 
 	// ----- interface SingletonService -----
@@ -389,7 +696,13 @@ public class LDAPService extends Thread implements SingletonService {
 	}
 
 	@Override
-	public void shutdown() {
+	public synchronized void shutdown() {
+
+		if (connectionPool != null) {
+
+			connectionPool.close();
+			connectionPool = null;
+		}
 	}
 
 	@Override
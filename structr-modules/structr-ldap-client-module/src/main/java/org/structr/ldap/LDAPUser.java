@@ -60,6 +60,7 @@ public interface LDAPUser extends User {
 		type.addStringProperty("originId",          PropertyView.Public, PropertyView.Ui).setUnique(true).setIndexed(true);
 		type.addStringProperty("distinguishedName", PropertyView.Public, PropertyView.Ui).setIndexed(true);
 		type.addLongProperty("lastLDAPSync");
+		type.addStringProperty("lastLDAPModification");
 
 		type.addPropertyGetter("originId", String.class);
 		type.addPropertySetter("originId", String.class);
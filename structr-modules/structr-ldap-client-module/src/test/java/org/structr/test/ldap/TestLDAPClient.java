@@ -18,23 +18,231 @@
  */
 package org.structr.test.ldap;
 
+import com.unboundid.ldap.listener.InMemoryDirectoryServer;
+import com.unboundid.ldap.listener.InMemoryDirectoryServerConfig;
+import com.unboundid.ldap.sdk.Modification;
+import com.unboundid.ldap.sdk.ModificationType;
+import java.util.LinkedList;
+import java.util.List;
 import org.structr.api.config.Settings;
+import org.structr.api.util.Iterables;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.ldap.LDAPGroup;
+import org.structr.ldap.LDAPService;
+import org.structr.ldap.LDAPUser;
 import org.structr.test.web.StructrUiTest;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.fail;
+import org.testng.annotations.AfterClass;
 import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
 
 /**
  */
 public class TestLDAPClient extends StructrUiTest {
 
+	private static final String baseDn     = "dc=test,dc=structr,dc=org";
+	private static final String peopleDn   = "ou=people," + baseDn;
+	private static final String groupDn    = "cn=group1,ou=groups," + baseDn;
+	private static final int userCount     = 250;
+
+	private InMemoryDirectoryServer server = null;
+
 	@BeforeClass(alwaysRun = true)
 	@Override
 	public void setup() {
 
 		Settings.Services.setValue("NodeService LogService SchemaService HttpService AgentService LDAPService");
 
+		try {
+
+			final InMemoryDirectoryServerConfig config = new InMemoryDirectoryServerConfig(baseDn);
+
+			config.addAdditionalBindCredentials("cn=admin," + baseDn, "admin");
+
+			server = new InMemoryDirectoryServer(config);
+
+			server.add("dn: " + baseDn,   "objectClass: domain", "dc: test");
+			server.add("dn: " + peopleDn, "objectClass: organizationalUnit", "ou: people");
+			server.add("dn: ou=groups," + baseDn, "objectClass: organizationalUnit", "ou: groups");
+
+			final List<String> group = new LinkedList<>();
+
+			group.add("dn: " + groupDn);
+			group.add("objectClass: groupOfNames");
+			group.add("cn: group1");
+
+			for (int i=0; i<userCount; i++) {
+
+				final String uid = "user" + i;
+
+				server.add("dn: uid=" + uid + "," + peopleDn, "objectClass: inetOrgPerson", "uid: " + uid, "cn: " + uid, "sn: " + uid, "mail: " + uid + "@structr.org");
+				group.add("member: uid=" + uid + "," + peopleDn);
+			}
+
+			server.add(group.toArray(new String[0]));
+			server.startListening();
+
+			Settings.LDAPHost.setValue("localhost");
+			Settings.LDAPPort.setValue(server.getListenPort());
+			Settings.LDAPBindDN.setValue("cn=admin," + baseDn);
+			Settings.LDAPSecret.setValue("admin");
+			Settings.LDAPPrimaryKey.setValue("dn");
+			Settings.LDAPPropertyMapping.setValue("{ sn: name, mail: eMail }");
+			Settings.LDAPDeltaSync.setValue(true);
+
+			// small values to exercise paging and batching
+			Settings.LDAPPageSize.setValue(20);
+			Settings.LDAPBatchSize.setValue(30);
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unable to start embedded LDAP server");
+		}
+
 		super.setup();
 	}
 
+	@AfterClass(alwaysRun = true)
+	public void stopServer() {
+
+		if (server != null) {
+			server.shutDown(true);
+		}
+	}
+
+	@Test
+	public void testGroupSynchronization() {
+
+		LDAPGroup group = null;
+
+		// create group, will be synchronized on creation
+		try (final Tx tx = app.tx()) {
+
+			group = app.create(LDAPGroup.class,
+				new NodeAttribute<>(StructrApp.key(LDAPGroup.class, "name"),              "group1"),
+				new NodeAttribute<>(StructrApp.key(LDAPGroup.class, "distinguishedName"), groupDn)
+			);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertEquals("Invalid number of group members after synchronization", userCount, Iterables.count(group.getMembers()));
+			assertEquals("Invalid number of LDAP users after synchronization",    userCount, app.nodeQuery(LDAPUser.class).getAsList().size());
+
+			final LDAPUser user = app.nodeQuery(LDAPUser.class).and(StructrApp.key(LDAPUser.class, "name"), "user42").getFirst();
+
+			assertNotNull("LDAP user was not created", user);
+			assertEquals("Invalid eMail of LDAP user", "user42@structr.org", user.getProperty(StructrApp.key(LDAPUser.class, "eMail")));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		// modify a single user, group is unchanged (delta mode)
+		try {
+
+			server.modify("uid=user42," + peopleDn, new Modification(ModificationType.REPLACE, "mail", "changed@structr.org"));
+
+		} catch (Throwable t) {
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		synchronize(group);
+
+		try (final Tx tx = app.tx()) {
+
+			final LDAPUser user = app.nodeQuery(LDAPUser.class).and(StructrApp.key(LDAPUser.class, "name"), "user42").getFirst();
+
+			assertEquals("Modified LDAP user was not updated", "changed@structr.org", user.getProperty(StructrApp.key(LDAPUser.class, "eMail")));
+			assertEquals("Invalid number of group members after delta synchronization", userCount, Iterables.count(group.getMembers()));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		// remove a member from the group
+		try {
+
+			server.modify(groupDn, new Modification(ModificationType.DELETE, "member", "uid=user7," + peopleDn));
+
+		} catch (Throwable t) {
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		synchronize(group);
+
+		try (final Tx tx = app.tx()) {
+
+			assertEquals("Invalid number of group members after membership change", userCount - 1, Iterables.count(group.getMembers()));
+
+			for (final Principal member : group.getMembers()) {
+
+				if ("user7".equals(member.getName())) {
+					fail("Removed member is still a member of the group");
+				}
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			fex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	@Test
+	public void testBind() {
+
+		final LDAPService service = Services.getInstance().getService(LDAPService.class, "default");
+
+		assertNotNull("LDAPService is not running", service);
+
+		// exercise the pooled connections with valid and invalid credentials
+		for (int i=0; i<10; i++) {
+
+			assertEquals("Bind with valid credentials failed",    true,  service.canSuccessfullyBind("cn=admin," + baseDn, "admin"));
+			assertEquals("Bind with invalid credentials succeeded", false, service.canSuccessfullyBind("cn=admin," + baseDn, "wrong"));
+		}
+	}
+
+	// ----- private methods -----
+	private void synchronize(final LDAPGroup group) {
+
+		final LDAPService service = Services.getInstance().getService(LDAPService.class, "default");
+
+		try (final Tx tx = app.tx()) {
+
+			service.synchronizeGroup(group);
+			tx.success();
+
+		} catch (Throwable t) {
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
 	/* this test cannot run without an Active Directory server
 	@Test
 	public void testLDAPClient() {
@@ -92,23 +92,7 @@ public interface MessageClient extends NodeInterface {
         final App app = StructrApp.getInstance();
         try (final Tx tx = app.tx()) {
 
-            Iterable<MessageSubscriber> subscribers = thisClient.getSubscribers();
-            if (subscribers != null) {
-                subscribers.forEach(sub -> {
-					String subTopic = sub.getProperty(StructrApp.key(MessageSubscriber.class,"topic"));
-                    if ( subTopic != null && (subTopic.equals(topic) || subTopic.equals("*"))) {
-                        Map<String, Object> params = new HashMap<>();
-                        params.put("topic", topic);
-                        params.put("message", message);
-                        try {
-                            sub.invokeMethod(securityContext, "onMessage", params, false);
-                        } catch (FrameworkException e) {
-			    final Logger logger = LoggerFactory.getLogger(MessageClient.class);
-                            logger.warn("Could not invoke 'onMessage' method on MessageSubscriber: " + e.getMessage());
-                        }
-                    }
-                });
-            }
+            deliverMessage(thisClient.getSubscribers(), topic, message, securityContext);
 
             tx.success();
         }
@@ -116,6 +100,50 @@ public interface MessageClient extends NodeInterface {
         return new RestMethodResult(200);
     }
 
+    /**
+     * Invokes 'onMessage' on all subscribers of the given topic, must be called
+     * inside a transaction. Failures of individual subscribers are logged.
+     */
+    static void deliverMessage(final Iterable<MessageSubscriber> subscribers, final String topic, final String message, final SecurityContext securityContext) {
+
+        try {
+
+            deliverMessage(subscribers, topic, message, securityContext, false);
+
+        } catch (FrameworkException e) {
+            // not thrown when failures are logged
+        }
+    }
+
+    /**
+     * Invokes 'onMessage' on all subscribers of the given topic, must be called
+     * inside a transaction. Clients that receive messages in batches can use this
+     * method to deliver a whole batch in a single transaction, with failOnError set
+     * so that a failing subscriber fails the batch instead of being skipped.
+     */
+    static void deliverMessage(final Iterable<MessageSubscriber> subscribers, final String topic, final String message, final SecurityContext securityContext, final boolean failOnError) throws FrameworkException {
+
+        if (subscribers != null) {
+            for (final MessageSubscriber sub : subscribers) {
+				String subTopic = sub.getProperty(StructrApp.key(MessageSubscriber.class,"topic"));
+                if ( subTopic != null && (subTopic.equals(topic) || subTopic.equals("*"))) {
+                    Map<String, Object> params = new HashMap<>();
+                    params.put("topic", topic);
+                    params.put("message", message);
+                    try {
+                        sub.invokeMethod(securityContext, "onMessage", params, false);
+                    } catch (FrameworkException e) {
+                        if (failOnError) {
+                            throw e;
+                        }
+			final Logger logger = LoggerFactory.getLogger(MessageClient.class);
+                        logger.warn("Could not invoke 'onMessage' method on MessageSubscriber: " + e.getMessage());
+                    }
+                }
+            }
+        }
+    }
+
     static RestMethodResult subscribeTopic(MessageClient client, final String topic, final SecurityContext securityContext) throws FrameworkException {
 
         return new RestMethodResult(200);
@@ -0,0 +1,233 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.messaging.implementation.kafka;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.common.error.FrameworkException;
+
+/**
+ * Processes the records of a poll in batches, with one task per partition.
+ * The offsets of a partition are committed manually after the batches have
+ * been handled successfully. When a batch fails, the remaining records of
+ * its partition are skipped and the consumer is rewound to the first record
+ * of the failed batch, so it is delivered again. The partition is paused
+ * for a backoff period that doubles with every consecutive failure, so a
+ * batch that keeps failing is not retried in a tight loop.
+ */
+public class BatchedRecordProcessor implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(BatchedRecordProcessor.class.getName());
+
+	private final Map<TopicPartition, Backoff> backoffs = new HashMap<>();
+	private final ExecutorService executor;
+	private final BatchHandler handler;
+	private final long initialBackoff;
+	private final long maxBackoff;
+	private final int batchSize;
+
+	public BatchedRecordProcessor(final int batchSize, final int threads, final BatchHandler handler) {
+		this(batchSize, threads, 1000L, 60000L, handler);
+	}
+
+	/**
+	 * @param initialBackoff the time in milliseconds a partition is paused after its first failure
+	 * @param maxBackoff the maximum time in milliseconds a partition is paused
+	 */
+	public BatchedRecordProcessor(final int batchSize, final int threads, final long initialBackoff, final long maxBackoff, final BatchHandler handler) {
+
+		this.executor       = Executors.newFixedThreadPool(Math.max(1, threads));
+		this.batchSize      = Math.max(1, batchSize);
+		this.initialBackoff = Math.max(0L, initialBackoff);
+		this.maxBackoff     = Math.max(this.initialBackoff, maxBackoff);
+		this.handler        = handler;
+	}
+
+	/**
+	 * Processes the given records and commits the offsets of all partitions
+	 * that made progress. Must be called from the thread that owns the consumer.
+	 *
+	 * @return the number of records that were handled successfully
+	 */
+	public int process(final Consumer<String, String> consumer, final ConsumerRecords<String, String> records) throws InterruptedException {
+
+		final Map<TopicPartition, Future<Result>> tasks      = new LinkedHashMap<>();
+		final Map<TopicPartition, OffsetAndMetadata> offsets = new LinkedHashMap<>();
+		int count                                            = 0;
+
+		resumePartitions(consumer);
+
+		for (final TopicPartition partition : records.partitions()) {
+
+			final List<ConsumerRecord<String, String>> partitionRecords = records.records(partition);
+
+			tasks.put(partition, executor.submit(() -> processPartition(partition, partitionRecords)));
+		}
+
+		for (final Map.Entry<TopicPartition, Future<Result>> entry : tasks.entrySet()) {
+
+			final TopicPartition partition = entry.getKey();
+			final long firstOffset         = records.records(partition).get(0).offset();
+			Result result                  = null;
+
+			try {
+
+				result = entry.getValue().get();
+
+			} catch (ExecutionException ex) {
+
+				logger.warn("Unable to process records of partition {}: {}", partition, ex.getMessage());
+				result = new Result(firstOffset, 0, true);
+			}
+
+			if (result.nextOffset > firstOffset) {
+				offsets.put(partition, new OffsetAndMetadata(result.nextOffset));
+			}
+
+			if (result.failed) {
+
+				consumer.seek(partition, result.nextOffset);
+				pausePartition(consumer, partition);
+
+			} else {
+
+				backoffs.remove(partition);
+			}
+
+			count += result.count;
+		}
+
+		if (!offsets.isEmpty()) {
+			consumer.commitSync(offsets);
+		}
+
+		return count;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	// ----- private methods -----
+	private void pausePartition(final Consumer<String, String> consumer, final TopicPartition partition) {
+
+		final Backoff backoff = backoffs.computeIfAbsent(partition, k -> new Backoff());
+		final long delay      = Math.min(maxBackoff, initialBackoff << Math.min(backoff.failures, 30));
+
+		backoff.failures++;
+		backoff.resumeAt = System.currentTimeMillis() + delay;
+
+		logger.info("Pausing partition {} for {} ms after {} consecutive failures", partition, delay, backoff.failures);
+
+		consumer.pause(Collections.singleton(partition));
+	}
+
+	private void resumePartitions(final Consumer<String, String> consumer) {
+
+		final List<TopicPartition> partitions = new ArrayList<>();
+		final long now                        = System.currentTimeMillis();
+
+		for (final TopicPartition partition : consumer.paused()) {
+
+			final Backoff backoff = backoffs.get(partition);
+			// partitions paused by others are left alone
+			if (backoff != null && backoff.resumeAt <= now) {
+
+				partitions.add(partition);
+			}
+		}
+
+		if (!partitions.isEmpty()) {
+			consumer.resume(partitions);
+		}
+	}
+
+	private Result processPartition(final TopicPartition partition, final List<ConsumerRecord<String, String>> records) {
+
+		final int size  = records.size();
+		long nextOffset = records.get(0).offset();
+		int count       = 0;
+
+		for (int start=0; start<size; start+=batchSize) {
+
+			final List<ConsumerRecord<String, String>> batch = records.subList(start, Math.min(size, start + batchSize));
+
+			try {
+
+				handler.handle(batch);
+
+			} catch (FrameworkException | RuntimeException ex) {
+
+				logger.warn("Unable to process batch of {} records at offset {} of partition {}, will retry: {}", batch.size(), nextOffset, partition, ex.getMessage());
+
+				return new Result(nextOffset, count, true);
+			}
+
+			nextOffset = batch.get(batch.size() - 1).offset() + 1;
+			count     += batch.size();
+		}
+
+		return new Result(nextOffset, count, false);
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Handles a batch of records, usually in a single transaction.
+	 */
+	public interface BatchHandler {
+
+		void handle(final List<ConsumerRecord<String, String>> batch) throws FrameworkException;
+	}
+
+	private static class Backoff {
+
+		private long resumeAt = 0L;
+		private int failures  = 0;
+	}
+
+	private static class Result {
+
+		private final long nextOffset;
+		private final boolean failed;
+		private final int count;
+
+		public Result(final long nextOffset, final int count, final boolean failed) {
+
+			this.nextOffset = nextOffset;
+			this.failed     = failed;
+			this.count      = count;
+		}
+	}
+}
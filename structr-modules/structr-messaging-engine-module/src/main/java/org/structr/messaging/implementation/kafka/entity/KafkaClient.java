@@ -19,6 +19,7 @@
 package org.structr.messaging.implementation.kafka.entity;
 
 import com.google.gson.JsonSyntaxException;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.apache.kafka.clients.consumer.KafkaConsumer;
 import org.apache.kafka.clients.producer.KafkaProducer;
@@ -41,6 +42,7 @@ import org.structr.core.property.PropertyMap;
 import org.structr.core.script.Scripting;
 import org.structr.messaging.engine.entities.MessageClient;
 import org.structr.messaging.engine.entities.MessageSubscriber;
+import org.structr.messaging.implementation.kafka.BatchedRecordProcessor;
 import org.structr.rest.RestMethodResult;
 import org.structr.schema.SchemaService;
 import org.structr.schema.action.ActionContext;
@@ -51,6 +53,7 @@ import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
 import org.structr.api.schema.JsonObjectType;
 import org.structr.api.schema.JsonSchema;
+import org.structr.api.util.Iterables;
 
 public interface KafkaClient extends MessageClient {
 
@@ -69,10 +72,12 @@ public interface KafkaClient extends MessageClient {
 			type.addStringArrayProperty("servers", PropertyView.Public, PropertyView.Ui);
 			type.addStringProperty("groupId", PropertyView.Public, PropertyView.Ui);
 			type.addBooleanProperty("enabled", PropertyView.Public, PropertyView.Ui).setDefaultValue("false");
+			type.addIntegerProperty("batchSize", PropertyView.Public, PropertyView.Ui);
 
 			type.addPropertyGetter("groupId", String.class);
 			type.addPropertyGetter("subscribers", Iterable.class);
 			type.addPropertyGetter("enabled", Boolean.class);
+			type.addPropertyGetter("batchSize", Integer.class);
 
 
 			type.addMethod("setServers")
@@ -129,6 +134,7 @@ public interface KafkaClient extends MessageClient {
 	String getGroupId();
 	String[] getServers();
 	Boolean getEnabled();
+	Integer getBatchSize();
 	void setServers(String[] servers) throws FrameworkException;
 	Iterable<MessageSubscriber> getSubscribers();
 
@@ -245,8 +251,18 @@ public interface KafkaClient extends MessageClient {
 				} else {
 					props.put("group.id", "structr-" + thisClient.getUuid());
 				}
-				props.put("enable.auto.commit", "true");
-				props.put("auto.commit.interval.ms", "1000");
+				final int batchSize = getBatchSize(thisClient);
+				if (batchSize > 0) {
+
+					// offsets are committed after the transaction of a batch was committed
+					props.put("enable.auto.commit", "false");
+					props.put("max.poll.records", Math.max(500, batchSize));
+
+				} else {
+
+					props.put("enable.auto.commit", "true");
+					props.put("auto.commit.interval.ms", "1000");
+				}
 				props.put("session.timeout.ms", "30000");
 				props.put("key.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
 				props.put("value.deserializer", "org.apache.kafka.common.serialization.StringDeserializer");
@@ -267,12 +283,52 @@ public interface KafkaClient extends MessageClient {
 		MessageClient.sendMessage(thisClient, topic, message, thisClient.getSecurityContext());
 	}
 
+	/**
+	 * Delivers a batch of records to the subscribers of the given client in a single transaction.
+	 */
+	static void forwardReceivedMessages(final String clientId, final SecurityContext securityContext, final List<ConsumerRecord<String, String>> records) throws FrameworkException {
+
+		final App app = StructrApp.getInstance();
+
+		try (final Tx tx = app.tx()) {
+
+			final KafkaClient client = (KafkaClient)app.getNodeById(KafkaClient.class, clientId);
+			if (client != null) {
+
+				final List<MessageSubscriber> subscribers = Iterables.toList(client.getSubscribers());
+
+				for (final ConsumerRecord<String, String> record : records) {
+					// a failing subscriber fails the batch, so its offsets are not committed
+					MessageClient.deliverMessage(subscribers, record.topic(), record.value(), securityContext, true);
+				}
+			}
+
+			tx.success();
+		}
+	}
+
+	/**
+	 * Returns the configured batch size, or 0 if records should be processed one by one.
+	 */
+	static int getBatchSize(final KafkaClient thisClient) {
+
+		final Integer batchSize = thisClient.getBatchSize();
+		if (batchSize != null && batchSize > 0) {
+
+			return batchSize;
+		}
+
+		return 0;
+	}
+
 	class ConsumerWorker implements Runnable {
 		private KafkaClient client;
 		private KafkaConsumer<String,String> consumer;
 		private final Logger logger = LoggerFactory.getLogger(ConsumerWorker.class.getName());
 		private List<String> currentlySubscribedTopics;
 		private String currentGroupId;
+		private int currentBatchSize;
+		private BatchedRecordProcessor processor;
 		private volatile boolean running;
 
 		public ConsumerWorker(KafkaClient client) {
@@ -295,7 +351,23 @@ public interface KafkaClient extends MessageClient {
 				if (consumer != null) {
 					consumer.close();
 				}
-				this.consumer = new KafkaConsumer<>(getConfiguration(client, KafkaConsumer.class));
+
+				if (processor != null) {
+					processor.close();
+					processor = null;
+				}
+
+				this.consumer         = new KafkaConsumer<>(getConfiguration(client, KafkaConsumer.class));
+				this.currentBatchSize = getBatchSize(client);
+
+				if (currentBatchSize > 0) {
+
+					final SecurityContext securityContext = client.getSecurityContext();
+					final String clientId                 = client.getUuid();
+
+					// partitions are processed in parallel, each batch in its own transaction
+					this.processor = new BatchedRecordProcessor(currentBatchSize, Runtime.getRuntime().availableProcessors(), batch -> forwardReceivedMessages(clientId, securityContext, batch));
+				}
 
 				if (client.getGroupId() != null) {
 					this.currentGroupId = Scripting.replaceVariables(new ActionContext(SecurityContext.getSuperUserInstance()), null, client.getGroupId(), false, "groupId");
@@ -408,6 +480,10 @@ public interface KafkaClient extends MessageClient {
 								this.refreshConsumer();
 								logger.info("New groupId for KafkaClient " + this.client.getUuid() + ", updating ConsumerWorker..");
 								this.updateSubscriptions(true);
+							} else if (currentBatchSize != getBatchSize(this.client)) {
+								this.refreshConsumer();
+								logger.info("New batch size for KafkaClient " + this.client.getUuid() + ", updating ConsumerWorker..");
+								this.updateSubscriptions(true);
 							} else {
 								this.updateSubscriptions(false);
 							}
@@ -415,13 +491,20 @@ public interface KafkaClient extends MessageClient {
 							if (this.consumer.subscription().size() > 0) {
 								final ConsumerRecords<String, String> records = this.consumer.poll(1000);
 
-								records.forEach(record -> {
-									try {
-										forwardReceivedMessage(client, record.topic(), record.value());
-									} catch (FrameworkException e) {
-										logger.error("Could not process records in ConsumerWorker: " + e.getMessage());
-									}
-								});
+								if (processor != null) {
+
+									processor.process(this.consumer, records);
+
+								} else {
+
+									records.forEach(record -> {
+										try {
+											forwardReceivedMessage(client, record.topic(), record.value());
+										} catch (FrameworkException e) {
+											logger.error("Could not process records in ConsumerWorker: " + e.getMessage());
+										}
+									});
+								}
 
 							} else {
 								wasDisabled = true;
@@ -448,10 +531,18 @@ public interface KafkaClient extends MessageClient {
 					logger.warn("Exception in ConsumerWorker for KafkaClient: " + ex.getLocalizedMessage());
 				} catch (IllegalStateException ex) {
 					// Main thread has shut down driver, since this worker only does reads, we can safely shutdown
+				} catch (InterruptedException ex) {
+					running = false;
+				} catch (KafkaException ex) {
+					logger.warn("Could not commit offsets in ConsumerWorker for KafkaClient " + client.getUuid() + ": " + ex.getLocalizedMessage());
 				}
 
 			}
 
+			if (this.processor != null) {
+				this.processor.close();
+			}
+
 			this.consumer.close();
 
 		}
@@ -0,0 +1,209 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.messaging.implementation.kafka;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.common.TopicPartition;
+import org.structr.common.error.FrameworkException;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the batched consumer pipeline against the MockConsumer of the
+ * Kafka client library, which stands in for a broker.
+ */
+public class BatchedRecordProcessorTest {
+
+	private final TopicPartition partition0 = new TopicPartition("test", 0);
+	private final TopicPartition partition1 = new TopicPartition("test", 1);
+
+	@Test
+	public void testBatchesAndOffsetCommit() throws Exception {
+
+		final MockConsumer<String, String> consumer = createConsumer();
+		final List<Integer> batchSizes              = Collections.synchronizedList(new ArrayList<>());
+
+		addRecords(consumer, partition0, 0, 25);
+		addRecords(consumer, partition1, 0, 7);
+
+		try (final BatchedRecordProcessor processor = new BatchedRecordProcessor(10, 2, batch -> batchSizes.add(batch.size()))) {
+
+			final ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(100));
+
+			assertEquals(32, processor.process(consumer, records));
+		}
+
+		// 25 records => 10, 10, 5 and 7 records => 7
+		Collections.sort(batchSizes);
+		assertEquals(Arrays.asList(5, 7, 10, 10), batchSizes);
+
+		final Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(new HashSet<>(Arrays.asList(partition0, partition1)));
+
+		assertEquals(25L, committed.get(partition0).offset());
+		assertEquals(7L,  committed.get(partition1).offset());
+	}
+
+	@Test
+	public void testFailedBatchIsNotCommitted() throws Exception {
+
+		final MockConsumer<String, String> consumer = createConsumer();
+		final AtomicBoolean failed                  = new AtomicBoolean(false);
+
+		addRecords(consumer, partition0, 0, 30);
+		addRecords(consumer, partition1, 0, 5);
+
+		// the second batch of partition 0 fails once
+		try (final BatchedRecordProcessor processor = new BatchedRecordProcessor(10, 2, batch -> {
+
+			final ConsumerRecord<String, String> first = batch.get(0);
+
+			if (first.partition() == 0 && first.offset() == 10L && failed.compareAndSet(false, true)) {
+				throw new FrameworkException(500, "Transaction failed");
+			}
+		})) {
+
+			final ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(100));
+
+			assertEquals(15, processor.process(consumer, records));
+		}
+
+		assertTrue(failed.get());
+
+		final Map<TopicPartition, OffsetAndMetadata> committed = consumer.committed(new HashSet<>(Arrays.asList(partition0, partition1)));
+
+		// partition 0 is committed up to the failed batch and rewound to it
+		assertEquals(10L, committed.get(partition0).offset());
+		assertEquals(10L, consumer.position(partition0));
+
+		// partition 1 is not affected
+		assertEquals(5L, committed.get(partition1).offset());
+	}
+
+	@Test
+	public void testNothingCommittedWithoutProgress() throws Exception {
+
+		final MockConsumer<String, String> consumer = createConsumer();
+
+		addRecords(consumer, partition0, 0, 5);
+
+		try (final BatchedRecordProcessor processor = new BatchedRecordProcessor(10, 1, batch -> { throw new FrameworkException(500, "Transaction failed"); })) {
+
+			final ConsumerRecords<String, String> records = consumer.poll(Duration.ofMillis(100));
+
+			assertEquals(0, processor.process(consumer, records));
+		}
+
+		assertNull(consumer.committed(Collections.singleton(partition0)).get(partition0));
+		assertEquals(0L, consumer.position(partition0));
+	}
+
+	@Test
+	public void testFailingPartitionIsPausedWithBackoff() throws Exception {
+
+		final MockConsumer<String, String> consumer = createConsumer();
+		final AtomicInteger attempts                = new AtomicInteger(0);
+
+		addRecords(consumer, partition0, 0, 5);
+		addRecords(consumer, partition1, 0, 5);
+
+		// partition 0 always fails, partition 1 succeeds
+		try (final BatchedRecordProcessor processor = new BatchedRecordProcessor(10, 2, 200L, 400L, batch -> {
+
+			if (batch.get(0).partition() == 0) {
+
+				attempts.incrementAndGet();
+				throw new FrameworkException(500, "Transaction failed");
+			}
+		})) {
+
+			assertEquals(5, processor.process(consumer, consumer.poll(Duration.ofMillis(100))));
+			assertEquals(1, attempts.get());
+
+			// the failed partition is paused and not delivered again during the backoff period
+			assertEquals(Collections.singleton(partition0), consumer.paused());
+			assertTrue(consumer.poll(Duration.ofMillis(100)).isEmpty());
+
+			assertEquals(0, processor.process(consumer, consumer.poll(Duration.ofMillis(100))));
+			assertEquals(Collections.singleton(partition0), consumer.paused());
+
+			Thread.sleep(250);
+
+			// the partition is resumed after the backoff period, the batch is retried
+			processor.process(consumer, ConsumerRecords.empty());
+			assertTrue(consumer.paused().isEmpty());
+
+			// MockConsumer does not redeliver after a seek, so add the records again
+			addRecords(consumer, partition0, 0, 5);
+
+			assertEquals(0, processor.process(consumer, consumer.poll(Duration.ofMillis(100))));
+			assertEquals(2, attempts.get());
+			assertEquals(Collections.singleton(partition0), consumer.paused());
+
+			// the second backoff period is twice as long
+			Thread.sleep(250);
+
+			processor.process(consumer, ConsumerRecords.empty());
+			assertEquals(Collections.singleton(partition0), consumer.paused());
+		}
+
+		assertNull(consumer.committed(Collections.singleton(partition0)).get(partition0));
+		assertEquals(0L, consumer.position(partition0));
+	}
+
+	// ----- private methods -----
+	private MockConsumer<String, String> createConsumer() {
+
+		final MockConsumer<String, String> consumer = new MockConsumer<>(OffsetResetStrategy.EARLIEST);
+		final Map<TopicPartition, Long> beginning   = new HashMap<>();
+
+		beginning.put(partition0, 0L);
+		beginning.put(partition1, 0L);
+
+		consumer.assign(Arrays.asList(partition0, partition1));
+		consumer.updateBeginningOffsets(beginning);
+
+		return consumer;
+	}
+
+	private void addRecords(final MockConsumer<String, String> consumer, final TopicPartition partition, final long start, final int count) {
+
+		for (int i=0; i<count; i++) {
+
+			final long offset = start + i;
+
+			consumer.addRecord(new ConsumerRecord<>(partition.topic(), partition.partition(), offset, "key" + offset, "message" + offset));
+		}
+	}
+}
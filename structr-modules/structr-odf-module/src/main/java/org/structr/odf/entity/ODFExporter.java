@@ -37,6 +37,7 @@ import org.structr.core.graph.NodeInterface;
 import org.structr.core.property.StringProperty;
 import org.structr.schema.SchemaService;
 import org.structr.transform.VirtualType;
+import org.structr.web.common.ContentStore;
 import org.structr.web.common.FileHelper;
 import org.structr.web.entity.File;
 import org.structr.web.entity.Image;
@@ -200,6 +201,7 @@ public interface ODFExporter extends NodeInterface {
 
 			}
 			pkg.insert(new URI(result.getFileOnDisk().getAbsolutePath()), ODF_IMAGE_DIRECTORY + imageName, contentType);
+			ContentStore.detach(output.getFileOnDisk(), output.getChecksum());
 			pkg.save(output.getFileOnDisk().getAbsolutePath());
 			pkg.close();
 			doc.close();
@@ -47,6 +47,7 @@ import org.structr.core.entity.AbstractNode;
 import org.structr.core.property.StringProperty;
 import org.structr.schema.SchemaService;
 import org.structr.transform.VirtualType;
+import org.structr.web.common.ContentStore;
 import org.structr.web.entity.File;
 
 /**
@@ -188,6 +189,7 @@ public interface ODSExporter extends ODFExporter {
 
 			}
 
+			ContentStore.detach(output.getFileOnDisk(), output.getChecksum());
 			spreadsheet.save(output.getFileOnDisk().getAbsolutePath());
 			spreadsheet.close();
 
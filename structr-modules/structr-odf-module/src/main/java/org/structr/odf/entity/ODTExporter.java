@@ -41,6 +41,7 @@ import org.structr.core.app.StructrApp;
 import org.structr.core.entity.AbstractNode;
 import org.structr.schema.SchemaService;
 import org.structr.transform.VirtualType;
+import org.structr.web.common.ContentStore;
 import org.structr.web.entity.File;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
@@ -132,6 +133,7 @@ public interface ODTExporter extends ODFExporter {
 
 			}
 
+			ContentStore.detach(output.getFileOnDisk(), output.getChecksum());
 			text.save(output.getFileOnDisk().getAbsolutePath());
 			text.close();
 
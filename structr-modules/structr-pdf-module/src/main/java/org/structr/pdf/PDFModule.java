@@ -22,6 +22,7 @@ import java.util.Set;
 import org.structr.api.service.LicenseManager;
 import org.structr.core.entity.AbstractSchemaNode;
 import org.structr.core.function.Functions;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.module.StructrModule;
 import org.structr.pdf.function.PDFFunction;
 import org.structr.schema.SourceFile;
@@ -31,6 +32,9 @@ public class PDFModule implements StructrModule {
 
 	@Override
 	public void onLoad(LicenseManager licenseManager) {
+
+		// discard cached documents when data is modified
+		TransactionCommand.registerTransactionListener(PdfRenderer.getInstance());
 	}
 
 	@Override
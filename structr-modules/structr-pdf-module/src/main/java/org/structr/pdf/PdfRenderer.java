@@ -0,0 +1,360 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.pdf;
+
+import com.github.jhonnymertz.wkhtmltopdf.wrapper.Pdf;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.structr.api.Predicate;
+import org.structr.api.config.Settings;
+import org.structr.common.SecurityContext;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.entity.SessionDataNode;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.property.PropertyKey;
+import org.structr.core.property.PropertyMap;
+
+/**
+ * Renders PDF documents on a bounded pool of renderer threads and caches
+ * the results. Requests that arrive while all renderers are busy wait in
+ * a queue, concurrent requests for the same document wait for a single
+ * rendering. Callers receive a future, so no request thread has to wait
+ * for a renderer.
+ *
+ * Documents whose content cannot be derived from the cache key alone are
+ * marked as data dependent and discarded when a transaction modifies data.
+ * Modifications that only concern sessions and logins are ignored.
+ */
+public class PdfRenderer implements StructrTransactionListener {
+
+	private static final PdfRenderer instance                    = new PdfRenderer();
+	private static final Set<String> sessionProperties           = Set.of("sessionIds", "refreshTokens", "sessionData", "passwordAttempts", "twoFactorToken", "lastModifiedDate");
+
+	private final Map<String, CompletableFuture<byte[]>> pending = new ConcurrentHashMap<>();
+	private final Map<String, CacheEntry> cache                  = new LinkedHashMap<>(16, 0.75f, true);
+	private final AtomicLong generation                          = new AtomicLong();
+	private ThreadPoolExecutor executor                          = null;
+
+	PdfRenderer() {}
+
+	public static PdfRenderer getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Returns the cached document for the given key or renders the given
+	 * PDF if there is none, and waits for the result.
+	 */
+	public byte[] render(final String key, final boolean dataDependent, final Pdf pdf) throws IOException, InterruptedException {
+		return await(renderAsync(key, dataDependent, pdf::getPDF));
+	}
+
+	/**
+	 * Returns the cached document for the given key or queues the given
+	 * PDF for rendering if there is none.
+	 */
+	public CompletableFuture<byte[]> renderAsync(final String key, final boolean dataDependent, final Pdf pdf) {
+		return renderAsync(key, dataDependent, pdf::getPDF);
+	}
+
+	CompletableFuture<byte[]> renderAsync(final String key, final boolean dataDependent, final DocumentRenderer renderer) {
+
+		final byte[] cached = getCached(key);
+		if (cached != null) {
+
+			return CompletableFuture.completedFuture(cached);
+		}
+
+		final CompletableFuture<byte[]> future   = new CompletableFuture<>();
+		final CompletableFuture<byte[]> existing = pending.putIfAbsent(key, future);
+
+		if (existing != null) {
+
+			return existing;
+		}
+
+		final long queued = System.currentTimeMillis();
+
+		try {
+
+			getExecutor().execute(() -> {
+
+				try {
+
+					final int timeout = Settings.PdfRendererTimeout.getValue(120);
+					if (System.currentTimeMillis() - queued > timeout * 1000L) {
+
+						throw new IOException("No PDF renderer available after " + timeout + " seconds");
+					}
+
+					final long startGeneration = generation.get();
+					final byte[] result        = renderer.render();
+
+					// do not cache documents that may have been rendered from outdated data
+					if (!dataDependent || generation.get() == startGeneration) {
+						put(key, new CacheEntry(result, dataDependent));
+					}
+
+					future.complete(result);
+
+				} catch (Throwable t) {
+
+					future.completeExceptionally(t);
+
+				} finally {
+
+					pending.remove(key, future);
+				}
+			});
+
+		} catch (RejectedExecutionException rex) {
+
+			pending.remove(key, future);
+			future.completeExceptionally(new IOException("Unable to queue PDF rendering", rex));
+		}
+
+		return future;
+	}
+
+	public void clear() {
+
+		synchronized (cache) {
+			cache.clear();
+		}
+	}
+
+	/**
+	 * Creates a cache key from the given parts.
+	 */
+	public static String getKey(final String... parts) {
+
+		try {
+
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			final StringBuilder buf    = new StringBuilder();
+
+			for (final String part : parts) {
+
+				if (part != null) {
+					digest.update(part.getBytes(StandardCharsets.UTF_8));
+				}
+
+				digest.update((byte)0);
+			}
+
+			for (final byte b : digest.digest()) {
+				buf.append(String.format("%02x", b));
+			}
+
+			return buf.toString();
+
+		} catch (NoSuchAlgorithmException nex) {
+
+			// SHA-256 is available on every Java platform
+			throw new IllegalStateException(nex);
+		}
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents) {
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents) {
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			if (modifiesData(event)) {
+
+				generation.incrementAndGet();
+
+				synchronized (cache) {
+					cache.values().removeIf(entry -> entry.dataDependent);
+				}
+
+				return;
+			}
+		}
+	}
+
+	@Override
+	public void simpleBroadcast(final String messageName, final Map<String, Object> data, final Predicate<String> sessionIdPredicate) {
+	}
+
+	// ----- private methods -----
+	private boolean modifiesData(final ModificationEvent event) {
+
+		if (event.getGraphObject() instanceof SessionDataNode) {
+			return false;
+		}
+
+		if (event.isCreated() || event.isDeleted()) {
+			return true;
+		}
+
+		return modifiesData(event.getModifiedProperties()) || modifiesData(event.getRemovedProperties());
+	}
+
+	private boolean modifiesData(final PropertyMap properties) {
+
+		if (properties != null) {
+
+			for (final PropertyKey key : properties.keySet()) {
+
+				if (!sessionProperties.contains(key.jsonName())) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private synchronized ThreadPoolExecutor getExecutor() {
+
+		final int size = Math.max(1, Settings.PdfRendererPoolSize.getValue(2));
+
+		if (executor == null || executor.getMaximumPoolSize() != size) {
+
+			// queued renderings of a replaced executor still run
+			if (executor != null) {
+				executor.shutdown();
+			}
+
+			executor = new ThreadPoolExecutor(size, size, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+
+				final Thread thread = new Thread(r, "PdfRenderer");
+				thread.setDaemon(true);
+
+				return thread;
+			});
+
+			executor.allowCoreThreadTimeOut(true);
+		}
+
+		return executor;
+	}
+
+	private byte[] getCached(final String key) {
+
+		synchronized (cache) {
+
+			final CacheEntry entry = cache.get(key);
+			if (entry != null) {
+
+				if (!entry.isExpired()) {
+					return entry.data;
+				}
+
+				cache.remove(key);
+			}
+		}
+
+		return null;
+	}
+
+	private void put(final String key, final CacheEntry entry) {
+
+		final int maxSize = Settings.PdfCacheSize.getValue(100);
+		if (maxSize > 0) {
+
+			synchronized (cache) {
+
+				cache.put(key, entry);
+
+				// remove least recently used entries
+				final Iterator<CacheEntry> iterator = cache.values().iterator();
+				while (cache.size() > maxSize && iterator.hasNext()) {
+
+					iterator.next();
+					iterator.remove();
+				}
+			}
+		}
+	}
+
+	private byte[] await(final CompletableFuture<byte[]> future) throws IOException, InterruptedException {
+
+		try {
+
+			return future.get();
+
+		} catch (ExecutionException ex) {
+
+			final Throwable cause = ex.getCause();
+
+			if (cause instanceof IOException) {
+				throw (IOException)cause;
+			}
+
+			if (cause instanceof InterruptedException) {
+				throw (InterruptedException)cause;
+			}
+
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException)cause;
+			}
+
+			throw new IOException(cause);
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Renders a document, allows tests to replace wkhtmltopdf.
+	 */
+	interface DocumentRenderer {
+
+		byte[] render() throws IOException, InterruptedException;
+	}
+
+	private static class CacheEntry {
+
+		private final boolean dataDependent;
+		private final long expires;
+		private final byte[] data;
+
+		CacheEntry(final byte[] data, final boolean dataDependent) {
+
+			this.dataDependent = dataDependent;
+			this.expires       = System.currentTimeMillis() + Settings.PdfCacheTimeout.getValue(600) * 1000L;
+			this.data          = data;
+		}
+
+		boolean isExpired() {
+			return System.currentTimeMillis() > expires;
+		}
+	}
+}
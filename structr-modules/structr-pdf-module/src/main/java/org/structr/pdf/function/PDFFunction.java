@@ -31,6 +31,7 @@ import org.structr.api.config.Settings;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.entity.Principal;
 import org.structr.core.entity.SuperUser;
+import org.structr.pdf.PdfRenderer;
 import org.structr.schema.action.ActionContext;
 import org.structr.schema.action.Function;
 
@@ -109,32 +110,35 @@ public class PDFFunction extends Function<Object, Object> {
 			parameterList.add(new Param(userParamter));
 		}
 
+		// the page is rendered by wkhtmltopdf with the credentials of the current user, so the result depends on the user and on the data
+		final String accessFingerprint   = currentUser != null ? currentUser.getUuid() : "anonymous:" + ctx.getSecurityContext().getSessionId();
+		final String cacheKey            = PdfRenderer.getKey(getName(), baseUrl + page, userParamter, xServerSettings, accessFingerprint);
 		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		try {
 
 			if (!runWithXserver) {
-				return convertPageToPdfWithoutXServer(baseUrl, page, parameterList, baos);
+				return convertPageToPdfWithoutXServer(baseUrl, page, parameterList, baos, cacheKey);
 			} else {
-				return convertPageToPdfWithXServer(baseUrl, page, parameterList, baos, xServerSettings);
+				return convertPageToPdfWithXServer(baseUrl, page, parameterList, baos, xServerSettings, cacheKey);
 			}
 
 		} catch (PDFExportException e) {
 
 			logger.warn("Could not convert page {}{} to pdf... retrying with xvfb...", baseUrl, page);
 
-			return convertPageToPdfWithXServer(baseUrl, page, parameterList, baos, xServerSettings);
+			return convertPageToPdfWithXServer(baseUrl, page, parameterList, baos, xServerSettings, cacheKey);
 		}
 	}
 
-	private  String convertPageToPdfWithoutXServer (String baseUrl, String page, List<Param> parameterList, ByteArrayOutputStream baos) {
+	private  String convertPageToPdfWithoutXServer (String baseUrl, String page, List<Param> parameterList, ByteArrayOutputStream baos, String cacheKey) {
 		Pdf pdf = new Pdf();
 		pdf.addPageFromUrl(baseUrl + page);
 		addParametersToPdf(pdf, parameterList);
 
-		return convertPageToPdf(pdf, baos);
+		return convertPageToPdf(pdf, baos, cacheKey);
 	}
 
-	private String convertPageToPdfWithXServer (String baseUrl, String page, List<Param> parameterList, ByteArrayOutputStream baos, String xServerSettings) {
+	private String convertPageToPdfWithXServer (String baseUrl, String page, List<Param> parameterList, ByteArrayOutputStream baos, String xServerSettings, String cacheKey) {
 		XvfbConfig xc = new XvfbConfig();
 
 		if (xServerSettings == null || xServerSettings.length() == 0) {
@@ -152,12 +156,12 @@ public class PDFFunction extends Function<Object, Object> {
 		pdf.addPageFromUrl(baseUrl + page);
 		addParametersToPdf(pdf, parameterList);
 
-		return convertPageToPdf(pdf, baos);
+		return convertPageToPdf(pdf, baos, cacheKey);
 	}
 
-	private String convertPageToPdf (Pdf pdf, ByteArrayOutputStream baos) {
+	private String convertPageToPdf (Pdf pdf, ByteArrayOutputStream baos, String cacheKey) {
 		try {
-			baos.write(pdf.getPDF());
+			baos.write(PdfRenderer.getInstance().render(cacheKey, true, pdf));
 			return baos.toString("ISO-8859-1");
 		} catch (IOException e) {
 
@@ -28,6 +28,7 @@ import org.structr.common.error.FrameworkException;
 import org.structr.core.app.App;
 import org.structr.core.app.StructrApp;
 import org.structr.core.graph.Tx;
+import org.structr.pdf.PdfRenderer;
 import org.structr.rest.service.StructrHttpServiceConfig;
 import org.structr.web.common.RenderContext;
 import org.structr.web.common.StringRenderBuffer;
@@ -37,7 +38,6 @@ import org.structr.websocket.command.AbstractCommand;
 
 import javax.servlet.AsyncContext;
 import javax.servlet.ServletOutputStream;
-import javax.servlet.WriteListener;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import java.io.IOException;
@@ -46,7 +46,6 @@ import java.util.Queue;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.atomic.AtomicBoolean;
 import org.apache.commons.lang3.exception.ExceptionUtils;
 import org.structr.rest.common.StatsCallback;
 
@@ -106,13 +105,19 @@ public class PdfServlet extends HtmlServlet {
 		this.stats = stats;
 	}
 
+	/**
+	 * Renders the page on the thread pool and queues the PDF rendering, the
+	 * document is written and the request completed when it is available,
+	 * so no Jetty thread waits for a renderer.
+	 */
 	@Override
 	protected void renderAsyncOutput(HttpServletRequest request, HttpServletResponse response, App app, RenderContext renderContext, DOMNode rootElement, final long requestStartTime) throws IOException {
 
 		final AsyncContext async = request.startAsync();
-		final ServletOutputStream out = async.getResponse().getOutputStream();
-		final AtomicBoolean finished = new AtomicBoolean(false);
-		final DOMNode rootNode = rootElement;
+		final DOMNode rootNode   = rootElement;
+
+		// the renderer enforces its own timeout
+		async.setTimeout(0);
 
 		setCustomResponseHeaders(response);
 
@@ -124,11 +129,12 @@ public class PdfServlet extends HtmlServlet {
 			@Override
 			public void run() {
 
+				final StringBuilder pageContent = new StringBuilder();
+
 				try (final Tx tx = app.tx()) {
 
 					// render
 					rootNode.render(renderContext, 0);
-					finished.set(true);
 
 					tx.success();
 
@@ -137,79 +143,56 @@ public class PdfServlet extends HtmlServlet {
 					logger.warn("Error while rendering page {}: {}", rootNode.getName(), t.getMessage());
 					logger.warn(ExceptionUtils.getStackTrace(t));
 
-					try {
-
-						response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
-						finished.set(true);
-
-					} catch (IOException ex) {
-						logger.warn("", ex);
-					}
+					sendError(async, response);
+					return;
 				}
-			}
 
-		});
+				final Queue<String> queue = renderContext.getBuffer().getQueue();
 
-		// start output write listener
-		out.setWriteListener(new WriteListener() {
+				synchronized (queue) {
 
-			@Override
-			public void onWritePossible() throws IOException {
-
-				try {
+					String buffer = null;
 
-					final Queue<String> queue = renderContext.getBuffer().getQueue();
-					String pageContent = "";
-					while (out.isReady()) {
+					while ((buffer = queue.poll()) != null) {
+						pageContent.append(buffer);
+					}
+				}
 
-						String buffer = null;
+				// TODO: implement parameters for wkhtmltopdf in settings
 
-						synchronized (queue) {
-							buffer = queue.poll();
-						}
+				final String content = pageContent.toString();
+				final Pdf pdf        = new Pdf();
 
-						if (buffer != null) {
+				pdf.addPageFromString(content);
 
-							pageContent += buffer;
+				// the rendered page contains all data, so identical content results in an identical document
+				PdfRenderer.getInstance().renderAsync(PdfRenderer.getKey(getModuleName(), content), false, pdf).whenCompleteAsync((document, error) -> {
 
-						} else {
+					if (error != null) {
 
-							if (finished.get()) {
+						logger.warn("Error while rendering PDF document for page {}: {}", rootNode.getName(), error.getMessage());
 
-								// TODO: implement parameters for wkhtmltopdf in settings
+						sendError(async, response);
+						return;
+					}
 
-								Pdf pdf = new Pdf();
-								pdf.addPageFromString(pageContent);
+					try {
 
-								out.write(pdf.getPDF());
+						final ServletOutputStream out = async.getResponse().getOutputStream();
 
-								async.complete();
+						out.write(document);
+						out.flush();
 
-								// prevent this block from being called again
-								break;
-							}
+					} catch (EofException ee) {
+						logger.warn("Could not flush the response body content to the client, probably because the network connection was terminated.");
+					} catch (IOException ioex) {
+						logger.warn("Unexpected exception", ioex);
+					} finally {
 
-							Thread.sleep(1);
-						}
+						async.complete();
 					}
 
-
-
-
-				} catch (EofException ee) {
-					logger.warn("Could not flush the response body content to the client, probably because the network connection was terminated.");
-				} catch (IOException | InterruptedException t) {
-					logger.warn("Unexpected exception", t);
-				}
-			}
-
-			@Override
-			public void onError(Throwable t) {
-				if (t instanceof EofException) {
-					logger.warn("Could not flush the response body content to the client, probably because the network connection was terminated.");
-				} else {
-					logger.warn("Unexpected exception", t);
-				}
+				}, threadPool);
 			}
 		});
 	}
@@ -222,4 +205,19 @@ public class PdfServlet extends HtmlServlet {
 		response.getOutputStream().close();
 	}
 
-}
\ No newline at end of file
+	// ----- private methods -----
+	private void sendError(final AsyncContext async, final HttpServletResponse response) {
+
+		try {
+
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+
+		} catch (IOException ex) {
+			logger.warn("", ex);
+
+		} finally {
+
+			async.complete();
+		}
+	}
+}
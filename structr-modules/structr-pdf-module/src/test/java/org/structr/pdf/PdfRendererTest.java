@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.pdf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.structr.api.config.Settings;
+import org.structr.api.graph.RelationshipType;
+import org.structr.common.SecurityContext;
+import org.structr.core.GraphObject;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.property.PropertyMap;
+import org.structr.core.property.StringProperty;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the renderer pool and the document cache without wkhtmltopdf.
+ */
+public class PdfRendererTest {
+
+	@Test
+	public void testPoolLimit() throws Exception {
+
+		Settings.PdfRendererPoolSize.setValue(2);
+
+		final PdfRenderer renderer                     = new PdfRenderer();
+		final List<CompletableFuture<byte[]>> futures  = new ArrayList<>();
+		final AtomicInteger running                    = new AtomicInteger();
+		final AtomicInteger maxRunning                 = new AtomicInteger();
+
+		for (int i=0; i<6; i++) {
+
+			futures.add(renderer.renderAsync("document" + i, false, () -> {
+
+				final int current = running.incrementAndGet();
+
+				maxRunning.accumulateAndGet(current, Math::max);
+				Thread.sleep(100);
+				running.decrementAndGet();
+
+				return new byte[0];
+			}));
+		}
+
+		// callers are not blocked while the documents are queued
+		assertTrue("Rendering should be queued", futures.stream().anyMatch(f -> !f.isDone()));
+
+		for (final CompletableFuture<byte[]> future : futures) {
+			future.get(10, TimeUnit.SECONDS);
+		}
+
+		assertEquals("Number of concurrent renderers should be limited to the pool size", 2, maxRunning.get());
+	}
+
+	@Test
+	public void testConcurrentRequestsShareRendering() throws Exception {
+
+		final PdfRenderer renderer  = new PdfRenderer();
+		final CountDownLatch latch  = new CountDownLatch(1);
+		final AtomicInteger renders = new AtomicInteger();
+		final byte[] document       = new byte[] { 1, 2, 3 };
+
+		final PdfRenderer.DocumentRenderer documentRenderer = () -> {
+
+			renders.incrementAndGet();
+			latch.await();
+
+			return document;
+		};
+
+		final CompletableFuture<byte[]> first  = renderer.renderAsync("document", false, documentRenderer);
+		final CompletableFuture<byte[]> second = renderer.renderAsync("document", false, documentRenderer);
+
+		assertSame("Concurrent requests should wait for the same rendering", first, second);
+
+		latch.countDown();
+
+		assertSame(document, first.get(10, TimeUnit.SECONDS));
+
+		// cached
+		assertSame(document, renderer.renderAsync("document", false, documentRenderer).get(10, TimeUnit.SECONDS));
+		assertEquals("Document should be rendered once", 1, renders.get());
+	}
+
+	@Test
+	public void testInvalidation() throws Exception {
+
+		final PdfRenderer renderer  = new PdfRenderer();
+		final AtomicInteger renders = new AtomicInteger();
+
+		final PdfRenderer.DocumentRenderer documentRenderer = () -> {
+
+			renders.incrementAndGet();
+			return new byte[0];
+		};
+
+		renderer.renderAsync("content", false, documentRenderer).get(10, TimeUnit.SECONDS);
+		renderer.renderAsync("data", true, documentRenderer).get(10, TimeUnit.SECONDS);
+
+		assertEquals(2, renders.get());
+
+		// login and session modifications do not invalidate documents
+		renderer.afterCommit(null, Collections.singletonList(new TestEvent(false, "sessionIds", "lastModifiedDate")));
+
+		renderer.renderAsync("content", false, documentRenderer).get(10, TimeUnit.SECONDS);
+		renderer.renderAsync("data", true, documentRenderer).get(10, TimeUnit.SECONDS);
+
+		assertEquals("Session modifications should not invalidate documents", 2, renders.get());
+
+		// data modifications invalidate data dependent documents only
+		renderer.afterCommit(null, Collections.singletonList(new TestEvent(false, "name", "lastModifiedDate")));
+
+		renderer.renderAsync("content", false, documentRenderer).get(10, TimeUnit.SECONDS);
+		renderer.renderAsync("data", true, documentRenderer).get(10, TimeUnit.SECONDS);
+
+		assertEquals("Data modifications should invalidate data dependent documents", 3, renders.get());
+
+		// created objects invalidate data dependent documents
+		renderer.afterCommit(null, Collections.singletonList(new TestEvent(true)));
+
+		renderer.renderAsync("data", true, documentRenderer).get(10, TimeUnit.SECONDS);
+
+		assertEquals("Created objects should invalidate data dependent documents", 4, renders.get());
+	}
+
+	// ----- nested classes -----
+	private static class TestEvent implements ModificationEvent {
+
+		private final PropertyMap modified = new PropertyMap();
+		private final boolean created;
+
+		TestEvent(final boolean created, final String... modifiedKeys) {
+
+			this.created = created;
+
+			for (final String key : modifiedKeys) {
+				modified.put(new StringProperty(key), "value");
+			}
+		}
+
+		@Override
+		public boolean isNode() {
+			return true;
+		}
+
+		@Override
+		public int getStatus() {
+			return 0;
+		}
+
+		@Override
+		public String getChangeLog() {
+			return null;
+		}
+
+		@Override
+		public Map<String, StringBuilder> getUserChangeLogs() {
+			return null;
+		}
+
+		@Override
+		public String getCallbackId() {
+			return null;
+		}
+
+		@Override
+		public boolean isDeleted() {
+			return false;
+		}
+
+		@Override
+		public boolean isModified() {
+			return !created;
+		}
+
+		@Override
+		public boolean isCreated() {
+			return created;
+		}
+
+		@Override
+		public GraphObject getGraphObject() {
+			return null;
+		}
+
+		@Override
+		public RelationshipType getRelationshipType() {
+			return null;
+		}
+
+		@Override
+		public String getUuid() {
+			return null;
+		}
+
+		@Override
+		public PropertyMap getNewProperties() {
+			return null;
+		}
+
+		@Override
+		public PropertyMap getModifiedProperties() {
+			return modified;
+		}
+
+		@Override
+		public PropertyMap getRemovedProperties() {
+			return null;
+		}
+
+		@Override
+		public Map<String, Object> getData(final SecurityContext securityContext) {
+			return null;
+		}
+	}
+}
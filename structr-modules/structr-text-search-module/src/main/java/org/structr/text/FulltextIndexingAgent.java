@@ -70,6 +70,7 @@ public class FulltextIndexingAgent extends Agent<String> {
 
 	private static final Logger logger = LoggerFactory.getLogger(FulltextIndexingAgent.class.getName());
 	static final Map<String, Set<String>> languageStopwordMap = new LinkedHashMap<>();
+	static final Set<String> allStopwords                     = new LinkedHashSet<>();
 	public static final String TASK_NAME                              = "FulltextIndexing";
 
 	private final Detector detector;
@@ -132,6 +133,14 @@ public class FulltextIndexingAgent extends Agent<String> {
 		return true;
 	}
 
+	/**
+	 * Indicates whether the given word is a stop word in any of the known
+	 * languages. Used for queries, whose language is unknown.
+	 */
+	static boolean isStopWord(final String word) {
+		return allStopwords.contains(word);
+	}
+
 	// ----- private methods -----
 	private boolean doIndexing(final App app, final Indexable indexable) {
 
@@ -207,6 +216,7 @@ public class FulltextIndexingAgent extends Agent<String> {
 							final Set<String> stopWords             = languageStopwordMap.get(tokenizer.getLanguage());
 							final Iterator<String> wordIterator     = tokenizer.getWords().iterator();
 							final Map<String, Integer> indexedWords = new LinkedHashMap<>();
+							final List<String> allWords             = new ArrayList<>();
 
 							while (wordIterator.hasNext()) {
 
@@ -216,6 +226,19 @@ public class FulltextIndexingAgent extends Agent<String> {
 
 									add(indexedWords, word);
 								}
+
+								allWords.add(word);
+							}
+
+							if (TextSearchModule.useSegmentIndex()) {
+
+								// stop words keep their position so that phrase queries work across them
+								TextSearchModule.getSegmentIndex().addDocument(indexable.getUuid(), allWords, stopWords);
+							}
+
+							if (!TextSearchModule.useGraphIndex()) {
+
+								return true;
 							}
 
 							final List<String> topWords       = getFrequencySortedTopWords(indexedWords, indexable.maximumIndexedWords());
@@ -364,6 +387,8 @@ public class FulltextIndexingAgent extends Agent<String> {
 						for (final String word : IOUtils.readLines(zis)) {
 							stopwordSet.add(word.trim());
 						}
+
+						allStopwords.addAll(stopwordSet);
 					}
 				}
 			}
@@ -18,8 +18,12 @@
  */
 package org.structr.text;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 import org.apache.commons.lang3.StringUtils;
@@ -30,6 +34,7 @@ import org.apache.tika.parser.ocr.TesseractOCRConfig;
 import org.codehaus.plexus.util.ExceptionUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
 import org.structr.api.service.LicenseManager;
 import org.structr.common.error.FrameworkException;
 import org.structr.common.fulltext.ContentAnalyzer;
@@ -42,9 +47,12 @@ import org.structr.core.entity.AbstractSchemaNode;
 import org.structr.core.function.Functions;
 import org.structr.core.graph.NodeAttribute;
 import org.structr.core.property.GenericProperty;
+import org.structr.core.property.PropertyKey;
 import org.structr.module.StructrModule;
 import org.structr.schema.SourceFile;
 import org.structr.schema.action.Actions;
+import org.structr.text.index.SearchHit;
+import org.structr.text.index.SegmentedFulltextIndex;
 import org.structr.text.model.MetadataNode;
 import org.structr.text.model.StructuredDocument;
 import org.structr.text.model.StructuredTextNode;
@@ -56,6 +64,7 @@ public class TextSearchModule implements FulltextIndexer, ContentAnalyzer, Struc
 
 	private static final Logger logger              = LoggerFactory.getLogger(TextSearchModule.class);
 	private static final GenericProperty contextKey = new GenericProperty("context");
+	private static SegmentedFulltextIndex segmentIndex = null;
 
 	@Override
 	public void onLoad(final LicenseManager licenseManager) {
@@ -71,6 +80,80 @@ public class TextSearchModule implements FulltextIndexer, ContentAnalyzer, Struc
 		StructrApp.getInstance(node.getSecurityContext()).processTasks(new FulltextIndexingTask(node.getUuid()));
 	}
 
+	@Override
+	public void removeFromFulltextIndex(final String uuid) throws FrameworkException {
+
+		if (useSegmentIndex()) {
+
+			getSegmentIndex().deleteDocument(uuid);
+		}
+	}
+
+	@Override
+	public boolean supportsFulltextQuery(final PropertyKey key) {
+		return useSegmentIndex() && key != null && "extractedContent".equals(key.jsonName());
+	}
+
+	@Override
+	public List<String> fulltextQuery(final String searchTerm) throws FrameworkException {
+
+		final List<String> result = new ArrayList<>();
+		final int minLength       = Settings.IndexingMinLength.getValue();
+		final int maxLength       = Settings.IndexingMaxLength.getValue();
+
+		try {
+
+			// query words are filtered like the words of an indexed document
+			for (final SearchHit hit : getSegmentIndex().search(searchTerm, word -> word.length() >= minLength && word.length() <= maxLength && !FulltextIndexingAgent.isStopWord(word), 0)) {
+
+				result.add(hit.getId());
+			}
+
+		} catch (IOException ioex) {
+
+			throw new FrameworkException(500, "Unable to query fulltext index: " + ioex.getMessage());
+		}
+
+		return result;
+	}
+
+	public static boolean useSegmentIndex() {
+		return !"graph".equals(Settings.IndexingMode.getValue());
+	}
+
+	public static boolean useGraphIndex() {
+		return !"segments".equals(Settings.IndexingMode.getValue());
+	}
+
+	public static synchronized SegmentedFulltextIndex getSegmentIndex() throws FrameworkException {
+
+		if (segmentIndex == null) {
+
+			try {
+
+				final SegmentedFulltextIndex index = SegmentedFulltextIndex.open(Paths.get(Settings.getFullSettingPath(Settings.IndexingSegmentsPath)), Settings.IndexingSegmentsFlushSize.getValue(), Settings.IndexingSegmentsMergeFactor.getValue());
+
+				Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+
+					try {
+						index.close();
+
+					} catch (IOException ioex) {
+						logger.warn("Unable to close fulltext index: {}", ioex.getMessage());
+					}
+				}));
+
+				segmentIndex = index;
+
+			} catch (IOException ioex) {
+
+				throw new FrameworkException(500, "Unable to open fulltext index: " + ioex.getMessage());
+			}
+		}
+
+		return segmentIndex;
+	}
+
 	@Override
 	public GraphObjectMap getContextObject(final String searchTerm, final String text, final int contextLength) {
 
@@ -0,0 +1,241 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.text.index;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * A parsed fulltext query. All clauses are required. Supported syntax:
+ *
+ * <ul>
+ * <li><code>word</code> - matches documents containing the word</li>
+ * <li><code>wor*</code> - matches documents containing a word with the given prefix</li>
+ * <li><code>"some words"</code> - matches documents containing the words in this order</li>
+ * </ul>
+ *
+ * Words are normalized the same way the FulltextTokenizer normalizes them
+ * at indexing time.
+ */
+public class IndexQuery {
+
+	public enum Type { Term, Prefix, Phrase }
+
+	private final List<Clause> clauses = new ArrayList<>();
+
+	private IndexQuery() {
+	}
+
+	public static IndexQuery parse(final String query, final Predicate<String> acceptWord) {
+
+		final IndexQuery result = new IndexQuery();
+
+		if (StringUtils.isBlank(query)) {
+			return result;
+		}
+
+		final StringBuilder buf = new StringBuilder();
+		final int length        = query.length();
+		boolean inPhrase        = false;
+
+		for (int i=0; i<=length; i++) {
+
+			final char c = i < length ? query.charAt(i) : ' ';
+
+			if (c == '"') {
+
+				if (inPhrase) {
+
+					result.addPhrase(buf.toString(), acceptWord);
+
+				} else {
+
+					result.addWords(buf.toString(), acceptWord);
+				}
+
+				buf.setLength(0);
+				inPhrase = !inPhrase;
+
+			} else if (Character.isWhitespace(c) && !inPhrase) {
+
+				result.addWords(buf.toString(), acceptWord);
+				buf.setLength(0);
+
+			} else {
+
+				buf.append(c);
+			}
+		}
+
+		// unterminated phrase
+		if (inPhrase) {
+			result.addPhrase(buf.toString(), acceptWord);
+		}
+
+		return result;
+	}
+
+	public List<Clause> getClauses() {
+		return Collections.unmodifiableList(clauses);
+	}
+
+	public boolean isEmpty() {
+		return clauses.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return clauses.toString();
+	}
+
+	// ----- private methods -----
+	private void addWords(final String text, final Predicate<String> acceptWord) {
+
+		for (final String word : StringUtils.split(text)) {
+
+			if (word.endsWith("*")) {
+
+				final List<String> parts = normalize(word.substring(0, word.length() - 1));
+				if (!parts.isEmpty()) {
+
+					// all but the last part must match exactly
+					if (parts.size() > 1) {
+						addPhrase(parts.subList(0, parts.size() - 1), acceptWord);
+					}
+
+					clauses.add(new Clause(Type.Prefix, new String[] { parts.get(parts.size() - 1) }, new int[] { 0 }));
+				}
+
+			} else {
+
+				final List<String> parts = normalize(word);
+				if (parts.size() > 1) {
+
+					addPhrase(parts, acceptWord);
+
+				} else if (parts.size() == 1 && acceptWord.test(parts.get(0))) {
+
+					clauses.add(new Clause(Type.Term, new String[] { parts.get(0) }, new int[] { 0 }));
+				}
+			}
+		}
+	}
+
+	private void addPhrase(final String text, final Predicate<String> acceptWord) {
+
+		final List<String> words = new ArrayList<>();
+
+		for (final String word : StringUtils.split(text)) {
+			words.addAll(normalize(word));
+		}
+
+		addPhrase(words, acceptWord);
+	}
+
+	private void addPhrase(final List<String> words, final Predicate<String> acceptWord) {
+
+		final List<String> terms     = new ArrayList<>();
+		final List<Integer> offsets  = new ArrayList<>();
+		int offset                   = 0;
+
+		// ignored words (stop words etc.) are not indexed but still occupy a position
+		for (final String word : words) {
+
+			if (acceptWord.test(word)) {
+
+				terms.add(word);
+				offsets.add(offset);
+			}
+
+			offset++;
+		}
+
+		if (terms.size() == 1) {
+
+			clauses.add(new Clause(Type.Term, new String[] { terms.get(0) }, new int[] { 0 }));
+
+		} else if (terms.size() > 1) {
+
+			final int[] offsetArray = new int[offsets.size()];
+			for (int i=0; i<offsetArray.length; i++) {
+				offsetArray[i] = offsets.get(i);
+			}
+
+			clauses.add(new Clause(Type.Phrase, terms.toArray(new String[0]), offsetArray));
+		}
+	}
+
+	/**
+	 * Applies the normalization rules of FulltextTokenizer to a single word.
+	 */
+	static List<String> normalize(final String word) {
+
+		final List<String> result = new ArrayList<>();
+		final String stripped     = StringUtils.strip(word, "\"'()[]{}!?;:");
+
+		if (StringUtils.isNotBlank(stripped)) {
+
+			for (final String part : stripped.split("[\\.,]+")) {
+
+				final String normalized = part.trim().replaceAll("[\\-/]+", "").toLowerCase();
+				if (StringUtils.isNotBlank(normalized)) {
+
+					result.add(normalized);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	// ----- nested classes -----
+	public static class Clause {
+
+		private final Type type;
+		private final String[] terms;
+		private final int[] offsets;
+
+		Clause(final Type type, final String[] terms, final int[] offsets) {
+
+			this.type    = type;
+			this.terms   = terms;
+			this.offsets = offsets;
+		}
+
+		public Type getType() {
+			return type;
+		}
+
+		public String[] getTerms() {
+			return terms;
+		}
+
+		public int[] getOffsets() {
+			return offsets;
+		}
+
+		@Override
+		public String toString() {
+			return type + "(" + StringUtils.join(terms, " ") + ")";
+		}
+	}
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.text.index;
+
+/**
+ * A single, scored result of a fulltext index search.
+ */
+public class SearchHit {
+
+	private final String id;
+	private final float score;
+
+	public SearchHit(final String id, final float score) {
+
+		this.id    = id;
+		this.score = score;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public float getScore() {
+		return score;
+	}
+
+	@Override
+	public String toString() {
+		return id + "(" + score + ")";
+	}
+}
@@ -0,0 +1,387 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.text.index;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * An immutable, memory-mapped index segment. The only mutable part of a
+ * segment is its set of deleted documents, which is replaced copy-on-write
+ * and persisted in a separate, generation-numbered deletions file.
+ */
+class Segment {
+
+	private final MappedByteBuffer postings;
+	private final String name;
+	private final String[] docIds;
+	private final int[] docLengths;
+	private final int[] docsById;
+	private final String[] terms;
+	private final long[] termOffsets;
+	private final int[] docFreqs;
+	private final long totalLength;
+	private final long sizeInBytes;
+	private volatile BitSet deleted = new BitSet();
+	private volatile int deletionGeneration = 0;
+
+	private Segment(final String name, final MappedByteBuffer postings, final String[] docIds, final int[] docLengths, final String[] terms, final long[] termOffsets, final int[] docFreqs, final long totalLength, final long sizeInBytes) {
+
+		this.name        = name;
+		this.postings    = postings;
+		this.docIds      = docIds;
+		this.docLengths  = docLengths;
+		this.terms       = terms;
+		this.termOffsets = termOffsets;
+		this.docFreqs    = docFreqs;
+		this.totalLength = totalLength;
+		this.sizeInBytes = sizeInBytes;
+
+		// secondary index for id lookups, sorted by document id
+		final Integer[] sorted = new Integer[docIds.length];
+		for (int i=0; i<sorted.length; i++) {
+			sorted[i] = i;
+		}
+
+		Arrays.sort(sorted, (a, b) -> docIds[a].compareTo(docIds[b]));
+
+		this.docsById = new int[sorted.length];
+		for (int i=0; i<sorted.length; i++) {
+			this.docsById[i] = sorted[i];
+		}
+	}
+
+	static Segment open(final Path directory, final String name, final int deletionGeneration) throws IOException {
+
+		final Path file = directory.resolve(name + ".seg");
+
+		try (final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+
+			final long size         = channel.size();
+			final ByteBuffer footer = ByteBuffer.allocate(SegmentWriter.FOOTER_SIZE);
+
+			channel.read(footer, size - SegmentWriter.FOOTER_SIZE);
+			footer.flip();
+
+			final long docsOffset  = footer.getLong();
+			final long termsOffset = footer.getLong();
+			final int docCount     = footer.getInt();
+			final int termCount    = footer.getInt();
+			final long totalLength = footer.getLong();
+			final int magic        = footer.getInt();
+
+			if (magic != SegmentWriter.MAGIC) {
+				throw new IOException("Invalid fulltext index segment " + file);
+			}
+
+			final String[] docIds      = new String[docCount];
+			final int[] docLengths     = new int[docCount];
+			final String[] terms       = new String[termCount];
+			final long[] termOffsets   = new long[termCount];
+			final int[] docFreqs       = new int[termCount];
+
+			channel.position(docsOffset);
+
+			final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 65536));
+
+			for (int i=0; i<docCount; i++) {
+
+				docIds[i]     = in.readUTF();
+				docLengths[i] = in.readInt();
+			}
+
+			for (int i=0; i<termCount; i++) {
+
+				terms[i]       = in.readUTF().intern();
+				termOffsets[i] = in.readLong();
+				docFreqs[i]    = in.readInt();
+			}
+
+			final MappedByteBuffer postings = channel.map(FileChannel.MapMode.READ_ONLY, 0, docsOffset);
+			final Segment segment           = new Segment(name, postings, docIds, docLengths, terms, termOffsets, docFreqs, totalLength, size);
+
+			if (deletionGeneration > 0) {
+				segment.loadDeletions(directory, deletionGeneration);
+			}
+
+			return segment;
+		}
+	}
+
+	String getName() {
+		return name;
+	}
+
+	int getDocCount() {
+		return docIds.length;
+	}
+
+	int getLiveDocCount() {
+		return docIds.length - deleted.cardinality();
+	}
+
+	long getTotalLength() {
+		return totalLength;
+	}
+
+	long getSizeInBytes() {
+		return sizeInBytes;
+	}
+
+	String getDocId(final int doc) {
+		return docIds[doc];
+	}
+
+	int getDocLength(final int doc) {
+		return docLengths[doc];
+	}
+
+	int getTermCount() {
+		return terms.length;
+	}
+
+	String getTerm(final int index) {
+		return terms[index];
+	}
+
+	int getDocFreq(final int termIndex) {
+		return docFreqs[termIndex];
+	}
+
+	BitSet getDeleted() {
+		return deleted;
+	}
+
+	int getDeletionGeneration() {
+		return deletionGeneration;
+	}
+
+	/**
+	 * Returns the index of the given term, or a negative value if the term
+	 * does not exist in this segment.
+	 */
+	int findTerm(final String term) {
+		return Arrays.binarySearch(terms, term);
+	}
+
+	/**
+	 * Returns the range [start, end) of all terms that start with the given prefix.
+	 */
+	int[] findPrefix(final String prefix) {
+
+		int start = Arrays.binarySearch(terms, prefix);
+		if (start < 0) {
+			start = -start - 1;
+		}
+
+		int end = start;
+		while (end < terms.length && terms[end].startsWith(prefix)) {
+			end++;
+		}
+
+		return new int[] { start, end };
+	}
+
+	/**
+	 * Returns the document number of the live document with the given id,
+	 * or -1 if this segment does not contain it.
+	 */
+	int findDoc(final String id) {
+
+		int low  = 0;
+		int high = docsById.length - 1;
+
+		while (low <= high) {
+
+			final int mid = (low + high) >>> 1;
+			final int cmp = docIds[docsById[mid]].compareTo(id);
+
+			if (cmp < 0) {
+
+				low = mid + 1;
+
+			} else if (cmp > 0) {
+
+				high = mid - 1;
+
+			} else {
+
+				final int doc = docsById[mid];
+
+				return deleted.get(doc) ? -1 : doc;
+			}
+		}
+
+		return -1;
+	}
+
+	Postings postings(final int termIndex) {
+
+		final ByteBuffer buffer = postings.duplicate();
+		buffer.position((int)termOffsets[termIndex]);
+
+		return new Postings(buffer, docFreqs[termIndex]);
+	}
+
+	/**
+	 * Marks the given document as deleted. Must be called with the index
+	 * lock held, readers see a consistent snapshot through {@link #getDeleted()}.
+	 */
+	void delete(final int doc) {
+
+		final BitSet copy = (BitSet)deleted.clone();
+		copy.set(doc);
+
+		deleted = copy;
+	}
+
+	void delete(final BitSet docs) {
+
+		final BitSet copy = (BitSet)deleted.clone();
+		copy.or(docs);
+
+		deleted = copy;
+	}
+
+	/**
+	 * Persists the current deletions under a new generation number and returns it.
+	 */
+	int writeDeletions(final Path directory) throws IOException {
+
+		final int generation = deletionGeneration + 1;
+		final Path target    = directory.resolve(name + "_" + generation + ".del");
+		final Path tmp       = directory.resolve(name + "_" + generation + ".del.tmp");
+		final long[] words   = deleted.toLongArray();
+
+		try (final DataOutputStream out = new DataOutputStream(Files.newOutputStream(tmp))) {
+
+			out.writeInt(words.length);
+
+			for (final long word : words) {
+				out.writeLong(word);
+			}
+		}
+
+		Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		deletionGeneration = generation;
+
+		return generation;
+	}
+
+	// ----- private methods -----
+	private void loadDeletions(final Path directory, final int generation) throws IOException {
+
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(directory.resolve(name + "_" + generation + ".del"))))) {
+
+			final long[] words = new long[in.readInt()];
+
+			for (int i=0; i<words.length; i++) {
+				words[i] = in.readLong();
+			}
+
+			this.deleted            = BitSet.valueOf(words);
+			this.deletionGeneration = generation;
+		}
+	}
+
+	// ----- nested classes -----
+	/**
+	 * Sequential reader for the postings list of a single term.
+	 */
+	static class Postings {
+
+		private final ByteBuffer buffer;
+		private final int docFreq;
+		private int[] positions = new int[16];
+		private int read        = 0;
+		private int doc         = -1;
+		private int freq        = 0;
+
+		Postings(final ByteBuffer buffer, final int docFreq) {
+
+			this.buffer  = buffer;
+			this.docFreq = docFreq;
+		}
+
+		boolean next() {
+
+			if (read++ >= docFreq) {
+				return false;
+			}
+
+			doc  += readVInt();
+			freq  = readVInt();
+
+			if (positions.length < freq) {
+				positions = new int[Math.max(freq, positions.length * 2)];
+			}
+
+			int position = 0;
+
+			for (int i=0; i<freq; i++) {
+
+				position    += readVInt();
+				positions[i] = position;
+			}
+
+			return true;
+		}
+
+		int doc() {
+			return doc;
+		}
+
+		int freq() {
+			return freq;
+		}
+
+		int[] positions() {
+			return positions;
+		}
+
+		private int readVInt() {
+
+			int b     = buffer.get();
+			int value = b & 0x7F;
+			int shift = 7;
+
+			while ((b & 0x80) != 0) {
+
+				b      = buffer.get();
+				value |= (b & 0x7F) << shift;
+				shift += 7;
+			}
+
+			return value;
+		}
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.text.index;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes a single immutable index segment. Terms must be added in ascending
+ * order, postings of a term in ascending document order.
+ *
+ * File layout: postings, document table, term dictionary, fixed-size footer.
+ */
+class SegmentWriter implements AutoCloseable {
+
+	static final int MAGIC       = 0x53545846;
+	static final int FOOTER_SIZE = 36;
+
+	private final List<String> terms       = new ArrayList<>();
+	private final List<Long> termOffsets   = new ArrayList<>();
+	private final List<Integer> docFreqs   = new ArrayList<>();
+	private final List<String> docIds      = new ArrayList<>();
+	private final List<Integer> docLengths = new ArrayList<>();
+	private final CountingOutputStream counter;
+	private final DataOutputStream out;
+	private String currentTerm             = null;
+	private long currentTermOffset         = 0L;
+	private int currentDocFreq             = 0;
+	private int lastDoc                    = -1;
+	private long totalLength               = 0L;
+
+	SegmentWriter(final Path file) throws IOException {
+
+		this.counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 65536));
+		this.out     = new DataOutputStream(counter);
+	}
+
+	int addDocument(final String id, final int length) {
+
+		docIds.add(id);
+		docLengths.add(length);
+
+		totalLength += length;
+
+		return docIds.size() - 1;
+	}
+
+	void startTerm(final String term) {
+
+		if (currentTerm != null && currentTerm.compareTo(term) >= 0) {
+			throw new IllegalStateException("Terms must be added in ascending order, got " + term + " after " + currentTerm);
+		}
+
+		currentTerm       = term;
+		currentTermOffset = counter.getCount();
+		currentDocFreq    = 0;
+		lastDoc           = -1;
+	}
+
+	/**
+	 * Postings are written as (doc delta, frequency, position deltas...).
+	 * The document frequency is not known in advance and is stored in the
+	 * term dictionary instead.
+	 */
+	void addPosting(final int doc, final int[] positions, final int count) throws IOException {
+
+		if (doc <= lastDoc) {
+			throw new IllegalStateException("Postings must be added in ascending document order");
+		}
+
+		writeVInt(doc - lastDoc);
+		writeVInt(count);
+
+		int lastPosition = 0;
+
+		for (int i=0; i<count; i++) {
+
+			writeVInt(positions[i] - lastPosition);
+			lastPosition = positions[i];
+		}
+
+		lastDoc = doc;
+		currentDocFreq++;
+	}
+
+	void finishTerm() {
+
+		if (currentTerm != null && currentDocFreq > 0) {
+
+			terms.add(currentTerm);
+			termOffsets.add(currentTermOffset);
+			docFreqs.add(currentDocFreq);
+		}
+	}
+
+	long getBytesWritten() {
+		return counter.getCount();
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		final long docsOffset = counter.getCount();
+		final int docCount    = docIds.size();
+
+		for (int i=0; i<docCount; i++) {
+
+			out.writeUTF(docIds.get(i));
+			out.writeInt(docLengths.get(i));
+		}
+
+		final long termsOffset = counter.getCount();
+		final int termCount    = terms.size();
+
+		for (int i=0; i<termCount; i++) {
+
+			out.writeUTF(terms.get(i));
+			out.writeLong(termOffsets.get(i));
+			out.writeInt(docFreqs.get(i));
+		}
+
+		out.writeLong(docsOffset);
+		out.writeLong(termsOffset);
+		out.writeInt(docCount);
+		out.writeInt(termCount);
+		out.writeLong(totalLength);
+		out.writeInt(MAGIC);
+
+		out.flush();
+		out.close();
+	}
+
+	// ----- private methods -----
+	private void writeVInt(int value) throws IOException {
+
+		while ((value & ~0x7F) != 0) {
+
+			out.write((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+
+		out.write(value);
+	}
+
+	// ----- nested classes -----
+	private static class CountingOutputStream extends FilterOutputStream {
+
+		private long count = 0L;
+
+		public CountingOutputStream(final OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+
+			out.write(b, off, len);
+			count += len;
+		}
+
+		public long getCount() {
+			return count;
+		}
+	}
+}
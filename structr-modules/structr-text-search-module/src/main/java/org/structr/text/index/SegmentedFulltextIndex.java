@@ -0,0 +1,1067 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.text.index;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.text.index.Segment.Postings;
+
+/**
+ * Embedded inverted index consisting of immutable on-disk segments.
+ *
+ * New documents are buffered in memory and written as a new segment when
+ * the buffer is full, on {@link #commit()}, or before the next search. An
+ * update of a document is a deletion of the old version plus an addition.
+ * A background thread merges similarly-sized segments and expunges deleted
+ * documents. Searches are scored with BM25 and support terms, prefixes and
+ * phrases, see {@link IndexQuery}.
+ *
+ * The set of live segments is recorded in a manifest file which is replaced
+ * atomically on each commit, so a crash leaves the index in the state of the
+ * last commit.
+ */
+public class SegmentedFulltextIndex implements AutoCloseable {
+
+	private static final Logger logger = LoggerFactory.getLogger(SegmentedFulltextIndex.class.getName());
+
+	private static final String MANIFEST             = "segments";
+	private static final float K1                    = 1.2f;
+	private static final float B                     = 0.75f;
+	private static final int MAX_PREFIX_EXPANSIONS   = 1024;
+	private static final int MAX_BUFFERED_POSITIONS  = 1_000_000;
+	private static final long MAX_MERGED_SEGMENT     = 1024L * 1024L * 1024L;
+
+	private final Map<String, BufferedDocument> buffer = new LinkedHashMap<>();
+	private final Set<Segment> dirtyDeletions          = new LinkedHashSet<>();
+	private final Set<String> pendingFiles             = Collections.synchronizedSet(new LinkedHashSet<>());
+	private final AtomicLong flushCount                = new AtomicLong();
+	private final AtomicLong mergeCount                = new AtomicLong();
+	private final Object lock                          = new Object();
+	private volatile List<Segment> segments            = Collections.emptyList();
+	private volatile boolean hasBufferedDocuments      = false;
+	private volatile boolean closed                    = false;
+	private final MergeThread merger;
+	private final Path directory;
+	private final int mergeFactor;
+	private final int flushSize;
+	private int bufferedPositions                      = 0;
+	private long nextSegment                           = 0L;
+
+	private SegmentedFulltextIndex(final Path directory, final int flushSize, final int mergeFactor) {
+
+		this.directory   = directory;
+		this.flushSize   = Math.max(1, flushSize);
+		this.mergeFactor = Math.max(2, mergeFactor);
+		this.merger      = new MergeThread();
+	}
+
+	public static SegmentedFulltextIndex open(final Path directory, final int flushSize, final int mergeFactor) throws IOException {
+
+		Files.createDirectories(directory);
+
+		final SegmentedFulltextIndex index = new SegmentedFulltextIndex(directory, flushSize, mergeFactor);
+
+		index.readManifest();
+		index.deleteUnreferencedFiles();
+		index.merger.start();
+
+		return index;
+	}
+
+	/**
+	 * Adds or replaces the document with the given id. Words contained in
+	 * the given set of ignored words are not indexed, but still occupy a
+	 * position so that phrase queries work across them.
+	 */
+	public void addDocument(final String id, final List<String> words, final Set<String> ignoredWords) throws IOException {
+
+		final BufferedDocument document = new BufferedDocument(id);
+		int position                    = 0;
+
+		for (final String word : words) {
+
+			if (ignoredWords == null || !ignoredWords.contains(word)) {
+
+				document.add(word, position);
+			}
+
+			position++;
+		}
+
+		synchronized (lock) {
+
+			assertOpen();
+			deleteFromSegments(id);
+
+			final BufferedDocument previous = buffer.put(id, document);
+			if (previous != null) {
+
+				bufferedPositions -= previous.getLength();
+			}
+
+			bufferedPositions   += document.getLength();
+			hasBufferedDocuments = true;
+
+			if (buffer.size() >= flushSize || bufferedPositions >= MAX_BUFFERED_POSITIONS) {
+				commit();
+			}
+		}
+	}
+
+	public void deleteDocument(final String id) {
+
+		synchronized (lock) {
+
+			assertOpen();
+			deleteFromSegments(id);
+
+			final BufferedDocument previous = buffer.remove(id);
+			if (previous != null) {
+
+				bufferedPositions   -= previous.getLength();
+				hasBufferedDocuments = !buffer.isEmpty();
+			}
+		}
+	}
+
+	/**
+	 * Writes buffered documents to a new segment, persists pending deletions
+	 * and atomically replaces the manifest.
+	 */
+	public void commit() throws IOException {
+
+		synchronized (lock) {
+
+			assertOpen();
+
+			if (!buffer.isEmpty()) {
+
+				final Segment segment = flushBuffer();
+				final List<Segment> newSegments = new ArrayList<>(segments);
+
+				newSegments.add(segment);
+
+				segments = Collections.unmodifiableList(newSegments);
+			}
+
+			if (!dirtyDeletions.isEmpty()) {
+
+				for (final Segment segment : dirtyDeletions) {
+					segment.writeDeletions(directory);
+				}
+
+				dirtyDeletions.clear();
+			}
+
+			writeManifest();
+			deleteUnreferencedFiles();
+		}
+
+		merger.signal();
+	}
+
+	/**
+	 * Returns all documents matching the given query, ordered by descending
+	 * BM25 score.
+	 *
+	 * @param queryString the query
+	 * @param acceptWord predicate that filters query words which are not indexed (stop words etc.)
+	 * @param maxResults maximum number of results, or 0 for all results
+	 */
+	public List<SearchHit> search(final String queryString, final Predicate<String> acceptWord, final int maxResults) throws IOException {
+
+		// make buffered documents visible
+		if (hasBufferedDocuments) {
+			commit();
+		}
+
+		final IndexQuery query         = IndexQuery.parse(queryString, acceptWord);
+		final List<Segment> snapshot   = segments;
+		final List<SearchHit> hits     = new ArrayList<>();
+
+		if (query.isEmpty() || snapshot.isEmpty()) {
+			return hits;
+		}
+
+		final Statistics stats = new Statistics(snapshot);
+
+		for (final Segment segment : snapshot) {
+
+			final BitSet deleted = segment.getDeleted();
+			ScoredDocs result    = null;
+
+			for (final IndexQuery.Clause clause : query.getClauses()) {
+
+				final ScoredDocs clauseResult = evaluate(segment, clause, stats);
+
+				result = (result == null) ? clauseResult : result.intersect(clauseResult);
+
+				if (result.size == 0) {
+					break;
+				}
+			}
+
+			if (result != null) {
+
+				for (int i=0; i<result.size; i++) {
+
+					final int doc = result.docs[i];
+					if (!deleted.get(doc)) {
+
+						hits.add(new SearchHit(segment.getDocId(doc), result.scores[i]));
+					}
+				}
+			}
+		}
+
+		Collections.sort(hits, Comparator.comparing(SearchHit::getScore).reversed());
+
+		if (maxResults > 0 && hits.size() > maxResults) {
+			return new ArrayList<>(hits.subList(0, maxResults));
+		}
+
+		return hits;
+	}
+
+	public Map<String, Object> getStatistics() {
+
+		final Map<String, Object> stats = new LinkedHashMap<>();
+		final List<Segment> snapshot    = segments;
+		long docs                       = 0L;
+		long liveDocs                   = 0L;
+		long bytes                      = 0L;
+
+		for (final Segment segment : snapshot) {
+
+			docs     += segment.getDocCount();
+			liveDocs += segment.getLiveDocCount();
+			bytes    += segment.getSizeInBytes();
+		}
+
+		synchronized (lock) {
+			stats.put("bufferedDocuments", buffer.size());
+		}
+
+		stats.put("segments",     snapshot.size());
+		stats.put("documents",    liveDocs);
+		stats.put("deleted",      docs - liveDocs);
+		stats.put("sizeInBytes",  bytes);
+		stats.put("flushes",      flushCount.get());
+		stats.put("merges",       mergeCount.get());
+
+		return stats;
+	}
+
+	@Override
+	public void close() throws IOException {
+
+		synchronized (lock) {
+
+			if (closed) {
+				return;
+			}
+
+			commit();
+
+			closed = true;
+		}
+
+		merger.signal();
+
+		try {
+			merger.join(10000);
+		} catch (InterruptedException iex) {}
+	}
+
+	// ----- private methods -----
+	private void assertOpen() {
+
+		if (closed) {
+			throw new IllegalStateException("Fulltext index " + directory + " is closed");
+		}
+	}
+
+	private void deleteFromSegments(final String id) {
+
+		for (final Segment segment : segments) {
+
+			final int doc = segment.findDoc(id);
+			if (doc >= 0) {
+
+				segment.delete(doc);
+				dirtyDeletions.add(segment);
+			}
+		}
+	}
+
+	private Segment flushBuffer() throws IOException {
+
+		final String name                                = newSegmentName();
+		final TreeMap<String, List<int[]>> postingsLists = new TreeMap<>();
+
+		try (final SegmentWriter writer = new SegmentWriter(directory.resolve(name + ".seg"))) {
+
+			for (final BufferedDocument document : buffer.values()) {
+
+				final int doc = writer.addDocument(document.getId(), document.getLength());
+
+				for (final Entry<String, int[]> entry : document.getPositions().entrySet()) {
+
+					final int[] positions = entry.getValue();
+					final int[] posting   = new int[positions[0] + 1];
+
+					// posting layout: doc, positions
+					posting[0] = doc;
+					System.arraycopy(positions, 1, posting, 1, positions[0]);
+
+					postingsLists.computeIfAbsent(entry.getKey(), k -> new ArrayList<>()).add(posting);
+				}
+			}
+
+			for (final Entry<String, List<int[]>> entry : postingsLists.entrySet()) {
+
+				writer.startTerm(entry.getKey());
+
+				for (final int[] posting : entry.getValue()) {
+
+					final int[] positions = Arrays.copyOfRange(posting, 1, posting.length);
+					writer.addPosting(posting[0], positions, positions.length);
+				}
+
+				writer.finishTerm();
+			}
+		}
+
+		buffer.clear();
+
+		bufferedPositions    = 0;
+		hasBufferedDocuments = false;
+
+		flushCount.incrementAndGet();
+
+		return Segment.open(directory, name, 0);
+	}
+
+	private String newSegmentName() {
+
+		synchronized (lock) {
+			return String.format("seg_%010d", nextSegment++);
+		}
+	}
+
+	private ScoredDocs evaluate(final Segment segment, final IndexQuery.Clause clause, final Statistics stats) {
+
+		switch (clause.getType()) {
+
+			case Term:
+				return evaluateTerm(segment, clause.getTerms()[0], stats);
+
+			case Prefix:
+				return evaluatePrefix(segment, clause.getTerms()[0], stats);
+
+			case Phrase:
+				return evaluatePhrase(segment, clause, stats);
+		}
+
+		return ScoredDocs.EMPTY;
+	}
+
+	private ScoredDocs evaluateTerm(final Segment segment, final String term, final Statistics stats) {
+
+		final int termIndex = segment.findTerm(term);
+		if (termIndex < 0) {
+
+			return ScoredDocs.EMPTY;
+		}
+
+		final ScoredDocs result = new ScoredDocs(segment.getDocFreq(termIndex));
+		final Postings postings = segment.postings(termIndex);
+		final float idf         = stats.idf(term);
+
+		while (postings.next()) {
+
+			final int doc = postings.doc();
+
+			result.add(doc, stats.score(idf, postings.freq(), segment.getDocLength(doc)));
+		}
+
+		return result;
+	}
+
+	private ScoredDocs evaluatePrefix(final Segment segment, final String prefix, final Statistics stats) {
+
+		final int[] range = segment.findPrefix(prefix);
+		final int end     = Math.min(range[1], range[0] + MAX_PREFIX_EXPANSIONS);
+
+		if (end - range[0] == 1) {
+			return evaluateTerm(segment, segment.getTerm(range[0]), stats);
+		}
+
+		final float[] scores = new float[segment.getDocCount()];
+		final BitSet matches = new BitSet(segment.getDocCount());
+
+		for (int termIndex=range[0]; termIndex<end; termIndex++) {
+
+			final Postings postings = segment.postings(termIndex);
+			final float idf         = stats.idf(segment.getTerm(termIndex));
+
+			while (postings.next()) {
+
+				final int doc = postings.doc();
+
+				scores[doc] += stats.score(idf, postings.freq(), segment.getDocLength(doc));
+				matches.set(doc);
+			}
+		}
+
+		final ScoredDocs result = new ScoredDocs(matches.cardinality());
+
+		for (int doc = matches.nextSetBit(0); doc >= 0; doc = matches.nextSetBit(doc + 1)) {
+			result.add(doc, scores[doc]);
+		}
+
+		return result;
+	}
+
+	private ScoredDocs evaluatePhrase(final Segment segment, final IndexQuery.Clause clause, final Statistics stats) {
+
+		final List<Map<Integer, int[]>> termPositions = new ArrayList<>();
+		final String[] terms                          = clause.getTerms();
+		final int[] offsets                           = clause.getOffsets();
+		ScoredDocs candidates                         = null;
+
+		// collect positions of all phrase terms, intersecting as we go
+		for (final String term : terms) {
+
+			final int termIndex = segment.findTerm(term);
+			if (termIndex < 0) {
+
+				return ScoredDocs.EMPTY;
+			}
+
+			final Map<Integer, int[]> positions = new HashMap<>();
+			final ScoredDocs termResult         = new ScoredDocs(segment.getDocFreq(termIndex));
+			final Postings postings             = segment.postings(termIndex);
+			final float idf                     = stats.idf(term);
+
+			while (postings.next()) {
+
+				final int doc = postings.doc();
+
+				if (candidates == null || candidates.contains(doc)) {
+
+					positions.put(doc, Arrays.copyOf(postings.positions(), postings.freq()));
+					termResult.add(doc, stats.score(idf, postings.freq(), segment.getDocLength(doc)));
+				}
+			}
+
+			candidates = (candidates == null) ? termResult : candidates.intersect(termResult);
+			termPositions.add(positions);
+
+			if (candidates.size == 0) {
+				return ScoredDocs.EMPTY;
+			}
+		}
+
+		final ScoredDocs result = new ScoredDocs(candidates.size);
+
+		for (int i=0; i<candidates.size; i++) {
+
+			final int doc = candidates.docs[i];
+
+			for (final int start : termPositions.get(0).get(doc)) {
+
+				boolean match = true;
+
+				for (int t=1; t<terms.length && match; t++) {
+
+					match = Arrays.binarySearch(termPositions.get(t).get(doc), start + offsets[t] - offsets[0]) >= 0;
+				}
+
+				if (match) {
+
+					result.add(doc, candidates.scores[i]);
+					break;
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private void readManifest() throws IOException {
+
+		final Path manifest = directory.resolve(MANIFEST);
+		if (!Files.exists(manifest)) {
+
+			return;
+		}
+
+		final List<Segment> loaded = new ArrayList<>();
+
+		try (final BufferedReader reader = Files.newBufferedReader(manifest, StandardCharsets.UTF_8)) {
+
+			nextSegment = Long.parseLong(reader.readLine().trim());
+
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+
+				final String[] parts = line.trim().split(" ");
+				if (parts.length == 2) {
+
+					loaded.add(Segment.open(directory, parts[0], Integer.parseInt(parts[1])));
+				}
+			}
+		}
+
+		segments = Collections.unmodifiableList(loaded);
+	}
+
+	private void writeManifest() throws IOException {
+
+		final Path tmp = directory.resolve(MANIFEST + ".tmp");
+
+		try (final BufferedWriter writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+
+			writer.write(Long.toString(nextSegment));
+			writer.newLine();
+
+			for (final Segment segment : segments) {
+
+				writer.write(segment.getName() + " " + segment.getDeletionGeneration());
+				writer.newLine();
+			}
+		}
+
+		Files.move(tmp, directory.resolve(MANIFEST), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	private void deleteUnreferencedFiles() throws IOException {
+
+		final Set<String> referenced = new LinkedHashSet<>();
+
+		referenced.add(MANIFEST);
+		referenced.addAll(pendingFiles);
+
+		for (final Segment segment : segments) {
+
+			referenced.add(segment.getName() + ".seg");
+
+			if (segment.getDeletionGeneration() > 0) {
+				referenced.add(segment.getName() + "_" + segment.getDeletionGeneration() + ".del");
+			}
+		}
+
+		try (final DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+
+			for (final Path file : files) {
+
+				if (!referenced.contains(file.getFileName().toString())) {
+
+					try {
+
+						Files.deleteIfExists(file);
+
+					} catch (IOException ioex) {
+						logger.debug("Unable to delete unreferenced fulltext index file {}: {}", file, ioex.getMessage());
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Selects segments to merge: either mergeFactor segments of the same size
+	 * tier, or a single segment in which more than half of the documents are
+	 * deleted.
+	 */
+	private List<Segment> selectMerge() {
+
+		final List<Segment> snapshot = new ArrayList<>(segments);
+		final Map<Integer, List<Segment>> tiers = new TreeMap<>();
+
+		for (final Segment segment : snapshot) {
+
+			final int live = segment.getLiveDocCount();
+
+			if (live * 2 < segment.getDocCount()) {
+				return Collections.singletonList(segment);
+			}
+
+			final int tier = (int)Math.floor(Math.log(Math.max(1, live)) / Math.log(mergeFactor));
+
+			tiers.computeIfAbsent(tier, k -> new ArrayList<>()).add(segment);
+		}
+
+		for (final List<Segment> tier : tiers.values()) {
+
+			if (tier.size() >= mergeFactor) {
+
+				tier.sort(Comparator.comparing(Segment::getLiveDocCount));
+
+				final List<Segment> candidates = new ArrayList<>();
+				long size                      = 0L;
+
+				for (final Segment segment : tier) {
+
+					if (candidates.size() >= mergeFactor || size + segment.getSizeInBytes() > MAX_MERGED_SEGMENT) {
+						break;
+					}
+
+					candidates.add(segment);
+					size += segment.getSizeInBytes();
+				}
+
+				if (candidates.size() > 1) {
+					return candidates;
+				}
+			}
+		}
+
+		return null;
+	}
+
+	private void merge(final List<Segment> candidates) throws IOException {
+
+		final String name          = newSegmentName();
+		final String fileName      = name + ".seg";
+		final BitSet[] snapshots   = new BitSet[candidates.size()];
+		final int[][] docMaps      = new int[candidates.size()][];
+		final long start           = System.currentTimeMillis();
+
+		pendingFiles.add(fileName);
+
+		try {
+
+			try (final SegmentWriter writer = new SegmentWriter(directory.resolve(fileName))) {
+
+				// renumber live documents
+				for (int s=0; s<candidates.size(); s++) {
+
+					final Segment segment = candidates.get(s);
+					final BitSet deleted  = segment.getDeleted();
+					final int[] docMap    = new int[segment.getDocCount()];
+
+					for (int doc=0; doc<docMap.length; doc++) {
+
+						docMap[doc] = deleted.get(doc) ? -1 : writer.addDocument(segment.getDocId(doc), segment.getDocLength(doc));
+					}
+
+					snapshots[s] = deleted;
+					docMaps[s]   = docMap;
+				}
+
+				// k-way merge of the sorted term dictionaries
+				final PriorityQueue<TermCursor> queue = new PriorityQueue<>();
+
+				for (int s=0; s<candidates.size(); s++) {
+
+					final TermCursor cursor = new TermCursor(candidates.get(s), s);
+					if (cursor.valid()) {
+
+						queue.add(cursor);
+					}
+				}
+
+				final List<TermCursor> current = new ArrayList<>();
+
+				while (!queue.isEmpty()) {
+
+					final String term = queue.peek().term();
+
+					current.clear();
+
+					while (!queue.isEmpty() && queue.peek().term().equals(term)) {
+						current.add(queue.poll());
+					}
+
+					// cursors are ordered by segment, so mapped documents are ascending
+					current.sort(Comparator.comparing(TermCursor::getSegmentIndex));
+
+					writer.startTerm(term);
+
+					for (final TermCursor cursor : current) {
+
+						final Postings postings = cursor.getSegment().postings(cursor.getTermIndex());
+						final int[] docMap      = docMaps[cursor.getSegmentIndex()];
+
+						while (postings.next()) {
+
+							final int doc = docMap[postings.doc()];
+							if (doc >= 0) {
+
+								writer.addPosting(doc, postings.positions(), postings.freq());
+							}
+						}
+
+						if (cursor.advance()) {
+							queue.add(cursor);
+						}
+					}
+
+					writer.finishTerm();
+				}
+			}
+
+			final Segment merged = Segment.open(directory, name, 0);
+
+			synchronized (lock) {
+
+				if (closed) {
+					return;
+				}
+
+				// apply deletions that happened while merging
+				final BitSet newlyDeleted = new BitSet();
+
+				for (int s=0; s<candidates.size(); s++) {
+
+					final BitSet current = (BitSet)candidates.get(s).getDeleted().clone();
+
+					current.andNot(snapshots[s]);
+
+					for (int doc = current.nextSetBit(0); doc >= 0; doc = current.nextSetBit(doc + 1)) {
+
+						final int mapped = docMaps[s][doc];
+						if (mapped >= 0) {
+
+							newlyDeleted.set(mapped);
+						}
+					}
+				}
+
+				if (!newlyDeleted.isEmpty()) {
+
+					merged.delete(newlyDeleted);
+					dirtyDeletions.add(merged);
+				}
+
+				final List<Segment> newSegments = new ArrayList<>(segments);
+				final int position              = newSegments.indexOf(candidates.get(0));
+
+				newSegments.removeAll(candidates);
+				newSegments.add(Math.max(0, Math.min(position, newSegments.size())), merged);
+
+				dirtyDeletions.removeAll(candidates);
+				segments = Collections.unmodifiableList(newSegments);
+
+				pendingFiles.remove(fileName);
+
+				commit();
+			}
+
+			mergeCount.incrementAndGet();
+
+			logger.debug("Merged {} fulltext index segments with {} documents into {} in {} ms", candidates.size(), merged.getDocCount(), name, System.currentTimeMillis() - start);
+
+		} finally {
+
+			pendingFiles.remove(fileName);
+		}
+	}
+
+	// ----- nested classes -----
+	private class MergeThread extends Thread {
+
+		private final Object monitor = new Object();
+		private boolean signalled    = false;
+
+		public MergeThread() {
+
+			super("FulltextIndexMerger");
+
+			setDaemon(true);
+		}
+
+		public void signal() {
+
+			synchronized (monitor) {
+
+				signalled = true;
+				monitor.notifyAll();
+			}
+		}
+
+		@Override
+		public void run() {
+
+			while (!closed) {
+
+				try {
+
+					synchronized (monitor) {
+
+						if (!signalled) {
+							monitor.wait(10000);
+						}
+
+						signalled = false;
+					}
+
+					for (List<Segment> candidates = selectMerge(); candidates != null && !closed; candidates = selectMerge()) {
+						merge(candidates);
+					}
+
+				} catch (InterruptedException iex) {
+
+					return;
+
+				} catch (Throwable t) {
+
+					logger.warn("Unable to merge fulltext index segments: {}", t.getMessage());
+				}
+			}
+		}
+	}
+
+	private static class TermCursor implements Comparable<TermCursor> {
+
+		private final Segment segment;
+		private final int segmentIndex;
+		private int termIndex = 0;
+
+		public TermCursor(final Segment segment, final int segmentIndex) {
+
+			this.segment      = segment;
+			this.segmentIndex = segmentIndex;
+		}
+
+		public boolean valid() {
+			return termIndex < segment.getTermCount();
+		}
+
+		public boolean advance() {
+			return ++termIndex < segment.getTermCount();
+		}
+
+		public String term() {
+			return segment.getTerm(termIndex);
+		}
+
+		public Segment getSegment() {
+			return segment;
+		}
+
+		public int getSegmentIndex() {
+			return segmentIndex;
+		}
+
+		public int getTermIndex() {
+			return termIndex;
+		}
+
+		@Override
+		public int compareTo(final TermCursor other) {
+
+			final int result = term().compareTo(other.term());
+			if (result == 0) {
+
+				return Integer.compare(segmentIndex, other.segmentIndex);
+			}
+
+			return result;
+		}
+	}
+
+	private static class BufferedDocument {
+
+		private final Map<String, int[]> positions = new HashMap<>();
+		private final String id;
+		private int length                          = 0;
+
+		public BufferedDocument(final String id) {
+			this.id = id;
+		}
+
+		public void add(final String term, final int position) {
+
+			// first element holds the number of positions
+			int[] array = positions.get(term);
+			if (array == null) {
+
+				array = new int[4];
+				positions.put(term, array);
+
+			} else if (array[0] + 1 >= array.length) {
+
+				array = Arrays.copyOf(array, array.length * 2);
+				positions.put(term, array);
+			}
+
+			array[++array[0]] = position;
+
+			length++;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public int getLength() {
+			return length;
+		}
+
+		public Map<String, int[]> getPositions() {
+			return positions;
+		}
+	}
+
+	/**
+	 * Document numbers in ascending order with their scores.
+	 */
+	private static class ScoredDocs {
+
+		static final ScoredDocs EMPTY = new ScoredDocs(0);
+
+		private int[] docs;
+		private float[] scores;
+		private int size = 0;
+
+		ScoredDocs(final int capacity) {
+
+			this.docs   = new int[capacity];
+			this.scores = new float[capacity];
+		}
+
+		void add(final int doc, final float score) {
+
+			if (size == docs.length) {
+
+				docs   = Arrays.copyOf(docs,   Math.max(8, size * 2));
+				scores = Arrays.copyOf(scores, Math.max(8, size * 2));
+			}
+
+			docs[size]   = doc;
+			scores[size] = score;
+
+			size++;
+		}
+
+		boolean contains(final int doc) {
+			return Arrays.binarySearch(docs, 0, size, doc) >= 0;
+		}
+
+		ScoredDocs intersect(final ScoredDocs other) {
+
+			final ScoredDocs result = new ScoredDocs(Math.min(size, other.size));
+			int i = 0;
+			int j = 0;
+
+			while (i < size && j < other.size) {
+
+				if (docs[i] < other.docs[j]) {
+
+					i++;
+
+				} else if (docs[i] > other.docs[j]) {
+
+					j++;
+
+				} else {
+
+					result.add(docs[i], scores[i] + other.scores[j]);
+					i++;
+					j++;
+				}
+			}
+
+			return result;
+		}
+	}
+
+	/**
+	 * Collection-wide statistics for BM25 scoring. Deleted documents are
+	 * included in document frequencies, like in most segment-based indexes.
+	 */
+	private static class Statistics {
+
+		private final Map<String, Float> idfCache = new HashMap<>();
+		private final Collection<Segment> segments;
+		private final float averageLength;
+		private final long liveDocs;
+
+		Statistics(final Collection<Segment> segments) {
+
+			long docs        = 0L;
+			long live        = 0L;
+			long totalLength = 0L;
+
+			for (final Segment segment : segments) {
+
+				docs        += segment.getDocCount();
+				live        += segment.getLiveDocCount();
+				totalLength += segment.getTotalLength();
+			}
+
+			this.segments      = segments;
+			this.liveDocs      = live;
+			this.averageLength = docs > 0 ? (float)totalLength / (float)docs : 1.0f;
+		}
+
+		float idf(final String term) {
+
+			return idfCache.computeIfAbsent(term, t -> {
+
+				long docFreq = 0L;
+
+				for (final Segment segment : segments) {
+
+					final int termIndex = segment.findTerm(t);
+					if (termIndex >= 0) {
+
+						docFreq += segment.getDocFreq(termIndex);
+					}
+				}
+
+				return (float)Math.log(1.0 + (Math.max(0L, liveDocs - docFreq) + 0.5) / (docFreq + 0.5));
+			});
+		}
+
+		float score(final float idf, final int freq, final int length) {
+
+			final float norm = K1 * (1.0f - B + B * (float)length / averageLength);
+
+			return idf * (freq * (K1 + 1.0f)) / (freq + norm);
+		}
+	}
+}
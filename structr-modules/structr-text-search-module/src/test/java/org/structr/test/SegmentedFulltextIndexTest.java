@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Predicate;
+import org.apache.commons.io.FileUtils;
+import org.structr.text.index.SearchHit;
+import org.structr.text.index.SegmentedFulltextIndex;
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+
+/**
+ *
+ */
+public class SegmentedFulltextIndexTest {
+
+	private static final Set<String> stopWords   = Collections.singleton("the");
+	private static final Predicate<String> accept = word -> !stopWords.contains(word);
+
+	@Test
+	public void testRankingPhraseAndPrefixQueries() throws IOException {
+
+		final Path directory = Files.createTempDirectory("structr-fulltext");
+
+		try (final SegmentedFulltextIndex index = SegmentedFulltextIndex.open(directory, 2, 3)) {
+
+			index.addDocument("doc1", words("the quick brown fox jumps over the lazy dog"), stopWords);
+			index.addDocument("doc2", words("the quick red fox"), stopWords);
+			index.addDocument("doc3", words("fox fox fox and more fox"), stopWords);
+			index.addDocument("doc4", words("a brown dog sleeps"), stopWords);
+
+			assertEquals(Arrays.asList("doc3", "doc2", "doc1"), ids(index.search("fox", accept, 0)));
+			assertEquals(Arrays.asList("doc1"), ids(index.search("\"brown fox\"", accept, 0)));
+			assertEquals(Arrays.asList("doc1"), ids(index.search("\"over the lazy\"", accept, 0)));
+			assertEquals(Arrays.asList("doc4"), ids(index.search("\"brown dog\"", accept, 0)));
+			assertEquals(2, index.search("brow*", accept, 0).size());
+			assertEquals(Arrays.asList("doc1"), ids(index.search("brown fox", accept, 0)));
+			assertEquals(0, index.search("elephant", accept, 0).size());
+		}
+
+		FileUtils.deleteDirectory(directory.toFile());
+	}
+
+	@Test
+	public void testUpdatesDeletionsAndReopen() throws IOException {
+
+		final Path directory = Files.createTempDirectory("structr-fulltext");
+
+		try (final SegmentedFulltextIndex index = SegmentedFulltextIndex.open(directory, 1, 2)) {
+
+			for (int i=0; i<20; i++) {
+				index.addDocument("doc" + i, words("common word number" + i), null);
+			}
+
+			index.addDocument("doc5", words("replaced content"), null);
+			index.deleteDocument("doc7");
+
+			assertEquals(18, index.search("common", accept, 0).size());
+			assertEquals(Arrays.asList("doc5"), ids(index.search("replaced", accept, 0)));
+		}
+
+		try (final SegmentedFulltextIndex index = SegmentedFulltextIndex.open(directory, 1, 2)) {
+
+			final List<String> result = ids(index.search("common", accept, 0));
+
+			assertEquals(18, result.size());
+			assertTrue(!result.contains("doc5"));
+			assertTrue(!result.contains("doc7"));
+			assertEquals(Arrays.asList("doc12"), ids(index.search("number12", accept, 0)));
+		}
+
+		FileUtils.deleteDirectory(directory.toFile());
+	}
+
+	// ----- private methods -----
+	private List<String> words(final String text) {
+		return Arrays.asList(text.split(" "));
+	}
+
+	private List<String> ids(final List<SearchHit> hits) {
+
+		final List<String> ids = new ArrayList<>();
+
+		for (final SearchHit hit : hits) {
+			ids.add(hit.getId());
+		}
+
+		return ids;
+	}
+}
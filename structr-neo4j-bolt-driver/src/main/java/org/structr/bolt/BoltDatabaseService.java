@@ -28,6 +28,7 @@ import java.time.Duration;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -167,14 +168,16 @@ public class BoltDatabaseService extends AbstractDatabaseService implements Grap
 				}
 			}
 
-			final int relCacheSize  = Settings.RelationshipCacheSize.getPrefixedValue(serviceName);
-			final int nodeCacheSize = Settings.NodeCacheSize.getPrefixedValue(serviceName);
+			final int relCacheSize    = Settings.RelationshipCacheSize.getPrefixedValue(serviceName);
+			final int nodeCacheSize   = Settings.NodeCacheSize.getPrefixedValue(serviceName);
+			final int relOffHeapSize  = Settings.RelationshipOffHeapSize.getPrefixedValue(serviceName);
+			final int nodeOffHeapSize = Settings.NodeOffHeapSize.getPrefixedValue(serviceName);
 
-			NodeWrapper.initialize(nodeCacheSize);
-			logger.info("Node cache size set to {}", nodeCacheSize);
+			NodeWrapper.initialize(nodeCacheSize, nodeOffHeapSize * 1024L * 1024L);
+			logger.info("Node cache size set to {}, off-heap cache size set to {} MB", nodeCacheSize, nodeOffHeapSize);
 
-			RelationshipWrapper.initialize(relCacheSize);
-			logger.info("Relationship cache size set to {}", relCacheSize);
+			RelationshipWrapper.initialize(relCacheSize, relOffHeapSize * 1024L * 1024L);
+			logger.info("Relationship cache size set to {}, off-heap cache size set to {} MB", relCacheSize, relOffHeapSize);
 
 			// signal success
 			return true;
@@ -899,10 +902,21 @@ public class BoltDatabaseService extends AbstractDatabaseService implements Grap
 
 	@Override
 	public Map<String, Map<String, Integer>> getCachesInfo() {
-		return Map.of(
-			"nodes",         NodeWrapper.nodeCache.getCacheInfo(),
-			"relationships", RelationshipWrapper.relationshipCache.getCacheInfo()
-		);
+
+		final Map<String, Map<String, Integer>> info = new LinkedHashMap<>();
+
+		info.put("nodes",         NodeWrapper.nodeCache.getCacheInfo());
+		info.put("relationships", RelationshipWrapper.relationshipCache.getCacheInfo());
+
+		if (NodeWrapper.offHeapCache != null) {
+			info.put("nodesOffHeap", NodeWrapper.offHeapCache.getCacheInfo());
+		}
+
+		if (RelationshipWrapper.offHeapCache != null) {
+			info.put("relationshipsOffHeap", RelationshipWrapper.offHeapCache.getCacheInfo());
+		}
+
+		return info;
 	}
 
 	// ----- private methods -----
@@ -0,0 +1,237 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.bolt;
+
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+
+/**
+ * The committed properties of a cached entity, stored in an array that is
+ * indexed by the slots of a shared {@link PropertyLayout}. Values are
+ * stored as they are, so reads return the stored instance without boxing
+ * or copying. Lists are converted to typed arrays once when they are
+ * stored. Keys that do not fit into the layout are kept in a map.
+ *
+ * The data is held in an immutable {@link Snapshot} that is replaced on
+ * every modification (copy-on-write). Writes must be synchronized
+ * externally, reads are safe without locking and see a consistent state.
+ */
+class CompactPropertyMap {
+
+	private static final Object[] EMPTY = new Object[0];
+
+	private final PropertyLayout layout;
+	private volatile Snapshot snapshot;
+
+	CompactPropertyMap(final PropertyLayout layout) {
+
+		this.layout   = layout;
+		this.snapshot = new Snapshot(layout, EMPTY, null);
+	}
+
+	/**
+	 * Returns the current state, which is never modified.
+	 */
+	Snapshot snapshot() {
+		return snapshot;
+	}
+
+	boolean containsKey(final String key) {
+		return snapshot.containsKey(key);
+	}
+
+	/**
+	 * Returns the stored value: a typed array for lists with elements,
+	 * an empty list for empty lists.
+	 */
+	Object get(final String key) {
+		return snapshot.get(key);
+	}
+
+	Set<String> keySet() {
+		return snapshot.keySet();
+	}
+
+	void forEach(final BiConsumer<String, Object> consumer) {
+		snapshot.forEach(consumer);
+	}
+
+	void put(final String key, final Object value) {
+		putAll(Collections.singletonMap(key, value));
+	}
+
+	void remove(final String key) {
+		putAll(Collections.singletonMap(key, null));
+	}
+
+	/**
+	 * Stores all values in a new snapshot, null values remove the key.
+	 */
+	void putAll(final Map<String, Object> data) {
+
+		final Snapshot current = snapshot;
+		int length             = current.values.length;
+
+		// determine the new length first, so that the arrays are copied only once
+		for (final Map.Entry<String, Object> entry : data.entrySet()) {
+
+			if (entry.getValue() != null) {
+
+				final int slot = layout.getOrCreateSlot(entry.getKey());
+				if (slot >= length) {
+
+					length = Math.min(PropertyLayout.MAX_SLOTS, Math.max(slot + 1, length + 4));
+				}
+			}
+		}
+
+		final Object[] values         = Arrays.copyOf(current.values, length);
+		Map<String, Object> overflow  = current.overflow;
+		boolean overflowCopied        = false;
+
+		for (final Map.Entry<String, Object> entry : data.entrySet()) {
+
+			final String key   = entry.getKey();
+			final Object value = entry.getValue();
+			final int slot     = layout.getSlot(key);
+
+			if (slot >= 0 && slot < length) {
+
+				values[slot] = convert(value);
+
+			} else if (value != null || (overflow != null && overflow.containsKey(key))) {
+
+				if (!overflowCopied) {
+
+					overflow       = overflow != null ? new HashMap<>(overflow) : new HashMap<>();
+					overflowCopied = true;
+				}
+
+				if (value != null) {
+
+					overflow.put(key, convert(value));
+
+				} else {
+
+					overflow.remove(key);
+				}
+			}
+		}
+
+		snapshot = new Snapshot(layout, values, overflow);
+	}
+
+	static Object convert(final Object value) {
+
+		if (value instanceof List) {
+
+			final List list = (List)value;
+			if (!list.isEmpty()) {
+
+				try {
+
+					final Object[] arr = (Object[])Array.newInstance(list.get(0).getClass(), list.size());
+
+					return list.toArray(arr);
+
+				} catch (ArrayStoreException asex) {
+
+					// mixed element types
+					return list.toArray();
+				}
+			}
+
+			return Collections.emptyList();
+		}
+
+		return value;
+	}
+
+	// ----- nested classes -----
+	/**
+	 * An immutable state of a {@link CompactPropertyMap}.
+	 */
+	static final class Snapshot {
+
+		private final PropertyLayout layout;
+		private final Object[] values;
+		private final Map<String, Object> overflow;
+
+		private Snapshot(final PropertyLayout layout, final Object[] values, final Map<String, Object> overflow) {
+
+			this.layout   = layout;
+			this.values   = values;
+			this.overflow = overflow;
+		}
+
+		boolean containsKey(final String key) {
+
+			final int slot = layout.getSlot(key);
+			if (slot >= 0 && slot < values.length) {
+
+				return values[slot] != null;
+			}
+
+			return overflow != null && overflow.containsKey(key);
+		}
+
+		Object get(final String key) {
+
+			final int slot = layout.getSlot(key);
+			if (slot >= 0 && slot < values.length) {
+
+				return values[slot];
+			}
+
+			return overflow != null ? overflow.get(key) : null;
+		}
+
+		Set<String> keySet() {
+
+			final Set<String> keys = new LinkedHashSet<>();
+
+			forEach((key, value) -> keys.add(key));
+
+			return keys;
+		}
+
+		void forEach(final BiConsumer<String, Object> consumer) {
+
+			for (int i=0; i<values.length; i++) {
+
+				if (values[i] != null) {
+
+					consumer.accept(layout.getKey(i), values[i]);
+				}
+			}
+
+			if (overflow != null) {
+
+				overflow.forEach(consumer);
+			}
+		}
+	}
+}
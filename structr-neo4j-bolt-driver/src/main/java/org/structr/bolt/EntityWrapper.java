@@ -18,14 +18,19 @@
  */
 package org.structr.bolt;
 
-import java.lang.reflect.Array;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.WeakHashMap;
 import org.neo4j.driver.v1.exceptions.NoSuchRecordException;
 import org.neo4j.driver.v1.types.Entity;
@@ -36,33 +41,40 @@ import org.structr.api.NotInTransactionException;
 import org.structr.api.graph.Identity;
 import org.structr.api.graph.PropertyContainer;
 import org.structr.api.util.Cachable;
-import org.structr.api.util.ChangeAwareMap;
 
 
 abstract class EntityWrapper<T extends Entity> implements PropertyContainer, Cachable {
 
 	private static final Logger logger = LoggerFactory.getLogger(EntityWrapper.class.getName());
 
-	private final Map<Object, ChangeAwareMap> txData = Collections.synchronizedMap(new WeakHashMap<>());
-	private final ChangeAwareMap entityData          = new ChangeAwareMap();
-	protected BoltDatabaseService db                 = null;
-	protected boolean deleted                        = false;
-	protected boolean stale                          = false;
-	protected long id                                = -1L;
+	private Map<Object, TransactionData> txData     = null;
+	private final CompactPropertyMap entityData;
+	protected BoltDatabaseService db                = null;
+	protected boolean deleted                       = false;
+	protected boolean stale                         = false;
+	protected long id                               = -1L;
 
 	protected EntityWrapper() {
 		// nop constructor for cache access
+		this.entityData = new CompactPropertyMap(PropertyLayout.forType(null));
 	}
 
 	public EntityWrapper(final BoltDatabaseService db, final T entity) {
+		this(db, entity.id(), entity.asMap());
+	}
+
+	protected EntityWrapper(final BoltDatabaseService db, final long id, final Map<String, Object> data) {
 
-		this.entityData.putAll(entity.asMap());
-		this.id   = entity.id();
-		this.db   = db;
+		this.entityData = new CompactPropertyMap(PropertyLayout.forType(data.get("type")));
+		this.entityData.putAll(data);
+		this.id         = id;
+		this.db         = db;
 	}
 
 	protected abstract String getQueryPrefix();
 	protected abstract boolean isNode();
+	protected abstract OffHeapPropertyCache getOffHeapCache();
+	protected abstract void writeHeader(final DataOutputStream out) throws IOException;
 	public abstract void removeFromCache();
 	public abstract void clearCaches();
 	public abstract void onClose();
@@ -81,37 +93,38 @@ abstract class EntityWrapper<T extends Entity> implements PropertyContainer, Cac
 
 		assertNotStale();
 
-		return accessData(false).containsKey(name);
-	}
+		final TransactionData data = accessData(false);
+		if (data != null) {
 
-	@Override
-	public Object getProperty(final String name) {
+			if (data.changes != null && data.changes.containsKey(name)) {
 
-		assertNotStale();
+				return data.changes.get(name) != null;
+			}
 
-		final Object value = accessData(false).get(name);
-		if (value instanceof List) {
+			return data.committed.containsKey(name);
+		}
 
-			try {
+		return entityData.containsKey(name);
+	}
 
-				final List list = (List)value;
-				if (!list.isEmpty()) {
+	@Override
+	public Object getProperty(final String name) {
 
-					final Object firstElement = ((List)value).get(0);
-					final Object[] arr        = (Object[])Array.newInstance(firstElement.getClass(), 0);
+		assertNotStale();
 
-					// convert list to array
-					return ((List)value).toArray(arr);
-				}
+		Object value = read(name);
 
-				// empty array => return null?
-				return null;
+		// values of the current transaction may still be lists
+		if (value instanceof List) {
+			value = CompactPropertyMap.convert(value);
+		}
 
-			} catch (Throwable t) {
-				logger.warn("", t);
-			}
+		// empty array => return null?
+		if (value instanceof List) {
+			return null;
 		}
 
+		// arrays are shared with the cache and must not be modified by the caller
 		return value;
 	}
 
@@ -149,7 +162,7 @@ abstract class EntityWrapper<T extends Entity> implements PropertyContainer, Cac
 			tx.set(query, map);
 
 			// update data
-			accessData(true).put(key, value);
+			accessData(true).changes.put(key, value);
 
 			// mark node as modified
 			setModified();
@@ -200,7 +213,7 @@ abstract class EntityWrapper<T extends Entity> implements PropertyContainer, Cac
 		tx.set(query, map);
 
 		// remove key from data
-		accessData(true).put(key, null);
+		accessData(true).changes.put(key, null);
 
 		setModified();
 	}
@@ -210,7 +223,29 @@ abstract class EntityWrapper<T extends Entity> implements PropertyContainer, Cac
 
 		assertNotStale();
 
-		return accessData(false).keySet();
+		final TransactionData data = accessData(false);
+		if (data == null) {
+
+			return entityData.keySet();
+		}
+
+		final Set<String> keys = data.committed.keySet();
+		if (data.changes != null) {
+
+			for (final Entry<String, Object> entry : data.changes.entrySet()) {
+
+				if (entry.getValue() != null) {
+
+					keys.add(entry.getKey());
+
+				} else {
+
+					keys.remove(entry.getKey());
+				}
+			}
+		}
+
+		return keys;
 	}
 
 	@Override
@@ -252,7 +287,10 @@ abstract class EntityWrapper<T extends Entity> implements PropertyContainer, Cac
 	}
 
 	public void stale() {
+
 		this.stale = true;
+
+		removeFromOffHeapCache();
 	}
 
 	public void setModified() {
@@ -264,7 +302,9 @@ abstract class EntityWrapper<T extends Entity> implements PropertyContainer, Cac
 
 		synchronized (this) {
 
-			txData.remove(transactionId);
+			if (txData != null) {
+				txData.remove(transactionId);
+			}
 
 			stale = false;
 		}
@@ -274,24 +314,14 @@ abstract class EntityWrapper<T extends Entity> implements PropertyContainer, Cac
 
 		synchronized (this) {
 
-			final ChangeAwareMap changes = txData.get(transactionId);
-			if (changes != null) {
-
-				for (final String key : changes.getModifiedKeys()) {
-
-					final Object value = changes.get(key);
-
-					if (value != null) {
-
-						entityData.put(key, value);
+			final TransactionData data = txData != null ? txData.remove(transactionId) : null;
+			if (data != null && data.changes != null && !data.changes.isEmpty()) {
 
-					} else {
+				// serialized data is outdated now
+				removeFromOffHeapCache();
 
-						entityData.remove(key);
-					}
-				}
-
-				txData.remove(transactionId);
+				// null values are removed
+				entityData.putAll(data.changes);
 			}
 
 			stale = false;
@@ -327,9 +357,100 @@ abstract class EntityWrapper<T extends Entity> implements PropertyContainer, Cac
 		}
 	}
 
+	/**
+	 * Schedules the committed data of this entity to be stored in the
+	 * off-heap cache so that it can be restored without a database query
+	 * after the entity was evicted from the first-level cache. This is
+	 * called while the first-level cache is locked, the data is serialized
+	 * later by storeEvicted().
+	 */
+	protected synchronized void scheduleForOffHeapCache() {
+
+		final OffHeapPropertyCache cache = getOffHeapCache();
+		if (cache != null && !stale && !deleted) {
+
+			cache.schedule(id, this::serialize);
+		}
+	}
+
+	/**
+	 * Returns the serialized committed data of this entity, or null if it
+	 * cannot be stored.
+	 */
+	protected synchronized byte[] serialize() {
+
+		if (deleted) {
+			return null;
+		}
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+
+		// arrays are stored as lists, like the Bolt driver returns them
+		entityData.forEach((key, value) -> data.put(key, value instanceof Object[] ? Arrays.asList((Object[])value) : value));
+
+		try {
+
+			final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			final DataOutputStream out        = new DataOutputStream(bytes);
+
+			writeHeader(out);
+
+			// entities with values that cannot be serialized are not cached
+			if (PropertySerializer.writeMap(out, data)) {
+
+				out.flush();
+				return bytes.toByteArray();
+			}
+
+		} catch (IOException ioex) {
+			logger.warn("Unable to serialize entity with ID {}: {}", id, ioex.getMessage());
+		}
+
+		return null;
+	}
+
+	protected void removeFromOffHeapCache() {
+
+		final OffHeapPropertyCache cache = getOffHeapCache();
+		if (cache != null) {
+
+			cache.remove(id);
+		}
+	}
+
+	/**
+	 * Stores the data of entities that were evicted from the first-level
+	 * cache, must be called after its lock was released.
+	 */
+	protected static void storeEvicted(final OffHeapPropertyCache cache) {
+
+		if (cache != null) {
+
+			cache.storePending();
+		}
+	}
+
+	/**
+	 * Returns a stream to read the data that was stored for the entity
+	 * with the given ID, or null if the cache does not contain it.
+	 */
+	protected static DataInputStream readFromOffHeapCache(final OffHeapPropertyCache cache, final long id) {
+
+		if (cache != null) {
+
+			final byte[] data = cache.get(id);
+			if (data != null) {
+
+				return new DataInputStream(new ByteArrayInputStream(data));
+			}
+		}
+
+		return null;
+	}
+
 	// ----- private methods -----
 	private void update(final Map<String, Object> values) {
-		accessData(true).putAll(values);
+		accessData(true).changes.putAll(values);
 	}
 
 	private void filter(final Map<String, Object> data) {
@@ -350,7 +471,7 @@ abstract class EntityWrapper<T extends Entity> implements PropertyContainer, Cac
 
 	private boolean needsUpdate(final String key, final Object newValue) {
 
-		final Object existingValue = accessData(false).get(key);
+		final Object existingValue = read(key);
 
 		if (existingValue == null && newValue == null) {
 			return false;
@@ -381,6 +502,11 @@ abstract class EntityWrapper<T extends Entity> implements PropertyContainer, Cac
 			return list1.equals(list2);
 		}
 
+		if (existingValue instanceof Object[] && newValue instanceof Object[]) {
+
+			return Arrays.equals((Object[])existingValue, (Object[])newValue);
+		}
+
 		// special handling for the case that Neo4j always returns long values for both int and long
 		if ((existingValue instanceof Long && newValue instanceof Integer) || (existingValue instanceof Integer && newValue instanceof Long)) {
 
@@ -393,11 +519,32 @@ abstract class EntityWrapper<T extends Entity> implements PropertyContainer, Cac
 		return existingValue.equals(newValue);
 	}
 
-	// ----- private methods -----
-	private ChangeAwareMap accessData(final boolean write) {
+	private Object read(final String key) {
+
+		final TransactionData data = accessData(false);
+		if (data != null) {
+
+			if (data.changes != null && data.changes.containsKey(key)) {
+
+				return data.changes.get(key);
+			}
+
+			return data.committed.get(key);
+		}
+
+		return entityData.get(key);
+	}
+
+	/**
+	 * Returns the data of the current transaction. The committed state is
+	 * captured on the first access so that repeated reads in the same
+	 * transaction see the same values, the changes are created on the
+	 * first write. Returns null outside of a transaction.
+	 */
+	private TransactionData accessData(final boolean write) {
 
 		// read-only access does not need a transaction
-		final SessionTransaction tx = db.getCurrentTransaction(false);
+		final SessionTransaction tx = write ? db.getCurrentTransaction() : db.getCurrentTransaction(false);
 		if (tx != null) {
 
 			if (deleted || tx.isDeleted(this)) {
@@ -405,23 +552,43 @@ abstract class EntityWrapper<T extends Entity> implements PropertyContainer, Cac
 			}
 
 			final Object transactionId = tx.getTransactionKey();
-			ChangeAwareMap copy      = txData.get(transactionId);
 
-			if (copy == null) {
+			synchronized (this) {
+
+				if (txData == null) {
+					txData = new WeakHashMap<>();
+				}
+
+				TransactionData data = txData.get(transactionId);
+				if (data == null) {
+
+					// the snapshot is immutable, capturing it is cheap
+					data = new TransactionData(entityData.snapshot());
+					txData.put(transactionId, data);
+				}
+
+				if (write && data.changes == null) {
 
-				copy = new ChangeAwareMap(entityData);
-				txData.put(transactionId, copy);
+					data.changes = new HashMap<>();
 
-				if (write) {
 					tx.accessed(this);
 				}
+
+				return data;
 			}
+		}
+
+		return null;
+	}
 
-			return copy;
+	// ----- nested classes -----
+	private static class TransactionData {
 
-		} else {
+		private final CompactPropertyMap.Snapshot committed;
+		private Map<String, Object> changes = null;
 
-			return entityData;
+		TransactionData(final CompactPropertyMap.Snapshot committed) {
+			this.committed = committed;
 		}
 	}
 }
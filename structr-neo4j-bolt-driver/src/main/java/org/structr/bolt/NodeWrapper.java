@@ -18,6 +18,9 @@
  */
 package org.structr.bolt;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
@@ -40,6 +43,7 @@ import org.structr.api.util.Iterables;
 class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> implements Node {
 
 	protected static FixedSizeCache<Long, NodeWrapper> nodeCache                 = null;
+	protected static OffHeapPropertyCache offHeapCache                           = null;
 
 	private final Map<String, Map<String, RelationshipResult>> relationshipCache = new HashMap<>();
 	private boolean dontUseCache                                                 = false;
@@ -53,8 +57,14 @@ class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> implemen
 		super(db, node);
 	}
 
-	public static void initialize(final int cacheSize) {
-		nodeCache = new FixedSizeCache<>("Node cache", cacheSize);
+	private NodeWrapper(final BoltDatabaseService db, final long id, final Map<String, Object> data) {
+		super(db, id, data);
+	}
+
+	public static void initialize(final int cacheSize, final long offHeapSize) {
+
+		nodeCache    = new FixedSizeCache<>("Node cache", cacheSize);
+		offHeapCache = offHeapSize > 0 ? new OffHeapPropertyCache("Node off-heap cache", offHeapSize) : null;
 	}
 
 	@Override
@@ -71,6 +81,9 @@ class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> implemen
 	@Override
 	public void onRemoveFromCache() {
 
+		// keep the data of evicted nodes in the second-level cache
+		scheduleForOffHeapCache();
+
 		relationshipCache.clear();
 		this.stale = true;
 	}
@@ -376,47 +389,60 @@ class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> implemen
 	// ----- public static methods -----
 	public static NodeWrapper newInstance(final BoltDatabaseService db, final org.neo4j.driver.v1.types.Node node) {
 
+		NodeWrapper wrapper = null;
+
 		synchronized (nodeCache) {
 
-			NodeWrapper wrapper = nodeCache.get(node.id());
+			wrapper = nodeCache.get(node.id());
 			if (wrapper == null) { // || wrapper.stale) {
 
 				wrapper = new NodeWrapper(db, node);
 				nodeCache.put(node.id(), wrapper);
 			}
-
-			return wrapper;
 		}
+
+		storeEvicted(offHeapCache);
+
+		return wrapper;
 	}
 
 	public static NodeWrapper newInstance(final BoltDatabaseService db, final long id) {
 
+		NodeWrapper wrapper = null;
+
 		synchronized (nodeCache) {
 
-			NodeWrapper wrapper = nodeCache.get(id);
+			wrapper = nodeCache.get(id);
 			if (wrapper == null) { // || wrapper.stale) {
 
-				final SessionTransaction tx   = db.getCurrentTransaction();
-				final String tenantIdentifier = getTenantIdentifer(db);
-				final Map<String, Object> map = new HashMap<>();
+				wrapper = fromOffHeapCache(db, id);
+				if (wrapper == null) {
 
-				map.put("id", id);
+					final SessionTransaction tx   = db.getCurrentTransaction();
+					final String tenantIdentifier = getTenantIdentifer(db);
+					final Map<String, Object> map = new HashMap<>();
 
-				final org.neo4j.driver.v1.types.Node node = tx.getNode(concat("MATCH (n", tenantIdentifier, ") WHERE ID(n) = $id RETURN DISTINCT n"), map);
-				if (node != null) {
+					map.put("id", id);
 
-					wrapper = NodeWrapper.newInstance(db, node);
+					final org.neo4j.driver.v1.types.Node node = tx.getNode(concat("MATCH (n", tenantIdentifier, ") WHERE ID(n) = $id RETURN DISTINCT n"), map);
+					if (node != null) {
 
-					nodeCache.put(id, wrapper);
+						wrapper = new NodeWrapper(db, node);
 
-				} else {
+					} else {
 
-					throw new NotFoundException("Node with ID " + id + " not found.");
+						throw new NotFoundException("Node with ID " + id + " not found.");
+					}
 				}
-			}
 
-			return wrapper;
+				nodeCache.put(id, wrapper);
+			}
 		}
+
+		// evicted nodes are serialized after the lock of the node cache was released
+		storeEvicted(offHeapCache);
+
+		return wrapper;
 	}
 
 	// ----- package-private static methods
@@ -444,6 +470,11 @@ class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> implemen
 
 				node.clearCaches();
 			}
+
+			if (offHeapCache != null) {
+
+				offHeapCache.remove(toRemove);
+			}
 		}
 	}
 
@@ -453,10 +484,44 @@ class NodeWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Node> implemen
 		synchronized (nodeCache) {
 
 			nodeCache.clear();
+
+			if (offHeapCache != null) {
+
+				offHeapCache.clear();
+			}
 		}
 	}
 
+	// ----- protected methods -----
+	@Override
+	protected OffHeapPropertyCache getOffHeapCache() {
+		return offHeapCache;
+	}
+
+	@Override
+	protected void writeHeader(final DataOutputStream out) throws IOException {
+		// nodes don't need any data besides their properties
+	}
+
 	// ----- private static methods -----
+	private static NodeWrapper fromOffHeapCache(final BoltDatabaseService db, final long id) {
+
+		final DataInputStream in = readFromOffHeapCache(offHeapCache, id);
+		if (in != null) {
+
+			try {
+
+				return new NodeWrapper(db, id, PropertySerializer.readMap(in));
+
+			} catch (IOException ioex) {
+
+				offHeapCache.remove(id);
+			}
+		}
+
+		return null;
+	}
+
 	private static String concat(final String... parts) {
 
 		final StringBuilder buf = new StringBuilder();
@@ -0,0 +1,244 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.bolt;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * A second-level cache that stores serialized entity data outside of the
+ * Java heap, with a fixed capacity in bytes. The memory is allocated once
+ * and divided into blocks, an entry occupies as many blocks as its size
+ * requires. When there are not enough free blocks for a new entry, the
+ * least recently used entries are evicted until there are. Entries can be
+ * scheduled and stored later, so that callers can serialize them after
+ * they have released their own locks.
+ */
+class OffHeapPropertyCache {
+
+	private static final int BLOCK_SIZE = 64;
+	private static final int CHUNK_SIZE = 64 * 1024 * 1024;
+
+	private final LinkedHashMap<Long, int[]> entries = new LinkedHashMap<>(1024, 0.75f, true);
+	private final Map<Long, Supplier<byte[]>> pending = new LinkedHashMap<>();
+	private final ByteBuffer[] chunks;
+	private final int[] freeBlocks;
+	private final int blocksPerChunk;
+	private final int blockCount;
+	private final int maxEntryBlocks;
+	private final String name;
+	private int freeCount                            = 0;
+	private long usedBytes                           = 0L;
+	private long hits                                = 0L;
+	private long misses                              = 0L;
+	private long evictions                           = 0L;
+	private long rejected                            = 0L;
+
+	OffHeapPropertyCache(final String name, final long capacityInBytes) {
+
+		final long blocks = Math.max(1L, capacityInBytes / BLOCK_SIZE);
+
+		this.name           = name;
+		this.blocksPerChunk = CHUNK_SIZE / BLOCK_SIZE;
+		this.blockCount     = (int)Math.min(Integer.MAX_VALUE - 8, blocks);
+		this.maxEntryBlocks = Math.max(1, blockCount / 16);
+		this.freeBlocks     = new int[blockCount];
+		this.chunks         = new ByteBuffer[(blockCount + blocksPerChunk - 1) / blocksPerChunk];
+
+		for (int i=0; i<chunks.length; i++) {
+
+			final int chunkBlocks = Math.min(blocksPerChunk, blockCount - i * blocksPerChunk);
+
+			chunks[i] = ByteBuffer.allocateDirect(chunkBlocks * BLOCK_SIZE);
+		}
+
+		// initialize free list in reverse order so that allocation starts at block 0
+		for (int i=0; i<blockCount; i++) {
+			freeBlocks[freeCount++] = blockCount - i - 1;
+		}
+	}
+
+	synchronized void put(final long id, final byte[] data) {
+
+		remove(id);
+
+		final int length = data.length;
+		final int needed = (length + BLOCK_SIZE - 1) / BLOCK_SIZE;
+
+		if (needed > maxEntryBlocks) {
+
+			rejected++;
+			return;
+		}
+
+		final Iterator<int[]> it = entries.values().iterator();
+		while (freeCount < needed && it.hasNext()) {
+
+			release(it.next());
+			it.remove();
+
+			evictions++;
+		}
+
+		// entry layout: length, followed by the indexes of the blocks
+		final int[] entry = new int[needed + 1];
+		entry[0]          = length;
+
+		for (int i=0; i<needed; i++) {
+
+			final int block      = freeBlocks[--freeCount];
+			final ByteBuffer buf = chunks[block / blocksPerChunk];
+			final int offset     = i * BLOCK_SIZE;
+
+			buf.position((block % blocksPerChunk) * BLOCK_SIZE);
+			buf.put(data, offset, Math.min(BLOCK_SIZE, length - offset));
+
+			entry[i + 1] = block;
+		}
+
+		entries.put(id, entry);
+
+		usedBytes += length;
+	}
+
+	/**
+	 * Schedules the data of the given entry to be stored by the next call
+	 * to storePending().
+	 */
+	synchronized void schedule(final long id, final Supplier<byte[]> data) {
+		pending.put(id, data);
+	}
+
+	/**
+	 * Stores all scheduled entries. The data is created outside of the lock
+	 * of this cache, entries that were removed in the meantime are not
+	 * stored.
+	 */
+	void storePending() {
+
+		while (true) {
+
+			final Supplier<byte[]> supplier;
+			final long id;
+
+			synchronized (this) {
+
+				if (pending.isEmpty()) {
+					return;
+				}
+
+				final Map.Entry<Long, Supplier<byte[]>> next = pending.entrySet().iterator().next();
+
+				id       = next.getKey();
+				supplier = next.getValue();
+			}
+
+			final byte[] data = supplier.get();
+
+			synchronized (this) {
+
+				if (pending.remove(id, supplier) && data != null) {
+					put(id, data);
+				}
+			}
+		}
+	}
+
+	synchronized byte[] get(final long id) {
+
+		final int[] entry = entries.get(id);
+		if (entry == null) {
+
+			misses++;
+			return null;
+		}
+
+		final int length  = entry[0];
+		final byte[] data = new byte[length];
+
+		for (int i=1; i<entry.length; i++) {
+
+			final int block      = entry[i];
+			final ByteBuffer buf = chunks[block / blocksPerChunk];
+			final int offset     = (i - 1) * BLOCK_SIZE;
+
+			buf.position((block % blocksPerChunk) * BLOCK_SIZE);
+			buf.get(data, offset, Math.min(BLOCK_SIZE, length - offset));
+		}
+
+		hits++;
+
+		return data;
+	}
+
+	synchronized void remove(final long id) {
+
+		pending.remove(id);
+
+		final int[] entry = entries.remove(id);
+		if (entry != null) {
+
+			release(entry);
+		}
+	}
+
+	synchronized void clear() {
+
+		for (final int[] entry : entries.values()) {
+			release(entry);
+		}
+
+		entries.clear();
+		pending.clear();
+	}
+
+	synchronized Map<String, Integer> getCacheInfo() {
+
+		final Map<String, Integer> info = new LinkedHashMap<>();
+
+		info.put("entries",   entries.size());
+		info.put("pending",   pending.size());
+		info.put("usedKB",    (int)(usedBytes / 1024));
+		info.put("maxKB",     (int)((long)blockCount * BLOCK_SIZE / 1024));
+		info.put("hits",      (int)Math.min(Integer.MAX_VALUE, hits));
+		info.put("misses",    (int)Math.min(Integer.MAX_VALUE, misses));
+		info.put("evictions", (int)Math.min(Integer.MAX_VALUE, evictions));
+		info.put("rejected",  (int)Math.min(Integer.MAX_VALUE, rejected));
+
+		return info;
+	}
+
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	// ----- private methods -----
+	private void release(final int[] entry) {
+
+		for (int i=1; i<entry.length; i++) {
+			freeBlocks[freeCount++] = entry[i];
+		}
+
+		usedBytes -= entry[0];
+	}
+}
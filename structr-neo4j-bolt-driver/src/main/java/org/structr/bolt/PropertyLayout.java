@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.bolt;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A key to slot table that is shared by all cached entities of the same
+ * type, so that the entities only need to store their values. The driver
+ * has no access to the schema, so the table is built from the property
+ * keys of the entities as they are loaded, which converges on the keys of
+ * the schema type. Slots are never removed, lookups are lock-free.
+ */
+class PropertyLayout {
+
+	static final int MAX_SLOTS                                = 256;
+
+	private static final Map<String, PropertyLayout> layouts = new ConcurrentHashMap<>();
+
+	private volatile Map<String, Integer> slots               = new HashMap<>();
+	private volatile String[] keys                            = new String[0];
+
+	static PropertyLayout forType(final Object type) {
+		return layouts.computeIfAbsent(type != null ? type.toString() : "", k -> new PropertyLayout());
+	}
+
+	/**
+	 * Returns the slot of the given key, or -1 if the key has no slot.
+	 */
+	int getSlot(final String key) {
+
+		final Integer slot = slots.get(key);
+		if (slot != null) {
+
+			return slot;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the slot of the given key, creates a new slot if necessary.
+	 * Returns -1 if the layout is full.
+	 */
+	int getOrCreateSlot(final String key) {
+
+		final int slot = getSlot(key);
+		if (slot >= 0) {
+
+			return slot;
+		}
+
+		synchronized (this) {
+
+			final Integer existing = slots.get(key);
+			if (existing != null) {
+
+				return existing;
+			}
+
+			final int size = keys.length;
+			if (size >= MAX_SLOTS) {
+
+				return -1;
+			}
+
+			final Map<String, Integer> newSlots = new HashMap<>(slots);
+			final String[] newKeys              = Arrays.copyOf(keys, size + 1);
+
+			newSlots.put(key, size);
+			newKeys[size] = key;
+
+			// publish keys first so that a slot is never visible without its key
+			keys  = newKeys;
+			slots = newSlots;
+
+			return size;
+		}
+	}
+
+	String getKey(final int slot) {
+		return keys[slot];
+	}
+}
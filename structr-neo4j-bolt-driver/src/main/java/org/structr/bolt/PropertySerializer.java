@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.bolt;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact binary encoding of the property values the Bolt driver returns,
+ * used by the off-heap cache. Maps that contain values of other types
+ * (temporal or spatial values) cannot be encoded and are not cached.
+ */
+class PropertySerializer {
+
+	private static final byte NULL    = 0;
+	private static final byte STRING  = 1;
+	private static final byte LONG    = 2;
+	private static final byte INTEGER = 3;
+	private static final byte DOUBLE  = 4;
+	private static final byte FLOAT   = 5;
+	private static final byte BOOLEAN = 6;
+	private static final byte BYTES   = 7;
+	private static final byte LIST    = 8;
+
+	/**
+	 * Writes the given map, returns false if it contains a value that
+	 * cannot be encoded.
+	 */
+	static boolean writeMap(final DataOutputStream out, final Map<String, Object> map) throws IOException {
+
+		out.writeInt(map.size());
+
+		for (final Map.Entry<String, Object> entry : map.entrySet()) {
+
+			writeString(out, entry.getKey());
+
+			if (!writeValue(out, entry.getValue())) {
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	static Map<String, Object> readMap(final DataInputStream in) throws IOException {
+
+		final int size                = in.readInt();
+		final Map<String, Object> map = new HashMap<>(size * 2);
+
+		for (int i=0; i<size; i++) {
+
+			final String key = readString(in);
+
+			map.put(key, readValue(in));
+		}
+
+		return map;
+	}
+
+	static void writeString(final DataOutputStream out, final String value) throws IOException {
+
+		final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(final DataInputStream in) throws IOException {
+
+		final byte[] bytes = new byte[in.readInt()];
+
+		in.readFully(bytes);
+
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	// ----- private methods -----
+	private static boolean writeValue(final DataOutputStream out, final Object value) throws IOException {
+
+		if (value == null) {
+
+			out.writeByte(NULL);
+
+		} else if (value instanceof String) {
+
+			out.writeByte(STRING);
+			writeString(out, (String)value);
+
+		} else if (value instanceof Long) {
+
+			out.writeByte(LONG);
+			out.writeLong((Long)value);
+
+		} else if (value instanceof Integer) {
+
+			out.writeByte(INTEGER);
+			out.writeInt((Integer)value);
+
+		} else if (value instanceof Double) {
+
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double)value);
+
+		} else if (value instanceof Float) {
+
+			out.writeByte(FLOAT);
+			out.writeFloat((Float)value);
+
+		} else if (value instanceof Boolean) {
+
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean)value);
+
+		} else if (value instanceof byte[]) {
+
+			final byte[] bytes = (byte[])value;
+
+			out.writeByte(BYTES);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+
+		} else if (value instanceof List) {
+
+			final List list = (List)value;
+
+			out.writeByte(LIST);
+			out.writeInt(list.size());
+
+			for (final Object element : list) {
+
+				if (!writeValue(out, element)) {
+					return false;
+				}
+			}
+
+		} else {
+
+			return false;
+		}
+
+		return true;
+	}
+
+	private static Object readValue(final DataInputStream in) throws IOException {
+
+		final byte type = in.readByte();
+
+		switch (type) {
+
+			case NULL:
+				return null;
+
+			case STRING:
+				return readString(in);
+
+			case LONG:
+				return in.readLong();
+
+			case INTEGER:
+				return in.readInt();
+
+			case DOUBLE:
+				return in.readDouble();
+
+			case FLOAT:
+				return in.readFloat();
+
+			case BOOLEAN:
+				return in.readBoolean();
+
+			case BYTES:
+				final byte[] bytes = new byte[in.readInt()];
+				in.readFully(bytes);
+				return bytes;
+
+			case LIST:
+				final int size          = in.readInt();
+				final List<Object> list = new ArrayList<>(size);
+
+				for (int i=0; i<size; i++) {
+					list.add(readValue(in));
+				}
+
+				return list;
+		}
+
+		throw new IOException("Invalid value type " + type);
+	}
+}
@@ -18,6 +18,9 @@
  */
 package org.structr.bolt;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
@@ -33,6 +36,7 @@ import org.structr.api.util.FixedSizeCache;
 class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Relationship> implements Relationship {
 
 	protected static FixedSizeCache<Long, RelationshipWrapper> relationshipCache = null;
+	protected static OffHeapPropertyCache offHeapCache                           = null;
 
 	private long sourceNodeId = -1L;
 	private long targetNodeId = -1L;
@@ -52,8 +56,19 @@ class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Relati
 		this.type         = relationship.type();
 	}
 
-	public static void initialize(final int cacheSize) {
+	private RelationshipWrapper(final BoltDatabaseService db, final long id, final long sourceNodeId, final long targetNodeId, final String type, final Map<String, Object> data) {
+
+		super(db, id, data);
+
+		this.sourceNodeId = sourceNodeId;
+		this.targetNodeId = targetNodeId;
+		this.type         = type;
+	}
+
+	public static void initialize(final int cacheSize, final long offHeapSize) {
+
 		relationshipCache = new FixedSizeCache<>("Relationship cache", cacheSize);
+		offHeapCache      = offHeapSize > 0 ? new OffHeapPropertyCache("Relationship off-heap cache", offHeapSize) : null;
 	}
 
 	@Override
@@ -75,6 +90,10 @@ class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Relati
 
 	@Override
 	public void onRemoveFromCache() {
+
+		// keep the data of evicted relationships in the second-level cache
+		scheduleForOffHeapCache();
+
 		stale = true;
 	}
 
@@ -97,6 +116,11 @@ class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Relati
 
 				wrapper.clearCaches();
 			}
+
+			if (offHeapCache != null) {
+
+				offHeapCache.remove(toRemove);
+			}
 		}
 	}
 
@@ -186,62 +210,117 @@ class RelationshipWrapper extends EntityWrapper<org.neo4j.driver.v1.types.Relati
 		return false;
 	}
 
+	@Override
+	protected OffHeapPropertyCache getOffHeapCache() {
+		return offHeapCache;
+	}
+
+	@Override
+	protected void writeHeader(final DataOutputStream out) throws IOException {
+
+		out.writeLong(sourceNodeId);
+		out.writeLong(targetNodeId);
+		PropertySerializer.writeString(out, type);
+	}
+
 	// ----- public static methods -----
 	protected static void clearCache() {
+
 		relationshipCache.clear();
+
+		if (offHeapCache != null) {
+
+			offHeapCache.clear();
+		}
 	}
 
 	public static RelationshipWrapper newInstance(final BoltDatabaseService db, final org.neo4j.driver.v1.types.Relationship relationship) {
 
+		RelationshipWrapper wrapper = null;
+
 		synchronized (relationshipCache) {
 
-			RelationshipWrapper wrapper = relationshipCache.get(relationship.id());
+			wrapper = relationshipCache.get(relationship.id());
 			if (wrapper == null || wrapper.stale) {
 
 				wrapper = new RelationshipWrapper(db, relationship);
 				relationshipCache.put(relationship.id(), wrapper);
 			}
-
-			return wrapper;
 		}
+
+		storeEvicted(offHeapCache);
+
+		return wrapper;
 	}
 
 	public static RelationshipWrapper newInstance(final BoltDatabaseService db, final long id) {
 
+		RelationshipWrapper wrapper = null;
+
 		synchronized (relationshipCache) {
 
-			RelationshipWrapper wrapper = relationshipCache.get(id);
+			wrapper = relationshipCache.get(id);
 			if (wrapper == null || wrapper.stale) {
 
-				final SessionTransaction tx   = db.getCurrentTransaction();
-				final Map<String, Object> map = new HashMap<>();
-				final StringBuilder buf       = new StringBuilder();
-				final String tenantIdentifier = db.getTenantIdentifier();
+				wrapper = fromOffHeapCache(db, id);
+				if (wrapper == null) {
 
-				map.put("id", id);
+					final SessionTransaction tx   = db.getCurrentTransaction();
+					final Map<String, Object> map = new HashMap<>();
+					final StringBuilder buf       = new StringBuilder();
+					final String tenantIdentifier = db.getTenantIdentifier();
 
-				buf.append("MATCH (");
+					map.put("id", id);
 
-				if (tenantIdentifier != null) {
-					buf.append(":");
-					buf.append(tenantIdentifier);
-				}
+					buf.append("MATCH (");
 
-				buf.append(")-[n]-(");
+					if (tenantIdentifier != null) {
+						buf.append(":");
+						buf.append(tenantIdentifier);
+					}
 
-				if (tenantIdentifier != null) {
-					buf.append(":");
-					buf.append(tenantIdentifier);
-				}
+					buf.append(")-[n]-(");
 
-				buf.append(") WHERE ID(n) = $id RETURN n");
+					if (tenantIdentifier != null) {
+						buf.append(":");
+						buf.append(tenantIdentifier);
+					}
 
-				wrapper = new RelationshipWrapper(db, tx.getRelationship(buf.toString(), map));
+					buf.append(") WHERE ID(n) = $id RETURN n");
+
+					wrapper = new RelationshipWrapper(db, tx.getRelationship(buf.toString(), map));
+				}
 
 				relationshipCache.put(id, wrapper);
 			}
+		}
 
-			return wrapper;
+		// evicted relationships are serialized after the lock of the relationship cache was released
+		storeEvicted(offHeapCache);
+
+		return wrapper;
+	}
+
+	// ----- private static methods -----
+	private static RelationshipWrapper fromOffHeapCache(final BoltDatabaseService db, final long id) {
+
+		final DataInputStream in = readFromOffHeapCache(offHeapCache, id);
+		if (in != null) {
+
+			try {
+
+				final long sourceNodeId = in.readLong();
+				final long targetNodeId = in.readLong();
+				final String type       = PropertySerializer.readString(in);
+
+				return new RelationshipWrapper(db, id, sourceNodeId, targetNodeId, type, PropertySerializer.readMap(in));
+
+			} catch (IOException ioex) {
+
+				offHeapCache.remove(id);
+			}
 		}
+
+		return null;
 	}
 }
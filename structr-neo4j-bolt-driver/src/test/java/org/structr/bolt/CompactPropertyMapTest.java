@@ -0,0 +1,184 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.bolt;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import org.testng.annotations.Test;
+
+public class CompactPropertyMapTest {
+
+	@Test
+	public void testLayoutSlots() {
+
+		final String type           = newType();
+		final PropertyLayout layout = PropertyLayout.forType(type);
+
+		assertSame("Entities of the same type should share the layout", layout, PropertyLayout.forType(type));
+		assertEquals(-1, layout.getSlot("name"));
+
+		final int name = layout.getOrCreateSlot("name");
+		final int age  = layout.getOrCreateSlot("age");
+
+		assertEquals(0, name);
+		assertEquals(1, age);
+		assertEquals(name, layout.getSlot("name"));
+		assertEquals(name, layout.getOrCreateSlot("name"));
+		assertEquals("name", layout.getKey(name));
+		assertEquals("age", layout.getKey(age));
+	}
+
+	@Test
+	public void testLayoutOverflow() {
+
+		final String type              = newType();
+		final PropertyLayout layout    = PropertyLayout.forType(type);
+		final CompactPropertyMap map   = new CompactPropertyMap(layout);
+		final Map<String, Object> data = new LinkedHashMap<>();
+
+		for (int i=0; i<PropertyLayout.MAX_SLOTS + 10; i++) {
+			data.put("key" + i, "value" + i);
+		}
+
+		map.putAll(data);
+
+		assertEquals(-1, layout.getOrCreateSlot("key" + PropertyLayout.MAX_SLOTS));
+		assertEquals(data.keySet(), map.keySet());
+
+		for (final Map.Entry<String, Object> entry : data.entrySet()) {
+
+			assertTrue(map.containsKey(entry.getKey()));
+			assertEquals(entry.getValue(), map.get(entry.getKey()));
+		}
+
+		// removing an overflow key
+		map.remove("key" + (PropertyLayout.MAX_SLOTS + 5));
+
+		assertFalse(map.containsKey("key" + (PropertyLayout.MAX_SLOTS + 5)));
+		assertEquals(PropertyLayout.MAX_SLOTS + 9, map.keySet().size());
+	}
+
+	@Test
+	public void testValuesAreStoredAsTheyAre() {
+
+		final CompactPropertyMap map = new CompactPropertyMap(PropertyLayout.forType(newType()));
+		final Long longValue         = 123456789L;
+		final Double doubleValue     = 1.5;
+		final Object marker          = new Object();
+
+		map.put("long",   longValue);
+		map.put("double", doubleValue);
+		map.put("object", marker);
+
+		// reads return the stored instances without boxing
+		assertSame(longValue,   map.get("long"));
+		assertSame(doubleValue, map.get("double"));
+		assertSame(marker,      map.get("object"));
+		assertSame(map.get("long"), map.get("long"));
+	}
+
+	@Test
+	public void testListConversion() {
+
+		final CompactPropertyMap map = new CompactPropertyMap(PropertyLayout.forType(newType()));
+
+		map.put("strings", Arrays.asList("a", "b"));
+		map.put("mixed",   Arrays.asList("a", 1L));
+		map.put("empty",   Collections.emptyList());
+
+		final Object strings = map.get("strings");
+		final Object mixed   = map.get("mixed");
+
+		assertTrue(strings instanceof String[]);
+		assertTrue(Arrays.equals(new String[] { "a", "b" }, (String[])strings));
+		assertTrue(mixed instanceof Object[]);
+		assertTrue(Arrays.equals(new Object[] { "a", 1L }, (Object[])mixed));
+		assertTrue(map.get("empty") instanceof List);
+		assertTrue(((List)map.get("empty")).isEmpty());
+
+		// lists are converted once, when they are stored
+		assertSame(strings, map.get("strings"));
+	}
+
+	@Test
+	public void testSnapshotCopyOnWrite() {
+
+		final CompactPropertyMap map   = new CompactPropertyMap(PropertyLayout.forType(newType()));
+		final Map<String, Object> data = new HashMap<>();
+
+		data.put("name",  "initial");
+		data.put("count", 1L);
+
+		map.putAll(data);
+
+		final CompactPropertyMap.Snapshot before = map.snapshot();
+
+		map.put("name", "changed");
+		map.put("added", "new");
+		map.remove("count");
+
+		final CompactPropertyMap.Snapshot after = map.snapshot();
+
+		// the old snapshot is not modified
+		assertEquals("initial", before.get("name"));
+		assertEquals(1L, before.get("count"));
+		assertFalse(before.containsKey("added"));
+
+		assertEquals("changed", after.get("name"));
+		assertEquals("new", after.get("added"));
+		assertFalse(after.containsKey("count"));
+		assertNull(after.get("count"));
+
+		assertEquals("changed", map.get("name"));
+		assertSame(after, map.snapshot());
+	}
+
+	@Test
+	public void testEntitiesOfTheSameTypeShareTheLayout() {
+
+		final PropertyLayout layout   = PropertyLayout.forType(newType());
+		final CompactPropertyMap map1 = new CompactPropertyMap(layout);
+		final CompactPropertyMap map2 = new CompactPropertyMap(layout);
+
+		map1.put("a", "1");
+		map2.put("b", "2");
+
+		assertTrue(map1.containsKey("a"));
+		assertFalse(map1.containsKey("b"));
+		assertFalse(map2.containsKey("a"));
+		assertTrue(map2.containsKey("b"));
+		assertEquals(Collections.singleton("a"), map1.keySet());
+		assertEquals(Collections.singleton("b"), map2.keySet());
+	}
+
+	// ----- private methods -----
+	private String newType() {
+		return "Type" + UUID.randomUUID().toString().replace("-", "");
+	}
+}
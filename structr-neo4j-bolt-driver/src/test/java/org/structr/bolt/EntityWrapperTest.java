@@ -0,0 +1,284 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.bolt;
+
+import java.io.DataOutputStream;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import org.neo4j.driver.v1.Session;
+import org.neo4j.driver.v1.Transaction;
+import org.neo4j.driver.v1.types.Node;
+import org.structr.api.util.Iterables;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertSame;
+import static org.testng.AssertJUnit.assertTrue;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests the per-transaction overlay of {@link EntityWrapper} without a
+ * database, the queries of the transactions are discarded.
+ */
+public class EntityWrapperTest {
+
+	private TestDatabaseService db = null;
+
+	@BeforeMethod
+	public void setup() {
+		db = new TestDatabaseService();
+	}
+
+	@Test
+	public void testChangesAreVisibleOnlyInTheirTransaction() {
+
+		final TestEntity entity = newEntity();
+
+		db.begin();
+		entity.setProperty("name", "changed");
+		entity.removeProperty("count");
+
+		assertEquals("changed", entity.getProperty("name"));
+		assertFalse(entity.hasProperty("count"));
+
+		// another transaction sees the committed state
+		db.begin();
+
+		assertEquals("initial", entity.getProperty("name"));
+		assertEquals(1L, entity.getProperty("count"));
+
+		// and so do reads outside of a transaction
+		db.end();
+
+		assertEquals("initial", entity.getProperty("name"));
+		assertTrue(entity.hasProperty("count"));
+	}
+
+	@Test
+	public void testCommit() {
+
+		final TestEntity entity = newEntity();
+
+		final SessionTransaction tx = db.begin();
+		entity.setProperty("name", "changed");
+		entity.setProperty("added", "new");
+		entity.removeProperty("count");
+
+		entity.commit(tx.getTransactionKey());
+		db.end();
+
+		assertEquals("changed", entity.getProperty("name"));
+		assertEquals("new", entity.getProperty("added"));
+		assertFalse(entity.hasProperty("count"));
+		assertNull(entity.getProperty("count"));
+		assertEquals(set("name", "added"), set(entity.getPropertyKeys()));
+	}
+
+	@Test
+	public void testRollback() {
+
+		final TestEntity entity = newEntity();
+
+		final SessionTransaction tx = db.begin();
+		entity.setProperty("name", "changed");
+		entity.removeProperty("count");
+
+		entity.rollback(tx.getTransactionKey());
+		db.end();
+
+		assertEquals("initial", entity.getProperty("name"));
+		assertEquals(1L, entity.getProperty("count"));
+		assertEquals(set("name", "count"), set(entity.getPropertyKeys()));
+	}
+
+	@Test
+	public void testTransactionKeepsItsSnapshot() {
+
+		final TestEntity entity = newEntity();
+
+		// the reading transaction captures the committed state on its first access
+		final SessionTransaction reader = db.begin();
+		assertEquals("initial", entity.getProperty("name"));
+
+		final SessionTransaction writer = db.begin();
+		entity.setProperty("name", "changed");
+		entity.commit(writer.getTransactionKey());
+
+		db.use(reader);
+		assertEquals("initial", entity.getProperty("name"));
+
+		db.begin();
+		assertEquals("changed", entity.getProperty("name"));
+	}
+
+	@Test
+	public void testTransactionKeys() {
+
+		final TestEntity entity = newEntity();
+
+		db.begin();
+		entity.setProperty("added", "new");
+		entity.removeProperty("count");
+
+		assertEquals(set("name", "added"), set(entity.getPropertyKeys()));
+	}
+
+	@Test
+	public void testReadsReturnTheCachedValues() {
+
+		final Map<String, Object> data = new HashMap<>();
+
+		data.put("type",  "TestType");
+		data.put("tags",  Arrays.asList("a", "b"));
+		data.put("count", 12345L);
+
+		final TestEntity entity = new TestEntity(db, 1L, data);
+		final Object tags       = entity.getProperty("tags");
+
+		assertTrue(Arrays.equals(new String[] { "a", "b" }, (String[])tags));
+
+		// neither copied nor boxed on every read
+		assertSame(tags, entity.getProperty("tags"));
+		assertSame(entity.getProperty("count"), entity.getProperty("count"));
+	}
+
+	// ----- private methods -----
+	private TestEntity newEntity() {
+
+		final Map<String, Object> data = new HashMap<>();
+
+		data.put("name",  "initial");
+		data.put("count", 1L);
+
+		return new TestEntity(db, 1L, data);
+	}
+
+	private Set<String> set(final String... values) {
+		return new HashSet<>(Arrays.asList(values));
+	}
+
+	private Set<String> set(final Iterable<String> values) {
+		return Iterables.toSet(values);
+	}
+
+	private static Object proxy(final Class type) {
+
+		return Proxy.newProxyInstance(type.getClassLoader(), new Class[] { type }, (proxy, method, args) -> {
+
+			final Class returnType = method.getReturnType();
+
+			if (Transaction.class.equals(returnType)) {
+				return proxy(Transaction.class);
+			}
+
+			if (boolean.class.equals(returnType)) {
+				return false;
+			}
+
+			if (int.class.equals(returnType)) {
+				return 0;
+			}
+
+			return null;
+		});
+	}
+
+	// ----- nested classes -----
+	private static class TestDatabaseService extends BoltDatabaseService {
+
+		private SessionTransaction current = null;
+
+		SessionTransaction begin() {
+
+			current = new TestTransaction(this);
+			return current;
+		}
+
+		void use(final SessionTransaction tx) {
+			current = tx;
+		}
+
+		void end() {
+			current = null;
+		}
+
+		@Override
+		public SessionTransaction getCurrentTransaction(final boolean throwNotInTransactionException) {
+			return current;
+		}
+	}
+
+	private static class TestTransaction extends SessionTransaction {
+
+		TestTransaction(final BoltDatabaseService db) {
+			super(db, (Session)proxy(Session.class));
+		}
+
+		@Override
+		public void set(final String statement, final Map<String, Object> map) {
+		}
+	}
+
+	private static class TestEntity extends EntityWrapper<Node> {
+
+		TestEntity(final BoltDatabaseService db, final long id, final Map<String, Object> data) {
+			super(db, id, data);
+		}
+
+		@Override
+		protected String getQueryPrefix() {
+			return "MATCH (n)";
+		}
+
+		@Override
+		protected boolean isNode() {
+			return true;
+		}
+
+		@Override
+		protected OffHeapPropertyCache getOffHeapCache() {
+			return null;
+		}
+
+		@Override
+		protected void writeHeader(final DataOutputStream out) {
+		}
+
+		@Override
+		public void removeFromCache() {
+		}
+
+		@Override
+		public void clearCaches() {
+		}
+
+		@Override
+		public void onClose() {
+		}
+
+		@Override
+		public void onRemoveFromCache() {
+		}
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.bolt;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+import org.testng.annotations.Test;
+
+public class OffHeapPropertyCacheTest {
+
+	// 64 blocks of 64 bytes, an entry can occupy at most 4 blocks
+	private static final int CAPACITY = 64 * 64;
+
+	@Test
+	public void testBlockAllocation() {
+
+		final OffHeapPropertyCache cache = new OffHeapPropertyCache("test", CAPACITY);
+		final byte[] empty               = new byte[0];
+		final byte[] small               = data(10, 1);
+		final byte[] exact               = data(64, 2);
+		final byte[] large               = data(200, 3);
+
+		cache.put(1L, empty);
+		cache.put(2L, small);
+		cache.put(3L, exact);
+		cache.put(4L, large);
+
+		assertTrue(Arrays.equals(empty, cache.get(1L)));
+		assertTrue(Arrays.equals(small, cache.get(2L)));
+		assertTrue(Arrays.equals(exact, cache.get(3L)));
+		assertTrue(Arrays.equals(large, cache.get(4L)));
+		assertNull(cache.get(5L));
+
+		// 0 + 1 + 1 + 4 blocks are in use, the remaining 58 blocks can be filled without eviction
+		for (int i=0; i<58; i++) {
+			cache.put(100L + i, data(64, i));
+		}
+
+		assertEquals(62, (int)cache.getCacheInfo().get("entries"));
+		assertEquals(0, (int)cache.getCacheInfo().get("evictions"));
+
+		for (int i=0; i<58; i++) {
+			assertTrue("Entries must not share blocks", Arrays.equals(data(64, i), cache.get(100L + i)));
+		}
+
+		// replacing an entry releases its blocks
+		cache.put(4L, small);
+		cache.put(5L, data(192, 4));
+
+		assertEquals(0, (int)cache.getCacheInfo().get("evictions"));
+		assertTrue(Arrays.equals(small, cache.get(4L)));
+		assertTrue(Arrays.equals(data(192, 4), cache.get(5L)));
+
+		// removing an entry releases its blocks
+		cache.remove(5L);
+		cache.put(6L, data(192, 6));
+
+		assertNull(cache.get(5L));
+		assertEquals(0, (int)cache.getCacheInfo().get("evictions"));
+
+		final Map<String, Integer> info = cache.getCacheInfo();
+
+		assertEquals(63, (int)info.get("entries"));
+		assertEquals(64, (int)info.get("hits"));
+		assertEquals(2, (int)info.get("misses"));
+	}
+
+	@Test
+	public void testLruEviction() {
+
+		final OffHeapPropertyCache cache = new OffHeapPropertyCache("test", CAPACITY);
+
+		for (int i=0; i<64; i++) {
+			cache.put(i, data(64, i));
+		}
+
+		// access the oldest entry so that the second one is the least recently used
+		assertNotNull(cache.get(0L));
+
+		cache.put(64L, data(64, 64));
+
+		assertEquals(1, (int)cache.getCacheInfo().get("evictions"));
+		assertNull("Least recently used entry should be evicted", cache.get(1L));
+		assertNotNull("Recently used entry should be kept", cache.get(0L));
+		assertNotNull(cache.get(64L));
+
+		// a larger entry evicts as many entries as it needs blocks
+		cache.put(65L, data(256, 65));
+
+		assertEquals(5, (int)cache.getCacheInfo().get("evictions"));
+		assertTrue(Arrays.equals(data(256, 65), cache.get(65L)));
+
+		for (int i=2; i<6; i++) {
+			assertNull(cache.get(i));
+		}
+
+		assertNotNull(cache.get(6L));
+	}
+
+	@Test
+	public void testCapacityLimit() {
+
+		final OffHeapPropertyCache cache = new OffHeapPropertyCache("test", CAPACITY);
+
+		assertEquals(CAPACITY / 1024, (int)cache.getCacheInfo().get("maxKB"));
+
+		// entries larger than a sixteenth of the capacity are rejected
+		cache.put(1L, data(257, 1));
+
+		assertNull(cache.get(1L));
+		assertEquals(1, (int)cache.getCacheInfo().get("rejected"));
+		assertEquals(0, (int)cache.getCacheInfo().get("entries"));
+
+		// the cache never holds more data than its capacity
+		for (int i=0; i<1000; i++) {
+			cache.put(i, data(256, i));
+		}
+
+		assertEquals(16, (int)cache.getCacheInfo().get("entries"));
+		assertEquals(CAPACITY / 1024, (int)cache.getCacheInfo().get("usedKB"));
+
+		for (int i=984; i<1000; i++) {
+			assertTrue(Arrays.equals(data(256, i), cache.get(i)));
+		}
+
+		cache.clear();
+
+		assertEquals(0, (int)cache.getCacheInfo().get("entries"));
+		assertEquals(0, (int)cache.getCacheInfo().get("usedKB"));
+		assertNull(cache.get(999L));
+
+		// all blocks are available again after clear
+		for (int i=0; i<64; i++) {
+			cache.put(i, data(64, i));
+		}
+
+		assertEquals(64, (int)cache.getCacheInfo().get("entries"));
+	}
+
+	@Test
+	public void testPendingEntries() {
+
+		final OffHeapPropertyCache cache = new OffHeapPropertyCache("test", CAPACITY);
+		final AtomicInteger calls        = new AtomicInteger();
+
+		cache.schedule(1L, () -> {
+
+			assertFalse("Data must be created outside of the lock of the cache", Thread.holdsLock(cache));
+			calls.incrementAndGet();
+
+			return data(100, 1);
+		});
+
+		cache.schedule(2L, () -> { calls.incrementAndGet(); return data(100, 2); });
+		cache.schedule(3L, () -> { calls.incrementAndGet(); return null; });
+
+		assertNull("Scheduled entries should not be stored before storePending() is called", cache.get(1L));
+		assertEquals(0, calls.get());
+
+		// removed entries are not stored
+		cache.remove(2L);
+		cache.storePending();
+
+		assertEquals(2, calls.get());
+		assertTrue(Arrays.equals(data(100, 1), cache.get(1L)));
+		assertNull(cache.get(2L));
+		assertNull(cache.get(3L));
+		assertEquals(0, (int)cache.getCacheInfo().get("pending"));
+
+		// the latest schedule wins
+		cache.schedule(4L, () -> data(10, 4));
+		cache.schedule(4L, () -> data(10, 5));
+		cache.storePending();
+
+		assertTrue(Arrays.equals(data(10, 5), cache.get(4L)));
+
+		// clear drops pending entries
+		cache.schedule(5L, () -> data(10, 5));
+		cache.clear();
+		cache.storePending();
+
+		assertNull(cache.get(5L));
+	}
+
+	// ----- private methods -----
+	private byte[] data(final int length, final int seed) {
+
+		final byte[] data = new byte[length];
+
+		for (int i=0; i<length; i++) {
+			data[i] = (byte)(seed * 31 + i);
+		}
+
+		return data;
+	}
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.bolt;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+import org.testng.annotations.Test;
+
+public class PropertySerializerTest {
+
+	@Test
+	public void testRoundTrip() throws IOException {
+
+		final Map<String, Object> data = new LinkedHashMap<>();
+
+		data.put("null",      null);
+		data.put("string",    "Grüße 世界");
+		data.put("empty",     "");
+		data.put("long",      Long.MIN_VALUE);
+		data.put("integer",   42);
+		data.put("double",    Math.PI);
+		data.put("float",     1.5f);
+		data.put("boolean",   true);
+		data.put("bytes",     new byte[] { 0, 1, -1, 127 });
+		data.put("list",      Arrays.asList("a", 1L, null, Arrays.asList(true, 2.0)));
+		data.put("emptyList", Collections.emptyList());
+
+		final Map<String, Object> result = read(write(data));
+
+		assertEquals(data.keySet(), result.keySet());
+
+		assertTrue(result.containsKey("null"));
+		assertNull(result.get("null"));
+		assertEquals("Grüße 世界", result.get("string"));
+		assertEquals("", result.get("empty"));
+		assertEquals(Long.MIN_VALUE, result.get("long"));
+		assertEquals(42, result.get("integer"));
+		assertEquals(Math.PI, result.get("double"));
+		assertEquals(1.5f, result.get("float"));
+		assertEquals(Boolean.TRUE, result.get("boolean"));
+		assertTrue(Arrays.equals(new byte[] { 0, 1, -1, 127 }, (byte[])result.get("bytes")));
+		assertEquals(Arrays.asList("a", 1L, null, Arrays.asList(true, 2.0)), result.get("list"));
+		assertEquals(Collections.emptyList(), result.get("emptyList"));
+
+		// numeric types must be preserved
+		assertEquals(Long.class, result.get("long").getClass());
+		assertEquals(Integer.class, result.get("integer").getClass());
+		assertEquals(Double.class, result.get("double").getClass());
+		assertEquals(Float.class, result.get("float").getClass());
+		assertEquals(Long.class, ((List)result.get("list")).get(1).getClass());
+	}
+
+	@Test
+	public void testStrings() throws IOException {
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out        = new DataOutputStream(bytes);
+
+		PropertySerializer.writeString(out, "type");
+		PropertySerializer.writeString(out, "äöü");
+		out.flush();
+
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+
+		assertEquals("type", PropertySerializer.readString(in));
+		assertEquals("äöü", PropertySerializer.readString(in));
+	}
+
+	@Test
+	public void testUnsupportedValues() throws IOException {
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		assertFalse("Temporal values cannot be encoded", PropertySerializer.writeMap(new DataOutputStream(bytes), Map.of("date", LocalDate.now())));
+		assertFalse("Nested values that cannot be encoded must be detected", PropertySerializer.writeMap(new DataOutputStream(bytes), Map.of("list", Arrays.asList("a", new Object()))));
+		assertFalse("Maps cannot be encoded", PropertySerializer.writeMap(new DataOutputStream(bytes), Map.of("map", Map.of("a", 1))));
+	}
+
+	@Test
+	public void testInvalidData() {
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+		try {
+
+			final DataOutputStream out = new DataOutputStream(bytes);
+
+			out.writeInt(1);
+			PropertySerializer.writeString(out, "key");
+			out.writeByte(99);
+			out.flush();
+
+			read(bytes.toByteArray());
+
+			fail("Invalid value types should be rejected");
+
+		} catch (IOException expected) {
+		}
+	}
+
+	// ----- private methods -----
+	private byte[] write(final Map<String, Object> data) throws IOException {
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out        = new DataOutputStream(bytes);
+
+		assertTrue(PropertySerializer.writeMap(out, data));
+
+		out.flush();
+
+		return bytes.toByteArray();
+	}
+
+	private Map<String, Object> read(final byte[] data) throws IOException {
+		return PropertySerializer.readMap(new DataInputStream(new ByteArrayInputStream(data)));
+	}
+}
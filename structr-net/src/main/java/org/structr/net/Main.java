@@ -59,6 +59,7 @@ public class Main {
 		boolean printKeys     = false;
 		boolean isInteractive = false;
 		boolean verbose       = false;
+		boolean sessionKeys   = true;
 
 		for (int i=0 ;i<args.length; i++) {
 
@@ -89,6 +90,11 @@ public class Main {
 					System.out.println("Client UUID set to " + uuid);
 					break;
 
+				case "--legacy-encryption":
+					sessionKeys = false;
+					System.out.println("Session keys disabled.");
+					break;
+
 				case "--print-keys":
 					printKeys = true;
 					System.out.println("Printing peer keys.");
@@ -144,6 +150,7 @@ public class Main {
 		repo.setPeer(peer);
 
 		peer.setVerbose(verbose);
+		peer.setUseSessionKeys(sessionKeys);
 		peer.initializeServer();
 		peer.start();
 
@@ -271,6 +278,7 @@ public class Main {
 		System.out.println(" -p <addr>      - set initial peer");
 		System.out.println(" -u <uuid>      - set peer UUID ");
 		System.out.println(" -v             - enable verbose mode");
+		System.out.println(" --legacy-encryption - encrypt each packet with RSA");
 	}
 
 	private static String readBase64(final String fileName) throws IOException {
@@ -20,9 +20,19 @@ package org.structr.net.peer;
 
 import java.io.IOException;
 import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.UnresolvedAddressException;
 import java.nio.charset.Charset;
+import java.security.GeneralSecurityException;
 import java.security.KeyPair;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
@@ -34,15 +44,19 @@ import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.net.PeerListener;
@@ -58,6 +72,7 @@ import org.structr.net.protocol.Delete;
 import org.structr.net.protocol.Discovery;
 import org.structr.net.protocol.Envelope;
 import org.structr.net.protocol.Inventory;
+import org.structr.net.protocol.SessionCipher;
 import org.structr.net.protocol.Update;
 import org.structr.net.repository.DefaultRepositoryObject;
 import org.structr.net.repository.InternalChangeListener;
@@ -66,18 +81,21 @@ import org.structr.net.repository.RepositoryObject;
 
 /**
  * The main class of this peer-to-peer implementation. This class will
- * start three individual threads. Two that handle inbound and outbound
- * traffic and another one that acts on the protocol messages it receives.
+ * start two individual threads. One that handles inbound and outbound
+ * traffic on a non-blocking datagram channel and another one that acts
+ * on the protocol messages it receives.
  */
 public final class Peer implements Runnable, Clock, InternalChangeListener {
 
-	public static final int START_PORT = 5757;
+	public static final int START_PORT      = 5757;
+	public static final int MAX_BATCH_SIZE  = 1024;
+	public static final int MAX_PACKET_SIZE = 65507;
 
 	private static final Logger logger = LoggerFactory.getLogger(Peer.class.getName());
 
 	private final Queue<Envelope> outputQueue         = new ConcurrentLinkedQueue<>();
-	private final Queue<Envelope> inputQueue          = new ConcurrentLinkedQueue<>();
-	private final ExecutorService executorService     = Executors.newCachedThreadPool();
+	private final BlockingQueue<Envelope> inputQueue  = new LinkedBlockingQueue<>();
+	private final ExecutorService executorService     = Executors.newFixedThreadPool(2);
 	private final Map<String, PeerInfo> peers         = new ConcurrentHashMap<>();
 	private final Map<String, Callback> callbacks     = new ConcurrentHashMap<>();
 	private final Charset utf8                        = Charset.forName("utf-8");
@@ -91,7 +109,10 @@ public final class Peer implements Runnable, Clock, InternalChangeListener {
 	private boolean initialized                       = false;
 	private String initialPeer                        = null;
 	private String bindAddress                        = null;
-	private DatagramSocket serverSocket               = null;
+	private DatagramChannel channel                   = null;
+	private Selector selector                         = null;
+	private SessionCipher sessionCipher               = null;
+	private boolean useSessionKeys                    = true;
 	private long timeOffset                           = 0L;
 	private int localPort                             = START_PORT;
 	private int sent                                  = 0;
@@ -146,26 +167,7 @@ public final class Peer implements Runnable, Clock, InternalChangeListener {
 					final Envelope envelope = inputQueue.poll();
 					if (envelope != null) {
 
-						final AbstractMessage message = envelope.getMessage();
-
-						// notify listeners
-						onMessage(message);
-
-						// re-broadcast to other peers
-						final String ackKey = message.getId() + "-ack";
-
-						// re-broadcast message if UUID was not seen before
-						// (this causes the "wave" effect so that all peers
-						// see the message, even if not connected directly)
-						if (getData(ackKey) == null) {
-
-							// process message
-							message.onMessage(this, envelope.getPeer());
-
-							// send message to other peers
-							broadcast(message);
-							setData(ackKey, true);
-						}
+						handle(envelope);
 					}
 				}
 
@@ -199,11 +201,22 @@ public final class Peer implements Runnable, Clock, InternalChangeListener {
 
 							onRemovePeer(peer);
 							it.remove();
+
+							if (sessionCipher != null) {
+								sessionCipher.remove(peer.getUuid());
+							}
 						}
 					}
 				}
 
-				Thread.sleep(10L);
+				// wait for input, but not longer than until the next scheduled task
+				final long nextTask     = Math.min(lastDiscovery + discoveryInterval, lastCleanup + discoveryIntervalStep);
+				final Envelope envelope = inputQueue.poll(Math.max(1L, nextTask - System.currentTimeMillis() + 1L), TimeUnit.MILLISECONDS);
+
+				if (envelope != null) {
+
+					handle(envelope);
+				}
 
 			} catch (Throwable t) {
 				logger.warn("", t);
@@ -222,8 +235,7 @@ public final class Peer implements Runnable, Clock, InternalChangeListener {
 
 		try {
 
-			executorService.submit(new InputHandler());
-			executorService.submit(new OutputHandler());
+			executorService.submit(new NetworkHandler());
 			executorService.submit(this);
 
 		} catch (RejectedExecutionException rex) {
@@ -241,16 +253,43 @@ public final class Peer implements Runnable, Clock, InternalChangeListener {
 
 			try {
 
-				serverSocket = new DatagramSocket(localPort, InetAddress.getByName(bindAddress));
+				channel = DatagramChannel.open();
+				channel.setOption(StandardSocketOptions.SO_BROADCAST, true);
+				channel.bind(new InetSocketAddress(InetAddress.getByName(bindAddress), localPort));
+				channel.configureBlocking(false);
+
 				success = true;
 
 			} catch (IOException ioex) {
+
+				closeChannel();
 				localPort++;
+
 			} catch (Throwable t) {
 				logger.warn("", t);
 			}
 		}
 
+		if (success) {
+
+			try {
+
+				selector = Selector.open();
+				channel.register(selector, SelectionKey.OP_READ);
+
+				if (useSessionKeys) {
+					sessionCipher = new SessionCipher(getUuid(), getPrivateKey(), getPublicKey());
+				}
+
+			} catch (IOException | GeneralSecurityException ex) {
+
+				logger.warn("Unable to initialize network channel", ex);
+				closeChannel();
+
+				success = false;
+			}
+		}
+
 		if (!success) {
 
 			System.out.println("Unable to bind to " + bindAddress + ", aborting.");
@@ -268,7 +307,16 @@ public final class Peer implements Runnable, Clock, InternalChangeListener {
 
 		running = false;
 
-		serverSocket.close();
+		if (selector != null) {
+
+			try {
+				selector.wakeup();
+				selector.close();
+
+			} catch (IOException ignore) {}
+		}
+
+		closeChannel();
 	}
 
 	public String getUuid() {
@@ -295,8 +343,24 @@ public final class Peer implements Runnable, Clock, InternalChangeListener {
 		return pte;
 	}
 
+	/**
+	 * Enables or disables the session key mode, in which every peer
+	 * exchanges an RSA-encrypted AES key once and encrypts its packets
+	 * with AES-GCM afterwards. If disabled, each packet is RSA-encrypted
+	 * and contains a single message. All peers of a network must use the
+	 * same mode. Must be called before {@link #initializeServer()}.
+	 */
+	public void setUseSessionKeys(final boolean useSessionKeys) {
+		this.useSessionKeys = useSessionKeys;
+	}
+
 	public void send(final PeerInfo recipient, final AbstractMessage message) {
+
 		outputQueue.add(new Envelope(recipient, message));
+
+		if (selector != null) {
+			selector.wakeup();
+		}
 	}
 
 	public void onPeerDiscovery(final PeerInfo newPeer, final byte[] hash) {
@@ -354,7 +418,7 @@ public final class Peer implements Runnable, Clock, InternalChangeListener {
 	public synchronized void printInfo() {
 
 		System.out.println("#########################################");
-		System.out.println("Peer " + serverSocket.getLocalAddress() + ":" + localPort);
+		System.out.println("Peer " + channel.socket().getLocalAddress() + ":" + localPort);
 		System.out.println("UUID: " + getUuid());
 		System.out.println("Time offset: " + timeOffset);
 		System.out.println(received + " messages received, " + sent + " messages sent");
@@ -568,6 +632,41 @@ public final class Peer implements Runnable, Clock, InternalChangeListener {
 	}
 
 	// ----- private methods -----
+	private void handle(final Envelope envelope) {
+
+		final AbstractMessage message = envelope.getMessage();
+
+		// notify listeners
+		onMessage(message);
+
+		// re-broadcast to other peers
+		final String ackKey = message.getId() + "-ack";
+
+		// re-broadcast message if UUID was not seen before
+		// (this causes the "wave" effect so that all peers
+		// see the message, even if not connected directly)
+		if (getData(ackKey) == null) {
+
+			// process message
+			message.onMessage(this, envelope.getPeer());
+
+			// send message to other peers
+			broadcast(message);
+			setData(ackKey, true);
+		}
+	}
+
+	private void closeChannel() {
+
+		if (channel != null) {
+
+			try {
+				channel.close();
+
+			} catch (IOException ignore) {}
+		}
+	}
+
 	private synchronized boolean addPeer(final PeerInfo peer) {
 
 		final String uuid = peer.getUuid();
@@ -642,23 +741,53 @@ public final class Peer implements Runnable, Clock, InternalChangeListener {
 	}
 
 	// ----- nested classes -----
-	private class InputHandler implements Runnable {
+	/**
+	 * Handles inbound and outbound traffic on the datagram channel. Queued
+	 * messages for the same recipient are combined into as few datagrams
+	 * as possible when session keys are used.
+	 */
+	private class NetworkHandler implements Runnable {
 
-		private final byte[] buffer = new byte[2048];
+		private final ByteBuffer buffer       = ByteBuffer.allocate(MAX_PACKET_SIZE);
+		private final Queue<Datagram> pending = new LinkedList<>();
 
 		@Override
 		public void run() {
 
+			final SelectionKey key = channel.keyFor(selector);
+
 			while (running) {
 
 				try {
 
-					final DatagramPacket packet = new DatagramPacket(buffer, 2048);
+					selector.select(1000L);
+					selector.selectedKeys().clear();
 
-					serverSocket.receive(packet);
+					receive();
+					send();
 
-					final Envelope envelope = AbstractMessage.receive(Peer.this, packet);
-					if (envelope != null) {
+					// only wait for the channel to become writable when the socket buffer is full
+					key.interestOps(pending.isEmpty() ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+
+				} catch (ClosedSelectorException | ClosedChannelException ignore) {
+				} catch (Throwable t) {
+					logger.warn("", t);
+				}
+			}
+		}
+
+		// ----- private methods -----
+		private void receive() throws IOException {
+
+			SocketAddress source = null;
+
+			buffer.clear();
+
+			while ((source = channel.receive(buffer)) != null) {
+
+				try {
+
+					for (final Envelope envelope : decode(buffer.array(), buffer.position(), (InetSocketAddress)source)) {
 
 						final AbstractMessage msg  = envelope.getMessage();
 						final long senderTimestamp = msg.getSenderTimestamp();
@@ -677,50 +806,157 @@ public final class Peer implements Runnable, Clock, InternalChangeListener {
 						inputQueue.add(envelope);
 
 						received++;
-
 					}
 
 				} catch (Throwable t) {
 					logger.warn("", t);
 				}
+
+				buffer.clear();
 			}
 		}
-	}
 
-	private class OutputHandler implements Runnable {
+		private List<Envelope> decode(final byte[] data, final int length, final InetSocketAddress source) throws Exception {
 
-		@Override
-		public void run() {
+			final String address = source.getAddress().getHostAddress();
+			final int port       = source.getPort();
 
-			while (running) {
+			if (sessionCipher != null) {
 
-				try {
+				final byte[] payload = sessionCipher.open(data, length);
+				if (payload != null) {
 
-					while (!outputQueue.isEmpty()) {
+					return AbstractMessage.unpack(Peer.this, payload, address, port);
+				}
 
-						final Envelope envelope = outputQueue.poll();
-						if (envelope != null) {
+			} else {
 
-							final AbstractMessage message = envelope.getMessage();
-							final PeerInfo recipient      = envelope.getPeer();
+				final Envelope envelope = AbstractMessage.receive(Peer.this, new DatagramPacket(Arrays.copyOf(data, length), length, source));
+				if (envelope != null) {
 
-							message.setSenderTimestamp(System.currentTimeMillis() + timeOffset);
-							message.onSend(Peer.this);
+					return Collections.singletonList(envelope);
+				}
+			}
 
-							serverSocket.send(AbstractMessage.forSending(Peer.this.getUuid(), recipient, message));
+			return Collections.emptyList();
+		}
 
-							sent++;
-						}
+		private void send() throws IOException, GeneralSecurityException {
+
+			flush();
+
+			// do not encode new messages while the socket buffer is full
+			if (pending.isEmpty() && !outputQueue.isEmpty()) {
+
+				final Map<String, List<Envelope>> recipients = new LinkedHashMap<>();
+				Envelope envelope                            = null;
+
+				while ((envelope = outputQueue.poll()) != null) {
+
+					final PeerInfo recipient = envelope.getPeer();
+					final String key         = recipient.getUuid() + "@" + recipient.getAddress() + ":" + recipient.getPort();
+
+					recipients.computeIfAbsent(key, k -> new LinkedList<>()).add(envelope);
+				}
+
+				for (final List<Envelope> envelopes : recipients.values()) {
+					encode(envelopes);
+				}
+
+				flush();
+			}
+		}
+
+		private void encode(final List<Envelope> envelopes) throws IOException, GeneralSecurityException {
+
+			final PeerInfo recipient       = envelopes.get(0).getPeer();
+			final InetSocketAddress target = new InetSocketAddress(recipient.getAddress(), recipient.getPort());
+			final List<byte[]> batch       = new LinkedList<>();
+			int batchSize                  = 0;
+
+			if (target.isUnresolved()) {
+
+				logger.warn("Unable to resolve address {}, dropping {} messages.", recipient.getAddress(), envelopes.size());
+				return;
+			}
+
+			for (final Envelope envelope : envelopes) {
+
+				final AbstractMessage message = envelope.getMessage();
+
+				message.setSenderTimestamp(System.currentTimeMillis() + timeOffset);
+				message.onSend(Peer.this);
+
+				if (sessionCipher != null) {
+
+					final byte[] data = AbstractMessage.toBytes(getUuid(), message);
+
+					// start a new datagram when the current one is full
+					if (!batch.isEmpty() && batchSize + data.length > MAX_BATCH_SIZE) {
+
+						pending.add(new Datagram(sessionCipher.seal(recipient, AbstractMessage.pack(batch)), target));
+
+						batch.clear();
+						batchSize = 0;
 					}
 
-					Thread.sleep(10L);
+					batch.add(data);
+					batchSize += data.length;
 
-				} catch (IOException ignore1) {
-				} catch (InterruptedException ignore2) {
-				} catch (Throwable t) {
-					logger.warn("", t);
+				} else {
+
+					final DatagramPacket packet = AbstractMessage.forSending(getUuid(), recipient, message);
+					if (packet != null) {
+
+						pending.add(new Datagram(packet.getData(), target));
+					}
 				}
+
+				sent++;
 			}
+
+			if (!batch.isEmpty()) {
+
+				pending.add(new Datagram(sessionCipher.seal(recipient, AbstractMessage.pack(batch)), target));
+			}
+		}
+
+		private void flush() throws IOException {
+
+			while (!pending.isEmpty()) {
+
+				final Datagram datagram = pending.peek();
+
+				try {
+
+					// socket buffer is full, try again when the channel is writable
+					if (channel.send(datagram.data, datagram.target) == 0) {
+						return;
+					}
+
+				} catch (ClosedChannelException cex) {
+
+					throw cex;
+
+				} catch (IOException | UnresolvedAddressException ex) {
+
+					logger.debug("Unable to send packet to {}: {}", datagram.target, ex.getMessage());
+				}
+
+				pending.poll();
+			}
+		}
+	}
+
+	private static class Datagram {
+
+		private ByteBuffer data      = null;
+		private SocketAddress target = null;
+
+		public Datagram(final byte[] data, final SocketAddress target) {
+
+			this.data   = ByteBuffer.wrap(data);
+			this.target = target;
 		}
 	}
 
@@ -151,36 +151,8 @@ public abstract class AbstractMessage {
 			} else {
 
 				final DataInputStream dis = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data), 1024));
-				//final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
-				final int command         = dis.readInt();
-				final String messageId    = deserializeUUID(dis);
-				final String peerId       = deserializeUUID(dis);
-				final long timestamp      = dis.readLong();
-				AbstractMessage msg       = null;
 
-				final Class<? extends AbstractMessage> type = CommandMap.get(command);
-				if (type != null) {
-
-					try {
-
-						msg = type.newInstance();
-
-						msg.setSenderTimestamp(timestamp);
-						msg.setId(messageId);
-
-						msg.deserialize(dis);
-
-						// create envelope
-						return new Envelope(new PeerInfo(peer.getPublicKey(), peerId, packet.getAddress().getHostAddress(), packet.getPort()), msg);
-
-					} catch (Throwable t) {
-						logger.warn("", t);
-					}
-
-				} else {
-
-					System.out.println("Unknown command " + command);
-				}
+				return readMessage(peer, dis, packet.getAddress().getHostAddress(), packet.getPort());
 			}
 
 		} else {
@@ -197,13 +169,7 @@ public abstract class AbstractMessage {
 		final GZIPOutputStream zos              = new GZIPOutputStream(finalBuffer, 1024);
 		final DataOutputStream dos              = new DataOutputStream(zos);
 
-		dos.writeInt(message.getCommand());		// Command
-		serializeUUID(dos, message.getId());		// UUID
-		serializeUUID(dos, peerId);			// peer UUID
-		dos.writeLong(message.getSenderTimestamp());	// timestamp
-
-		// let message do the rest
-		message.serialize(dos);
+		writeMessage(dos, peerId, message);
 
 		// flush and close
 		dos.flush();
@@ -230,6 +196,70 @@ public abstract class AbstractMessage {
 		return null;
 	}
 
+	/**
+	 * Serializes the given message including its header, without
+	 * compression or encryption.
+	 */
+	public static byte[] toBytes(final String peerId, final AbstractMessage message) throws IOException {
+
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final DataOutputStream dos      = new DataOutputStream(bos);
+
+		writeMessage(dos, peerId, message);
+
+		dos.flush();
+
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Combines the given serialized messages into a single compressed
+	 * payload that is sent as one datagram.
+	 */
+	public static byte[] pack(final List<byte[]> messages) throws IOException {
+
+		final ByteArrayOutputStream finalBuffer = new ByteArrayOutputStream();
+		final DataOutputStream dos              = new DataOutputStream(new GZIPOutputStream(finalBuffer, 1024));
+
+		dos.writeShort(messages.size());
+
+		for (final byte[] message : messages) {
+
+			dos.writeInt(message.length);
+			dos.write(message);
+		}
+
+		dos.flush();
+		dos.close();
+
+		return finalBuffer.toByteArray();
+	}
+
+	/**
+	 * Extracts the messages of a payload that was created by {@link #pack}.
+	 * Messages that cannot be deserialized are skipped.
+	 */
+	public static List<Envelope> unpack(final Peer peer, final byte[] data, final String address, final int port) throws IOException {
+
+		final DataInputStream dis   = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(data), 1024));
+		final List<Envelope> result = new LinkedList<>();
+		final int count             = dis.readUnsignedShort();
+
+		for (int i=0; i<count; i++) {
+
+			final byte[] message = new byte[dis.readInt()];
+			dis.readFully(message);
+
+			final Envelope envelope = readMessage(peer, new DataInputStream(new ByteArrayInputStream(message)), address, port);
+			if (envelope != null) {
+
+				result.add(envelope);
+			}
+		}
+
+		return result;
+	}
+
 	// ----- protected methods -----
 	protected void serializeObject(final DataOutputStream dos, final Object value) throws IOException {
 
@@ -355,6 +385,52 @@ public abstract class AbstractMessage {
 		return list;
 	}
 
+	private static void writeMessage(final DataOutputStream dos, final String peerId, final AbstractMessage message) throws IOException {
+
+		dos.writeInt(message.getCommand());		// Command
+		serializeUUID(dos, message.getId());		// UUID
+		serializeUUID(dos, peerId);			// peer UUID
+		dos.writeLong(message.getSenderTimestamp());	// timestamp
+
+		// let message do the rest
+		message.serialize(dos);
+	}
+
+	private static Envelope readMessage(final Peer peer, final DataInputStream dis, final String address, final int port) throws IOException {
+
+		final int command         = dis.readInt();
+		final String messageId    = deserializeUUID(dis);
+		final String peerId       = deserializeUUID(dis);
+		final long timestamp      = dis.readLong();
+		AbstractMessage msg       = null;
+
+		final Class<? extends AbstractMessage> type = CommandMap.get(command);
+		if (type != null) {
+
+			try {
+
+				msg = type.newInstance();
+
+				msg.setSenderTimestamp(timestamp);
+				msg.setId(messageId);
+
+				msg.deserialize(dis);
+
+				// create envelope
+				return new Envelope(new PeerInfo(peer.getPublicKey(), peerId, address, port), msg);
+
+			} catch (Throwable t) {
+				logger.warn("", t);
+			}
+
+		} else {
+
+			System.out.println("Unknown command " + command);
+		}
+
+		return null;
+	}
+
 	private static Cipher getCipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
 		return Cipher.getInstance("RSA/ECB/PKCS1Padding");
 	}
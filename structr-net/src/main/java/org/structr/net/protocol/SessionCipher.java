@@ -0,0 +1,472 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.net.protocol;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.Signature;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.net.peer.PeerInfo;
+
+/**
+ * Hybrid packet encryption for peer-to-peer traffic. Each peer creates a
+ * random AES session key and transfers it once, RSA-encrypted and signed,
+ * in the header of its packets. As soon as the recipient acknowledges the
+ * key (by sending the key id back in its own packets), the sender omits
+ * the key header and packets are only AES-GCM encrypted.
+ *
+ * Packet layout: type, sender id, key id, acknowledged key id, [wrapped key,
+ * signature], nonce, ciphertext. Everything before the nonce is authenticated
+ * as additional data.
+ *
+ * Replayed packets are dropped. The nonce contains a packet counter, and the
+ * recipient keeps a sliding window of the counters it has seen for the current
+ * key of each peer, so that packets may arrive out of order. Packets with a
+ * key that was replaced by a newer key of the same peer are dropped as well.
+ */
+public class SessionCipher {
+
+	private static final Logger logger = LoggerFactory.getLogger(SessionCipher.class.getName());
+
+	public static final int TYPE_KEYED   = 1;
+	public static final int TYPE_SESSION = 2;
+
+	private static final String KEY_WRAP_ALGORITHM  = "RSA/ECB/OAEPWithSHA-256AndMGF1Padding";
+	private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+	private static final String CIPHER_ALGORITHM    = "AES/GCM/NoPadding";
+	private static final int NONCE_LENGTH           = 12;
+	private static final int TAG_LENGTH             = 128;
+	private static final int REPLAY_WINDOW_SIZE     = 64;
+	private static final int MAX_RETIRED_KEYS       = 16;
+
+	private final Map<String, RemoteKey> remoteKeys       = new ConcurrentHashMap<>();
+	private final Map<String, ReplayWindow> replayWindows = new ConcurrentHashMap<>();
+	private final Set<String> acknowledged                = ConcurrentHashMap.newKeySet();
+	private final SecureRandom random               = new SecureRandom();
+	private final PrivateKey privateKey;
+	private final PublicKey publicKey;
+	private final String localId;
+	private final SecretKey sessionKey;
+	private final long keyId;
+	private final int noncePrefix;
+	private byte[] keyHeader                        = null;
+	private long counter                            = 0L;
+
+	public SessionCipher(final String localId, final PrivateKey privateKey, final PublicKey publicKey) throws GeneralSecurityException {
+
+		final KeyGenerator generator = KeyGenerator.getInstance("AES");
+		generator.init(256, random);
+
+		this.localId     = localId;
+		this.privateKey  = privateKey;
+		this.publicKey   = publicKey;
+		this.sessionKey  = generator.generateKey();
+		this.noncePrefix = random.nextInt();
+
+		long id = 0L;
+		while (id == 0L) {
+			id = random.nextLong();
+		}
+
+		this.keyId = id;
+	}
+
+	/**
+	 * Encrypts the given payload for the given recipient. The session key
+	 * is included until the recipient has acknowledged it.
+	 */
+	public synchronized byte[] seal(final PeerInfo recipient, final byte[] payload) throws IOException, GeneralSecurityException {
+
+		final String recipientId        = recipient.getUuid();
+		final boolean keyed             = !acknowledged.contains(recipientId);
+		final RemoteKey remoteKey       = remoteKeys.get(recipientId);
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream(payload.length + 600);
+		final DataOutputStream dos      = new DataOutputStream(bos);
+
+		dos.writeByte(keyed ? TYPE_KEYED : TYPE_SESSION);
+		AbstractMessage.serializeUUID(dos, localId);
+		dos.writeLong(keyId);
+		dos.writeLong(remoteKey != null ? remoteKey.id : 0L);
+
+		if (keyed) {
+			dos.write(getKeyHeader());
+		}
+
+		dos.flush();
+
+		final byte[] aad    = bos.toByteArray();
+		final byte[] nonce  = nextNonce();
+		final Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+
+		cipher.init(Cipher.ENCRYPT_MODE, sessionKey, new GCMParameterSpec(TAG_LENGTH, nonce));
+		cipher.updateAAD(aad);
+
+		dos.write(nonce);
+		dos.write(cipher.doFinal(payload));
+		dos.flush();
+
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Decrypts the given packet and returns the payload, or null if the
+	 * packet could not be authenticated.
+	 */
+	public byte[] open(final byte[] packet, final int length) {
+
+		try {
+
+			final DataInputStream dis = new DataInputStream(new ByteArrayInputStream(packet, 0, length));
+			final int type            = dis.readUnsignedByte();
+			final String senderId     = AbstractMessage.deserializeUUID(dis);
+			final long senderKeyId    = dis.readLong();
+			final long ackKeyId       = dis.readLong();
+			RemoteKey remoteKey       = remoteKeys.get(senderId);
+
+			if (isRetired(senderId, senderKeyId)) {
+
+				logger.debug("Session key {} of peer {} was replaced, dropping packet.", senderKeyId, senderId);
+				return null;
+			}
+
+			switch (type) {
+
+				case TYPE_KEYED:
+
+					final byte[] wrapped   = readBlock(dis);
+					final byte[] signature = readBlock(dis);
+
+					// RSA operations are only necessary for unknown keys
+					if (remoteKey == null || remoteKey.id != senderKeyId) {
+
+						remoteKey = unwrap(senderId, senderKeyId, wrapped, signature);
+						if (remoteKey == null) {
+
+							return null;
+						}
+
+						remoteKeys.put(senderId, remoteKey);
+					}
+					break;
+
+				case TYPE_SESSION:
+
+					if (remoteKey == null || remoteKey.id != senderKeyId) {
+
+						logger.debug("Unknown session key {} of peer {}, dropping packet.", senderKeyId, senderId);
+						return null;
+					}
+					break;
+
+				default:
+					logger.debug("Unknown packet type {}, dropping packet.", type);
+					return null;
+			}
+
+			final int headerLength = length - dis.available();
+			final byte[] nonce     = new byte[NONCE_LENGTH];
+
+			dis.readFully(nonce);
+
+			final Cipher cipher = Cipher.getInstance(CIPHER_ALGORITHM);
+
+			cipher.init(Cipher.DECRYPT_MODE, remoteKey.key, new GCMParameterSpec(TAG_LENGTH, nonce));
+			cipher.updateAAD(packet, 0, headerLength);
+
+			final byte[] payload = cipher.doFinal(packet, headerLength + NONCE_LENGTH, length - headerLength - NONCE_LENGTH);
+
+			// only authenticated packets may advance the replay window
+			if (!acceptCounter(senderId, senderKeyId, getCounter(nonce))) {
+
+				logger.debug("Replayed packet from peer {}, dropping packet.", senderId);
+				return null;
+			}
+
+			// the sender knows our current key, we can omit the key header from now on
+			if (!localId.equals(senderId)) {
+
+				if (ackKeyId == keyId) {
+
+					acknowledged.add(senderId);
+
+				} else {
+
+					acknowledged.remove(senderId);
+				}
+			}
+
+			return payload;
+
+		} catch (IOException | GeneralSecurityException ex) {
+
+			logger.debug("Unable to decrypt packet: {}", ex.getMessage());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Forgets the session key of the given peer, so that the next packets
+	 * will contain the key header again. The replay window of the peer is
+	 * kept, so that earlier packets are still rejected.
+	 */
+	public void remove(final String peerId) {
+
+		remoteKeys.remove(peerId);
+		acknowledged.remove(peerId);
+	}
+
+	/**
+	 * Returns the number of replaced session keys of the given peer whose
+	 * packets are rejected.
+	 */
+	int getRetiredKeyCount(final String peerId) {
+
+		final ReplayWindow window = replayWindows.get(peerId);
+
+		return window != null ? window.retiredKeyIds.size() : 0;
+	}
+
+	// ----- private methods -----
+	private byte[] getKeyHeader() throws IOException, GeneralSecurityException {
+
+		if (keyHeader == null) {
+
+			final Cipher cipher = Cipher.getInstance(KEY_WRAP_ALGORITHM);
+			cipher.init(Cipher.WRAP_MODE, publicKey);
+
+			final byte[] wrapped            = cipher.wrap(sessionKey);
+			final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+			final DataOutputStream dos      = new DataOutputStream(bos);
+
+			writeBlock(dos, wrapped);
+			writeBlock(dos, sign(localId, keyId, wrapped));
+
+			dos.flush();
+
+			keyHeader = bos.toByteArray();
+		}
+
+		return keyHeader;
+	}
+
+	private RemoteKey unwrap(final String senderId, final long senderKeyId, final byte[] wrapped, final byte[] signature) throws IOException, GeneralSecurityException {
+
+		final Signature verifier = Signature.getInstance(SIGNATURE_ALGORITHM);
+
+		verifier.initVerify(publicKey);
+		verifier.update(signedData(senderId, senderKeyId, wrapped));
+
+		if (!verifier.verify(signature)) {
+
+			logger.warn("Invalid session key signature from peer {}, dropping packet.", senderId);
+			return null;
+		}
+
+		final Cipher cipher = Cipher.getInstance(KEY_WRAP_ALGORITHM);
+		cipher.init(Cipher.UNWRAP_MODE, privateKey);
+
+		final SecretKey key = (SecretKey)cipher.unwrap(wrapped, "AES", Cipher.SECRET_KEY);
+
+		return new RemoteKey(senderKeyId, new SecretKeySpec(key.getEncoded(), "AES"));
+	}
+
+	private byte[] sign(final String senderId, final long senderKeyId, final byte[] wrapped) throws IOException, GeneralSecurityException {
+
+		final Signature signer = Signature.getInstance(SIGNATURE_ALGORITHM);
+
+		signer.initSign(privateKey);
+		signer.update(signedData(senderId, senderKeyId, wrapped));
+
+		return signer.sign();
+	}
+
+	private byte[] signedData(final String senderId, final long senderKeyId, final byte[] wrapped) throws IOException {
+
+		final ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		final DataOutputStream dos      = new DataOutputStream(bos);
+
+		AbstractMessage.serializeUUID(dos, senderId);
+		dos.writeLong(senderKeyId);
+		dos.write(wrapped);
+		dos.flush();
+
+		return bos.toByteArray();
+	}
+
+	/**
+	 * Records the given packet counter for the given key of the given peer.
+	 * Returns false if the counter was already seen or is too old to tell.
+	 */
+	private boolean acceptCounter(final String senderId, final long senderKeyId, final long counter) {
+
+		final ReplayWindow window = replayWindows.compute(senderId, (id, existing) -> {
+
+			if (existing == null || existing.keyId != senderKeyId) {
+
+				// the peer has a new key, packets with the old one must not be accepted anymore
+				return new ReplayWindow(senderKeyId, existing);
+			}
+
+			return existing;
+		});
+
+		return window.accept(counter);
+	}
+
+	private boolean isRetired(final String senderId, final long senderKeyId) {
+
+		final ReplayWindow window = replayWindows.get(senderId);
+
+		return window != null && window.retiredKeyIds.contains(senderKeyId);
+	}
+
+	private long getCounter(final byte[] nonce) {
+
+		long value = 0L;
+
+		for (int i=0; i<8; i++) {
+			value = (value << 8) | (nonce[4 + i] & 0xff);
+		}
+
+		return value;
+	}
+
+	private byte[] nextNonce() {
+
+		final long value   = counter++;
+		final byte[] nonce = new byte[NONCE_LENGTH];
+
+		// nonce = random prefix + packet counter, never repeats for a given key
+		for (int i=0; i<4; i++) {
+			nonce[i] = (byte)(noncePrefix >>> (24 - i * 8));
+		}
+
+		for (int i=0; i<8; i++) {
+			nonce[4 + i] = (byte)(value >>> (56 - i * 8));
+		}
+
+		return nonce;
+	}
+
+	private void writeBlock(final DataOutputStream dos, final byte[] data) throws IOException {
+
+		dos.writeShort(data.length);
+		dos.write(data);
+	}
+
+	private byte[] readBlock(final DataInputStream dis) throws IOException {
+
+		final byte[] data = new byte[dis.readUnsignedShort()];
+
+		dis.readFully(data);
+
+		return data;
+	}
+
+	// ----- nested classes -----
+	private static class RemoteKey {
+
+		private final SecretKey key;
+		private final long id;
+
+		public RemoteKey(final long id, final SecretKey key) {
+
+			this.id  = id;
+			this.key = key;
+		}
+	}
+
+	private static class ReplayWindow {
+
+		private final LinkedList<Long> retiredKeyIds = new LinkedList<>();
+		private final long keyId;
+		private long highest                         = -1L;
+		private long seen                            = 0L;
+
+		/**
+		 * Creates the window for a new key of a peer. The keys of the
+		 * previous windows are retired, only the most recent ones are
+		 * kept so the list does not grow with every restart of the peer.
+		 */
+		public ReplayWindow(final long keyId, final ReplayWindow previous) {
+
+			this.keyId = keyId;
+
+			if (previous != null) {
+
+				retiredKeyIds.add(previous.keyId);
+				retiredKeyIds.addAll(previous.retiredKeyIds);
+
+				while (retiredKeyIds.size() > MAX_RETIRED_KEYS) {
+					retiredKeyIds.removeLast();
+				}
+			}
+		}
+
+		/**
+		 * Bit n of seen is set if the counter highest - n was accepted.
+		 */
+		public synchronized boolean accept(final long counter) {
+
+			if (counter > highest) {
+
+				final long shift = counter - highest;
+
+				seen    = shift >= REPLAY_WINDOW_SIZE ? 1L : (seen << shift) | 1L;
+				highest = counter;
+
+				return true;
+			}
+
+			final long offset = highest - counter;
+			if (offset >= REPLAY_WINDOW_SIZE) {
+
+				return false;
+			}
+
+			final long mask = 1L << offset;
+			if ((seen & mask) != 0L) {
+
+				return false;
+			}
+
+			seen |= mask;
+
+			return true;
+		}
+	}
+}
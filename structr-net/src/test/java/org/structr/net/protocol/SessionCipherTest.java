@@ -0,0 +1,212 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.net.protocol;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import org.structr.net.peer.PeerInfo;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SessionCipherTest {
+
+	private KeyPair keyPair       = null;
+	private String idA            = null;
+	private String idB            = null;
+	private PeerInfo peerA        = null;
+	private PeerInfo peerB        = null;
+	private SessionCipher cipherA = null;
+	private SessionCipher cipherB = null;
+
+	@BeforeMethod
+	public void setup() throws Exception {
+
+		final KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+
+		keyPair = generator.generateKeyPair();
+		idA     = newId();
+		idB     = newId();
+		peerA   = new PeerInfo(keyPair.getPublic(), idA, "127.0.0.1", 57555);
+		peerB   = new PeerInfo(keyPair.getPublic(), idB, "127.0.0.1", 57556);
+		cipherA = new SessionCipher(idA, keyPair.getPrivate(), keyPair.getPublic());
+		cipherB = new SessionCipher(idB, keyPair.getPrivate(), keyPair.getPublic());
+	}
+
+	@Test
+	public void testRoundTrip() throws Exception {
+
+		final byte[] first = cipherA.seal(peerB, bytes("first"));
+
+		assertEquals("First packet should contain the session key", SessionCipher.TYPE_KEYED, first[0]);
+		assertEquals("first", string(cipherB.open(first, first.length)));
+
+		// acknowledge the key of A
+		final byte[] reply = cipherB.seal(peerA, bytes("reply"));
+
+		assertEquals("reply", string(cipherA.open(reply, reply.length)));
+
+		final byte[] second = cipherA.seal(peerB, bytes("second"));
+
+		assertEquals("Acknowledged key should not be sent again", SessionCipher.TYPE_SESSION, second[0]);
+		assertEquals("second", string(cipherB.open(second, second.length)));
+	}
+
+	@Test
+	public void testTamperedPacketsAreRejected() throws Exception {
+
+		final byte[] packet = cipherA.seal(peerB, bytes("payload"));
+
+		// ciphertext
+		final byte[] ciphertext = Arrays.copyOf(packet, packet.length);
+		ciphertext[packet.length - 1] ^= 0x01;
+
+		assertNull("Modified ciphertext should be rejected", cipherB.open(ciphertext, ciphertext.length));
+
+		// acknowledged key id in the authenticated header
+		final byte[] header = Arrays.copyOf(packet, packet.length);
+		header[1 + 16 + 8] ^= 0x01;
+
+		assertNull("Modified header should be rejected", cipherB.open(header, header.length));
+
+		// truncated packet
+		assertNull("Truncated packet should be rejected", cipherB.open(packet, packet.length - 1));
+
+		// rejected packets must not affect the replay window
+		assertEquals("payload", string(cipherB.open(packet, packet.length)));
+	}
+
+	@Test
+	public void testReplayedPacketsAreRejected() throws Exception {
+
+		final byte[] first  = cipherA.seal(peerB, bytes("first"));
+		final byte[] second = cipherA.seal(peerB, bytes("second"));
+
+		assertEquals("first", string(cipherB.open(first, first.length)));
+		assertNull("Replayed packet should be rejected", cipherB.open(first, first.length));
+
+		assertEquals("second", string(cipherB.open(second, second.length)));
+		assertNull("Replayed packet should be rejected", cipherB.open(second, second.length));
+
+		// forgetting the key of a peer must not reset its replay window
+		cipherB.remove(idA);
+
+		assertNull("Replayed packet should be rejected after the key was removed", cipherB.open(first, first.length));
+	}
+
+	@Test
+	public void testReorderedPacketsAreAccepted() throws Exception {
+
+		final List<byte[]> packets = new ArrayList<>();
+
+		for (int i=0; i<100; i++) {
+			packets.add(cipherA.seal(peerB, bytes("packet" + i)));
+		}
+
+		final byte[] last = packets.get(99);
+
+		assertEquals("packet99", string(cipherB.open(last, last.length)));
+
+		// packets within the replay window may arrive late, but only once
+		final byte[] late = packets.get(50);
+
+		assertEquals("packet50", string(cipherB.open(late, late.length)));
+		assertNull("Replayed packet should be rejected", cipherB.open(late, late.length));
+
+		// packets older than the replay window are rejected
+		final byte[] old = packets.get(10);
+
+		assertNull("Packet older than the replay window should be rejected", cipherB.open(old, old.length));
+	}
+
+	@Test
+	public void testPacketsWithReplacedKeyAreRejected() throws Exception {
+
+		final byte[] oldFirst  = cipherA.seal(peerB, bytes("old1"));
+		final byte[] oldSecond = cipherA.seal(peerB, bytes("old2"));
+
+		assertEquals("old1", string(cipherB.open(oldFirst, oldFirst.length)));
+
+		// peer A restarts with a new session key
+		final SessionCipher restartedA = new SessionCipher(idA, keyPair.getPrivate(), keyPair.getPublic());
+		final byte[] newPacket         = restartedA.seal(peerB, bytes("new"));
+
+		assertNotNull(cipherB.open(newPacket, newPacket.length));
+
+		// a captured packet of the old session must not replace the new key
+		assertNull("Packet with a replaced key should be rejected", cipherB.open(oldSecond, oldSecond.length));
+
+		final byte[] nextPacket = restartedA.seal(peerB, bytes("next"));
+
+		assertTrue(Arrays.equals(bytes("next"), cipherB.open(nextPacket, nextPacket.length)));
+	}
+
+	@Test
+	public void testRetiredKeysAreBounded() throws Exception {
+
+		final List<byte[]> oldPackets = new ArrayList<>();
+
+		// peer A restarts more often than retired keys are kept
+		for (int i=0; i<20; i++) {
+
+			final SessionCipher restartedA = new SessionCipher(idA, keyPair.getPrivate(), keyPair.getPublic());
+			final byte[] first             = restartedA.seal(peerB, bytes("first" + i));
+			final byte[] second            = restartedA.seal(peerB, bytes("second" + i));
+
+			assertEquals("first" + i, string(cipherB.open(first, first.length)));
+
+			oldPackets.add(second);
+		}
+
+		assertEquals("Only the most recent retired keys should be kept", 16, cipherB.getRetiredKeyCount(idA));
+
+		// packets of the most recently replaced keys are still rejected
+		for (final byte[] packet : oldPackets.subList(3, 19)) {
+
+			assertNull("Packet with a replaced key should be rejected", cipherB.open(packet, packet.length));
+		}
+
+		final byte[] current = oldPackets.get(19);
+
+		assertEquals("second19", string(cipherB.open(current, current.length)));
+		assertEquals(0, cipherB.getRetiredKeyCount(idB));
+	}
+
+	// ----- private methods -----
+	private String newId() {
+		return UUID.randomUUID().toString().replaceAll("\\-", "");
+	}
+
+	private byte[] bytes(final String value) {
+		return value.getBytes(StandardCharsets.UTF_8);
+	}
+
+	private String string(final byte[] value) {
+		return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+	}
+}
@@ -45,8 +45,8 @@ import org.structr.core.entity.AbstractNode;
 import org.structr.core.entity.Principal;
 import org.structr.core.entity.SuperUser;
 import org.structr.core.graph.NodeInterface;
-import org.structr.core.graph.NodeServiceCommand;
 import org.structr.core.graph.Tx;
+import org.structr.core.graph.UuidGenerator;
 import org.structr.core.property.PropertyKey;
 import org.structr.schema.action.Actions;
 
@@ -203,8 +203,19 @@ public class AuthHelper {
 
 	public static Principal getPrincipalForSessionId(final String sessionId, final boolean isPing) {
 
-		return getPrincipalForCredential(StructrApp.key(Principal.class, "sessionIds"), new String[]{ sessionId }, isPing);
+		final Principal cached = AuthenticatedSessionCache.getPrincipal(sessionId);
+		if (cached != null) {
 
+			return cached;
+		}
+
+		final Principal principal = getPrincipalForCredential(StructrApp.key(Principal.class, "sessionIds"), new String[]{ sessionId }, isPing);
+		if (principal != null) {
+
+			AuthenticatedSessionCache.putPrincipal(sessionId, principal);
+		}
+
+		return principal;
 	}
 
 	public static Principal getPrincipalForAccessToken(String token, PropertyKey<String> eMailKey) throws FrameworkException {
@@ -381,7 +392,7 @@ public class AuthHelper {
 
 		if (refreshTokenExpirationDate != null) {
 
-			final String newTokenUUID = NodeServiceCommand.getNextUuid();
+			final String newTokenUUID = UuidGenerator.randomUuid();
 			StringBuilder tokenStringBuilder = new StringBuilder();
 			tokenStringBuilder.append(newTokenUUID).append("_").append(refreshTokenExpirationDate.getTime());
 
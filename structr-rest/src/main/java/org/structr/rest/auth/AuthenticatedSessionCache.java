@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.rest.auth;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.commons.lang3.ArrayUtils;
+import org.eclipse.jetty.server.session.SessionData;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.Services;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.property.PropertyKey;
+
+/**
+ * Near cache for authenticated sessions that maps session IDs to the UUID
+ * of the principal and to the session data, so that resolving the user of
+ * a session does not need a query on every request.
+ *
+ * Entries expire after the session timeout. A cached principal is only
+ * returned if the session ID is still present in its sessionIds property,
+ * so sessions that were removed by logout, password change or on another
+ * cluster instance are never served from the cache. Must be called in a
+ * transaction.
+ */
+public class AuthenticatedSessionCache {
+
+	private static final Map<String, CacheEntry<String>> principals       = new ConcurrentHashMap<>();
+	private static final Map<String, CacheEntry<SessionData>> sessionData = new ConcurrentHashMap<>();
+
+	public static Principal getPrincipal(final String sessionId) {
+
+		final CacheEntry<String> entry = get(principals, sessionId);
+		if (entry != null) {
+
+			try {
+
+				final NodeInterface node = StructrApp.getInstance().getNodeById(Principal.class, entry.value);
+				if (node instanceof Principal && hasSessionId((Principal)node, sessionId)) {
+
+					return (Principal)node;
+				}
+
+			} catch (FrameworkException ignore) {}
+
+			invalidate(sessionId);
+		}
+
+		return null;
+	}
+
+	public static void putPrincipal(final String sessionId, final Principal principal) {
+		principals.put(sessionId, new CacheEntry<>(principal.getUuid()));
+	}
+
+	/**
+	 * Returns a copy of the cached session data for the given session ID if
+	 * the session has not expired and is still owned by a principal.
+	 */
+	public static SessionData getSessionData(final String sessionId) {
+
+		final CacheEntry<SessionData> entry = get(sessionData, sessionId);
+		if (entry != null) {
+
+			if (!entry.value.isExpiredAt(System.currentTimeMillis()) && getPrincipal(sessionId) != null) {
+				return copy(entry.value);
+			}
+
+			invalidate(sessionId);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Stores a copy of the given session data, so that later modifications
+	 * of the session are not visible to other requests before they are stored.
+	 */
+	public static void putSessionData(final String sessionId, final SessionData data) {
+		sessionData.put(sessionId, new CacheEntry<>(copy(data)));
+	}
+
+	public static void invalidate(final String sessionId) {
+
+		if (sessionId != null) {
+
+			principals.remove(sessionId);
+			sessionData.remove(sessionId);
+		}
+	}
+
+	public static void invalidateAll() {
+
+		principals.clear();
+		sessionData.clear();
+	}
+
+	public static void removeExpired() {
+
+		final long now = System.currentTimeMillis();
+
+		principals.values().removeIf(entry -> entry.isExpired(now));
+		sessionData.values().removeIf(entry -> entry.isExpired(now));
+	}
+
+	// ----- private static methods -----
+	private static <T> CacheEntry<T> get(final Map<String, CacheEntry<T>> map, final String sessionId) {
+
+		if (sessionId == null) {
+			return null;
+		}
+
+		final CacheEntry<T> entry = map.get(sessionId);
+		if (entry != null) {
+
+			final long now = System.currentTimeMillis();
+
+			if (entry.isExpired(now)) {
+
+				map.remove(sessionId);
+				return null;
+			}
+
+			entry.touch(now);
+		}
+
+		return entry;
+	}
+
+	private static SessionData copy(final SessionData data) {
+
+		final SessionData copy = new SessionData(data.getId(), data.getContextPath(), data.getVhost(), data.getCreated(), data.getAccessed(), data.getLastAccessed(), data.getMaxInactiveMs());
+
+		copy.putAllAttributes(data.getAllAttributes());
+		copy.setExpiry(data.getExpiry());
+		copy.setCookieSet(data.getCookieSet());
+		copy.setLastNode(data.getLastNode());
+		copy.setLastSaved(data.getLastSaved());
+		copy.setDirty(false);
+
+		return copy;
+	}
+
+	private static boolean hasSessionId(final Principal principal, final String sessionId) {
+
+		final PropertyKey<String[]> key = StructrApp.key(Principal.class, "sessionIds");
+
+		return ArrayUtils.contains(principal.getProperty(key), sessionId);
+	}
+
+	// ----- nested classes -----
+	private static class CacheEntry<T> {
+
+		private final T value;
+		private volatile long expires = 0L;
+
+		CacheEntry(final T value) {
+
+			this.value = value;
+
+			touch(System.currentTimeMillis());
+		}
+
+		void touch(final long now) {
+			this.expires = now + Services.getGlobalSessionTimeout() * 1000L;
+		}
+
+		boolean isExpired(final long now) {
+			return now > expires;
+		}
+	}
+}
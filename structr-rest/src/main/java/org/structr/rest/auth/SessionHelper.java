@@ -120,6 +120,8 @@ public class SessionHelper {
 			return;
 		}
 
+		AuthenticatedSessionCache.invalidate(sessionId);
+
 		final App app                            = StructrApp.getInstance();
 		final PropertyKey<String[]> sessionIdKey = StructrApp.key(Principal.class, "sessionIds");
 		final Query<Principal> query             = app.nodeQuery(Principal.class).and(sessionIdKey, new String[]{sessionId}).disableSorting();
@@ -77,6 +77,8 @@ import org.eclipse.jetty.util.resource.JarResource;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceCollection;
 import org.eclipse.jetty.util.ssl.SslContextFactory;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.config.Settings;
@@ -245,7 +247,7 @@ public class HttpService implements RunnableService, StatsCallback {
 			baseDir.mkdirs();
 		}
 
-		server = new Server(httpPort);
+		server = new Server(createThreadPool());
 		final ContextHandlerCollection contexts = new ContextHandlerCollection();
 
 		contexts.addHandler(new DefaultHandler());
@@ -334,6 +336,9 @@ public class HttpService implements RunnableService, StatsCallback {
 
 		final StructrSessionDataStore sessionDataStore = new StructrSessionDataStore();
 
+		// write the last access time of unchanged sessions only once per save period
+		sessionDataStore.setSavePeriodSec(Math.max(0, Math.min(Settings.SessionSavePeriod.getValue(), Settings.SessionTimeout.getValue() / 2)));
+
 		sessionCache.setSessionDataStore(sessionDataStore);
 		sessionCache.setSaveOnInactiveEviction(false);
 		sessionCache.setRemoveUnloadableSessions(true);
@@ -799,6 +804,30 @@ public class HttpService implements RunnableService, StatsCallback {
 		return sessionCache;
 	}
 
+	public ThreadPool getThreadPool() {
+		return server != null ? server.getThreadPool() : null;
+	}
+
+	/**
+	 * Creates the request thread pool of the HTTP server from the current
+	 * settings. The maximum is at least one thread, and the minimum is
+	 * limited to the maximum.
+	 */
+	public static QueuedThreadPool createThreadPool() {
+
+		final int maxThreads  = Math.max(1, Settings.HttpMaxThreads.getValue());
+		final int minThreads  = Math.min(maxThreads, Math.max(1, Settings.HttpMinThreads.getValue()));
+		final int idleTimeout = Settings.HttpThreadIdleTimeout.getValue();
+
+		final QueuedThreadPool threadPool = new QueuedThreadPool(maxThreads, minThreads, idleTimeout);
+
+		threadPool.setName("HttpService");
+
+		logger.info("Request thread pool size set to {}-{} threads", minThreads, maxThreads);
+
+		return threadPool;
+	}
+
 	// ----- private methods -----
 	private List<ContextHandler> collectResourceHandlers() throws ClassNotFoundException, InstantiationException, IllegalAccessException {
 
@@ -37,7 +37,8 @@ import org.structr.core.property.PropertyMap;
 import java.util.concurrent.ConcurrentHashMap;
 import org.structr.common.SecurityContext;
 import org.structr.core.entity.Principal;
-import org.structr.core.property.PropertyKey;
+import org.structr.rest.auth.AuthHelper;
+import org.structr.rest.auth.AuthenticatedSessionCache;
 
 /**
  */
@@ -58,9 +59,7 @@ public class StructrSessionDataStore extends AbstractSessionDataStore {
 
 		try (final Tx tx = app.tx()) {
 
-			final PropertyKey<String[]> key = StructrApp.key(Principal.class, "sessionIds");
-			final String[] value            = new String[] { id };
-			final Principal user            = StructrApp.getInstance().nodeQuery(Principal.class).and(key, value).disableSorting().getFirst();
+			final Principal user = AuthHelper.getPrincipalForSessionId(id);
 
 			if (user != null) {
 
@@ -74,6 +73,8 @@ public class StructrSessionDataStore extends AbstractSessionDataStore {
 					properties.put(SessionDataNode.vhost, data.getVhost());
 
 					node.setProperties(ctx, properties);
+
+					AuthenticatedSessionCache.putSessionData(id, data);
 				}
 
 				tx.success();
@@ -96,6 +97,8 @@ public class StructrSessionDataStore extends AbstractSessionDataStore {
 
 		assertInitialized();
 
+		AuthenticatedSessionCache.removeExpired();
+
 		for (Map.Entry<String,SessionData> entry : anonymousSessionCache.entrySet()) {
 
 			SessionData data = entry.getValue();
@@ -132,8 +135,9 @@ public class StructrSessionDataStore extends AbstractSessionDataStore {
 	@Override
 	public boolean exists(final String id) throws Exception {
 
-		if (anonymousSessionCache.containsKey(id)) {
-			return true;
+		final SessionData anonymousData = anonymousSessionCache.get(id);
+		if (anonymousData != null) {
+			return !anonymousData.isExpiredAt(System.currentTimeMillis());
 		}
 
 		assertInitialized();
@@ -142,11 +146,19 @@ public class StructrSessionDataStore extends AbstractSessionDataStore {
 
 		try (final Tx tx = app.tx()) {
 
+			// expired session data is not returned by the cache
+			if (AuthenticatedSessionCache.getSessionData(id) != null) {
+
+				tx.success();
+
+				return true;
+			}
+
 			final SessionDataNode node = app.nodeQuery(SessionDataNode.class).and(SessionDataNode.sessionId, id).getFirst();
 
 			tx.success();
 
-			return node != null;
+			return node != null && !isExpired(node);
 
 		} catch (FrameworkException ex) {
 
@@ -170,6 +182,14 @@ public class StructrSessionDataStore extends AbstractSessionDataStore {
 
 		try (final Tx tx = app.tx()) {
 
+			result = AuthenticatedSessionCache.getSessionData(id);
+			if (result != null) {
+
+				tx.success();
+
+				return result;
+			}
+
 			final SessionDataNode node = app.nodeQuery(SessionDataNode.class).and(SessionDataNode.sessionId, id).getFirst();
 			if (node != null) {
 
@@ -182,6 +202,11 @@ public class StructrSessionDataStore extends AbstractSessionDataStore {
 					node.getLastModifiedDate().getTime(),
 					-1
 				);
+
+				if (AuthHelper.getPrincipalForSessionId(id) != null) {
+
+					AuthenticatedSessionCache.putSessionData(id, result);
+				}
 			}
 
 			tx.success();
@@ -204,6 +229,8 @@ public class StructrSessionDataStore extends AbstractSessionDataStore {
 
 		assertInitialized();
 
+		AuthenticatedSessionCache.invalidate(id);
+
 		final App app = StructrApp.getInstance();
 
 		try (final Tx tx = app.tx()) {
@@ -228,6 +255,14 @@ public class StructrSessionDataStore extends AbstractSessionDataStore {
 
 
 	// ----- private methods -----
+	private boolean isExpired(final SessionDataNode node) {
+
+		final Date lastAccessed   = node.getProperty(SessionDataNode.lastAccessed);
+		final long sessionTimeout = Settings.SessionTimeout.getValue(1800) * 1000L;
+
+		return sessionTimeout > 0 && lastAccessed != null && (System.currentTimeMillis() - lastAccessed.getTime()) > sessionTimeout;
+	}
+
 	private void assertInitialized() {
 
 		if (!services.isShuttingDown() && !services.isShutdownDone()) {
@@ -0,0 +1,185 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.test.rest.test;
+
+import java.util.Date;
+import org.eclipse.jetty.server.session.SessionData;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.Principal;
+import org.structr.core.entity.SessionDataNode;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.rest.auth.AuthenticatedSessionCache;
+import org.structr.rest.service.StructrSessionDataStore;
+import org.structr.test.rest.common.StructrRestTestBase;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNotSame;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class AuthenticatedSessionCacheTest extends StructrRestTestBase {
+
+	@BeforeMethod
+	public void clearCache() {
+		AuthenticatedSessionCache.invalidateAll();
+	}
+
+	@Test
+	public void testPrincipalRequiresSessionId() {
+
+		try (final Tx tx = app.tx()) {
+
+			final Principal tester = app.create(Principal.class, "tester");
+
+			tester.addSessionId("session1");
+
+			AuthenticatedSessionCache.putPrincipal("session1", tester);
+
+			assertEquals("Cached principal should be returned", tester, AuthenticatedSessionCache.getPrincipal("session1"));
+
+			// logout on this or another instance
+			tester.removeSessionId("session1");
+
+			assertNull("Principal should not be returned after its session was removed", AuthenticatedSessionCache.getPrincipal("session1"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testSessionDataIsCopied() {
+
+		try (final Tx tx = app.tx()) {
+
+			final Principal tester = app.create(Principal.class, "tester");
+			final SessionData data = createSessionData("session1", 60000L);
+
+			tester.addSessionId("session1");
+
+			AuthenticatedSessionCache.putPrincipal("session1", tester);
+			AuthenticatedSessionCache.putSessionData("session1", data);
+
+			// modifications of the stored instance must not affect the cache
+			data.setAttribute("key", "modified");
+
+			final SessionData first = AuthenticatedSessionCache.getSessionData("session1");
+
+			assertNotNull("Cached session data should be returned", first);
+			assertNotSame("Cache should not return the stored instance", data, first);
+			assertEquals("value", first.getAttribute("key"));
+			assertEquals(data.getExpiry(), first.getExpiry());
+
+			// modifications of a returned instance must not affect the cache
+			first.setAttribute("key", "modified");
+
+			final SessionData second = AuthenticatedSessionCache.getSessionData("session1");
+
+			assertNotSame("Cache should return a new copy on each call", first, second);
+			assertEquals("value", second.getAttribute("key"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testExpiredSessionsDoNotExist() {
+
+		final StructrSessionDataStore store = new StructrSessionDataStore();
+
+		try (final Tx tx = app.tx()) {
+
+			final Principal tester = app.create(Principal.class, "tester");
+
+			tester.addSessionId("valid");
+			tester.addSessionId("expired");
+
+			AuthenticatedSessionCache.putPrincipal("valid", tester);
+			AuthenticatedSessionCache.putPrincipal("expired", tester);
+
+			AuthenticatedSessionCache.putSessionData("valid", createSessionData("valid", 60000L));
+			AuthenticatedSessionCache.putSessionData("expired", createSessionData("expired", -1000L));
+
+			app.create(SessionDataNode.class,
+				new NodeAttribute<>(SessionDataNode.sessionId,    "stored"),
+				new NodeAttribute<>(SessionDataNode.lastAccessed, new Date())
+			);
+
+			app.create(SessionDataNode.class,
+				new NodeAttribute<>(SessionDataNode.sessionId,    "storedExpired"),
+				new NodeAttribute<>(SessionDataNode.lastAccessed, new Date(0L))
+			);
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNotNull("Valid session data should be returned", AuthenticatedSessionCache.getSessionData("valid"));
+			assertNull("Expired session data should not be returned", AuthenticatedSessionCache.getSessionData("expired"));
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+			logger.warn("", fex);
+			fail("Unexpected exception.");
+		}
+
+		try {
+
+			assertTrue("Valid cached session should exist",    store.exists("valid"));
+			assertFalse("Expired cached session should not exist", store.exists("expired"));
+			assertTrue("Valid stored session should exist",    store.exists("stored"));
+			assertFalse("Expired stored session should not exist", store.exists("storedExpired"));
+			assertFalse("Unknown session should not exist",    store.exists("unknown"));
+
+		} catch (Exception ex) {
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+	}
+
+	// ----- private methods -----
+	private SessionData createSessionData(final String sessionId, final long expiresIn) {
+
+		final long now         = System.currentTimeMillis();
+		final SessionData data = new SessionData(sessionId, "/", "0.0.0.0", now, now, now, 60000L);
+
+		data.setAttribute("key", "value");
+		data.setExpiry(now + expiresIn);
+
+		return data;
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.test.rest.test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.structr.api.config.Settings;
+import org.structr.core.Services;
+import org.structr.rest.service.HttpService;
+import org.structr.test.rest.common.StructrRestTestBase;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the configuration of the request thread pool of the HTTP server.
+ */
+public class HttpThreadPoolTest extends StructrRestTestBase {
+
+	@AfterMethod
+	public void resetSettings() {
+
+		Settings.HttpMinThreads.setValue(Settings.HttpMinThreads.getDefaultValue());
+		Settings.HttpMaxThreads.setValue(Settings.HttpMaxThreads.getDefaultValue());
+		Settings.HttpThreadIdleTimeout.setValue(Settings.HttpThreadIdleTimeout.getDefaultValue());
+	}
+
+	@Test
+	public void testDefaultThreadPool() {
+
+		final ThreadPool threadPool = Services.getInstance().getService(HttpService.class, "default").getThreadPool();
+
+		assertTrue("HTTP server should use the configured request thread pool", threadPool instanceof QueuedThreadPool);
+
+		final QueuedThreadPool queuedThreadPool = (QueuedThreadPool)threadPool;
+
+		assertEquals("HttpService", queuedThreadPool.getName());
+		assertEquals(8,             queuedThreadPool.getMinThreads());
+		assertEquals(200,           queuedThreadPool.getMaxThreads());
+		assertEquals(60000,         queuedThreadPool.getIdleTimeout());
+	}
+
+	@Test
+	public void testConfiguredThreadPool() {
+
+		Settings.HttpMinThreads.setValue(2);
+		Settings.HttpMaxThreads.setValue(16);
+		Settings.HttpThreadIdleTimeout.setValue(5000);
+
+		final QueuedThreadPool threadPool = HttpService.createThreadPool();
+
+		assertEquals(2,    threadPool.getMinThreads());
+		assertEquals(16,   threadPool.getMaxThreads());
+		assertEquals(5000, threadPool.getIdleTimeout());
+	}
+
+	@Test
+	public void testThreadPoolLimits() {
+
+		// minimum is limited to the maximum
+		Settings.HttpMinThreads.setValue(50);
+		Settings.HttpMaxThreads.setValue(10);
+
+		QueuedThreadPool threadPool = HttpService.createThreadPool();
+
+		assertEquals(10, threadPool.getMinThreads());
+		assertEquals(10, threadPool.getMaxThreads());
+
+		// at least one thread
+		Settings.HttpMinThreads.setValue(0);
+		Settings.HttpMaxThreads.setValue(0);
+
+		threadPool = HttpService.createThreadPool();
+
+		assertEquals(1, threadPool.getMinThreads());
+		assertEquals(1, threadPool.getMaxThreads());
+	}
+
+	@Test
+	public void testMaxThreadsLimitsConcurrency() throws Exception {
+
+		Settings.HttpMinThreads.setValue(1);
+		Settings.HttpMaxThreads.setValue(3);
+
+		final QueuedThreadPool threadPool = HttpService.createThreadPool();
+		final CountDownLatch latch        = new CountDownLatch(12);
+		final AtomicInteger active        = new AtomicInteger();
+		final AtomicInteger peak          = new AtomicInteger();
+		final Set<String> threads         = ConcurrentHashMap.newKeySet();
+
+		threadPool.start();
+
+		try {
+
+			for (int i=0; i<12; i++) {
+
+				threadPool.execute(() -> {
+
+					peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+					threads.add(Thread.currentThread().getName());
+
+					try { Thread.sleep(50); } catch (InterruptedException iex) {}
+
+					active.decrementAndGet();
+					latch.countDown();
+				});
+			}
+
+			assertTrue("All tasks should be executed", latch.await(10, TimeUnit.SECONDS));
+
+		} finally {
+
+			threadPool.stop();
+		}
+
+		assertTrue("No more than the maximum number of threads should be used", peak.get() <= 3);
+		assertTrue(peak.get() > 1);
+		assertTrue(threads.size() <= 3);
+		assertTrue(threads.stream().allMatch(name -> name.startsWith("HttpService")));
+	}
+}
@@ -0,0 +1,353 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.agent;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.common.PropertyView;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.entity.Relation;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyKey;
+import org.structr.core.property.PropertyMap;
+import org.structr.web.common.DerivedImageCache;
+import org.structr.web.common.ImageHelper;
+import org.structr.web.common.ImageHelper.DecodedImage;
+import org.structr.web.common.ImageHelper.Thumbnail;
+import org.structr.web.common.ImageHelper.ThumbnailSize;
+import org.structr.web.entity.File;
+import org.structr.web.entity.Image;
+import org.structr.web.property.ThumbnailProperty;
+
+/**
+ * Creates thumbnails in a bounded pool of worker threads.
+ *
+ * Requests for the same image are combined, and every job creates all
+ * thumbnail sizes configured for the type of the image, so that each
+ * original is decoded only once. Thumbnails are taken from the
+ * {@link DerivedImageCache} if an image with the same content was
+ * processed before.
+ */
+public class ThumbnailGenerator {
+
+	private static final Logger logger                                  = LoggerFactory.getLogger(ThumbnailGenerator.class.getName());
+	private static final Map<Class, Set<ThumbnailSize>> configuredSizes = new ConcurrentHashMap<>();
+	private static final int QUEUE_SIZE                                 = 10000;
+	private static ThumbnailGenerator instance                          = null;
+
+	private final Map<String, Set<ThumbnailSize>> queued  = new HashMap<>();
+	private final Map<String, Set<ThumbnailSize>> running = new HashMap<>();
+	private ThreadPoolExecutor executor                   = null;
+
+	private ThumbnailGenerator() {
+
+		final int configured      = Settings.ThumbnailWorkers.getValue();
+		final int threads         = configured > 0 ? configured : Runtime.getRuntime().availableProcessors();
+		final AtomicInteger count = new AtomicInteger();
+
+		this.executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(QUEUE_SIZE), r -> {
+
+			final Thread thread = new Thread(r, "ThumbnailWorker" + count.incrementAndGet());
+			thread.setDaemon(true);
+
+			return thread;
+
+		}, (r, e) -> {
+
+			// queue is full, the thumbnail will be requested again on the next access
+			synchronized (queued) {
+				queued.remove(((Job)r).imageId);
+			}
+		});
+
+		this.executor.allowCoreThreadTimeOut(true);
+	}
+
+	public static synchronized ThumbnailGenerator getInstance() {
+
+		if (instance == null) {
+			instance = new ThumbnailGenerator();
+		}
+
+		return instance;
+	}
+
+	/**
+	 * Requests the creation of a thumbnail of the given size for the given
+	 * image, together with all other sizes configured for its type.
+	 */
+	public void request(final Image image, final int maxWidth, final int maxHeight, final boolean cropToFit) {
+		request(image.getUuid(), image.getClass(), maxWidth, maxHeight, cropToFit);
+	}
+
+	public void request(final String imageId, final Class<? extends Image> type, final int maxWidth, final int maxHeight, final boolean cropToFit) {
+
+		final Set<ThumbnailSize> sizes = new LinkedHashSet<>();
+
+		sizes.add(new ThumbnailSize(maxWidth, maxHeight, cropToFit));
+		sizes.addAll(getConfiguredSizes(type));
+
+		synchronized (queued) {
+
+			final Set<ThumbnailSize> inProgress = running.get(imageId);
+			if (inProgress != null) {
+
+				sizes.removeAll(inProgress);
+
+				if (sizes.isEmpty()) {
+					return;
+				}
+			}
+
+			final Set<ThumbnailSize> existing = queued.get(imageId);
+			if (existing != null) {
+
+				existing.addAll(sizes);
+
+			} else {
+
+				queued.put(imageId, sizes);
+				executor.execute(new Job(imageId));
+			}
+		}
+	}
+
+	public int getQueueSize() {
+		return executor.getQueue().size();
+	}
+
+	// ----- private methods -----
+	private void process(final String imageId) {
+
+		final Set<ThumbnailSize> sizes;
+
+		synchronized (queued) {
+
+			sizes = queued.remove(imageId);
+			if (sizes == null) {
+				return;
+			}
+
+			running.computeIfAbsent(imageId, k -> new LinkedHashSet<>()).addAll(sizes);
+		}
+
+		try {
+
+			createThumbnails(imageId, sizes);
+
+		} finally {
+
+			synchronized (queued) {
+
+				final Set<ThumbnailSize> inProgress = running.get(imageId);
+				if (inProgress != null) {
+
+					inProgress.removeAll(sizes);
+
+					if (inProgress.isEmpty()) {
+						running.remove(imageId);
+					}
+				}
+			}
+		}
+	}
+
+	private void createThumbnails(final String imageId, final Collection<ThumbnailSize> sizes) {
+
+		final SecurityContext securityContext = SecurityContext.getSuperUserInstance();
+		final App app                         = StructrApp.getInstance(securityContext);
+
+		securityContext.disablePreventDuplicateRelationships();
+
+		try (final Tx tx = app.tx()) {
+
+			final Image originalImage = app.nodeQuery(Image.class).uuid(imageId).getFirst();
+			if (originalImage != null) {
+
+				final Thumbnail.Format format           = ImageHelper.getThumbnailFormat(originalImage, null);
+				final Map<ThumbnailSize, Thumbnail> tns = new HashMap<>();
+				final List<ThumbnailSize> missing       = new ArrayList<>();
+				final Long checksum                     = originalImage.getChecksum();
+
+				for (final ThumbnailSize size : sizes) {
+
+					if (Image.getExistingThumbnail(originalImage, size.getMaxWidth(), size.getMaxHeight()) == null) {
+
+						final Thumbnail cached = DerivedImageCache.get(DerivedImageCache.key(checksum, size, format.name()));
+						if (cached != null) {
+
+							tns.put(size, cached);
+
+						} else {
+
+							missing.add(size);
+						}
+					}
+				}
+
+				if (!missing.isEmpty()) {
+
+					final long start           = System.nanoTime();
+					final DecodedImage decoded = ImageHelper.decode(originalImage, missing);
+
+					if (decoded != null) {
+
+						logger.debug("Decoded image {} ({}) with {}x{} pixels in {} ms", originalImage.getName(), imageId, decoded.getImage().getWidth(), decoded.getImage().getHeight(), (System.nanoTime() - start) / 1000000);
+
+						for (final ThumbnailSize size : missing) {
+
+							final Thumbnail tn = ImageHelper.createThumbnail(originalImage, decoded, size.getMaxWidth(), size.getMaxHeight(), format.name(), size.isCrop(), null, null);
+							if (tn != null) {
+
+								DerivedImageCache.put(DerivedImageCache.key(checksum, size, format.name()), tn);
+								tns.put(size, tn);
+							}
+						}
+
+					} else {
+
+						logger.debug("Could not create thumbnails for image {} ({})", originalImage.getName(), imageId);
+					}
+				}
+
+				final Set<String> created = new LinkedHashSet<>();
+
+				for (final Thumbnail tn : tns.values()) {
+
+					// requested sizes can map to the same thumbnail
+					if (created.add(tn.getWidth() + "x" + tn.getHeight())) {
+
+						createThumbnailNode(securityContext, app, originalImage, tn);
+					}
+				}
+
+				originalImage.unlockSystemPropertiesOnce();
+				originalImage.setIsCreatingThumb(false);
+			}
+
+			tx.success();
+
+		} catch (FrameworkException fex) {
+
+			logger.warn("Unable to create thumbnails for " + imageId, fex);
+		}
+	}
+
+	private void createThumbnailNode(final SecurityContext securityContext, final App app, final Image originalImage, final Thumbnail thumbnailData) throws FrameworkException {
+
+		final Class<Relation> thumbnailRel = StructrApp.getConfiguration().getRelationshipEntityClass("ImageTHUMBNAILImage");
+		final Integer tnWidth              = thumbnailData.getWidth();
+		final Integer tnHeight             = thumbnailData.getHeight();
+		final byte[] data                  = thumbnailData.getBytes();
+		final Thumbnail.Format format      = thumbnailData.getFormat() != null ? thumbnailData.getFormat() : Thumbnail.defaultFormat;
+		Image thumbnail                    = null;
+
+		try {
+
+			final String thumbnailName = ImageHelper.getThumbnailName(originalImage.getName(), tnWidth, tnHeight);
+
+			// create thumbnail node
+			// thumbnails are written in the format of the original image
+			thumbnail = ImageHelper.createImageNode(securityContext, data, "image/" + format, Image.class, thumbnailName, true);
+
+		} catch (IOException ex) {
+
+			logger.warn("Could not create thumbnail image for " + originalImage.getUuid(), ex);
+		}
+
+		if (thumbnail != null && data != null) {
+
+			// Create a thumbnail relationship
+			final PropertyMap relProperties = new PropertyMap();
+			relProperties.put(StructrApp.key(Image.class, "width"),                  tnWidth);
+			relProperties.put(StructrApp.key(Image.class, "height"),                 tnHeight);
+			relProperties.put(StructrApp.key(Image.class, "checksum"),               originalImage.getChecksum());
+
+			app.create(originalImage, thumbnail, thumbnailRel, relProperties);
+
+			// Create thumbnail Image node
+			final PropertyMap properties = new PropertyMap();
+			properties.put(StructrApp.key(Image.class, "width"),                              tnWidth);
+			properties.put(StructrApp.key(Image.class, "height"),                             tnHeight);
+			properties.put(StructrApp.key(AbstractNode.class, "hidden"),                      originalImage.getProperty(AbstractNode.hidden));
+			properties.put(StructrApp.key(AbstractNode.class, "visibleToAuthenticatedUsers"), originalImage.getProperty(AbstractNode.visibleToAuthenticatedUsers));
+			properties.put(StructrApp.key(AbstractNode.class, "visibleToPublicUsers"),        originalImage.getProperty(AbstractNode.visibleToPublicUsers));
+			properties.put(StructrApp.key(File.class, "size"),                                Long.valueOf(data.length));
+			properties.put(StructrApp.key(AbstractNode.class, "owner"),                       originalImage.getProperty(AbstractNode.owner));
+			properties.put(StructrApp.key(File.class, "parent"),                              originalImage.getThumbnailParentFolder(originalImage.getProperty(StructrApp.key(File.class, "parent")), securityContext));
+			properties.put(StructrApp.key(File.class, "hasParent"),                           originalImage.getProperty(StructrApp.key(Image.class, "hasParent")));
+
+			thumbnail.unlockSystemPropertiesOnce();
+			thumbnail.setProperties(securityContext, properties);
+		}
+	}
+
+	private static Set<ThumbnailSize> getConfiguredSizes(final Class type) {
+
+		return configuredSizes.computeIfAbsent(type, t -> {
+
+			final Set<ThumbnailSize> sizes = new LinkedHashSet<>();
+
+			for (final PropertyKey key : StructrApp.getConfiguration().getPropertySet(t, PropertyView.All)) {
+
+				if (key instanceof ThumbnailProperty) {
+
+					final ThumbnailProperty property = (ThumbnailProperty)key;
+
+					sizes.add(new ThumbnailSize(property.getWidth(), property.getHeight(), property.getCrop()));
+				}
+			}
+
+			return sizes;
+		});
+	}
+
+	// ----- nested classes -----
+	private class Job implements Runnable {
+
+		private final String imageId;
+
+		public Job(final String imageId) {
+			this.imageId = imageId;
+		}
+
+		@Override
+		public void run() {
+			process(imageId);
+		}
+	}
+}
@@ -31,7 +31,7 @@ public class ClosingFileOutputStream extends FileOutputStream {
 
 	public ClosingFileOutputStream(final File thisFile, final boolean append, final boolean notifyIndexerAfterClosing) throws IOException {
 
-		super(thisFile.getFileOnDisk(), append);
+		super(detach(thisFile), append);
 
 		this.thisFile = thisFile;
 	}
@@ -49,4 +49,15 @@ public class ClosingFileOutputStream extends FileOutputStream {
 
 		closed = true;
 	}
+
+	// ----- private methods -----
+	private static java.io.File detach(final File thisFile) throws IOException {
+
+		final java.io.File fileOnDisk = thisFile.getFileOnDisk();
+
+		// shared content must not be modified in place
+		ContentStore.detach(fileOnDisk, thisFile.getChecksum());
+
+		return fileOnDisk;
+	}
 }
@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.apache.commons.io.FileUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+
+/**
+ * Content-addressable storage for the binary content of files.
+ *
+ * Each distinct content is stored once as a blob below the files path,
+ * named after its checksum and size. The per-file paths returned by
+ * getFileOnDisk() stay valid: they are hard links to the blob, so the
+ * file system keeps the reference count and all readers work unchanged.
+ *
+ * Code that modifies the content of a file on disk in place must call
+ * {@link #detach(java.io.File, java.lang.Long)} first, which replaces a
+ * shared link by a private copy (copy-on-write). Since the blob is a link
+ * itself, a file that is linked to a blob has at least two links. Blobs
+ * that are not referenced anymore are removed by a background task that
+ * is started when the module is loaded.
+ */
+public class ContentStore {
+
+	private static final Logger logger                       = LoggerFactory.getLogger(ContentStore.class.getName());
+	private static final String BLOB_DIRECTORY               = "blobs";
+	private static final long GC_INTERVAL                    = 10;
+	private static final AtomicBoolean dirty                 = new AtomicBoolean(true);
+	private static final Object lock                         = new Object();
+	private static ScheduledExecutorService garbageCollector = null;
+
+	public static boolean isEnabled() {
+		return Settings.ContentDeduplication.getValue();
+	}
+
+	/**
+	 * Replaces the given file by a link to the blob with the same content,
+	 * or registers the file as the blob if the content is new. Files below
+	 * the minimum size, external and mounted files are not deduplicated.
+	 */
+	public static void store(final java.io.File fileOnDisk, final Long checksum) {
+
+		if (!isEnabled() || checksum == null || fileOnDisk == null) {
+			return;
+		}
+
+		final Path path = fileOnDisk.toPath().toAbsolutePath().normalize();
+
+		try {
+
+			if (!isManaged(path) || !Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+				return;
+			}
+
+			final long size = Files.size(path);
+			if (size < Settings.ContentDeduplicationMinSize.getValue()) {
+				return;
+			}
+
+			final Path blob = getBlobPath(checksum, size);
+
+			synchronized (lock) {
+
+				if (!Files.exists(blob)) {
+
+					// new content, the file itself becomes the blob
+					Files.createDirectories(blob.getParent());
+					Files.createLink(blob, path);
+
+				} else if (!Files.isSameFile(blob, path)) {
+
+					// protect against checksum collisions
+					if (FileUtils.contentEquals(blob.toFile(), path.toFile())) {
+
+						replaceWithLink(path, blob);
+
+					} else {
+
+						logger.warn("Checksum collision between {} and {}, not deduplicating.", path, blob);
+					}
+				}
+			}
+
+			startGarbageCollector();
+
+		} catch (IOException | UnsupportedOperationException ex) {
+			logger.warn("Unable to deduplicate {}: {}", path, ex.getMessage());
+		}
+	}
+
+	/**
+	 * Makes sure that the given file does not share its content with other
+	 * files, so it can be modified in place. Must be called before a file
+	 * is opened for writing.
+	 */
+	public static void detach(final java.io.File fileOnDisk) throws IOException {
+		detach(fileOnDisk, null);
+	}
+
+	/**
+	 * Makes sure that the given file does not share its content with other
+	 * files, so it can be modified in place. Must be called before a file
+	 * is opened for writing. If the file is the only owner of the blob
+	 * with the given checksum, the blob is removed instead of copying the
+	 * content.
+	 */
+	public static void detach(final java.io.File fileOnDisk, final Long checksum) throws IOException {
+
+		if (fileOnDisk == null) {
+			return;
+		}
+
+		final Path path = fileOnDisk.toPath().toAbsolutePath().normalize();
+
+		if (isManaged(path) && Files.isRegularFile(path, LinkOption.NOFOLLOW_LINKS)) {
+
+			synchronized (lock) {
+
+				final int linkCount = getLinkCount(path);
+				if (linkCount <= 1) {
+					return;
+				}
+
+				if (linkCount == 2 && checksum != null) {
+
+					final Path blob = getBlobPath(checksum, Files.size(path));
+					if (Files.exists(blob) && Files.isSameFile(blob, path)) {
+
+						// the other link is the blob, so the file is the only owner
+						Files.delete(blob);
+						return;
+					}
+				}
+
+				// shared with other files, or the blob is unknown
+				final Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+				Files.copy(path, tmp, StandardCopyOption.REPLACE_EXISTING);
+				Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+				dirty.set(true);
+			}
+		}
+	}
+
+	/**
+	 * Copies the content of the source file to the target file. If the
+	 * content is stored in a blob, the target is linked to it and no data
+	 * is copied at all.
+	 */
+	public static void copy(final java.io.File source, final java.io.File target, final Long checksum) throws IOException {
+
+		final Path sourcePath = source.toPath().toAbsolutePath().normalize();
+		final Path targetPath = target.toPath().toAbsolutePath().normalize();
+
+		if (isEnabled() && checksum != null && isManaged(sourcePath) && isManaged(targetPath)) {
+
+			store(source, checksum);
+
+			final Path blob = getBlobPath(checksum, Files.size(sourcePath));
+
+			synchronized (lock) {
+
+				if (Files.exists(blob) && Files.isSameFile(blob, sourcePath)) {
+
+					replaceWithLink(targetPath, blob);
+					return;
+				}
+			}
+		}
+
+		// replaces the target file instead of writing into it, in case it is shared
+		Files.copy(sourcePath, targetPath, StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Notifies the store that a file was deleted, so its blob can be
+	 * removed by the next garbage collection run.
+	 */
+	public static void release() {
+		dirty.set(true);
+	}
+
+	/**
+	 * Removes all blobs that are not referenced by any file anymore and
+	 * returns the number of bytes freed.
+	 */
+	public static long collectGarbage() {
+
+		final Path root    = getBlobRoot();
+		final long[] freed = new long[1];
+
+		if (!dirty.getAndSet(false) || !Files.isDirectory(root)) {
+			return 0L;
+		}
+
+		try {
+
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+				@Override
+				public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+
+					synchronized (lock) {
+
+						if (attrs.isRegularFile() && getLinkCount(file) <= 1) {
+
+							Files.delete(file);
+							freed[0] += attrs.size();
+						}
+					}
+
+					return FileVisitResult.CONTINUE;
+				}
+			});
+
+		} catch (IOException | UnsupportedOperationException ex) {
+
+			logger.warn("Unable to remove unreferenced blobs: {}", ex.getMessage());
+			dirty.set(true);
+		}
+
+		if (freed[0] > 0) {
+			logger.info("Removed unreferenced blobs, {} bytes freed.", freed[0]);
+		}
+
+		return freed[0];
+	}
+
+	/**
+	 * Starts the background task that removes unreferenced blobs, if the
+	 * content store is enabled.
+	 */
+	public static synchronized void startGarbageCollector() {
+
+		if (!isEnabled()) {
+			return;
+		}
+
+		if (garbageCollector == null) {
+
+			garbageCollector = Executors.newSingleThreadScheduledExecutor(r -> {
+
+				final Thread thread = new Thread(r, "ContentStoreGarbageCollector");
+				thread.setDaemon(true);
+
+				return thread;
+			});
+
+			garbageCollector.scheduleWithFixedDelay(ContentStore::collectGarbage, GC_INTERVAL, GC_INTERVAL, TimeUnit.MINUTES);
+		}
+	}
+
+	// ----- private methods -----
+	private static void replaceWithLink(final Path path, final Path blob) throws IOException {
+
+		final Path tmp = path.resolveSibling(path.getFileName() + ".link");
+
+		Files.deleteIfExists(tmp);
+		Files.createLink(tmp, blob);
+		Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		dirty.set(true);
+	}
+
+	private static boolean isManaged(final Path path) {
+
+		final Path root = getFilesRoot();
+
+		return path.startsWith(root) && !path.startsWith(getBlobRoot());
+	}
+
+	private static int getLinkCount(final Path path) throws IOException {
+
+		try {
+
+			return (Integer)Files.getAttribute(path, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+
+		} catch (UnsupportedOperationException | IllegalArgumentException ex) {
+
+			// no hard link support, so the file cannot be shared
+			return 1;
+		}
+	}
+
+	private static Path getBlobPath(final long checksum, final long size) {
+
+		final String name = String.format("%016x", checksum);
+
+		return getBlobRoot().resolve(name.substring(0, 2)).resolve(name + "-" + size);
+	}
+
+	private static Path getFilesRoot() {
+		return Paths.get(Settings.FilesPath.getValue()).toAbsolutePath().normalize();
+	}
+
+	private static Path getBlobRoot() {
+		return getFilesRoot().resolve(BLOB_DIRECTORY);
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.structr.api.config.Settings;
+import org.structr.web.common.ImageHelper.Thumbnail;
+import org.structr.web.common.ImageHelper.ThumbnailSize;
+
+/**
+ * Size-bounded LRU cache for encoded thumbnails, keyed by the checksum of
+ * the original image, the requested size and the output format. Images
+ * with identical content share their thumbnails, so they are decoded and
+ * scaled only once.
+ */
+public class DerivedImageCache {
+
+	private static final Map<String, Thumbnail> cache = new LinkedHashMap<>(16, 0.75f, true);
+	private static long cachedBytes                   = 0L;
+
+	public static String key(final Long checksum, final ThumbnailSize size, final String format) {
+		return checksum != null ? Long.toHexString(checksum) + "/" + size + "/" + format : null;
+	}
+
+	public static synchronized Thumbnail get(final String key) {
+		return key != null ? cache.get(key) : null;
+	}
+
+	public static synchronized void put(final String key, final Thumbnail thumbnail) {
+
+		final long maxBytes = Settings.ThumbnailCacheSize.getValue() * 1024L * 1024L;
+		final byte[] data   = thumbnail.getBytes();
+
+		if (key == null || data == null || data.length > maxBytes) {
+			return;
+		}
+
+		final Thumbnail previous = cache.put(key, thumbnail);
+		if (previous != null && previous.getBytes() != null) {
+
+			cachedBytes -= previous.getBytes().length;
+		}
+
+		cachedBytes += data.length;
+
+		// evict least recently used entries
+		final Iterator<Thumbnail> iterator = cache.values().iterator();
+		while (cachedBytes > maxBytes && iterator.hasNext()) {
+
+			cachedBytes -= iterator.next().getBytes().length;
+			iterator.remove();
+		}
+	}
+
+	public static synchronized void clear() {
+
+		cache.clear();
+		cachedBytes = 0L;
+	}
+}
@@ -419,7 +419,12 @@ public class FileHelper {
 		}
 
 		// New, very fast xxHash default checksum, will always be calculated
-		propertiesWithChecksums.put(StructrApp.key(File.class, "checksum"), FileHelper.getChecksum(fileOnDisk));
+		final Long checksum = FileHelper.getChecksum(fileOnDisk);
+
+		propertiesWithChecksums.put(StructrApp.key(File.class, "checksum"), checksum);
+
+		// share identical content with other files if enabled
+		ContentStore.store(fileOnDisk, checksum);
 
 		if (StringUtils.contains(checksums, "crc32"))	{
 			propertiesWithChecksums.put(StructrApp.key(File.class, "crc32"), FileHelper.getCRC32Checksum(fileOnDisk));
@@ -600,6 +605,7 @@ public class FileHelper {
 
 		setFileProperties(fileNode);
 
+		ContentStore.detach(fileNode.getFileOnDisk(), fileNode.getChecksum());
 		FileUtils.writeByteArrayToFile(fileNode.getFileOnDisk(), data);
 
 	}
@@ -616,6 +622,8 @@ public class FileHelper {
 
 		setFileProperties(fileNode);
 
+		ContentStore.detach(fileNode.getFileOnDisk(), fileNode.getChecksum());
+
 		try (final FileOutputStream out = new FileOutputStream(fileNode.getFileOnDisk())) {
 
 			IOUtils.copy(data, out);
@@ -686,7 +694,11 @@ public class FileHelper {
 
 		try {
 
-			return StructrApp.getInstance(securityContext).nodeQuery(AbstractFile.class).and(StructrApp.key(AbstractFile.class, "path"), absolutePath).getFirst();
+			final List<AbstractFile> files = FilePathIndex.find(securityContext, absolutePath);
+			if (!files.isEmpty()) {
+
+				return files.get(0);
+			}
 
 		} catch (FrameworkException ex) {
 			logger.warn("File not found: {}", absolutePath);
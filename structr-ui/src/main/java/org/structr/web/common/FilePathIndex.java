@@ -0,0 +1,506 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.api.config.Settings;
+import org.structr.common.PathHelper;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.App;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.graph.TransactionCommand;
+import org.structr.web.entity.AbstractFile;
+import org.structr.web.entity.Folder;
+
+/**
+ * Maps absolute paths of files and folders to their UUIDs and vice versa,
+ * so that a path can be resolved, and the path of a node determined, with a
+ * single lookup instead of one query per segment.
+ *
+ * Entries are created when a path is resolved for the first time, together
+ * with entries for all parent paths, and kept up to date by
+ * {@link FilePathIndexListener} when files or folders are created, renamed,
+ * moved or deleted. Each entry contains all nodes with the given path, and
+ * the paths of all parent folders of an entry are indexed as well.
+ * Uncommitted changes are not visible to the index, so a transaction that
+ * modifies the path of a file or folder bypasses the index.
+ *
+ * If the index is full, the least recently used entries without indexed
+ * descendants are evicted.
+ */
+public class FilePathIndex {
+
+	static final String PATHS_MODIFIED                         = "filePathsModified";
+
+	private static final NavigableMap<String, Entry> pathIndex = new ConcurrentSkipListMap<>();
+	private static final Map<String, String> idIndex           = new ConcurrentHashMap<>();
+	private static final Object lock                           = new Object();
+	private static volatile long generation                    = 0L;
+
+	/**
+	 * Returns all files and folders with the given absolute path that are
+	 * visible in the given security context.
+	 */
+	public static List<AbstractFile> find(final SecurityContext securityContext, final String path) throws FrameworkException {
+
+		final String[] parts = PathHelper.getParts(path);
+		if (parts.length == 0) {
+			return Collections.emptyList();
+		}
+
+		final App superUserApp = StructrApp.getInstance();
+
+		if (hasPendingChanges()) {
+
+			final List<AbstractFile> nodes = new ArrayList<>();
+
+			searchRecursively(superUserApp, null, nodes, new ArrayList<>(Arrays.asList(parts)));
+
+			return filterVisible(securityContext, nodes);
+		}
+
+		final long currentGeneration = generation;
+		final String[] paths         = new String[parts.length];
+		String parentPath            = "";
+
+		for (int i=0; i<parts.length; i++) {
+
+			paths[i]   = parentPath + "/" + parts[i];
+			parentPath = paths[i];
+		}
+
+		// find the longest indexed prefix of the path
+		int level                = parts.length - 1;
+		List<AbstractFile> nodes = lookup(superUserApp, paths[level]);
+
+		while (nodes == null && level > 0) {
+
+			level--;
+			nodes = lookup(superUserApp, paths[level]);
+		}
+
+		if (nodes == null) {
+
+			nodes = getChildren(superUserApp, null, parts[0]);
+			level = 0;
+
+			put(paths[0], nodes, currentGeneration);
+		}
+
+		// resolve and index the remaining segments
+		for (int i=level+1; i<parts.length; i++) {
+
+			final List<AbstractFile> children = new ArrayList<>();
+
+			for (final AbstractFile node : nodes) {
+
+				if (node instanceof Folder) {
+
+					children.addAll(getChildren(superUserApp, (Folder)node, parts[i]));
+				}
+			}
+
+			put(paths[i], children, currentGeneration);
+
+			nodes = children;
+		}
+
+		return filterVisible(securityContext, nodes);
+	}
+
+	/**
+	 * Returns the absolute path of the given file or folder. The path is
+	 * served from the index if the node or its parent folder is indexed,
+	 * otherwise the parent folder is indexed, so that the paths of its
+	 * other children can be served from the index as well.
+	 */
+	public static String getPath(final AbstractFile file) {
+
+		if (hasPendingChanges()) {
+			return file.getFolderPath();
+		}
+
+		final String path = idIndex.get(file.getUuid());
+		if (path != null) {
+
+			return path;
+		}
+
+		final Folder parent = file.getParent();
+		String name         = file.getProperty(AbstractFile.name);
+
+		if (name == null) {
+			name = file.getUuid();
+		}
+
+		if (parent == null) {
+			return "/" + name;
+		}
+
+		String parentPath = idIndex.get(parent.getUuid());
+		if (parentPath == null) {
+
+			parentPath = parent.getFolderPath();
+
+			try {
+
+				find(null, parentPath);
+
+			} catch (FrameworkException fex) {
+				// the path is still valid, it is only not indexed
+			}
+		}
+
+		return parentPath + "/" + name;
+	}
+
+	public static void clear() {
+
+		synchronized (lock) {
+
+			pathIndex.clear();
+			idIndex.clear();
+
+			generation++;
+		}
+	}
+
+	// ----- package-private static methods -----
+	/**
+	 * Updates the entry of the given node after it was created, renamed or
+	 * moved. Entries below the old and the new path of a folder are removed
+	 * and loaded on demand.
+	 */
+	static void update(final AbstractFile file) {
+
+		final String uuid    = file.getUuid();
+		final String newPath = file.getFolderPath();
+
+		synchronized (lock) {
+
+			generation++;
+
+			final String oldPath = idIndex.get(uuid);
+			if (oldPath != null) {
+
+				if (oldPath.equals(newPath)) {
+					return;
+				}
+
+				idIndex.remove(uuid);
+				removeId(oldPath, uuid);
+				removeDescendants(oldPath);
+			}
+
+			// the entries below the new path do not contain the children of the moved folder
+			if (file instanceof Folder) {
+				removeDescendants(newPath);
+			}
+
+			// only add to an existing entry, missing entries are loaded on demand
+			final Entry entry = pathIndex.get(newPath);
+			if (entry != null) {
+
+				entry.ids.add(uuid);
+				idIndex.put(uuid, newPath);
+			}
+		}
+	}
+
+	/**
+	 * Removes the entry of the given node and the entries of all its
+	 * descendants.
+	 */
+	static void remove(final String uuid) {
+
+		synchronized (lock) {
+
+			generation++;
+
+			final String path = idIndex.remove(uuid);
+			if (path != null) {
+
+				removeId(path, uuid);
+				removeDescendants(path);
+			}
+		}
+	}
+
+	/**
+	 * Removes the entries of a node whose path is about to change, and the
+	 * entry of its new path, before the transaction is committed. This
+	 * prevents outdated paths from being served until {@link #update} has
+	 * been called after the commit.
+	 */
+	static void invalidate(final String uuid, final String newPath) {
+
+		synchronized (lock) {
+
+			generation++;
+
+			final String path = idIndex.remove(uuid);
+			if (path != null) {
+
+				removeId(path, uuid);
+				removeDescendants(path);
+			}
+
+			if (newPath != null) {
+
+				final Entry entry = pathIndex.remove(newPath);
+				if (entry != null) {
+
+					for (final String id : entry.ids) {
+						idIndex.remove(id, newPath);
+					}
+				}
+
+				removeDescendants(newPath);
+			}
+		}
+	}
+
+	/**
+	 * Indicates whether the current transaction created, deleted, renamed
+	 * or moved a file or folder. Such changes are not visible to the index
+	 * until they are committed. The flag is set by the transaction when
+	 * the change is made, see {@link FilePathIndexListener#affectsPath}.
+	 */
+	static boolean hasPendingChanges() {
+		return TransactionCommand.isTransactionFlagSet(PATHS_MODIFIED);
+	}
+
+	// ----- private static methods -----
+	private static List<AbstractFile> lookup(final App superUserApp, final String path) throws FrameworkException {
+
+		final Entry entry = pathIndex.get(path);
+		if (entry != null) {
+
+			final List<AbstractFile> nodes = new ArrayList<>();
+
+			entry.lastAccess = System.nanoTime();
+
+			for (final String uuid : entry.ids) {
+
+				final NodeInterface node = superUserApp.getNodeById(uuid);
+				if (!(node instanceof AbstractFile)) {
+
+					// node was deleted in the meantime
+					return null;
+				}
+
+				nodes.add((AbstractFile)node);
+			}
+
+			return nodes;
+		}
+
+		return null;
+	}
+
+	private static void put(final String path, final List<AbstractFile> nodes, final long expectedGeneration) {
+
+		if (nodes.isEmpty()) {
+			return;
+		}
+
+		synchronized (lock) {
+
+			// the nodes were loaded before a concurrent modification, don't index them
+			if (generation != expectedGeneration) {
+				return;
+			}
+
+			final int limit = Settings.FilePathIndexSize.getValue();
+			if (idIndex.size() >= limit) {
+
+				evict(limit - (limit / 10));
+			}
+
+			final Entry entry = new Entry();
+
+			for (final AbstractFile node : nodes) {
+
+				final String uuid    = node.getUuid();
+				final String oldPath = idIndex.put(uuid, path);
+
+				if (oldPath != null && !oldPath.equals(path)) {
+
+					removeId(oldPath, uuid);
+					removeDescendants(oldPath);
+				}
+
+				entry.ids.add(uuid);
+			}
+
+			entry.lastAccess = System.nanoTime();
+
+			pathIndex.put(path, entry);
+		}
+	}
+
+	/**
+	 * Evicts the least recently used entries until the index contains at
+	 * most the given number of nodes. Entries with indexed descendants are
+	 * kept, because the index relies on the entries of all parent paths.
+	 */
+	private static void evict(final int targetSize) {
+
+		final List<Map.Entry<String, Entry>> entries = new ArrayList<>(pathIndex.entrySet());
+
+		entries.sort((a, b) -> Long.compare(a.getValue().lastAccess, b.getValue().lastAccess));
+
+		for (final Map.Entry<String, Entry> candidate : entries) {
+
+			if (idIndex.size() <= targetSize) {
+				break;
+			}
+
+			final String path = candidate.getKey();
+
+			if (getDescendants(path).isEmpty()) {
+
+				pathIndex.remove(path);
+
+				for (final String id : candidate.getValue().ids) {
+					idIndex.remove(id, path);
+				}
+			}
+		}
+	}
+
+	private static void removeId(final String path, final String uuid) {
+
+		final Entry entry = pathIndex.get(path);
+		if (entry != null) {
+
+			entry.ids.remove(uuid);
+
+			if (entry.ids.isEmpty()) {
+				pathIndex.remove(path);
+			}
+		}
+	}
+
+	private static void removeDescendants(final String path) {
+
+		final NavigableMap<String, Entry> descendants = getDescendants(path);
+
+		for (final Map.Entry<String, Entry> entry : descendants.entrySet()) {
+
+			for (final String id : entry.getValue().ids) {
+				idIndex.remove(id, entry.getKey());
+			}
+		}
+
+		descendants.clear();
+	}
+
+	private static NavigableMap<String, Entry> getDescendants(final String path) {
+
+		// '0' is the character after '/', so this range contains exactly the paths below the given path
+		return pathIndex.subMap(path + "/", true, path + "0", false);
+	}
+
+	private static List<AbstractFile> filterVisible(final SecurityContext securityContext, final List<AbstractFile> nodes) throws FrameworkException {
+
+		if (securityContext == null || securityContext.isSuperUserSecurityContext()) {
+			return nodes;
+		}
+
+		final App app                   = StructrApp.getInstance(securityContext);
+		final List<AbstractFile> result = new ArrayList<>();
+
+		for (final AbstractFile node : nodes) {
+
+			if (isParentVisible(securityContext, node)) {
+
+				final NodeInterface visibleNode = app.getNodeById(node.getUuid());
+				if (visibleNode instanceof AbstractFile) {
+
+					result.add((AbstractFile)visibleNode);
+				}
+			}
+		}
+
+		return result;
+	}
+
+	private static boolean isParentVisible(final SecurityContext securityContext, final AbstractFile node) {
+
+		final Set<String> visited = new LinkedHashSet<>();
+		Folder parent             = node.getParent();
+
+		// a path can only be resolved if all folders in it are visible
+		while (parent != null && visited.add(parent.getUuid())) {
+
+			if (!securityContext.isVisible(parent)) {
+				return false;
+			}
+
+			parent = parent.getParent();
+		}
+
+		return true;
+	}
+
+	private static List<AbstractFile> getChildren(final App app, final Folder parent, final String name) throws FrameworkException {
+		return app.nodeQuery(AbstractFile.class).and(StructrApp.key(AbstractFile.class, "parent"), parent).and(AbstractFile.name, name).getAsList();
+	}
+
+	private static void searchRecursively(final App app, final Folder parent, final List<AbstractFile> result, final List<String> parts) throws FrameworkException {
+
+		final String currentPart     = parts.remove(0);
+		final List<AbstractFile> res = getChildren(app, parent, currentPart);
+
+		if (parts.isEmpty()) {
+
+			result.addAll(res);
+
+		} else {
+
+			for (final AbstractFile folder : res) {
+
+				if (folder instanceof Folder) {
+
+					searchRecursively(app, (Folder)folder, result, new ArrayList<>(parts));
+				}
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	private static class Entry {
+
+		private final Set<String> ids    = ConcurrentHashMap.newKeySet();
+		private volatile long lastAccess = 0L;
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.common;
+
+import java.util.Collection;
+import java.util.Map;
+import org.structr.api.Predicate;
+import org.structr.common.SecurityContext;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.GraphObject;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.graph.NodeInterface;
+import org.structr.core.property.PropertyKey;
+import org.structr.core.property.PropertyMap;
+import org.structr.web.entity.AbstractFile;
+
+/**
+ * Updates the {@link FilePathIndex} after files or folders have been
+ * created, renamed, moved or deleted. Affected entries are removed before
+ * the commit, so that no outdated paths are served in the meantime.
+ */
+public class FilePathIndexListener implements StructrTransactionListener {
+
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents) {
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			if (event.isNode() && event.getGraphObject() instanceof AbstractFile) {
+
+				if (event.isDeleted()) {
+
+					FilePathIndex.invalidate(event.getUuid(), null);
+
+				} else if (event.isCreated() || affectsPath(event.getModifiedProperties()) || affectsPath(event.getRemovedProperties())) {
+
+					FilePathIndex.invalidate(event.getUuid(), ((AbstractFile)event.getGraphObject()).getFolderPath());
+				}
+			}
+		}
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents) {
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			if (event.isNode() && event.getGraphObject() instanceof AbstractFile) {
+
+				if (event.isDeleted()) {
+
+					FilePathIndex.remove(event.getUuid());
+
+				} else if (event.isCreated() || affectsPath(event.getModifiedProperties()) || affectsPath(event.getRemovedProperties())) {
+
+					try {
+
+						// resolve the path with full visibility
+						final GraphObject file = StructrApp.getInstance().getNodeById(event.getUuid());
+						if (file instanceof AbstractFile) {
+
+							FilePathIndex.update((AbstractFile)file);
+
+						} else {
+
+							FilePathIndex.remove(event.getUuid());
+						}
+
+					} catch (FrameworkException fex) {
+
+						FilePathIndex.remove(event.getUuid());
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public void simpleBroadcast(final String messageName, final Map<String, Object> data, final Predicate<String> sessionIdPredicate) {
+	}
+
+	// ----- package-private static methods -----
+	/**
+	 * Indicates whether the given properties contain the name or the parent
+	 * of a file or folder.
+	 */
+	static boolean affectsPath(final PropertyMap properties) {
+
+		if (properties != null) {
+
+			for (final PropertyKey key : properties.keySet()) {
+
+				if (isPathKey(key)) {
+
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Condition of the {@link FilePathIndex#PATHS_MODIFIED} transaction
+	 * flag: a file or folder was created or deleted (key is null), or its
+	 * name or parent was modified.
+	 */
+	static boolean affectsPath(final NodeInterface node, final PropertyKey key) {
+		return node instanceof AbstractFile && (key == null || isPathKey(key));
+	}
+
+	// ----- private static methods -----
+	/**
+	 * Subtypes use their own relationship properties for the parent, e.g.
+	 * "fileParent" or "folderParent".
+	 */
+	private static boolean isPathKey(final PropertyKey key) {
+
+		final String name = key.jsonName();
+
+		return "name".equals(name) || "parent".equals(name) || "parentId".equals(name) || name.endsWith("Parent");
+	}
+}
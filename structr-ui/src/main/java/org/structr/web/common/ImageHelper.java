@@ -35,7 +35,12 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Objects;
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
 import javax.imageio.stream.ImageInputStream;
 import net.coobird.thumbnailator.Thumbnails;
 import org.apache.commons.io.IOUtils;
@@ -260,99 +265,104 @@ public abstract class ImageHelper extends FileHelper {
 
 	public static Thumbnail createThumbnail(final Image originalImage, final int maxWidth, final int maxHeight, final String formatString, final boolean crop, final Integer reqOffsetX, final Integer reqOffsetY) {
 
-		Thumbnail.Format format = Thumbnail.defaultFormat;
+		final BufferedImage source = getRotatedImage(originalImage);
+		if (source == null) {
 
-		try {
+			logger.debug("Thumbnail could not be created");
 
-			final String imageFormatString = getImageFormatString(originalImage);
-			format = formatString != null ? Thumbnail.Format.valueOf(formatString) : (imageFormatString != null ? Thumbnail.Format.valueOf(imageFormatString) : Thumbnail.defaultFormat);
+			return null;
+		}
 
-		} catch (IllegalArgumentException iae) {
+		return createThumbnail(originalImage, new DecodedImage(source, source.getWidth(), source.getHeight()), maxWidth, maxHeight, formatString, crop, reqOffsetX, reqOffsetY);
+	}
 
-			logger.debug("Unsupported thumbnail format - using default");
-		}
+	/**
+	 * Creates a thumbnail from an image that was already decoded, possibly
+	 * with a lower resolution than the original, see {@link #decode(File, Collection)}.
+	 * All sizes and offsets refer to the dimensions of the original image.
+	 */
+	public static Thumbnail createThumbnail(final Image originalImage, final DecodedImage decoded, final int maxWidth, final int maxHeight, final String formatString, final boolean crop, final Integer reqOffsetX, final Integer reqOffsetY) {
 
+		final Thumbnail.Format format    = getThumbnailFormat(originalImage, formatString);
 		final ByteArrayOutputStream baos = new ByteArrayOutputStream();
 		final Thumbnail tn               = new Thumbnail();
 
 		try {
 
-			final long start = System.nanoTime();
-			BufferedImage source = getRotatedImage(originalImage);
-
-			if (source != null) {
-
-				final int sourceWidth  = source.getWidth();
-				final int sourceHeight = source.getHeight();
+			final long start           = System.nanoTime();
+			final BufferedImage source = decoded.getImage();
+			final int sourceWidth      = decoded.getWidth();
+			final int sourceHeight     = decoded.getHeight();
 
-				// Update image dimensions
-				final PropertyMap properties = new PropertyMap();
-				properties.put(StructrApp.key(Image.class, "width"), sourceWidth);
-				properties.put(StructrApp.key(Image.class, "height"), sourceHeight);
-				originalImage.setProperties(originalImage.getSecurityContext(), properties);
+			// ratio between the decoded image and the original image
+			final float factor         = 1.0f * source.getWidth() / sourceWidth;
 
-				// float aspectRatio = sourceWidth/sourceHeight;
-				final float scale = getScaleRatio(sourceWidth, sourceHeight, maxWidth, maxHeight, crop);
+			// Update image dimensions
+			final PropertyMap properties = new PropertyMap();
+			properties.put(StructrApp.key(Image.class, "width"), sourceWidth);
+			properties.put(StructrApp.key(Image.class, "height"), sourceHeight);
+			originalImage.setProperties(originalImage.getSecurityContext(), properties);
 
-				// Don't scale up
-				if (scale > 1.0) {
+			// float aspectRatio = sourceWidth/sourceHeight;
+			final float scale = getScaleRatio(sourceWidth, sourceHeight, maxWidth, maxHeight, crop);
 
-					final int destWidth  = getThumbnailWidth(sourceWidth, scale);
-					final int destHeight = getThumbnailHeight(sourceHeight, scale);
+			// Don't scale up
+			if (scale > 1.0) {
 
-					if (crop) {
+				final int destWidth  = getThumbnailWidth(sourceWidth, scale);
+				final int destHeight = getThumbnailHeight(sourceHeight, scale);
 
-						final int offsetX = reqOffsetX != null ? reqOffsetX : Math.abs(maxWidth - destWidth) / 2;
-						final int offsetY = reqOffsetY != null ? reqOffsetY : Math.abs(maxHeight - destHeight) / 2;
+				if (crop) {
 
-						final Integer[] dims = finalImageDimensions(offsetX, offsetY, maxWidth, maxHeight, sourceWidth, sourceHeight);
+					final int offsetX = reqOffsetX != null ? reqOffsetX : Math.abs(maxWidth - destWidth) / 2;
+					final int offsetY = reqOffsetY != null ? reqOffsetY : Math.abs(maxHeight - destHeight) / 2;
 
-						logger.debug("Offset and Size (x,y,w,h): {},{},{},{}", new Object[] { dims[0], dims[1], dims[2], dims[3] });
+					final Integer[] dims = finalImageDimensions(offsetX, offsetY, maxWidth, maxHeight, sourceWidth, sourceHeight);
 
-						Thumbnails.of(source)
-								.scale(1.0f / scale)
-								.sourceRegion((int) (dims[0]*scale), (int) (dims[1]*scale), (int) (dims[2]*scale), (int) (dims[3]*scale))
-								.outputFormat(format.name())
-								.toOutputStream(baos);
+					logger.debug("Offset and Size (x,y,w,h): {},{},{},{}", new Object[] { dims[0], dims[1], dims[2], dims[3] });
 
+					final int regionX = Math.min(source.getWidth() - 1,  (int) (dims[0]*scale*factor));
+					final int regionY = Math.min(source.getHeight() - 1, (int) (dims[1]*scale*factor));
 
-						tn.setWidth(dims[2]);
-						tn.setHeight(dims[3]);
+					Thumbnails.of(source)
+							.sourceRegion(regionX, regionY, Math.min(source.getWidth() - regionX, (int) (dims[2]*scale*factor)), Math.min(source.getHeight() - regionY, (int) (dims[3]*scale*factor)))
+							.size(dims[2], dims[3])
+							.keepAspectRatio(false)
+							.outputFormat(format.name())
+							.toOutputStream(baos);
 
-					} else {
 
-						Thumbnails.of(source)
-								.scale(1.0f / scale)
-								.outputFormat(format.name())
-								.toOutputStream(baos);
+					tn.setWidth(dims[2]);
+					tn.setHeight(dims[3]);
 
-						tn.setWidth(destWidth);
-						tn.setHeight(destHeight);
+				} else {
 
-					}
+					Thumbnails.of(source)
+							.size(destWidth, destHeight)
+							.keepAspectRatio(false)
+							.outputFormat(format.name())
+							.toOutputStream(baos);
 
-				} else {
+					tn.setWidth(destWidth);
+					tn.setHeight(destHeight);
 
-					// Thumbnail is source image
-					ImageIO.write(source, format.name(), baos);
-					tn.setWidth(sourceWidth);
-					tn.setHeight(sourceHeight);
 				}
 
 			} else {
 
-				logger.debug("Thumbnail could not be created");
-
-				return null;
-
+				// Thumbnail is source image
+				ImageIO.write(source, format.name(), baos);
+				tn.setWidth(sourceWidth);
+				tn.setHeight(sourceHeight);
 			}
 
 			final long end  = System.nanoTime();
 			final long time = (end - start) / 1000000;
 
-			logger.info("Thumbnail created for image {} ({}). Reading, scaling and writing took {} ms", new Object[] { originalImage.getName(), originalImage.getUuid(), time });
+			logger.info("Thumbnail created for image {} ({}). Scaling and writing took {} ms", new Object[] { originalImage.getName(), originalImage.getUuid(), time });
 
 			tn.setBytes(baos.toByteArray());
+			tn.setFormat(format);
 
 			return tn;
 
@@ -445,67 +455,149 @@ public abstract class ImageHelper extends FileHelper {
 
 			if (source != null) {
 
-				final int sourceWidth  = source.getWidth();
-				final int sourceHeight = source.getHeight();
+				return rotate(source, orientation);
+			}
 
-				final AffineTransform affineTransform = new AffineTransform();
-
-				switch (orientation) {
-				case 1:
-					break;
-				case 2: // Flip X
-					affineTransform.scale(-1.0, 1.0);
-					affineTransform.translate(-sourceWidth, 0);
-					break;
-				case 3: // PI rotation
-					affineTransform.translate(sourceWidth, sourceHeight);
-					affineTransform.rotate(Math.PI);
-					break;
-				case 4: // Flip Y
-					affineTransform.scale(1.0, -1.0);
-					affineTransform.translate(0, -sourceHeight);
-					break;
-				case 5: // - PI/2 and Flip X
-					affineTransform.rotate(-Math.PI / 2);
-					affineTransform.scale(-1.0, 1.0);
-					break;
-				case 6: // -PI/2 and -width
-					affineTransform.translate(sourceHeight, 0);
-					affineTransform.rotate(Math.PI / 2);
-					break;
-				case 7: // PI/2 and Flip
-					affineTransform.scale(-1.0, 1.0);
-					affineTransform.translate(-sourceHeight, 0);
-					affineTransform.translate(0, sourceWidth);
-					affineTransform.rotate(3 * Math.PI / 2);
-					break;
-				case 8: // PI / 2
-					affineTransform.translate(0, sourceWidth);
-					affineTransform.rotate(3 * Math.PI / 2);
-					break;
-				default:
-					break;
-				}
+		} catch (IOException ex) {
+			logger.debug("Unable to rotate image", ex);
+		}
+
+		return null;
+	}
 
-				final AffineTransformOp op = new AffineTransformOp(affineTransform, AffineTransformOp.TYPE_BICUBIC);
-				BufferedImage destinationImage = op.createCompatibleDestImage(source, ColorModel.getRGBdefault());
+	/**
+	 * Returns the format in which a thumbnail of the given image is written:
+	 * the requested format, or the format of the image if none is requested.
+	 */
+	public static Thumbnail.Format getThumbnailFormat(final Image originalImage, final String formatString) {
+
+		try {
 
-				final Graphics2D g = destinationImage.createGraphics();
-				g.setBackground(Color.WHITE);
-				g.clearRect(0, 0, destinationImage.getWidth(), destinationImage.getHeight());
+			final String imageFormatString = getImageFormatString(originalImage);
+			return formatString != null ? Thumbnail.Format.valueOf(formatString) : (imageFormatString != null ? Thumbnail.Format.valueOf(imageFormatString) : Thumbnail.defaultFormat);
+
+		} catch (IllegalArgumentException iae) {
 
-				destinationImage = op.filter(source, destinationImage);
+			logger.debug("Unsupported thumbnail format - using default");
+		}
+
+		return Thumbnail.defaultFormat;
+	}
+
+	/**
+	 * Decodes the given image and applies its EXIF orientation. The image is
+	 * decoded with source subsampling, so that the result is only as large
+	 * as needed to create thumbnails of all the given sizes in good quality.
+	 */
+	public static DecodedImage decode(final File originalImage, final Collection<ThumbnailSize> sizes) {
+
+		final int orientation = getOrientation(originalImage);
+
+		try (final InputStream is = originalImage.getInputStream(); final ImageInputStream in = ImageIO.createImageInputStream(is)) {
+
+			final Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+			if (readers != null && readers.hasNext()) {
+
+				final ImageReader reader = readers.next();
+
+				try {
+
+					reader.setInput(in, true, true);
+
+					final boolean swap   = orientation >= 5 && orientation <= 8;
+					final int rawWidth   = reader.getWidth(0);
+					final int rawHeight  = reader.getHeight(0);
+					final int width      = swap ? rawHeight : rawWidth;
+					final int height     = swap ? rawWidth  : rawHeight;
+					float minScale       = Float.MAX_VALUE;
+
+					for (final ThumbnailSize size : sizes) {
+						minScale = Math.min(minScale, getScaleRatio(width, height, size.getMaxWidth(), size.getMaxHeight(), size.isCrop()));
+					}
 
-				return destinationImage;
+					// keep at least twice the resolution of the largest thumbnail
+					final int subsampling       = Math.max(1, (int)Math.floor(minScale / 2.0f));
+					final ImageReadParam param  = reader.getDefaultReadParam();
+
+					if (subsampling > 1) {
+						param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+					}
+
+					final BufferedImage source = reader.read(0, param);
+					if (source != null) {
+
+						return new DecodedImage(rotate(source, orientation), width, height);
+					}
+
+				} finally {
+
+					reader.dispose();
+				}
 			}
 
 		} catch (IOException ex) {
-			logger.debug("Unable to rotate image", ex);
+			logger.debug("Unable to decode image", ex);
 		}
 
 		return null;
 	}
 
+	public static BufferedImage rotate(final BufferedImage source, final int orientation) {
+
+		final int sourceWidth  = source.getWidth();
+		final int sourceHeight = source.getHeight();
+
+		final AffineTransform affineTransform = new AffineTransform();
+
+		switch (orientation) {
+		case 1:
+			break;
+		case 2: // Flip X
+			affineTransform.scale(-1.0, 1.0);
+			affineTransform.translate(-sourceWidth, 0);
+			break;
+		case 3: // PI rotation
+			affineTransform.translate(sourceWidth, sourceHeight);
+			affineTransform.rotate(Math.PI);
+			break;
+		case 4: // Flip Y
+			affineTransform.scale(1.0, -1.0);
+			affineTransform.translate(0, -sourceHeight);
+			break;
+		case 5: // - PI/2 and Flip X
+			affineTransform.rotate(-Math.PI / 2);
+			affineTransform.scale(-1.0, 1.0);
+			break;
+		case 6: // -PI/2 and -width
+			affineTransform.translate(sourceHeight, 0);
+			affineTransform.rotate(Math.PI / 2);
+			break;
+		case 7: // PI/2 and Flip
+			affineTransform.scale(-1.0, 1.0);
+			affineTransform.translate(-sourceHeight, 0);
+			affineTransform.translate(0, sourceWidth);
+			affineTransform.rotate(3 * Math.PI / 2);
+			break;
+		case 8: // PI / 2
+			affineTransform.translate(0, sourceWidth);
+			affineTransform.rotate(3 * Math.PI / 2);
+			break;
+		default:
+			break;
+		}
+
+		final AffineTransformOp op = new AffineTransformOp(affineTransform, AffineTransformOp.TYPE_BICUBIC);
+		BufferedImage destinationImage = op.createCompatibleDestImage(source, ColorModel.getRGBdefault());
+
+		final Graphics2D g = destinationImage.createGraphics();
+		g.setBackground(Color.WHITE);
+		g.clearRect(0, 0, destinationImage.getWidth(), destinationImage.getHeight());
+
+		destinationImage = op.filter(source, destinationImage);
+
+		return destinationImage;
+	}
+
 	/**
 	 * Let ImageIO read and write a JPEG image. This should normalize all types of weird
 	 * image sub formats, e.g. when extracting images from a flash file.
@@ -902,6 +994,88 @@ public abstract class ImageHelper extends FileHelper {
 	}
 
 
+	/**
+	 * The requested bounding box of a thumbnail.
+	 */
+	public static class ThumbnailSize {
+
+		private final int maxWidth;
+		private final int maxHeight;
+		private final boolean crop;
+
+		public ThumbnailSize(final int maxWidth, final int maxHeight, final boolean crop) {
+
+			this.maxWidth  = maxWidth;
+			this.maxHeight = maxHeight;
+			this.crop      = crop;
+		}
+
+		public int getMaxWidth() {
+			return maxWidth;
+		}
+
+		public int getMaxHeight() {
+			return maxHeight;
+		}
+
+		public boolean isCrop() {
+			return crop;
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(maxWidth, maxHeight, crop);
+		}
+
+		@Override
+		public boolean equals(final Object other) {
+
+			if (other instanceof ThumbnailSize) {
+
+				final ThumbnailSize size = (ThumbnailSize)other;
+
+				return maxWidth == size.maxWidth && maxHeight == size.maxHeight && crop == size.crop;
+			}
+
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return maxWidth + "x" + maxHeight + (crop ? "c" : "");
+		}
+	}
+
+	/**
+	 * A decoded and rotated image together with the dimensions of the
+	 * original, which are larger if the image was decoded with subsampling.
+	 */
+	public static class DecodedImage {
+
+		private final BufferedImage image;
+		private final int width;
+		private final int height;
+
+		public DecodedImage(final BufferedImage image, final int width, final int height) {
+
+			this.image  = image;
+			this.width  = width;
+			this.height = height;
+		}
+
+		public BufferedImage getImage() {
+			return image;
+		}
+
+		public int getWidth() {
+			return width;
+		}
+
+		public int getHeight() {
+			return height;
+		}
+	}
+
 	public static class Thumbnail {
 
 
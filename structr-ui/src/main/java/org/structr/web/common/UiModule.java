@@ -24,6 +24,7 @@ import org.structr.api.service.LicenseManager;
 import org.structr.core.datasources.DataSources;
 import org.structr.core.entity.AbstractSchemaNode;
 import org.structr.core.function.Functions;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.files.url.StructrURLStreamHandlerFactory;
 import org.structr.module.StructrModule;
 import org.structr.schema.SourceFile;
@@ -39,6 +40,8 @@ import org.structr.web.function.*;
  */
 public class UiModule implements StructrModule {
 
+	private static final FilePathIndexListener pathIndexListener = new FilePathIndexListener();
+
 	static {
 
 		URL.setURLStreamHandlerFactory(new StructrURLStreamHandlerFactory());
@@ -52,6 +55,11 @@ public class UiModule implements StructrModule {
 		DataSources.put(true, "ui", "cypherDataSource",             new CypherGraphDataSource());
 		DataSources.put(true, "ui", "functionDataSource",           new FunctionDataSource());
 		DataSources.put(true, "ui", "xpathDataSource",              new XPathGraphDataSource());
+
+		TransactionCommand.registerTransactionListener(pathIndexListener);
+		TransactionCommand.registerTransactionFlag(FilePathIndex.PATHS_MODIFIED, FilePathIndexListener::affectsPath);
+
+		ContentStore.startGarbageCollector();
 	}
 
 	@Override
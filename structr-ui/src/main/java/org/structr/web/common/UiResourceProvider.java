@@ -72,6 +72,7 @@ public class UiResourceProvider implements ResourceProvider {
 		resourceMap.put(Pattern.compile("_schemaJson"), SchemaJsonResource.class);             // schema json import and export !needs to be below any type match
 		resourceMap.put(Pattern.compile("_env"), EnvResource.class);	                       // environment information
 		resourceMap.put(Pattern.compile("_runtimeEventLog"), RuntimeEventLogResource.class);   // runtime events
+		resourceMap.put(Pattern.compile("_startupTimeline"), StartupTimelineResource.class);   // startup timeline
 
 		resourceMap.put(Pattern.compile("globalSchemaMethods"),    GlobalSchemaMethodsResource.class);
 		resourceMap.put(Pattern.compile("[a-z_A-Z][a-z_A-Z0-9]*"), GlobalSchemaMethodResource.class);
@@ -81,6 +81,7 @@ import org.structr.schema.action.ActionContext;
 import org.structr.schema.action.Function;
 import org.structr.schema.action.JavaScriptSource;
 import org.structr.web.common.ClosingFileOutputStream;
+import org.structr.web.common.ContentStore;
 import org.structr.web.common.FileHelper;
 import org.structr.web.common.RenderContext;
 import org.structr.web.importer.CSVFileImportJob;
@@ -328,6 +329,9 @@ public interface File extends AbstractFile, Indexable, Linkable, JavaScriptSourc
 				if (toDelete.exists() && toDelete.isFile()) {
 
 					toDelete.delete();
+
+					// content may be shared with other files
+					ContentStore.release();
 				}
 
 			} catch (Throwable t) {
@@ -336,6 +340,16 @@ public interface File extends AbstractFile, Indexable, Linkable, JavaScriptSourc
 				logger.debug("Exception while trying to delete file {}: {}", toDelete.getPath(), t.getMessage());
 			}
 		}
+
+		try {
+
+			StructrApp.getInstance().getFulltextIndexer().removeFromFulltextIndex(thisFile.getUuid());
+
+		} catch (FrameworkException fex) {
+
+			final Logger logger = LoggerFactory.getLogger(File.class);
+			logger.warn("Unable to remove {} from fulltext index: {}", thisFile.getUuid(), fex.getMessage());
+		}
 	}
 
 	static void afterCreation(final File thisFile, final SecurityContext securityContext) throws FrameworkException {
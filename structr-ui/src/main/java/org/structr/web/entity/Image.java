@@ -48,7 +48,7 @@ import org.structr.api.schema.JsonMethod;
 import org.structr.api.schema.JsonObjectType;
 import org.structr.api.schema.JsonSchema;
 import org.structr.api.schema.JsonSchema.Cascade;
-import org.structr.web.agent.ThumbnailTask;
+import org.structr.web.agent.ThumbnailGenerator;
 import org.structr.web.common.FileHelper;
 import org.structr.web.common.ImageHelper;
 import org.structr.web.common.ImageHelper.Thumbnail;
@@ -304,7 +304,7 @@ public interface Image extends File {
 		ImageHelper.getExifData(thisImage);
 
 		// Request creation of thumbnail
-		StructrApp.getInstance().processTasks(new ThumbnailTask(thisImage.getUuid(), maxWidth, maxHeight, cropToFit));
+		ThumbnailGenerator.getInstance().request(thisImage, maxWidth, maxHeight, cropToFit);
 
 		return null;
 	}
@@ -19,13 +19,13 @@
 package org.structr.web.function;
 
 import java.io.IOException;
-import org.python.google.common.io.Files;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.app.StructrApp;
 import org.structr.core.property.PropertyKey;
 import org.structr.core.property.PropertyMap;
 import org.structr.core.property.StringProperty;
 import org.structr.schema.action.ActionContext;
+import org.structr.web.common.ContentStore;
 import org.structr.web.common.FileHelper;
 import org.structr.web.entity.File;
 
@@ -76,7 +76,7 @@ public class CopyFileContentsFunction extends UiAdvancedFunction {
 						nodeToBeReplaced.afterCreation(nodeToBeReplaced.getSecurityContext());
 					}
 
-					Files.copy(fileToCopy, fileToBeReplaced);
+					ContentStore.copy(fileToCopy, fileToBeReplaced, nodeToCopy.getChecksum());
 
 					final PropertyKey<Integer> versionKey = StructrApp.key(File.class, "version");
 					final PropertyKey<Long> checksumKey   = StructrApp.key(File.class, "checksum");
@@ -57,7 +57,7 @@ public class SendEventFunction extends UiAdvancedFunction {
 
 			if (sources[2] instanceof User) {
 
-				return EventSourceServlet.sendEvent(name, message, (User)sources[1]);
+				return EventSourceServlet.sendEvent(name, message, (User)sources[2]);
 
 			} else if (sources[2] instanceof Group) {
 
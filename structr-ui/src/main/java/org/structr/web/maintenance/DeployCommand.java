@@ -115,6 +115,7 @@ import org.structr.web.entity.dom.Page;
 import org.structr.web.entity.dom.ShadowDocument;
 import org.structr.web.entity.dom.Template;
 import org.structr.web.maintenance.deploy.ComponentImportVisitor;
+import org.structr.web.maintenance.deploy.DeploymentManifest;
 import org.structr.web.maintenance.deploy.FileImportVisitor;
 import org.structr.web.maintenance.deploy.ImportFailureException;
 import org.structr.web.maintenance.deploy.PageImportVisitor;
@@ -149,6 +150,8 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 	private final static String DEPLOYMENT_SCHEMA_COMMENT_ATTRIBUTE_KEY  = "comment";
 	private final static String DEPLOYMENT_SCHEMA_COMMENT_SUFFIX         = ".comment";
 
+	private final static String DEPLOYMENT_STATE_FILE = "deployment-state.json";
+
 	static {
 
 		MaintenanceParameterResource.registerMaintenanceCommand("deploy", DeployCommand.class);
@@ -257,6 +260,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			customHeaders.put("start", new Date(startTime).toString());
 
 			final boolean extendExistingApp = isTrue(attributes.get("extendExistingApp"));
+			final boolean incremental       = isTrue(attributes.get("incremental"));
 			final String path               = (String) attributes.get("source");
 			final SecurityContext ctx       = SecurityContext.getSuperUserInstance();
 			final App app                   = StructrApp.getInstance(ctx);
@@ -300,6 +304,37 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 			logger.info("Importing from '{}'", path);
 
+			final Path stateFile = Paths.get(Settings.getBasePath()).resolve(DEPLOYMENT_STATE_FILE);
+
+			DeploymentManifest lastManifest = null;
+			DeploymentManifest manifest     = null;
+
+			if (incremental) {
+
+				try {
+
+					lastManifest = DeploymentManifest.read(stateFile);
+					manifest     = new DeploymentManifest();
+
+					logger.info("Incremental import, comparing {} with the last deployed state", path);
+					publishProgressMessage(DEPLOYMENT_IMPORT_STATUS, "Comparing with last deployed state");
+
+					manifest.scan(source, lastManifest, DeploymentManifest.read(source.resolve(DeploymentManifest.FILE_NAME)));
+
+				} catch (IOException ioex) {
+
+					logger.warn("Unable to compare {} with the last deployed state, importing everything: {}", path, ioex.getMessage());
+
+					lastManifest = null;
+					manifest     = null;
+				}
+
+			} else {
+
+				// a full import invalidates the state of previous incremental imports
+				Files.deleteIfExists(stateFile);
+			}
+
 			// read deployment.conf (file containing information about deployment export)
 			final Path deploymentConfFile            = source.resolve("deployment.conf");
 			final Map<String, String> deploymentConf = readDeploymentConfigurationFile(deploymentConfFile);
@@ -359,7 +394,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 			// read grants.json
 			final Path grantsMetadataFile = source.resolve("security/grants.json");
-			if (Files.exists(grantsMetadataFile)) {
+			if (Files.exists(grantsMetadataFile) && !isUnchangedSinceLastDeployment(manifest, lastManifest, "Resource access grants", "security/grants.json")) {
 
 				logger.info("Reading {}", grantsMetadataFile);
 				publishProgressMessage(DEPLOYMENT_IMPORT_STATUS, "Importing resource access grants");
@@ -369,7 +404,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 			// read schema-methods.json
 			final Path schemaMethodsMetadataFile = source.resolve("schema-methods.json");
-			if (Files.exists(schemaMethodsMetadataFile)) {
+			if (Files.exists(schemaMethodsMetadataFile) && !isUnchangedSinceLastDeployment(manifest, lastManifest, "Schema methods", "schema-methods.json")) {
 
 				logger.info("Reading {}", schemaMethodsMetadataFile);
 				final String title = "Deprecation warning";
@@ -383,7 +418,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 			// read mail-templates.json
 			final Path mailTemplatesMetadataFile = source.resolve("mail-templates.json");
-			if (Files.exists(mailTemplatesMetadataFile)) {
+			if (Files.exists(mailTemplatesMetadataFile) && !isUnchangedSinceLastDeployment(manifest, lastManifest, "Mail templates", "mail-templates.json", "mail-templates/")) {
 
 				logger.info("Reading {}", mailTemplatesMetadataFile);
 				publishProgressMessage(DEPLOYMENT_IMPORT_STATUS, "Importing mail templates");
@@ -412,7 +447,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 			// read widgets.json
 			final Path widgetsMetadataFile = source.resolve("widgets.json");
-			if (Files.exists(widgetsMetadataFile)) {
+			if (Files.exists(widgetsMetadataFile) && !isUnchangedSinceLastDeployment(manifest, lastManifest, "Widgets", "widgets.json")) {
 
 				logger.info("Reading {}", widgetsMetadataFile);
 				publishProgressMessage(DEPLOYMENT_IMPORT_STATUS, "Importing widgets");
@@ -422,7 +457,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 			// read localizations.json
 			final Path localizationsMetadataFile = source.resolve("localizations.json");
-			if (Files.exists(localizationsMetadataFile)) {
+			if (Files.exists(localizationsMetadataFile) && !isUnchangedSinceLastDeployment(manifest, lastManifest, "Localizations", "localizations.json")) {
 
 				final PropertyMap additionalData = new PropertyMap();
 
@@ -439,7 +474,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 			// read application-configuration-data.json
 			final Path applicationConfigurationDataMetadataFile = source.resolve("application-configuration-data.json");
-			if (Files.exists(applicationConfigurationDataMetadataFile)) {
+			if (Files.exists(applicationConfigurationDataMetadataFile) && !isUnchangedSinceLastDeployment(manifest, lastManifest, "Application configuration data", "application-configuration-data.json")) {
 
 				logger.info("Reading {}", applicationConfigurationDataMetadataFile);
 				publishProgressMessage(DEPLOYMENT_IMPORT_STATUS, "Importing application configuration data");
@@ -453,6 +488,14 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 				logger.info("Reading {}", filesMetadataFile);
 				filesMetadata.putAll(readMetadataFileIntoMap(filesMetadataFile));
+
+				if (manifest != null) {
+
+					// metadata of individual files and folders
+					for (final Map.Entry<String, Object> entry : filesMetadata.entrySet()) {
+						manifest.put("files.json:" + entry.getKey(), DeploymentManifest.hash(getGson().toJson(entry.getValue())));
+					}
+				}
 			}
 
 			// read pages.json
@@ -481,7 +524,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 			// import schema
 			final Path schemaFolder = source.resolve("schema");
-			if (Files.exists(schemaFolder)) {
+			if (Files.exists(schemaFolder) && !isUnchangedSinceLastDeployment(manifest, lastManifest, "Schema", "schema/")) {
 
 				try {
 
@@ -510,6 +553,11 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 					publishProgressMessage(DEPLOYMENT_IMPORT_STATUS, "Importing files");
 
 					FileImportVisitor fiv = new FileImportVisitor(ctx, files, filesMetadata);
+
+					if (manifest != null) {
+						fiv.setManifests(manifest, lastManifest);
+					}
+
 					Files.walkFileTree(files, fiv);
 					fiv.handleDeferredFiles();
 
@@ -542,10 +590,17 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			final Path pages      = source.resolve("pages");
 			final Path sitesConfFile = source.resolve("sites.json");
 
+			// pages, shared components and templates reference each other, so they can only be imported as a whole
+			final boolean domUnchanged = isUnchangedSinceLastDeployment(manifest, lastManifest, "Pages, templates and components", "pages/", "components/", "templates/", "pages.json", "components.json", "templates.json", "sites.json");
+
 			// remove all DOMNodes from the database (clean webapp for import, but only
 			// if the actual import directories exist, don't delete web components if
 			// an empty directory was specified accidentially).
-			if (!extendExistingApp && Files.exists(templates) && Files.exists(components) && Files.exists(pages)) {
+			if (domUnchanged) {
+
+				logger.info("Pages, templates and components are unchanged, NOT removing any data.");
+
+			} else if (!extendExistingApp && Files.exists(templates) && Files.exists(components) && Files.exists(pages)) {
 
 				try (final Tx tx = app.tx()) {
 
@@ -575,7 +630,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			}
 
 			// import templates, must be done before pages so the templates exist
-			if (Files.exists(templates)) {
+			if (Files.exists(templates) && !domUnchanged) {
 
 				try {
 
@@ -593,7 +648,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			CreateComponentCommand.getOrCreateHiddenDocument();
 
 			// import components, must be done before pages so the shared components exist
-			if (Files.exists(components)) {
+			if (Files.exists(components) && !domUnchanged) {
 
 				try {
 
@@ -624,7 +679,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			}
 
 			// import pages
-			if (Files.exists(pages)) {
+			if (Files.exists(pages) && !domUnchanged) {
 
 				try {
 
@@ -639,7 +694,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			}
 
 			// import sites
-			if (Files.exists(sitesConfFile)) {
+			if (Files.exists(sitesConfFile) && !domUnchanged) {
 
 				logger.info("Importing sites");
 				publishProgressMessage(DEPLOYMENT_IMPORT_STATUS, "Importing sites");
@@ -733,6 +788,12 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			customHeaders.put("end", new Date(endTime).toString());
 			customHeaders.put("duration", duration);
 
+			if (manifest != null) {
+
+				// store the state of this import as the base for the next incremental import
+				manifest.write(stateFile);
+			}
+
 			logger.info("Import from {} done. (Took {})", source.toString(), duration);
 
 			broadcastData.put("end", endTime);
@@ -763,7 +824,8 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			throw new FrameworkException(422, "Please provide target path for deployment export.");
 		}
 
-		final Path target  = Paths.get(path);
+		final Path target         = Paths.get(path);
+		final boolean incremental = isTrue(attributes.get("incremental"));
 
 		if (target.isAbsolute() != true) {
 
@@ -784,6 +846,10 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 			Files.createDirectories(target);
 
+			final Path manifestFile = target.resolve(DeploymentManifest.FILE_NAME);
+
+			final ExportManifests manifests = new ExportManifests(target, incremental ? new DeploymentManifest() : null, incremental ? DeploymentManifest.read(manifestFile) : null);
+
 			final Path components          = Files.createDirectories(target.resolve("components"));
 			final Path files               = Files.createDirectories(target.resolve("files"));
 			final Path pages               = Files.createDirectories(target.resolve("pages"));
@@ -807,28 +873,28 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			writeDeploymentConfigurationFile(deploymentConfFile);
 
 			publishProgressMessage(DEPLOYMENT_EXPORT_STATUS, "Exporting Files");
-			exportFiles(files, filesConf);
+			exportFiles(manifests, files, filesConf);
 
 			publishProgressMessage(DEPLOYMENT_EXPORT_STATUS, "Exporting Sites");
 			exportSites(sitesConf);
 
 			publishProgressMessage(DEPLOYMENT_EXPORT_STATUS, "Exporting Pages");
-			exportPages(pages, pagesConf);
+			exportPages(manifests, pages, pagesConf);
 
 			publishProgressMessage(DEPLOYMENT_EXPORT_STATUS, "Exporting Components");
-			exportComponents(components, componentsConf);
+			exportComponents(manifests, components, componentsConf);
 
 			publishProgressMessage(DEPLOYMENT_EXPORT_STATUS, "Exporting Templates");
-			exportTemplates(templates, templatesConf);
+			exportTemplates(manifests, templates, templatesConf);
 
 			publishProgressMessage(DEPLOYMENT_EXPORT_STATUS, "Exporting Resource Access Grants");
 			exportResourceAccessGrants(grantsConf);
 
 			publishProgressMessage(DEPLOYMENT_EXPORT_STATUS, "Exporting Schema");
-			exportSchema(schemaFolder);
+			exportSchema(manifests, schemaFolder);
 
 			publishProgressMessage(DEPLOYMENT_EXPORT_STATUS, "Exporting Mail Templates");
-			exportMailTemplates(mailTemplatesConf, mailTemplatesFolder);
+			exportMailTemplates(manifests, mailTemplatesConf, mailTemplatesFolder);
 
 			publishProgressMessage(DEPLOYMENT_EXPORT_STATUS, "Exporting Localizations");
 			exportLocalizations(localizationsConf);
@@ -852,6 +918,21 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 			}
 
+			if (manifests.manifest != null) {
+
+				// remove files that were not part of this export, then record everything else
+				for (final Path folder : new Path[] { pages, components, templates, schemaFolder }) {
+					deleteUnexportedFiles(manifests, folder);
+				}
+
+				manifests.manifest.scan(target, manifests.lastManifest);
+				manifests.manifest.write(manifestFile);
+
+			} else {
+
+				Files.deleteIfExists(manifestFile);
+			}
+
 			// config import order is "users, grants, pages, components, templates"
 			// data import order is "schema, files, templates, components, pages"
 
@@ -876,7 +957,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 		}
 	}
 
-	private void exportFiles(final Path target, final Path configTarget) throws FrameworkException {
+	private void exportFiles(final ExportManifests manifests, final Path target, final Path configTarget) throws FrameworkException {
 
 		logger.info("Exporting files (unchanged files will be skipped)");
 
@@ -890,7 +971,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 			// fetch toplevel folders and recurse
 			for (final Folder folder : app.nodeQuery(Folder.class).and(parentKey, null).sort(Folder.name).and(inclKey, true).getAsList()) {
-				exportFilesAndFolders(target, folder, config);
+				exportFilesAndFolders(manifests, target, folder, config);
 			}
 
 			// fetch toplevel files that are marked for export or for use as a javascript library
@@ -902,7 +983,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 					.or(jsKey, true)
 				.getAsList()) {
 
-				exportFile(target, file, config);
+				exportFile(manifests, target, file, config);
 			}
 
 			tx.success();
@@ -914,7 +995,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 		writeJsonToFile(configTarget, config);
 	}
 
-	private void exportFilesAndFolders(final Path target, final Folder folder, final Map<String, Object> config) throws IOException {
+	private void exportFilesAndFolders(final ExportManifests manifests, final Path target, final Folder folder, final Map<String, Object> config) throws IOException {
 
 		// ignore folders with mounted content
 		if (folder.isMounted()) {
@@ -938,18 +1019,18 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 		Collections.sort(folders, AbstractNode.name.sorted(false));
 
 		for (final Folder child : folders) {
-			exportFilesAndFolders(path, child, config);
+			exportFilesAndFolders(manifests, path, child, config);
 		}
 
 		final List<File> files = Iterables.toList(folder.getFiles());
 		Collections.sort(files, AbstractNode.name.sorted(false));
 
 		for (final File file : files) {
-			exportFile(path, file, config);
+			exportFile(manifests, path, file, config);
 		}
 	}
 
-	private void exportFile(final Path target, final File file, final Map<String, Object> config) throws IOException {
+	private void exportFile(final ExportManifests manifests, final Path target, final File file, final Map<String, Object> config) throws IOException {
 
 		final Map<String, Object> properties = new TreeMap<>();
 		final String name                    = file.getName();
@@ -957,7 +1038,14 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 		Path targetPath                      = target.resolve(name);
 		boolean doExport                     = true;
 
-		if (Files.exists(targetPath)) {
+		final String key                     = manifests.manifest != null ? DeploymentManifest.key(manifests.root, targetPath) : null;
+
+		if (manifests.lastManifest != null && manifests.lastManifest.isUnchanged(key, file.getChecksum(), targetPath)) {
+
+			// unchanged since the last incremental export, no need to read the file
+			doExport = false;
+
+		} else if (Files.exists(targetPath)) {
 
 			// compare checksum
 			final Long checksumOfExistingFile = FileHelper.getChecksum(targetPath.toFile());
@@ -976,6 +1064,10 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			}
 		}
 
+		if (manifests.manifest != null && file.getChecksum() != null && Files.exists(targetPath)) {
+			manifests.manifest.put(key, file.getChecksum(), targetPath);
+		}
+
 		exportFileConfiguration(file, properties);
 
 		if (!properties.isEmpty()) {
@@ -1019,12 +1111,12 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 		writeJsonToFile(target, sites);
 	}
 
-	private void exportPages(final Path targetFolder, final Path configTarget) throws FrameworkException {
+	private void exportPages(final ExportManifests manifests, final Path targetFolder, final Path configTarget) throws FrameworkException {
 
 		logger.info("Exporting pages");
 
 		try {
-			deleteDirectoryContentsRecursively(targetFolder);
+			cleanExportDirectory(manifests, targetFolder);
 		} catch (IOException ioe) {
 			logger.warn("Unable to clean up {}: {}", targetFolder, ioe.getMessage());
 		}
@@ -1049,7 +1141,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 						exportConfiguration(page, properties);
 						exportOwnershipAndSecurity(page, properties);
 
-						writeStringToFile(pageFile, content);
+						writeStringToFile(manifests, pageFile, content);
 					}
 				}
 			}
@@ -1060,12 +1152,12 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 		writeJsonToFile(configTarget, pagesConfig);
 	}
 
-	private void exportComponents(final Path targetFolder, final Path configTarget) throws FrameworkException {
+	private void exportComponents(final ExportManifests manifests, final Path targetFolder, final Path configTarget) throws FrameworkException {
 
 		logger.info("Exporting components");
 
 		try {
-			deleteDirectoryContentsRecursively(targetFolder);
+			cleanExportDirectory(manifests, targetFolder);
 		} catch (IOException ioe) {
 			logger.warn("Unable to clean up {}: {}", targetFolder, ioe.getMessage());
 		}
@@ -1090,7 +1182,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 					final String content = node.getContent(RenderContext.EditMode.DEPLOYMENT);
 
-					exportContentElementSource(targetFolder, node, configuration, content);
+					exportContentElementSource(manifests, targetFolder, node, configuration, content);
 				}
 			}
 
@@ -1100,12 +1192,12 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 		writeJsonToFile(configTarget, configuration);
 	}
 
-	private void exportTemplates(final Path targetFolder, final Path configTarget) throws FrameworkException {
+	private void exportTemplates(final ExportManifests manifests, final Path targetFolder, final Path configTarget) throws FrameworkException {
 
 		logger.info("Exporting templates");
 
 		try {
-			deleteDirectoryContentsRecursively(targetFolder);
+			cleanExportDirectory(manifests, targetFolder);
 		} catch (IOException ioe) {
 			logger.warn("Unable to clean up {}: {}", targetFolder, ioe.getMessage());
 		}
@@ -1127,7 +1219,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 				final String content = template.getProperty(StructrApp.key(Template.class, "content"));
 
-				exportContentElementSource(targetFolder, template, configuration, content);
+				exportContentElementSource(manifests, targetFolder, template, configuration, content);
 			}
 
 			tx.success();
@@ -1139,7 +1231,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 	/**
 	 * Consolidated export method for Content and Template
 	 */
-	private void exportContentElementSource(final Path targetFolder, final DOMNode node, final Map<String, Object> configuration, final String content) throws FrameworkException {
+	private void exportContentElementSource(final ExportManifests manifests, final Path targetFolder, final DOMNode node, final Map<String, Object> configuration, final String content) throws FrameworkException {
 
 		if (content != null) {
 
@@ -1160,7 +1252,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			configuration.put(name, properties);
 			exportConfiguration(node, properties);
 
-			writeStringToFile(targetFile, content);
+			writeStringToFile(manifests, targetFile, content);
 		}
 	}
 
@@ -1189,14 +1281,14 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 		writeSortedCompactJsonToFile(target, grants, null);
 	}
 
-	private void exportSchema(final Path targetFolder) throws FrameworkException {
+	private void exportSchema(final ExportManifests manifests, final Path targetFolder) throws FrameworkException {
 
 		logger.info("Exporting schema");
 
 		try {
 
 			// first delete all contents of the schema directory
-			deleteDirectoryContentsRecursively(targetFolder);
+			cleanExportDirectory(manifests, targetFolder);
 
 			final StructrSchemaDefinition schema = (StructrSchemaDefinition)StructrSchema.createFromDatabase(StructrApp.getInstance());
 
@@ -1225,18 +1317,18 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 						schemaMethod.put(DEPLOYMENT_SCHEMA_SOURCE_ATTRIBUTE_KEY, relativeSourceFilePath);
 						schemaMethod.put(DEPLOYMENT_SCHEMA_COMMENT_ATTRIBUTE_KEY, relativeCommentFilePath);
 
-						if (Files.exists(globalMethodSourceFile)) {
+						if (isExported(manifests, globalMethodSourceFile)) {
 							logger.warn("File '{}' already exists - this can happen if there is a non-unique global method definition. This is not supported in tree-based schema export and will causes errors!", relativeSourceFilePath);
 						}
-						if (Files.exists(globalMethodCommentFile)) {
+						if (isExported(manifests, globalMethodCommentFile)) {
 							logger.warn("File '{}' already exists - this can happen if there is a non-unique global method definition. This is not supported in tree-based schema export and will causes errors!", relativeCommentFilePath);
 						}
 
 						if (methodSource != null) {
-							writeStringToFile(globalMethodSourceFile, methodSource);
+							writeStringToFile(manifests, globalMethodSourceFile, methodSource);
 						}
 						if (methodComment != null) {
-							writeStringToFile(globalMethodCommentFile, methodComment);
+							writeStringToFile(manifests, globalMethodCommentFile, methodComment);
 						}
 					}
 				}
@@ -1271,7 +1363,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 								final String readFunction    = fp.getReadFunction();
 
 								if (readFunction != null) {
-									writeStringToFile(readFunctionFile, readFunction);
+									writeStringToFile(manifests, readFunctionFile, readFunction);
 									fp.setReadFunction("./" + targetFolder.relativize(readFunctionFile).toString());
 								}
 
@@ -1279,7 +1371,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 								final String writeFunction   = fp.getWriteFunction();
 
 								if (writeFunction != null) {
-									writeStringToFile(writeFunctionFile, writeFunction);
+									writeStringToFile(manifests, writeFunctionFile, writeFunction);
 									fp.setWriteFunction("./" + targetFolder.relativize(writeFunctionFile).toString());
 								}
 							}
@@ -1301,12 +1393,12 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 								final Path methodCommentFile = methodsFolder.resolve(methodName + DEPLOYMENT_SCHEMA_COMMENT_SUFFIX);
 
 								if (methodSource != null) {
-									writeStringToFile(methodSourceFile, methodSource);
+									writeStringToFile(manifests, methodSourceFile, methodSource);
 									method.setSource("./" + targetFolder.relativize(methodSourceFile).toString());
 								}
 
 								if (methodComment != null) {
-									writeStringToFile(methodCommentFile, methodComment);
+									writeStringToFile(manifests, methodCommentFile, methodComment);
 									method.setComment("./" + targetFolder.relativize(methodCommentFile).toString());
 								}
 							}
@@ -1317,7 +1409,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 
 			final Path schemaJson = targetFolder.resolve("schema.json");
 
-			writeStringToFile(schemaJson, schema.toString());
+			writeStringToFile(manifests, schemaJson, schema.toString());
 
 		} catch (Throwable t) {
 			logger.error(ExceptionUtils.getStackTrace(t));
@@ -1530,7 +1622,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 		}
 	}
 
-	private void exportMailTemplates(final Path targetConf, final Path targetFolder) throws FrameworkException {
+	private void exportMailTemplates(final ExportManifests manifests, final Path targetConf, final Path targetFolder) throws FrameworkException {
 
 		logger.info("Exporting mail templates");
 
@@ -1567,7 +1659,7 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 					putData(entry, "visibleToPublicUsers",        mailTemplate.getProperty(MailTemplate.visibleToPublicUsers));
 
 					final Path mailTemplateFile = targetFolder.resolve(filename);
-					writeStringToFile(mailTemplateFile, mailTemplate.getProperty(textKey));
+					writeStringToFile(manifests, mailTemplateFile, mailTemplate.getProperty(textKey));
 				}
 
 				tx.success();
@@ -2084,21 +2176,100 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 		Files.delete(path);
 	}
 
-	private void writeStringToFile(final Path path, final String string) {
+	private void writeStringToFile(final ExportManifests manifests, final Path path, final String string) {
+
+		final boolean recordHash = manifests.manifest != null && path.startsWith(manifests.root);
+		final String key         = recordHash ? DeploymentManifest.key(manifests.root, path) : null;
+		final long hash          = recordHash ? DeploymentManifest.hash((string != null ? string : "").getBytes(Charset.defaultCharset())) : 0L;
+
+		try {
+
+			// leave files untouched if their content did not change since the last incremental export
+			if (!recordHash || manifests.lastManifest == null || !manifests.lastManifest.isUnchanged(key, hash, path)) {
 
-		try (final Writer writer = new FileWriter(path.toFile())) {
+				try (final Writer writer = new FileWriter(path.toFile())) {
 
-			if (string != null) {
-				writer.write(string);
+					if (string != null) {
+						writer.write(string);
+					}
+					writer.flush();
+				}
+			}
+
+			if (recordHash) {
+				manifests.manifest.put(key, hash, path);
 			}
-			writer.flush();
-			writer.close();
 
 		} catch (IOException ioex) {
 			logger.warn("", ioex);
 		}
 	}
 
+	/**
+	 * Removes all contents of the given export directory. Incremental exports
+	 * keep the contents and remove unexported files afterwards instead.
+	 */
+	private void cleanExportDirectory(final ExportManifests manifests, final Path path) throws IOException {
+
+		if (manifests.manifest == null) {
+			deleteDirectoryContentsRecursively(path);
+		}
+	}
+
+	private boolean isExported(final ExportManifests manifests, final Path path) {
+
+		if (manifests.manifest != null && path.startsWith(manifests.root)) {
+			return manifests.manifest.contains(DeploymentManifest.key(manifests.root, path));
+		}
+
+		return Files.exists(path);
+	}
+
+	private void deleteUnexportedFiles(final ExportManifests manifests, final Path path) throws IOException {
+
+		if (Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(path)) {
+
+				for (Path entry : entries) {
+
+					if (Files.isDirectory(entry, LinkOption.NOFOLLOW_LINKS)) {
+
+						deleteUnexportedFiles(manifests, entry);
+
+						try (DirectoryStream<Path> children = Files.newDirectoryStream(entry)) {
+
+							if (!children.iterator().hasNext()) {
+								Files.delete(entry);
+							}
+						}
+
+					} else if (!manifests.manifest.contains(DeploymentManifest.key(manifests.root, entry))) {
+
+						Files.delete(entry);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Indicates whether the given artifacts are identical to the last deployed
+	 * state in an incremental import, in which case they are not imported again.
+	 */
+	private boolean isUnchangedSinceLastDeployment(final DeploymentManifest manifest, final DeploymentManifest lastManifest, final String description, final String... prefixes) {
+
+		if (manifest != null && lastManifest != null && manifest.isUnchanged(lastManifest, prefixes)) {
+
+			logger.info("{} unchanged since last deployment, skipping.", description);
+			publishProgressMessage(DEPLOYMENT_IMPORT_STATUS, description + " unchanged, skipping");
+
+			return true;
+		}
+
+		return false;
+	}
+
 	protected void writeJsonToFile(final Path path, final Object data) {
 
 		try (final Writer fos = new OutputStreamWriter(new FileOutputStream(path.toFile()))) {
@@ -2209,4 +2380,22 @@ public class DeployCommand extends NodeServiceCommand implements MaintenanceComm
 			return o1.compareTo(o2);
 		}
 	}
+
+	/**
+	 * The manifests of a single export. The manifest is only set for
+	 * incremental exports, the last manifest only if there was one.
+	 */
+	private static class ExportManifests {
+
+		private final DeploymentManifest lastManifest;
+		private final DeploymentManifest manifest;
+		private final Path root;
+
+		public ExportManifests(final Path root, final DeploymentManifest manifest, final DeploymentManifest lastManifest) {
+
+			this.root         = root;
+			this.manifest     = manifest;
+			this.lastManifest = lastManifest;
+		}
+	}
 }
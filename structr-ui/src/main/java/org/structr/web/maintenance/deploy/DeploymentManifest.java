@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.maintenance.deploy;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import net.openhft.hashing.LongHashFunction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.web.common.FileHelper;
+
+/**
+ * Content hashes of deployment artifacts, keyed by their path relative to
+ * the deployment root. Directories are stored with a trailing slash.
+ *
+ * Size and modification time of each file are stored alongside the hash,
+ * so that unchanged files can be recognized without reading them again.
+ */
+public class DeploymentManifest {
+
+	private static final Logger logger   = LoggerFactory.getLogger(DeploymentManifest.class.getName());
+	public static final String FILE_NAME = "deployment-manifest.json";
+
+	private final Map<String, Entry> entries = new TreeMap<>();
+
+	public static DeploymentManifest read(final Path file) {
+
+		final DeploymentManifest manifest = new DeploymentManifest();
+
+		if (Files.exists(file)) {
+
+			try (final Reader reader = Files.newBufferedReader(file, Charset.forName("utf-8"))) {
+
+				final Map<String, Map<String, Object>> data = new Gson().fromJson(reader, Map.class);
+				if (data != null) {
+
+					for (final Map.Entry<String, Map<String, Object>> entry : data.entrySet()) {
+
+						final Map<String, Object> value = entry.getValue();
+
+						manifest.entries.put(entry.getKey(), new Entry(
+							Long.parseUnsignedLong((String)value.get("hash"), 16),
+							((Number)value.get("size")).longValue(),
+							((Number)value.get("modified")).longValue()
+						));
+					}
+				}
+
+			} catch (IOException | JsonParseException | ClassCastException | NullPointerException | NumberFormatException ex) {
+
+				logger.warn("Unable to read deployment manifest {}, ignoring: {}", file, ex.getMessage());
+				manifest.entries.clear();
+			}
+		}
+
+		return manifest;
+	}
+
+	public void write(final Path file) {
+
+		final Map<String, Object> data = new TreeMap<>();
+
+		for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+
+			final Map<String, Object> value = new LinkedHashMap<>();
+			final Entry e                   = entry.getValue();
+
+			value.put("hash",     Long.toHexString(e.hash));
+			value.put("size",     e.size);
+			value.put("modified", e.modified);
+
+			data.put(entry.getKey(), value);
+		}
+
+		try (final Writer writer = Files.newBufferedWriter(file, Charset.forName("utf-8"))) {
+
+			new GsonBuilder().setPrettyPrinting().create().toJson(data, writer);
+
+		} catch (IOException ioex) {
+			logger.warn("Unable to write deployment manifest {}: {}", file, ioex.getMessage());
+		}
+	}
+
+	public boolean contains(final String key) {
+		return entries.containsKey(key);
+	}
+
+	/**
+	 * Stores the hash of an artifact that has no file of its own.
+	 */
+	public void put(final String key, final long hash) {
+		entries.put(key, new Entry(hash, -1L, -1L));
+	}
+
+	/**
+	 * Stores the hash of the given file together with its current size
+	 * and modification time.
+	 */
+	public void put(final String key, final long hash, final Path file) throws IOException {
+
+		final BasicFileAttributes attrs = Files.readAttributes(file, BasicFileAttributes.class);
+
+		entries.put(key, new Entry(hash, attrs.size(), attrs.lastModifiedTime().toMillis()));
+	}
+
+	/**
+	 * Indicates whether the given file still has the given hash according
+	 * to this manifest, judged by its size and modification time only.
+	 */
+	public boolean isUnchanged(final String key, final Long hash, final Path file) throws IOException {
+
+		final Entry entry = entries.get(key);
+		if (hash != null && entry != null && entry.hash == hash && Files.exists(file)) {
+
+			return entry.matches(Files.readAttributes(file, BasicFileAttributes.class));
+		}
+
+		return false;
+	}
+
+	/**
+	 * Indicates whether the entry with the given key exists in both
+	 * manifests and has the same hash.
+	 */
+	public boolean isUnchanged(final DeploymentManifest other, final String key) {
+
+		final Entry entry      = entries.get(key);
+		final Entry otherEntry = other.entries.get(key);
+
+		return entry != null && otherEntry != null && entry.hash == otherEntry.hash;
+	}
+
+	/**
+	 * Indicates whether the set of entries whose keys start with one of the
+	 * given prefixes is identical in both manifests.
+	 */
+	public boolean isUnchanged(final DeploymentManifest other, final String... prefixes) {
+		return select(prefixes).equals(other.select(prefixes));
+	}
+
+	/**
+	 * Adds all files and directories below the given root that are not
+	 * contained in this manifest yet. Hashes are taken from the given
+	 * manifests if size and modification time of a file are unchanged,
+	 * all other files are read.
+	 */
+	public void scan(final Path root, final DeploymentManifest... caches) throws IOException {
+
+		Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
+
+				if (!root.equals(dir)) {
+
+					final String key = key(root, dir) + "/";
+					if (!entries.containsKey(key)) {
+
+						put(key, 0L);
+					}
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+
+				final String key = key(root, file);
+
+				if (attrs.isRegularFile() && !FILE_NAME.equals(key) && !entries.containsKey(key)) {
+
+					Entry cached = null;
+
+					for (final DeploymentManifest cache : caches) {
+
+						final Entry entry = cache.entries.get(key);
+						if (entry != null && entry.matches(attrs)) {
+
+							cached = entry;
+							break;
+						}
+					}
+
+					if (cached != null) {
+
+						entries.put(key, cached);
+
+					} else {
+
+						final Long hash = FileHelper.getChecksum(file.toFile());
+						if (hash != null) {
+
+							entries.put(key, new Entry(hash, attrs.size(), attrs.lastModifiedTime().toMillis()));
+						}
+					}
+				}
+
+				return FileVisitResult.CONTINUE;
+			}
+		});
+	}
+
+	public static String key(final Path root, final Path path) {
+		return root.relativize(path).toString().replace('\\', '/');
+	}
+
+	public static long hash(final String content) {
+		return LongHashFunction.xx().hashChars(content);
+	}
+
+	/**
+	 * Returns the same hash as FileHelper.getChecksum() for a file with the given content.
+	 */
+	public static long hash(final byte[] content) {
+		return LongHashFunction.xx().hashBytes(content);
+	}
+
+	// ----- private methods -----
+	private Map<String, Long> select(final String... prefixes) {
+
+		final Map<String, Long> result = new TreeMap<>();
+
+		for (final Map.Entry<String, Entry> entry : entries.entrySet()) {
+
+			final String key = entry.getKey();
+
+			for (final String prefix : prefixes) {
+
+				if (key.startsWith(prefix)) {
+
+					result.put(key, entry.getValue().hash);
+					break;
+				}
+			}
+		}
+
+		return result;
+	}
+
+	// ----- nested classes -----
+	private static class Entry {
+
+		private final long modified;
+		private final long hash;
+		private final long size;
+
+		public Entry(final long hash, final long size, final long modified) {
+
+			this.hash     = hash;
+			this.size     = size;
+			this.modified = modified;
+		}
+
+		public boolean matches(final BasicFileAttributes attrs) {
+			return size >= 0 && size == attrs.size() && modified == attrs.lastModifiedTime().toMillis();
+		}
+	}
+}
@@ -64,6 +64,8 @@ public class FileImportVisitor implements FileVisitor<Path> {
 	private App app                         = null;
 	private List<File> deferredFiles        = null;
 	private Map<String, Folder> folderCache = null;
+	private DeploymentManifest manifest     = null;
+	private DeploymentManifest lastDeployed = null;
 
 	public FileImportVisitor(final SecurityContext securityContext, final Path basePath, final Map<String, Object> metadata) {
 
@@ -78,7 +80,7 @@ public class FileImportVisitor implements FileVisitor<Path> {
 	@Override
 	public FileVisitResult preVisitDirectory(final Path dir, final BasicFileAttributes attrs) throws IOException {
 
-		if (!basePath.equals(dir)) {
+		if (!basePath.equals(dir) && !isUnchanged(dir, "/")) {
 			createFolder(dir);
 		}
 
@@ -88,7 +90,7 @@ public class FileImportVisitor implements FileVisitor<Path> {
 	@Override
 	public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
 
-		if (attrs.isRegularFile()) {
+		if (attrs.isRegularFile() && !isUnchanged(file, "")) {
 
 			createFile(file, file.getFileName().toString());
 		}
@@ -108,6 +110,16 @@ public class FileImportVisitor implements FileVisitor<Path> {
 		return FileVisitResult.CONTINUE;
 	}
 
+	/**
+	 * Enables incremental import: files and folders whose content and
+	 * metadata did not change since the last deployment are skipped.
+	 */
+	public void setManifests(final DeploymentManifest manifest, final DeploymentManifest lastDeployed) {
+
+		this.manifest     = manifest;
+		this.lastDeployed = lastDeployed;
+	}
+
 	public void handleDeferredFiles() {
 
 		final Class<Relation> relType          = StructrApp.getConfiguration().getRelationshipEntityClass("AbstractMinifiedFileMINIFICATIONFile");
@@ -154,6 +166,22 @@ public class FileImportVisitor implements FileVisitor<Path> {
 	}
 
 	// ----- private methods -----
+	private boolean isUnchanged(final Path path, final String suffix) {
+
+		if (manifest != null && lastDeployed != null) {
+
+			final String relativePath = DeploymentManifest.key(basePath, path);
+			final String metadataKey  = "files.json:/" + relativePath;
+
+			// files without metadata are unchanged if they had no metadata before either
+			final boolean sameMetadata = manifest.contains(metadataKey) ? manifest.isUnchanged(lastDeployed, metadataKey) : !lastDeployed.contains(metadataKey);
+
+			return sameMetadata && manifest.isUnchanged(lastDeployed, "files/" + relativePath + suffix);
+		}
+
+		return false;
+	}
+
 	private Folder getExistingFolder(final String path) throws FrameworkException {
 
 		if (this.folderCache.containsKey(path)) {
@@ -18,26 +18,20 @@
  */
 package org.structr.web.property;
 
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.api.Predicate;
 import org.structr.api.search.Occurrence;
 import org.structr.api.search.SortType;
-import org.structr.common.PathHelper;
 import org.structr.common.SecurityContext;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.GraphObject;
-import org.structr.core.app.App;
 import org.structr.core.app.Query;
-import org.structr.core.app.StructrApp;
 import org.structr.core.graph.search.SearchAttribute;
 import org.structr.core.graph.search.SourceSearchAttribute;
 import org.structr.core.property.AbstractReadOnlyProperty;
+import org.structr.web.common.FilePathIndex;
 import org.structr.web.entity.AbstractFile;
-import org.structr.web.entity.Folder;
 import org.structr.web.entity.Linkable;
 
 /**
@@ -80,8 +74,7 @@ public class PathProperty extends AbstractReadOnlyProperty<String> {
 
 		if (obj instanceof AbstractFile) {
 
-			final AbstractFile file = (AbstractFile)obj;
-			return file.getFolderPath();
+			return FilePathIndex.getPath((AbstractFile)obj);
 		}
 
 		return null;
@@ -100,14 +93,13 @@ public class PathProperty extends AbstractReadOnlyProperty<String> {
 	@Override
 	public SearchAttribute getSearchAttribute(final SecurityContext securityContext, final Occurrence occur, final String searchValue, final boolean exactMatch, final Query query) {
 
-		final App app                    = StructrApp.getInstance(securityContext);
 		final SourceSearchAttribute attr = new SourceSearchAttribute(occur);
 
 		try {
 
-			final ArrayList<String> parts = new ArrayList<>(Arrays.asList(PathHelper.getParts(searchValue)));
-			if (!parts.isEmpty()) {
-				searchRecursively(app, null, attr, parts);
+			for (final AbstractFile fileOrFolder : FilePathIndex.find(securityContext, searchValue)) {
+
+				attr.addToResult(fileOrFolder);
 			}
 
 		} catch (FrameworkException ex) {
@@ -118,24 +110,6 @@ public class PathProperty extends AbstractReadOnlyProperty<String> {
 		return attr;
 	}
 
-	private void searchRecursively(final App app, final Folder parent, final SourceSearchAttribute attr, final ArrayList<String> parts) throws FrameworkException {
-
-		final String currentPart = parts.remove(0);
-		final List<AbstractFile> res = app.nodeQuery(AbstractFile.class).and(StructrApp.key(AbstractFile.class, "parent"), (parent == null) ? null : parent).and(AbstractFile.name, currentPart).getAsList();
-
-		if (parts.isEmpty()) {
-			for (final AbstractFile fileOrFolder : res) {
-
-				attr.addToResult(fileOrFolder);
-			}
-
-		} else {
-			for (final AbstractFile folder : res) {
-				searchRecursively(app, (Folder)folder, attr, (ArrayList<String>) parts.clone());
-			}
-		}
-	}
-
 	// ----- OpenAPI -----
 	@Override
 	public Object getExampleValue(final String type, final String viewName) {
@@ -0,0 +1,515 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.servlet;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import org.eclipse.jetty.servlets.EventSource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.common.SecurityContext;
+import org.structr.core.GraphObject;
+import org.structr.core.StructrTransactionListener;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Group;
+import org.structr.core.entity.Principal;
+import org.structr.core.graph.ModificationEvent;
+import org.structr.core.property.PropertyKey;
+import org.structr.core.property.PropertyMap;
+
+/**
+ * Registry of open event source connections, indexed by session ID and by
+ * the principal that owns the session. Events are put into a bounded queue
+ * per connection and sent asynchronously, so the sending thread never
+ * blocks on slow clients. Recent events are kept in a ring buffer and are
+ * replayed to clients that reconnect with a Last-Event-ID header.
+ *
+ * The registry listens to transactions to keep the principal index in sync
+ * with the sessionIds of principals and to invalidate the cached group
+ * memberships.
+ */
+public class EventSourceRegistry implements StructrTransactionListener {
+
+	private static final Logger logger                     = LoggerFactory.getLogger(EventSourceRegistry.class);
+
+	private final Set<Connection> connections              = ConcurrentHashMap.newKeySet();
+	private final Set<Connection> anonymous                = ConcurrentHashMap.newKeySet();
+	private final Map<String, Set<Connection>> sessions    = new ConcurrentHashMap<>();
+	private final Map<String, Set<Connection>> principals  = new ConcurrentHashMap<>();
+	private final Map<String, Set<String>> groupMembers    = new ConcurrentHashMap<>();
+	private final Deque<BufferedEvent> replayBuffer        = new ArrayDeque<>();
+	private final AtomicLong eventIds                      = new AtomicLong(System.currentTimeMillis());
+	private ExecutorService executor                       = null;
+
+	public Connection newConnection(final String sessionId, final String principalId, final long lastEventId) {
+		return new Connection(sessionId, principalId, lastEventId);
+	}
+
+	/**
+	 * Sends an event to all connections that match the given flags.
+	 */
+	public void broadcast(final String name, final String data, final boolean authenticated, final boolean anonymous) {
+
+		final Predicate<Connection> recipients = c -> c.principalId != null ? authenticated : anonymous;
+
+		synchronized (replayBuffer) {
+
+			final BufferedEvent event = record(name, data, recipients);
+
+			if (authenticated && anonymous) {
+
+				connections.forEach(c -> c.enqueue(event));
+
+			} else if (anonymous) {
+
+				this.anonymous.forEach(c -> c.enqueue(event));
+
+			} else if (authenticated) {
+
+				principals.values().forEach(set -> set.forEach(c -> c.enqueue(event)));
+			}
+		}
+	}
+
+	/**
+	 * Sends an event to all connections of the given principals and returns
+	 * true if at least one connection was found.
+	 */
+	public boolean send(final String name, final String data, final Set<String> principalIds) {
+
+		boolean targetSeen = false;
+
+		synchronized (replayBuffer) {
+
+			final BufferedEvent event = record(name, data, c -> c.principalId != null && principalIds.contains(c.principalId));
+
+			for (final String principalId : principalIds) {
+
+				final Set<Connection> set = principals.get(principalId);
+				if (set != null && !set.isEmpty()) {
+
+					set.forEach(c -> c.enqueue(event));
+					targetSeen = true;
+				}
+			}
+		}
+
+		return targetSeen;
+	}
+
+	/**
+	 * Returns the cached UUIDs of all users that are direct or indirect
+	 * members of the given group, or null if the group is not cached yet.
+	 */
+	public Set<String> getCachedMembers(final Principal group) {
+		return groupMembers.get(group.getUuid());
+	}
+
+	public void cacheMembers(final Principal group, final Set<String> userIds) {
+		groupMembers.put(group.getUuid(), userIds);
+	}
+
+	public int getConnectionCount() {
+		return connections.size();
+	}
+
+	public synchronized void shutdown() {
+
+		for (final Connection connection : connections) {
+			connection.close();
+		}
+
+		if (executor != null) {
+
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	// ----- interface StructrTransactionListener -----
+	@Override
+	public void beforeCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents) {
+	}
+
+	@Override
+	public void afterCommit(final SecurityContext securityContext, final Collection<ModificationEvent> modificationEvents) {
+
+		boolean membershipChanged = false;
+
+		for (final ModificationEvent event : modificationEvents) {
+
+			if (event.isNode()) {
+
+				final GraphObject obj = event.getGraphObject();
+				if (obj instanceof Principal) {
+
+					if (obj instanceof Group) {
+						membershipChanged = true;
+					}
+
+					if (event.isDeleted()) {
+
+						rebind(event.getUuid(), null);
+						membershipChanged = true;
+
+					} else if (affectsSessions(event.getModifiedProperties()) || affectsSessions(event.getRemovedProperties()) || affectsSessions(event.getNewProperties())) {
+
+						rebind(event.getUuid(), obj.getProperty(StructrApp.key(Principal.class, "sessionIds")));
+					}
+				}
+
+			} else if (event.getRelationshipType() != null && "CONTAINS".equals(event.getRelationshipType().name())) {
+
+				// group memberships are CONTAINS relationships
+				membershipChanged = true;
+			}
+		}
+
+		if (membershipChanged) {
+			groupMembers.clear();
+		}
+	}
+
+	@Override
+	public void simpleBroadcast(final String messageName, final Map<String, Object> data, final org.structr.api.Predicate<String> sessionIdPredicate) {
+	}
+
+	// ----- private methods -----
+	private BufferedEvent record(final String name, final String data, final Predicate<Connection> recipients) {
+
+		final BufferedEvent event = new BufferedEvent(eventIds.incrementAndGet(), name, data, recipients);
+		final int bufferSize      = Settings.EventSourceReplayBufferSize.getValue(1000);
+
+		if (bufferSize > 0) {
+
+			replayBuffer.addLast(event);
+		}
+
+		while (replayBuffer.size() > Math.max(0, bufferSize)) {
+			replayBuffer.removeFirst();
+		}
+
+		return event;
+	}
+
+	private void register(final Connection connection) {
+
+		synchronized (replayBuffer) {
+
+			connections.add(connection);
+
+			add(sessions, connection.sessionId, connection);
+			index(connection);
+
+			// replay events that were missed since the given event ID
+			if (connection.lastEventId >= 0) {
+
+				for (final BufferedEvent event : replayBuffer) {
+
+					if (event.id > connection.lastEventId && event.recipients.test(connection)) {
+						connection.enqueue(event);
+					}
+				}
+			}
+		}
+	}
+
+	private void unregister(final Connection connection) {
+
+		synchronized (replayBuffer) {
+
+			if (connections.remove(connection)) {
+
+				remove(sessions, connection.sessionId, connection);
+				unindex(connection);
+			}
+		}
+	}
+
+	/**
+	 * Updates the principal of all connections after the sessionIds of a
+	 * principal have changed, e.g. after login or logout.
+	 */
+	private void rebind(final String principalId, final String[] sessionIds) {
+
+		final Set<String> ids = sessionIds != null ? new HashSet<>(Arrays.asList(sessionIds)) : Collections.emptySet();
+
+		synchronized (replayBuffer) {
+
+			// connections whose session was removed from the principal
+			for (final Connection connection : principals.getOrDefault(principalId, Collections.emptySet()).toArray(new Connection[0])) {
+
+				if (!ids.contains(connection.sessionId)) {
+
+					unindex(connection);
+					connection.principalId = null;
+					index(connection);
+				}
+			}
+
+			// connections whose session was added to the principal
+			for (final String sessionId : ids) {
+
+				for (final Connection connection : sessions.getOrDefault(sessionId, Collections.emptySet())) {
+
+					if (connections.contains(connection) && !principalId.equals(connection.principalId)) {
+
+						unindex(connection);
+						connection.principalId = principalId;
+						index(connection);
+					}
+				}
+			}
+		}
+	}
+
+	private void index(final Connection connection) {
+
+		if (connection.principalId != null) {
+
+			add(principals, connection.principalId, connection);
+
+		} else {
+
+			anonymous.add(connection);
+		}
+	}
+
+	private void unindex(final Connection connection) {
+
+		if (connection.principalId != null) {
+
+			remove(principals, connection.principalId, connection);
+
+		} else {
+
+			anonymous.remove(connection);
+		}
+	}
+
+	private void add(final Map<String, Set<Connection>> map, final String key, final Connection connection) {
+
+		if (key != null) {
+
+			map.compute(key, (k, set) -> {
+
+				final Set<Connection> result = set != null ? set : ConcurrentHashMap.newKeySet();
+
+				result.add(connection);
+
+				return result;
+			});
+		}
+	}
+
+	private void remove(final Map<String, Set<Connection>> map, final String key, final Connection connection) {
+
+		if (key != null) {
+
+			map.computeIfPresent(key, (k, set) -> {
+
+				set.remove(connection);
+
+				return set.isEmpty() ? null : set;
+			});
+		}
+	}
+
+	private boolean affectsSessions(final PropertyMap properties) {
+
+		if (properties != null) {
+
+			for (final PropertyKey key : properties.keySet()) {
+
+				if ("sessionIds".equals(key.jsonName())) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	private synchronized ExecutorService getExecutor() {
+
+		if (executor == null) {
+
+			final AtomicInteger threadCount = new AtomicInteger();
+
+			executor = Executors.newFixedThreadPool(Math.max(1, Settings.EventSourceSendThreads.getValue(4)), r -> {
+
+				final Thread thread = new Thread(r, "EventSourceSender-" + threadCount.incrementAndGet());
+
+				thread.setDaemon(true);
+
+				return thread;
+			});
+		}
+
+		return executor;
+	}
+
+	// ----- nested classes -----
+	private static class BufferedEvent {
+
+		private final Predicate<Connection> recipients;
+		private final String name;
+		private final String data;
+		private final long id;
+
+		BufferedEvent(final long id, final String name, final String data, final Predicate<Connection> recipients) {
+
+			this.recipients = recipients;
+			this.name       = name;
+			this.data       = data;
+			this.id         = id;
+		}
+	}
+
+	/**
+	 * A single event source connection with its own queue of pending events.
+	 */
+	public class Connection implements EventSource {
+
+		private final Queue<BufferedEvent> queue = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger queueSize    = new AtomicInteger();
+		private final AtomicBoolean scheduled    = new AtomicBoolean();
+		private final String sessionId;
+		private final long lastEventId;
+		private volatile String principalId      = null;
+		private volatile Emitter emitter         = null;
+		private volatile boolean closed          = false;
+
+		private Connection(final String sessionId, final String principalId, final long lastEventId) {
+
+			this.sessionId   = sessionId;
+			this.principalId = principalId;
+			this.lastEventId = lastEventId;
+		}
+
+		@Override
+		public void onOpen(final Emitter emitter) throws IOException {
+
+			this.emitter = emitter;
+
+			register(this);
+		}
+
+		@Override
+		public void onClose() {
+
+			closed = true;
+
+			unregister(this);
+		}
+
+		public String getSessionId() {
+			return sessionId;
+		}
+
+		public String getPrincipalId() {
+			return principalId;
+		}
+
+		public void close() {
+
+			closed = true;
+
+			queue.clear();
+			unregister(this);
+
+			if (emitter != null) {
+				emitter.close();
+			}
+		}
+
+		// ----- private methods -----
+		private void enqueue(final BufferedEvent event) {
+
+			if (closed) {
+				return;
+			}
+
+			if (queueSize.incrementAndGet() > Settings.EventSourceQueueSize.getValue(1000)) {
+
+				logger.info("Closing event source connection of session {}, too many pending events.", sessionId);
+
+				close();
+				return;
+			}
+
+			queue.add(event);
+			schedule();
+		}
+
+		private void schedule() {
+
+			if (scheduled.compareAndSet(false, true)) {
+				getExecutor().execute(this::drain);
+			}
+		}
+
+		private void drain() {
+
+			try {
+
+				BufferedEvent event = queue.poll();
+
+				while (event != null && !closed) {
+
+					queueSize.decrementAndGet();
+
+					// the Jetty emitter has no support for the id field, so it is appended to the event name line
+					emitter.event(event.name + "\nid: " + event.id, event.data);
+
+					event = queue.poll();
+				}
+
+			} catch (IOException ioex) {
+
+				close();
+
+			} finally {
+
+				scheduled.set(false);
+
+				if (!closed && !queue.isEmpty()) {
+					schedule();
+				}
+			}
+		}
+	}
+}
@@ -19,18 +19,15 @@
 package org.structr.web.servlet;
 
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.BlockingDeque;
-import java.util.concurrent.LinkedBlockingDeque;
 import java.util.regex.Pattern;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.StringUtils;
 import org.eclipse.jetty.servlets.EventSource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,10 +39,10 @@ import org.structr.core.app.StructrApp;
 import org.structr.core.auth.Authenticator;
 import org.structr.core.entity.Group;
 import org.structr.core.entity.Principal;
+import org.structr.core.graph.TransactionCommand;
 import org.structr.core.graph.Tx;
 import org.structr.core.property.PropertyKey;
 import org.structr.rest.ResourceProvider;
-import org.structr.rest.auth.AuthHelper;
 import org.structr.rest.common.StatsCallback;
 import org.structr.rest.resource.Resource;
 import org.structr.rest.service.HttpServiceServlet;
@@ -57,17 +54,16 @@ public class EventSourceServlet extends org.eclipse.jetty.servlets.EventSourceSe
 
 	private static final Logger logger = LoggerFactory.getLogger(EventSourceServlet.class.getName());
 
-	private static final BlockingDeque<StructrEventSource> eventSources = new LinkedBlockingDeque<>();
+	private static final EventSourceRegistry registry = new EventSourceRegistry();
+	private static final String SESSION_ID_ATTRIBUTE  = EventSourceServlet.class.getName() + ".sessionId";
+	private static final String PRINCIPAL_ATTRIBUTE   = EventSourceServlet.class.getName() + ".principalId";
 
 	protected final Map<Pattern, Class<? extends Resource>> resourceMap = new LinkedHashMap<>();
 	protected final StructrHttpServiceConfig config                     = new StructrHttpServiceConfig();
 	protected StatsCallback stats                                       = null;
 
-	static PropertyKey<String[]> sessionIdsPropertyKey = null;
 	static PropertyKey<Iterable<Principal>> membersKey = null;
 
-	private SecurityContext securityContext;
-
 	@Override
 	public void init() throws ServletException {
 
@@ -82,12 +78,28 @@ public class EventSourceServlet extends org.eclipse.jetty.servlets.EventSourceSe
 			logger.error("Unable to initialize JsonRestServlet, no resource provider found. Please check structr.conf for a valid resource provider class");
 		}
 
+		// keep principals of open connections and cached group memberships up to date
+		TransactionCommand.registerTransactionListener(registry);
+
 		super.init();
 	}
 
 	@Override
-	protected EventSource newEventSource(HttpServletRequest hsr) {
-		return new StructrEventSource(securityContext.getSessionId());
+	public void destroy() {
+
+		TransactionCommand.removeTransactionListener(registry);
+		registry.shutdown();
+
+		super.destroy();
+	}
+
+	@Override
+	protected EventSource newEventSource(final HttpServletRequest request) {
+
+		final String sessionId   = (String)request.getAttribute(SESSION_ID_ATTRIBUTE);
+		final String principalId = (String)request.getAttribute(PRINCIPAL_ATTRIBUTE);
+
+		return registry.newConnection(sessionId, principalId, getLastEventId(request));
 	}
 
 	@Override
@@ -95,7 +107,8 @@ public class EventSourceServlet extends org.eclipse.jetty.servlets.EventSourceSe
 
 		try {
 
-			Authenticator authenticator = null;
+			SecurityContext securityContext = null;
+			Authenticator authenticator     = null;
 
 			assertInitialized();
 
@@ -119,7 +132,11 @@ public class EventSourceServlet extends org.eclipse.jetty.servlets.EventSourceSe
 				tx.success();
 			}
 
-			newEventSource(request);
+			final Principal user = securityContext.getUser(false);
+
+			// the connection is created by the superclass, pass the authentication result along with the request
+			request.setAttribute(SESSION_ID_ATTRIBUTE, securityContext.getSessionId());
+			request.setAttribute(PRINCIPAL_ATTRIBUTE,  user != null ? user.getUuid() : null);
 
 			super.doGet(request, response);
 
@@ -149,98 +166,42 @@ public class EventSourceServlet extends org.eclipse.jetty.servlets.EventSourceSe
 	}
 
 	public static void broadcastEvent(final String name, final String data) {
-
-		for (StructrEventSource es : eventSources) {
-
-			es.sendEvent(name, data);
-		}
+		registry.broadcast(name, data, true, true);
 	}
 
 	public static void broadcastEvent(final String name, final String data, final boolean authenticated, final boolean anonymous) {
+		registry.broadcast(name, data, authenticated, anonymous);
+	}
 
-		if (anonymous == true && authenticated == true) {
-
-			broadcastEvent(name, data);
-
-		} else if (anonymous == true) {
-
-			// account for multiple open tabs/connections for one sessionIds and save result
-			final Map<String, Boolean> checkedSessionIds = new HashMap<>();
-
-			for (StructrEventSource es : eventSources) {
-
-				final String sessionId      = es.getSessionId();
-				final Boolean shouldReceive = checkedSessionIds.get(sessionId);
-
-				if (shouldReceive == null) {
-
-					final Principal user = AuthHelper.getPrincipalForSessionId(sessionId);
-
-					if (user == null) {
-						checkedSessionIds.put(sessionId, true);
-						es.sendEvent(name, data);
-					} else {
-						checkedSessionIds.put(sessionId, false);
-					}
-
-				} else if (shouldReceive == true) {
+	public static boolean sendEvent(final String name, final String data, final Set<Principal> targets) {
 
-					es.sendEvent(name, data);
-				}
-			}
+		final Set<String> uniqueUsers = new HashSet<>();
 
-		} else if (authenticated == true) {
+		for (Principal principal : targets) {
 
-			// account for multiple open tabs/connections for one sessionIds and save result
-			final Map<String, Boolean> checkedSessionIds = new HashMap<>();
+			if (principal instanceof User) {
 
-			for (StructrEventSource es : eventSources) {
+				uniqueUsers.add(principal.getUuid());
 
-				final String sessionId      = es.getSessionId();
-				final Boolean shouldReceive = checkedSessionIds.get(sessionId);
+			} else {
 
-				if (shouldReceive == null) {
+				Set<String> members = registry.getCachedMembers(principal);
+				if (members == null) {
 
-					final Principal user = AuthHelper.getPrincipalForSessionId(sessionId);
+					members = new HashSet<>();
 
-					if (user != null) {
-						checkedSessionIds.put(sessionId, true);
-						es.sendEvent(name, data);
-					} else {
-						checkedSessionIds.put(sessionId, false);
+					for (final User user : getUniqueUsersForGroup(principal, new HashSet<>(), true)) {
+						members.add(user.getUuid());
 					}
 
-				} else if (shouldReceive == true) {
-
-					es.sendEvent(name, data);
+					registry.cacheMembers(principal, members);
 				}
-			}
-		}
-	}
-
-	public static boolean sendEvent(final String name, final String data, final Set<Principal> targets) {
-
-		final Set<User> uniqueUsers = new HashSet<>();
-		final Set<Principal> seenGroups  = new HashSet<>();
 
-		for (Principal principal : targets) {
-
-			if (principal instanceof User) {
-//			if (User.class.isAssignableFrom(principal.getClass())) {
-				uniqueUsers.add((User)principal);
-			} else {
-				uniqueUsers.addAll(getUniqueUsersForGroup(principal, seenGroups, true));
+				uniqueUsers.addAll(members);
 			}
 		}
 
-		boolean oneTargetSeen = false;
-
-		for (User user : uniqueUsers) {
-			boolean seen = sendEvent(name, data, user);
-			oneTargetSeen = seen || oneTargetSeen;
-		}
-
-		return oneTargetSeen;
+		return registry.send(name, data, uniqueUsers);
 	}
 
 	private static Set<User> getUniqueUsersForGroup(final Principal group, final Set<Principal> seenGroups, final boolean recurse) {
@@ -255,7 +216,6 @@ public class EventSourceServlet extends org.eclipse.jetty.servlets.EventSourceSe
 
 		for (Principal member : group.getProperty(membersKey)) {
 
-//			if (User.class.isAssignableFrom(member.getClass())) {
 			if (member instanceof User) {
 
 				uniqueUsers.add((User)member);
@@ -276,34 +236,7 @@ public class EventSourceServlet extends org.eclipse.jetty.servlets.EventSourceSe
 	}
 
 	public static boolean sendEvent(final String name, final String data, final User target) {
-
-		boolean targetSeen = false;
-
-		for (StructrEventSource es : eventSources) {
-
-			if (shouldReceiveMessage(es, target)) {
-
-				es.sendEvent(name, data);
-				targetSeen = true;
-			}
-		}
-
-		return targetSeen;
-	}
-
-	private static boolean shouldReceiveMessage(final StructrEventSource es, final User target) {
-
-		if (sessionIdsPropertyKey == null) {
-			sessionIdsPropertyKey = StructrApp.key(Principal.class, "sessionIds");
-		}
-
-		final String[] ids = target.getProperty(sessionIdsPropertyKey);
-
-		if (ids != null && Arrays.asList(ids).contains(es.getSessionId())) {
-			return true;
-		}
-
-		return false;
+		return sendEvent(name, data, Set.of(target));
 	}
 
 	// ---- interface Feature -----
@@ -320,51 +253,21 @@ public class EventSourceServlet extends org.eclipse.jetty.servlets.EventSourceSe
 		}
 	}
 
-	// ----- nested classes -----
-	private class StructrEventSource implements EventSource {
-
-		private Emitter emitter = null;
-		private final String sessionId;
-
-		public StructrEventSource(final String sessionId) {
-
-			super();
-
-			this.sessionId = sessionId;
-		}
-
-		@Override
-		public void onOpen(EventSource.Emitter emtr) throws IOException {
+	// ----- private methods -----
+	private long getLastEventId(final HttpServletRequest request) {
 
-			emitter = emtr;
+		final String lastEventId = request.getHeader("Last-Event-ID");
+		if (StringUtils.isNotBlank(lastEventId)) {
 
-			eventSources.add(this);
-		}
-
-		@Override
-		public void onClose() {
-			remove();
-		}
+			try {
 
-		public String getSessionId() {
-			return sessionId;
-		}
+				return Long.parseLong(lastEventId.trim());
 
-		public void sendEvent(final String name, final String data) {
-			try {
-				emitter.event(name, data);
-			} catch (IOException ioe) {
-				emitter.close();
-				remove();
+			} catch (NumberFormatException nfex) {
+				logger.debug("Ignoring invalid Last-Event-ID header {}", lastEventId);
 			}
 		}
 
-		public void close() {
-			emitter.close();
-		}
-
-		public void remove() {
-			eventSources.remove(this);
-		}
+		return -1L;
 	}
 }
@@ -0,0 +1,473 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.web.servlet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.UUID;
+import javax.servlet.AsyncContext;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.lang3.StringUtils;
+import org.eclipse.jetty.server.HttpOutput;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.common.SecurityContext;
+import org.structr.web.common.FileHelper;
+import org.structr.web.entity.AbstractFile;
+import org.structr.web.entity.File;
+
+/**
+ * Delivers the contents of a static file directly from the file channel,
+ * with support for strong ETags, single and multiple byte ranges and
+ * precompressed variants of the file.
+ *
+ * The file contents are memory-mapped. If the response is a Jetty output
+ * stream and the request supports async processing, the buffers are
+ * written with non-blocking writes after the request thread was released,
+ * otherwise they are written with blocking writes.
+ */
+class FileDelivery {
+
+	private static final Logger logger       = LoggerFactory.getLogger(FileDelivery.class);
+	private static final long MAP_CHUNK_SIZE = 16 * 1024 * 1024;
+	private static final int MAX_RANGES      = 16;
+
+	private final File file;
+	private File content    = null;
+	private String encoding = null;
+	private String etag     = null;
+	private boolean async   = false;
+
+	FileDelivery(final SecurityContext securityContext, final File file, final HttpServletRequest request) {
+
+		this.file    = file;
+		this.content = file;
+
+		if (Settings.HttpPrecompressed.getValue()) {
+
+			selectVariant(securityContext, request.getHeader("Accept-Encoding"));
+		}
+
+		final Long checksum = content.getChecksum();
+		final Long size     = content.getSize();
+
+		if (checksum != null && size != null) {
+
+			etag = "\"" + Long.toHexString(checksum) + "-" + Long.toHexString(size) + (encoding != null ? "-" + encoding : "") + "\"";
+		}
+	}
+
+	/**
+	 * Sets the response headers that are needed for both full and
+	 * not-modified responses.
+	 */
+	void setHeaders(final HttpServletResponse response) {
+
+		response.setHeader("Accept-Ranges", "bytes");
+
+		if (etag != null) {
+			response.setHeader("ETag", etag);
+		}
+
+		if (Settings.HttpPrecompressed.getValue()) {
+			response.setHeader("Vary", "Accept-Encoding");
+		}
+	}
+
+	/**
+	 * Returns true if the given If-None-Match header matches the ETag of
+	 * the content that would be delivered.
+	 */
+	boolean matches(final String ifNoneMatch) {
+
+		if (ifNoneMatch == null) {
+			return false;
+		}
+
+		if ("*".equals(ifNoneMatch.trim())) {
+			return true;
+		}
+
+		if (etag != null) {
+
+			for (final String candidate : ifNoneMatch.split(",")) {
+
+				// weak comparison, as required for If-None-Match
+				if (etag.equals(StringUtils.removeStart(candidate.trim(), "W/"))) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Returns true if the content is written asynchronously, in which case
+	 * the caller must not flush or close the output stream.
+	 */
+	boolean isAsync() {
+		return async;
+	}
+
+	/**
+	 * Writes the requested content to the response and returns the status
+	 * code of the response.
+	 */
+	int deliver(final HttpServletRequest request, final HttpServletResponse response, final ServletOutputStream out) throws IOException {
+
+		final java.io.File fileOnDisk = content.getFileOnDisk(false);
+		if (fileOnDisk == null || !fileOnDisk.exists()) {
+
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return HttpServletResponse.SC_NOT_FOUND;
+		}
+
+		try (final FileChannel channel = FileChannel.open(fileOnDisk.toPath(), StandardOpenOption.READ)) {
+
+			final long length = channel.size();
+
+			if (encoding != null) {
+				response.setHeader("Content-Encoding", encoding);
+			}
+
+			final String range = isRangeAllowed(request) ? request.getHeader("Range") : null;
+			if (StringUtils.isNotBlank(range)) {
+
+				final List<long[]> ranges = parseRanges(range, length);
+				if (ranges == null) {
+
+					response.setHeader("Content-Range", "bytes */" + length);
+					response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+
+					return HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE;
+				}
+
+				if (ranges.size() == 1) {
+
+					final long start = ranges.get(0)[0];
+					final long end   = ranges.get(0)[1];
+
+					response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+					response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+					response.setContentLengthLong(end - start + 1);
+
+					send(request, out, map(channel, start, end - start + 1, new ArrayList<>()));
+
+					return HttpServletResponse.SC_PARTIAL_CONTENT;
+
+				} else if (!ranges.isEmpty()) {
+
+					writeMultipleRanges(channel, ranges, length, request, response, out);
+
+					return HttpServletResponse.SC_PARTIAL_CONTENT;
+				}
+			}
+
+			response.setStatus(HttpServletResponse.SC_OK);
+			response.setContentLengthLong(length);
+
+			send(request, out, map(channel, 0, length, new ArrayList<>()));
+
+			return HttpServletResponse.SC_OK;
+		}
+	}
+
+	// ----- private methods -----
+	private void selectVariant(final SecurityContext securityContext, final String acceptEncoding) {
+
+		if (acceptEncoding == null) {
+			return;
+		}
+
+		final String path = file.getPath();
+
+		for (final String[] candidate : new String[][] { { "br", ".br" }, { "gzip", ".gz" } }) {
+
+			if (acceptsEncoding(acceptEncoding, candidate[0])) {
+
+				final AbstractFile variant = FileHelper.getFileByAbsolutePath(securityContext, path + candidate[1]);
+				if (variant instanceof File && isUpToDate((File)variant)) {
+
+					this.content  = (File)variant;
+					this.encoding = candidate[0];
+
+					return;
+				}
+			}
+		}
+	}
+
+	private boolean isUpToDate(final File variant) {
+
+		final Date fileModified    = file.getLastModifiedDate();
+		final Date variantModified = variant.getLastModifiedDate();
+
+		// a variant that is older than the original file is outdated
+		return fileModified == null || variantModified == null || !variantModified.before(fileModified);
+	}
+
+	private boolean acceptsEncoding(final String acceptEncoding, final String encoding) {
+
+		for (final String part : acceptEncoding.split(",")) {
+
+			final String[] values = part.trim().split(";");
+			if (encoding.equalsIgnoreCase(values[0].trim())) {
+
+				// an explicit q=0 rejects the encoding
+				return values.length < 2 || !values[1].trim().matches("q=0(\\.0*)?");
+			}
+		}
+
+		return false;
+	}
+
+	private boolean isRangeAllowed(final HttpServletRequest request) {
+
+		final String ifRange = request.getHeader("If-Range");
+		if (ifRange != null) {
+
+			// only strong validators are accepted for ranges
+			return etag != null && etag.equals(ifRange.trim());
+		}
+
+		return true;
+	}
+
+	/**
+	 * Parses the given Range header. Returns null if none of the ranges is
+	 * satisfiable, and an empty list if the header is invalid or contains
+	 * too many ranges, in which case the whole file is delivered.
+	 */
+	private List<long[]> parseRanges(final String header, final long length) {
+
+		final List<long[]> ranges = new ArrayList<>();
+
+		if (!header.startsWith("bytes=")) {
+			return ranges;
+		}
+
+		final String[] parts = header.substring(6).split(",");
+		if (parts.length > MAX_RANGES) {
+			return ranges;
+		}
+
+		for (final String part : parts) {
+
+			final String spec = part.trim();
+			final int dash    = spec.indexOf('-');
+
+			if (dash < 0) {
+				return new ArrayList<>();
+			}
+
+			try {
+
+				final String first = spec.substring(0, dash).trim();
+				final String last  = spec.substring(dash + 1).trim();
+				long start;
+				long end;
+
+				if (first.isEmpty()) {
+
+					// suffix range: last n bytes
+					final long suffix = Long.parseLong(last);
+					if (suffix <= 0) {
+						continue;
+					}
+
+					start = Math.max(0, length - suffix);
+					end   = length - 1;
+
+				} else {
+
+					start = Long.parseLong(first);
+					end   = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+
+					if (end < start) {
+
+						if (!last.isEmpty() && Long.parseLong(last) < start) {
+
+							// syntactically invalid
+							return new ArrayList<>();
+						}
+
+						continue;
+					}
+				}
+
+				if (start < length) {
+					ranges.add(new long[] { start, end });
+				}
+
+			} catch (NumberFormatException nex) {
+				return new ArrayList<>();
+			}
+		}
+
+		return ranges.isEmpty() ? null : ranges;
+	}
+
+	private void writeMultipleRanges(final FileChannel channel, final List<long[]> ranges, final long length, final HttpServletRequest request, final HttpServletResponse response, final ServletOutputStream out) throws IOException {
+
+		final String boundary        = UUID.randomUUID().toString().replace("-", "");
+		final String contentType     = response.getContentType() != null ? response.getContentType() : "application/octet-stream";
+		final List<byte[]> headers   = new ArrayList<>();
+		final byte[] trailer         = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+		long contentLength           = trailer.length;
+
+		for (final long[] range : ranges) {
+
+			final byte[] header = ("\r\n--" + boundary + "\r\nContent-Type: " + contentType + "\r\nContent-Range: bytes " + range[0] + "-" + range[1] + "/" + length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+			headers.add(header);
+
+			contentLength += header.length + range[1] - range[0] + 1;
+		}
+
+		response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+		response.setContentType("multipart/byteranges; boundary=" + boundary);
+		response.setContentLengthLong(contentLength);
+
+		final List<ByteBuffer> buffers = new ArrayList<>();
+
+		for (int i=0; i<ranges.size(); i++) {
+
+			final long[] range = ranges.get(i);
+
+			buffers.add(ByteBuffer.wrap(headers.get(i)));
+
+			map(channel, range[0], range[1] - range[0] + 1, buffers);
+		}
+
+		buffers.add(ByteBuffer.wrap(trailer));
+
+		send(request, out, buffers);
+	}
+
+	/**
+	 * Maps the given region of the file in chunks. A mapping stays valid
+	 * after the channel was closed.
+	 */
+	private List<ByteBuffer> map(final FileChannel channel, final long start, final long length, final List<ByteBuffer> buffers) throws IOException {
+
+		long position  = start;
+		long remaining = length;
+
+		while (remaining > 0) {
+
+			final long size = Math.min(remaining, MAP_CHUNK_SIZE);
+
+			buffers.add(channel.map(FileChannel.MapMode.READ_ONLY, position, size));
+
+			position  += size;
+			remaining -= size;
+		}
+
+		return buffers;
+	}
+
+	private void send(final HttpServletRequest request, final ServletOutputStream out, final List<ByteBuffer> buffers) throws IOException {
+
+		if (out instanceof HttpOutput) {
+
+			if (request.isAsyncSupported() && !request.isAsyncStarted()) {
+
+				// release the request thread, Jetty writes the mapped buffers when the connection is ready
+				final AsyncContext context = request.startAsync();
+
+				context.setTimeout(0);
+				out.setWriteListener(new BufferWriteListener(buffers.iterator(), context, out));
+
+				async = true;
+
+			} else {
+
+				final HttpOutput httpOutput = (HttpOutput)out;
+
+				for (final ByteBuffer buffer : buffers) {
+					httpOutput.write(buffer);
+				}
+			}
+
+		} else {
+
+			final WritableByteChannel target = Channels.newChannel(out);
+
+			for (final ByteBuffer buffer : buffers) {
+
+				while (buffer.hasRemaining()) {
+					target.write(buffer);
+				}
+			}
+		}
+	}
+
+	// ----- nested classes -----
+	private static class BufferWriteListener implements WriteListener {
+
+		private final Iterator<ByteBuffer> buffers;
+		private final AsyncContext context;
+		private final ServletOutputStream out;
+
+		BufferWriteListener(final Iterator<ByteBuffer> buffers, final AsyncContext context, final ServletOutputStream out) {
+
+			this.buffers = buffers;
+			this.context = context;
+			this.out     = out;
+		}
+
+		@Override
+		public void onWritePossible() throws IOException {
+
+			// a write of an HttpOutput in async mode returns before the buffer was written
+			while (out.isReady()) {
+
+				if (!buffers.hasNext()) {
+
+					context.complete();
+					return;
+				}
+
+				((HttpOutput)out).write(buffers.next());
+			}
+		}
+
+		@Override
+		public void onError(final Throwable t) {
+
+			// client closed the connection
+			logger.debug("Unable to deliver file: {}", t.getMessage());
+			context.complete();
+		}
+	}
+}
@@ -119,7 +119,7 @@ public class HtmlServlet extends AbstractServletBase implements HttpServiceServl
 	public static final String OBJECT_RESOLUTION_PROPERTIES = "HtmlServlet.resolveProperties";
 
 	private static final ThreadLocalMatcher threadLocalUUIDMatcher = new ThreadLocalMatcher("[a-fA-F0-9]{32}");
-	private static final ExecutorService threadPool                = Executors.newCachedThreadPool();
+	private static final ExecutorService threadPool                = createRenderThreadPool();
 
 	private final Pattern FilenameCleanerPattern                      = Pattern.compile("[\n\r]", Pattern.CASE_INSENSITIVE | Pattern.MULTILINE | Pattern.DOTALL);
 	private final StructrHttpServiceConfig config                     = new StructrHttpServiceConfig();
@@ -1460,6 +1460,22 @@ public class HtmlServlet extends AbstractServletBase implements HttpServiceServl
 		}
 	}
 
+	/**
+	 * Creates the thread pool for asynchronous page rendering, a fixed pool
+	 * if the number of threads is configured and an unbounded pool that
+	 * creates threads on demand otherwise.
+	 */
+	public static ExecutorService createRenderThreadPool() {
+
+		final int threads = Settings.AsyncRenderThreads.getValue();
+		if (threads > 0) {
+
+			return Executors.newFixedThreadPool(threads);
+		}
+
+		return Executors.newCachedThreadPool();
+	}
+
 	private static boolean notModifiedSince(final HttpServletRequest request, HttpServletResponse response, final NodeInterface node, final boolean dontCache) {
 
 		boolean notModified = false;
@@ -1523,6 +1539,25 @@ public class HtmlServlet extends AbstractServletBase implements HttpServiceServl
 		return notModified;
 	}
 
+	private static boolean isNotModified(final HttpServletRequest request, final HttpServletResponse response, final File file, final FileDelivery delivery, final boolean dontCache) {
+
+		// always called because it sets the caching headers
+		final boolean notModified = notModifiedSince(request, response, file, dontCache);
+		final String ifNoneMatch  = request.getHeader("If-None-Match");
+
+		// If-None-Match takes precedence over If-Modified-Since
+		if (delivery != null && ifNoneMatch != null) {
+
+			final boolean matches = delivery.matches(ifNoneMatch);
+
+			response.setStatus(matches ? HttpServletResponse.SC_NOT_MODIFIED : HttpServletResponse.SC_OK);
+
+			return matches;
+		}
+
+		return notModified;
+	}
+
 	private void streamFile(final SecurityContext securityContext, final File file, HttpServletRequest request, HttpServletResponse response, final EditMode edit) throws IOException {
 
 		if (!securityContext.isVisible(file)) {
@@ -1555,7 +1590,14 @@ public class HtmlServlet extends AbstractServletBase implements HttpServiceServl
 
 		boolean dontCache = file.getProperty(StructrApp.key(File.class, "dontCache"));
 
-		if (!EditMode.WIDGET.equals(edit) && notModifiedSince(request, response, file, dontCache)) {
+		// template files are rendered on every request and can not be delivered directly from disk
+		final FileDelivery delivery = file.isTemplate() ? null : new FileDelivery(securityContext, file, request);
+		if (delivery != null) {
+
+			delivery.setHeaders(response);
+		}
+
+		if (!EditMode.WIDGET.equals(edit) && isNotModified(request, response, file, delivery, dontCache)) {
 
 			out.flush();
 			out.close();
@@ -1579,7 +1621,6 @@ public class HtmlServlet extends AbstractServletBase implements HttpServiceServl
 			} else {
 
 				// 2b: stream file to response
-				final InputStream in = file.getInputStream();
 				final String contentType = file.getContentType();
 
 				if (contentType != null) {
@@ -1592,71 +1633,100 @@ public class HtmlServlet extends AbstractServletBase implements HttpServiceServl
 					response.setContentType("application/octet-stream");
 				}
 
-				final String range = request.getHeader("Range");
+				if (delivery != null) {
 
-				try {
+					try {
 
-					if (StringUtils.isNotEmpty(range)) {
+						callbackMap.put("statusCode", delivery.deliver(request, response, out));
 
-						final long len = file.getSize();
-						long start     = 0;
-						long end       = len - 1;
+					} catch (IOException ioex) {
 
-						final Matcher matcher = Pattern.compile("bytes=(?<start>\\d*)-(?<end>\\d*)").matcher(range);
+						// client closed the connection
+						logger.debug("Unable to deliver file {}: {}", file.getUuid(), ioex.getMessage());
 
-						if (matcher.matches()) {
-							String startGroup = matcher.group("start");
-							start = startGroup.isEmpty() ? start : Long.valueOf(startGroup);
-							start = Math.max(0, start);
+					} finally {
+
+						// asynchronous writes complete the response when they are finished
+						if (!delivery.isAsync()) {
+
+							try {
+								out.flush();
+								out.close();
 
-							String endGroup = matcher.group("end");
-							end = endGroup.isEmpty() ? end : Long.valueOf(endGroup);
-							end = end > len - 1 ? len - 1 : end;
+							} catch (Throwable t) {
+							}
 						}
+					}
 
-						long contentLength = end - start + 1;
+				} else {
 
-						// Tell the client that we support byte ranges
-						response.setHeader("Accept-Ranges", "bytes");
-						response.setHeader("Content-Range", String.format("bytes %s-%s/%s", start, end, len));
-						response.setHeader("Content-Length", Long.toString(contentLength));
+					final InputStream in = file.getInputStream();
+					final String range   = request.getHeader("Range");
 
-						response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
-						callbackMap.put("statusCode", HttpServletResponse.SC_PARTIAL_CONTENT);
+					try {
 
-						IOUtils.copyLarge(in, out, start, contentLength);
+						if (StringUtils.isNotEmpty(range)) {
 
-					} else {
+							final long len = file.getSize();
+							long start     = 0;
+							long end       = len - 1;
 
-						final long fileSize = IOUtils.copyLarge(in, out);
-						final int status    = response.getStatus();
+							final Matcher matcher = Pattern.compile("bytes=(?<start>\\d*)-(?<end>\\d*)").matcher(range);
 
-						response.addHeader("Content-Length", Long.toString(fileSize));
-						response.setStatus(status);
+							if (matcher.matches()) {
+								String startGroup = matcher.group("start");
+								start = startGroup.isEmpty() ? start : Long.valueOf(startGroup);
+								start = Math.max(0, start);
 
-						callbackMap.put("statusCode", status);
-					}
+								String endGroup = matcher.group("end");
+								end = endGroup.isEmpty() ? end : Long.valueOf(endGroup);
+								end = end > len - 1 ? len - 1 : end;
+							}
 
-				} catch (Throwable t) {
+							long contentLength = end - start + 1;
 
-				} finally {
+							// Tell the client that we support byte ranges
+							response.setHeader("Accept-Ranges", "bytes");
+							response.setHeader("Content-Range", String.format("bytes %s-%s/%s", start, end, len));
+							response.setHeader("Content-Length", Long.toString(contentLength));
 
-					if (out != null) {
+							response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+							callbackMap.put("statusCode", HttpServletResponse.SC_PARTIAL_CONTENT);
 
-						try {
-							// 3: output content
-							out.flush();
-							out.close();
+							IOUtils.copyLarge(in, out, start, contentLength);
+
+						} else {
+
+							final long fileSize = IOUtils.copyLarge(in, out);
+							final int status    = response.getStatus();
+
+							response.addHeader("Content-Length", Long.toString(fileSize));
+							response.setStatus(status);
 
-						} catch (Throwable t) {
+							callbackMap.put("statusCode", status);
 						}
-					}
 
-					if (in != null) {
-						in.close();
-					}
+					} catch (Throwable t) {
+
+					} finally {
+
+						if (out != null) {
+
+							try {
+								// 3: output content
+								out.flush();
+								out.close();
 
-					response.setStatus(response.getStatus());
+							} catch (Throwable t) {
+							}
+						}
+
+						if (in != null) {
+							in.close();
+						}
+
+						response.setStatus(response.getStatus());
+					}
 				}
 			}
 		}
@@ -26,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.structr.common.error.FrameworkException;
 import org.structr.core.app.StructrApp;
+import org.structr.web.common.ContentStore;
 import org.structr.web.entity.File;
 
 /**
@@ -136,6 +137,8 @@ public class FileUploadHandler {
 
 			fileOnDisk.getParentFile().mkdirs();
 
+			ContentStore.detach(fileOnDisk, file.getChecksum());
+
 			this.privateFileChannel = new FileOutputStream(fileOnDisk, append).getChannel();
 		}
 
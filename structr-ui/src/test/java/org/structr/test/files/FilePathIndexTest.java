@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.test.files;
+
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyKey;
+import org.structr.test.web.StructrUiTest;
+import org.structr.web.common.FileHelper;
+import org.structr.web.entity.AbstractFile;
+import org.structr.web.entity.File;
+import org.structr.web.entity.Folder;
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.fail;
+
+/**
+ * Paths are served from the path index, so it must follow renames, moves
+ * and deletions, including uncommitted ones.
+ */
+public class FilePathIndexTest extends StructrUiTest {
+
+	@Test
+	public void testPathIndexFollowsModifications() {
+
+		final PropertyKey<Folder> parentKey = StructrApp.key(AbstractFile.class, "parent");
+		final PropertyKey<String> pathKey   = StructrApp.key(AbstractFile.class, "path");
+
+		try (final Tx tx = app.tx()) {
+
+			final Folder c = FileHelper.createFolderPath(securityContext, "/a/b/c");
+
+			app.create(File.class,
+				new NodeAttribute<>(AbstractFile.name, "test.txt"),
+				new NodeAttribute<>(parentKey,         c)
+			);
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		// resolve and index the path
+		try (final Tx tx = app.tx()) {
+
+			final AbstractFile file = FileHelper.getFileByAbsolutePath(securityContext, "/a/b/c/test.txt");
+
+			assertNotNull("File should be found by its path", file);
+			assertEquals("Invalid path", "/a/b/c/test.txt", file.getProperty(pathKey));
+
+			// rename a folder in the path
+			FileHelper.getFileByAbsolutePath(securityContext, "/a/b").setProperty(AbstractFile.name, "x");
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNull("Old path should not be resolved after rename", FileHelper.getFileByAbsolutePath(securityContext, "/a/b/c/test.txt"));
+
+			final AbstractFile file = FileHelper.getFileByAbsolutePath(securityContext, "/a/x/c/test.txt");
+
+			assertNotNull("File should be found by its new path", file);
+			assertEquals("Invalid path after rename", "/a/x/c/test.txt", file.getProperty(pathKey));
+
+			// move the file, the new path must be visible in the same transaction
+			file.setProperty(parentKey, (Folder)FileHelper.getFileByAbsolutePath(securityContext, "/a"));
+
+			assertNotNull("Uncommitted move should be visible in the transaction", FileHelper.getFileByAbsolutePath(securityContext, "/a/test.txt"));
+			assertNull("Uncommitted move should be visible in the transaction",    FileHelper.getFileByAbsolutePath(securityContext, "/a/x/c/test.txt"));
+			assertEquals("Invalid path after move", "/a/test.txt", file.getProperty(pathKey));
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNull("Old path should not be resolved after move", FileHelper.getFileByAbsolutePath(securityContext, "/a/x/c/test.txt"));
+			assertNotNull("File should be found after move",          FileHelper.getFileByAbsolutePath(securityContext, "/a/test.txt"));
+			assertNotNull("Folder should be found",                   FileHelper.getFileByAbsolutePath(securityContext, "/a/x/c"));
+
+			app.delete(FileHelper.getFileByAbsolutePath(securityContext, "/a/x"));
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNull("Deleted folder should not be resolved", FileHelper.getFileByAbsolutePath(securityContext, "/a/x/c"));
+			assertNull("Deleted folder should not be resolved", FileHelper.getFileByAbsolutePath(securityContext, "/a/x"));
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.test.web.advanced;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.structr.api.config.Settings;
+import org.structr.test.web.StructrUiTest;
+import org.structr.web.common.ContentStore;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class ContentStoreTest extends StructrUiTest {
+
+	private static final String CONTENT = StringUtils.repeat("content", 100);
+	private static final String OTHER   = StringUtils.repeat("another", 100);
+
+	@BeforeMethod
+	public void enableContentStore() {
+
+		Settings.ContentDeduplication.setValue(true);
+		Settings.ContentDeduplicationMinSize.setValue(0);
+	}
+
+	@AfterMethod
+	public void disableContentStore() throws IOException {
+
+		Settings.ContentDeduplication.setValue(false);
+		Settings.ContentDeduplicationMinSize.setValue(4096);
+
+		FileUtils.deleteDirectory(Paths.get(Settings.FilesPath.getValue()).resolve("contentstore").toFile());
+		FileUtils.deleteDirectory(Paths.get(Settings.FilesPath.getValue()).resolve("blobs").toFile());
+	}
+
+	@Test
+	public void testStoreDeduplicatesIdenticalContent() {
+
+		try {
+
+			final Path a = write("a.txt", CONTENT);
+			final Path b = write("b.txt", CONTENT);
+			final Path c = write("c.txt", OTHER);
+
+			ContentStore.store(a.toFile(), 1L);
+			ContentStore.store(b.toFile(), 1L);
+
+			assertTrue("Files with identical content should share a blob", Files.isSameFile(a, b));
+			assertEquals("Blob and two files should be linked", 3, getLinkCount(a));
+			assertEquals("Content should be stored once", 1L, countBlobs());
+
+			// same checksum, different content
+			ContentStore.store(c.toFile(), 1L);
+
+			assertFalse("Checksum collision must not be deduplicated", Files.isSameFile(a, c));
+			assertEquals(OTHER, read(c));
+
+		} catch (IOException ioex) {
+
+			ioex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	@Test
+	public void testDetachBeforeWrite() {
+
+		try {
+
+			final Path a = write("a.txt", CONTENT);
+			final Path b = write("b.txt", CONTENT);
+
+			ContentStore.store(a.toFile(), 2L);
+			ContentStore.store(b.toFile(), 2L);
+
+			// shared content is copied
+			ContentStore.detach(a.toFile(), 2L);
+
+			assertFalse("Detached file should not share its content", Files.isSameFile(a, b));
+			assertEquals(1, getLinkCount(a));
+
+			Files.write(a, OTHER.getBytes(StandardCharsets.UTF_8));
+
+			assertEquals("Writing a detached file must not modify other files", CONTENT, read(b));
+			assertEquals(OTHER, read(a));
+
+			// the only owner of a blob is detached by removing the blob
+			assertEquals("Blob and one file should be linked", 2, getLinkCount(b));
+
+			ContentStore.detach(b.toFile(), 2L);
+
+			assertEquals(1, getLinkCount(b));
+			assertEquals("Blob of the only owner should be removed", 0L, countBlobs());
+			assertEquals(CONTENT, read(b));
+
+		} catch (IOException ioex) {
+
+			ioex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	@Test
+	public void testCopy() {
+
+		try {
+
+			final Path source = write("source.txt", CONTENT);
+			final Path target = write("target.txt", OTHER);
+
+			ContentStore.copy(source.toFile(), target.toFile(), 3L);
+
+			assertTrue("Copy should link the target to the blob of the source", Files.isSameFile(source, target));
+			assertEquals(CONTENT, read(target));
+
+			// modifying the copy does not modify the source
+			ContentStore.detach(target.toFile(), 3L);
+			Files.write(target, OTHER.getBytes(StandardCharsets.UTF_8));
+
+			assertEquals(CONTENT, read(source));
+			assertEquals(OTHER, read(target));
+
+		} catch (IOException ioex) {
+
+			ioex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	@Test
+	public void testGarbageCollection() {
+
+		try {
+
+			final Path a = write("a.txt", CONTENT);
+			final Path b = write("b.txt", CONTENT);
+
+			ContentStore.store(a.toFile(), 4L);
+			ContentStore.store(b.toFile(), 4L);
+
+			Files.delete(a);
+			ContentStore.release();
+
+			assertEquals("Referenced blob must not be removed", 0L, ContentStore.collectGarbage());
+			assertEquals(1L, countBlobs());
+
+			Files.delete(b);
+			ContentStore.release();
+
+			assertEquals("Unreferenced blob should be removed", (long)CONTENT.length(), ContentStore.collectGarbage());
+			assertEquals(0L, countBlobs());
+
+		} catch (IOException ioex) {
+
+			ioex.printStackTrace();
+			fail("Unexpected exception");
+		}
+	}
+
+	// ----- private methods -----
+	private Path write(final String name, final String content) throws IOException {
+
+		final Path path = Paths.get(Settings.FilesPath.getValue()).resolve("contentstore").resolve(name);
+
+		Files.createDirectories(path.getParent());
+		Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+
+		return path;
+	}
+
+	private String read(final Path path) throws IOException {
+		return new String(Files.readAllBytes(path), StandardCharsets.UTF_8);
+	}
+
+	private int getLinkCount(final Path path) throws IOException {
+		return (Integer)Files.getAttribute(path, "unix:nlink", LinkOption.NOFOLLOW_LINKS);
+	}
+
+	private long countBlobs() throws IOException {
+
+		final Path root = Paths.get(Settings.FilesPath.getValue()).resolve("blobs");
+
+		if (!Files.isDirectory(root)) {
+			return 0L;
+		}
+
+		try (final Stream<Path> paths = Files.walk(root)) {
+			return paths.filter(Files::isRegularFile).count();
+		}
+	}
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.test.web.advanced;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import org.apache.commons.io.IOUtils;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.app.StructrApp;
+import org.structr.core.entity.Localization;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.core.property.PropertyKey;
+import org.structr.web.entity.File;
+import org.structr.web.entity.dom.Content;
+import org.structr.web.entity.dom.DOMNode;
+import org.structr.web.entity.dom.Page;
+import org.structr.web.maintenance.DeployCommand;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.fail;
+import org.testng.annotations.Test;
+
+public class Deployment6Test extends DeploymentTestBase {
+
+	@Test
+	public void test61IncrementalExportAndImport() {
+
+		final PropertyKey<String> localizedNameKey = StructrApp.key(Localization.class, "localizedName");
+		final DeployCommand cmd                    = app.command(DeployCommand.class);
+		final Path tmp                             = Paths.get("/tmp/structr-deployment-test" + System.currentTimeMillis() + System.nanoTime());
+
+		// setup
+		try (final Tx tx = app.tx()) {
+
+			Page.createSimplePage(securityContext, "page1");
+			Page.createSimplePage(securityContext, "page2");
+
+			createFile("a.txt", "Content of a");
+			createFile("b.txt", "Content of b");
+
+			app.create(Localization.class,
+				new NodeAttribute<>(StructrApp.key(Localization.class, "name"),   "localization1"),
+				new NodeAttribute<>(StructrApp.key(Localization.class, "domain"), "domain1"),
+				new NodeAttribute<>(StructrApp.key(Localization.class, "locale"), "de_DE"),
+				new NodeAttribute<>(localizedNameKey,                             "localizedName1")
+			);
+
+			tx.success();
+
+		} catch (IOException | FrameworkException ex) {
+			logger.warn("", ex);
+			fail("Unexpected exception.");
+		}
+
+		try {
+
+			// first export and import establish the state that later runs are compared with
+			deploy(cmd, "export", tmp);
+			deploy(cmd, "import", tmp);
+
+			final Map<String, Long> firstExport = getModificationTimes(tmp, "files/a.txt", "files/b.txt", "pages/page1.html", "pages/page2.html");
+
+			// make sure rewritten files get a different modification time
+			Thread.sleep(1000);
+
+			// change one file and one page
+			try (final Tx tx = app.tx()) {
+
+				writeContent(getFile("a.txt"), "Changed content of a");
+				getBodyText("page1").setProperty(StructrApp.key(Content.class, "content"), "Changed body text");
+
+				tx.success();
+			}
+
+			deploy(cmd, "export", tmp);
+
+			final Map<String, Long> secondExport = getModificationTimes(tmp, "files/a.txt", "files/b.txt", "pages/page1.html", "pages/page2.html");
+
+			assertFalse("Changed file should be rewritten by incremental export",      firstExport.get("files/a.txt").equals(secondExport.get("files/a.txt")));
+			assertFalse("Changed page should be rewritten by incremental export",      firstExport.get("pages/page1.html").equals(secondExport.get("pages/page1.html")));
+			assertEquals("Unchanged file should not be rewritten by incremental export", firstExport.get("files/b.txt"),      secondExport.get("files/b.txt"));
+			assertEquals("Unchanged page should not be rewritten by incremental export", firstExport.get("pages/page2.html"), secondExport.get("pages/page2.html"));
+
+			// modify the database so that every re-imported entry can be detected
+			try (final Tx tx = app.tx()) {
+
+				writeContent(getFile("a.txt"), "Local edit");
+				writeContent(getFile("b.txt"), "Local edit");
+
+				getBodyText("page1").setProperty(StructrApp.key(Content.class, "content"), "Local edit");
+
+				app.nodeQuery(Localization.class).andName("localization1").getFirst().setProperty(localizedNameKey, "Local edit");
+
+				tx.success();
+			}
+
+			deploy(cmd, "import", tmp);
+
+			try (final Tx tx = app.tx()) {
+
+				// changed entries are imported again
+				assertEquals("Changed file should be re-imported", "Changed content of a", IOUtils.toString(getFile("a.txt").getInputStream(), "utf-8"));
+				assertEquals("Changed page should be re-imported", "Changed body text",    getBodyText("page1").getProperty(StructrApp.key(Content.class, "content")));
+
+				// unchanged entries are skipped
+				assertEquals("Unchanged file should not be re-imported",          "Local edit", IOUtils.toString(getFile("b.txt").getInputStream(), "utf-8"));
+				assertEquals("Unchanged localizations should not be re-imported", "Local edit", app.nodeQuery(Localization.class).andName("localization1").getFirst().getProperty(localizedNameKey));
+
+				tx.success();
+			}
+
+		} catch (Throwable t) {
+
+			logger.warn("", t);
+			fail("Unexpected exception.");
+
+		} finally {
+
+			try {
+				// clean directories
+				Files.walkFileTree(tmp, new DeletingFileVisitor());
+				Files.delete(tmp);
+
+			} catch (IOException ioex) {}
+		}
+	}
+
+	// ----- private methods -----
+	private void deploy(final DeployCommand cmd, final String mode, final Path path) throws FrameworkException {
+
+		final Map<String, Object> params = new HashMap<>();
+
+		params.put("mode",                                        mode);
+		params.put("export".equals(mode) ? "target" : "source",   path.toString());
+		params.put("incremental",                                 true);
+
+		cmd.execute(params);
+	}
+
+	private void createFile(final String name, final String content) throws IOException, FrameworkException {
+
+		final File file = app.create(File.class,
+			new NodeAttribute<>(File.name,                                                   name),
+			new NodeAttribute<>(StructrApp.key(File.class, "contentType"),                   "text/plain"),
+			new NodeAttribute<>(StructrApp.key(File.class, "includeInFrontendExport"),       true)
+		);
+
+		writeContent(file, content);
+	}
+
+	private void writeContent(final File file, final String content) throws IOException {
+
+		try (final OutputStream out = file.getOutputStream()) {
+			IOUtils.write(content, out, "utf-8");
+		}
+	}
+
+	private File getFile(final String name) throws FrameworkException {
+		return app.nodeQuery(File.class).andName(name).getFirst();
+	}
+
+	private Content getBodyText(final String pageName) throws FrameworkException {
+
+		final Page page = app.nodeQuery(Page.class).andName(pageName).getFirst();
+
+		for (final Content content : app.nodeQuery(Content.class).and(StructrApp.key(DOMNode.class, "ownerDocument"), page).getAsList()) {
+
+			final String text = (String)content.getProperty(StructrApp.key(Content.class, "content"));
+
+			if (text != null && !text.startsWith("${")) {
+				return content;
+			}
+		}
+
+		fail("Page " + pageName + " has no body text.");
+
+		return null;
+	}
+
+	private Map<String, Long> getModificationTimes(final Path root, final String... paths) throws IOException {
+
+		final Map<String, Long> times = new HashMap<>();
+
+		for (final String path : paths) {
+			times.put(path, Files.getLastModifiedTime(root.resolve(path)).toMillis());
+		}
+
+		return times;
+	}
+}
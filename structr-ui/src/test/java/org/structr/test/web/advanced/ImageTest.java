@@ -18,12 +18,23 @@
  */
 package org.structr.test.web.advanced;
 
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import javax.imageio.ImageIO;
 import org.testng.annotations.Test;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.structr.api.config.Settings;
+import org.structr.api.util.Iterables;
 import org.structr.common.AccessMode;
 import org.structr.common.Permission;
 import org.structr.common.SecurityContext;
@@ -36,11 +47,19 @@ import org.structr.core.graph.NodeAttribute;
 import org.structr.core.graph.Tx;
 import org.structr.core.property.PropertyKey;
 import org.structr.test.web.StructrUiTest;
+import org.structr.web.agent.ThumbnailGenerator;
+import org.structr.web.common.DerivedImageCache;
 import org.structr.web.common.FileHelper;
 import org.structr.web.common.ImageHelper;
+import org.structr.web.common.ImageHelper.DecodedImage;
+import org.structr.web.common.ImageHelper.Thumbnail;
+import org.structr.web.common.ImageHelper.ThumbnailSize;
 import org.structr.web.entity.Folder;
 import org.structr.web.entity.Image;
 import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
+import static org.testng.AssertJUnit.assertTrue;
 import static org.testng.AssertJUnit.fail;
 
 public class ImageTest extends StructrUiTest {
@@ -269,6 +288,217 @@ public class ImageTest extends StructrUiTest {
 	}
 	*/
 
+	@Test
+	public void testSubsampledDecoding() {
+
+		try (final Tx tx = app.tx()) {
+
+			final Image image = ImageHelper.createImageNode(securityContext, createStripedImage(800, 600), "image/png", Image.class, "decode.png", false);
+
+			// the smallest scale factor of 8 allows to decode every fourth pixel
+			final DecodedImage small = ImageHelper.decode(image, Arrays.asList(new ThumbnailSize(100, 100, false)));
+
+			assertEquals(800, small.getWidth());
+			assertEquals(600, small.getHeight());
+			assertEquals(200, small.getImage().getWidth());
+			assertEquals(150, small.getImage().getHeight());
+
+			// cropped thumbnails are scaled by the smaller factor
+			final DecodedImage cropped = ImageHelper.decode(image, Arrays.asList(new ThumbnailSize(100, 100, true)));
+
+			assertEquals(267, cropped.getImage().getWidth());
+			assertEquals(200, cropped.getImage().getHeight());
+
+			// the largest requested size determines the resolution
+			final DecodedImage full = ImageHelper.decode(image, Arrays.asList(new ThumbnailSize(100, 100, false), new ThumbnailSize(300, 300, false)));
+
+			assertEquals(800, full.getWidth());
+			assertEquals(600, full.getHeight());
+			assertEquals(800, full.getImage().getWidth());
+			assertEquals(600, full.getImage().getHeight());
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testCroppedThumbnailFromSubsampledImage() {
+
+		try (final Tx tx = app.tx()) {
+
+			// green, red, blue and green stripes of 200 pixels each
+			final Image image          = ImageHelper.createImageNode(securityContext, createStripedImage(800, 400), "image/png", Image.class, "crop.png", false);
+			final DecodedImage decoded = ImageHelper.decode(image, Arrays.asList(new ThumbnailSize(100, 100, true)));
+
+			assertEquals("Image should be decoded with subsampling", 400, decoded.getImage().getWidth());
+
+			final Thumbnail tn         = ImageHelper.createThumbnail(image, decoded, 100, 100, null, true, null, null);
+			final BufferedImage result = ImageIO.read(new ByteArrayInputStream(tn.getBytes()));
+
+			assertEquals(100, tn.getWidth());
+			assertEquals(100, tn.getHeight());
+			assertEquals(100, result.getWidth());
+			assertEquals(100, result.getHeight());
+
+			// the centered crop region of the original covers the red and the blue stripe
+			assertTrue("Crop region should be scaled to the decoded image", isColor(result.getRGB(10, 50), Color.RED));
+			assertTrue("Crop region should be scaled to the decoded image", isColor(result.getRGB(90, 50), Color.BLUE));
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+	}
+
+	@Test
+	public void testThumbnailGeneratorSizesAndCache() {
+
+		final ThumbnailSize small = new ThumbnailSize(100, 100, false);
+		final ThumbnailSize mid   = new ThumbnailSize(300, 300, false);
+		Image image               = null;
+		Long checksum             = null;
+
+		DerivedImageCache.clear();
+
+		try (final Tx tx = app.tx()) {
+
+			image    = ImageHelper.createImageNode(securityContext, createStripedImage(800, 600), "image/png", Image.class, "generator.png", false);
+			checksum = image.getChecksum();
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		try {
+
+			// an image with the same content was processed before
+			DerivedImageCache.put(DerivedImageCache.key(checksum, small, "png"), new Thumbnail(createStripedImage(12, 8), 12, 8));
+
+		} catch (IOException ioex) {
+			fail("Unexpected exception.");
+		}
+
+		// a single request creates the requested size together with all configured sizes
+		ThumbnailGenerator.getInstance().request(image, 50, 50, false);
+
+		final Image original = image;
+
+		tryWithTimeout(() -> {
+
+			try (final Tx tx = app.tx()) {
+
+				return Iterables.count((Iterable)original.getProperty(StructrApp.key(Image.class, "thumbnails"))) == 3;
+
+			} catch (FrameworkException ex) {
+				return false;
+			}
+
+		}, () -> fail("Exceeded timeout while waiting for thumbnails to be available."), 30000, 500);
+
+		try (final Tx tx = app.tx()) {
+
+			final Set<String> sizes = new TreeSet<>();
+
+			for (final Image thumbnail : (Iterable<Image>)original.getProperty(StructrApp.key(Image.class, "thumbnails"))) {
+				sizes.add(thumbnail.getWidth() + "x" + thumbnail.getHeight());
+
+				if (thumbnail.getWidth() != 12) {
+					assertEquals("Thumbnails should be written in the format of the original", "image/png", thumbnail.getContentType());
+				}
+			}
+
+			assertEquals("Thumbnail of the cached size should be taken from the cache", new TreeSet<>(Arrays.asList("12x8", "50x38", "300x225")), sizes);
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		// generated thumbnails are cached with the format in which they were written
+		assertNotNull(DerivedImageCache.get(DerivedImageCache.key(checksum, mid, "png")));
+		assertNull(DerivedImageCache.get(DerivedImageCache.key(checksum, mid, "jpeg")));
+		assertNull(DerivedImageCache.get(DerivedImageCache.key(null, mid, "png")));
+	}
+
+	@Test
+	public void testDerivedImageCacheEviction() {
+
+		final Integer cacheSize = Settings.ThumbnailCacheSize.getValue();
+
+		try {
+
+			Settings.ThumbnailCacheSize.setValue(1);
+			DerivedImageCache.clear();
+
+			final ThumbnailSize size = new ThumbnailSize(100, 100, false);
+			final Thumbnail first    = new Thumbnail(new byte[400 * 1024], 100, 100);
+			final Thumbnail second   = new Thumbnail(new byte[400 * 1024], 100, 100);
+			final Thumbnail third    = new Thumbnail(new byte[400 * 1024], 100, 100);
+
+			DerivedImageCache.put(DerivedImageCache.key(1L, size, "png"), first);
+			DerivedImageCache.put(DerivedImageCache.key(2L, size, "png"), second);
+
+			// access the first entry so that the second one is the least recently used
+			assertEquals(first, DerivedImageCache.get(DerivedImageCache.key(1L, size, "png")));
+
+			DerivedImageCache.put(DerivedImageCache.key(3L, size, "png"), third);
+
+			assertEquals(first, DerivedImageCache.get(DerivedImageCache.key(1L, size, "png")));
+			assertNull("Least recently used thumbnail should be evicted", DerivedImageCache.get(DerivedImageCache.key(2L, size, "png")));
+			assertEquals(third, DerivedImageCache.get(DerivedImageCache.key(3L, size, "png")));
+
+			// thumbnails larger than the cache are not stored
+			DerivedImageCache.put(DerivedImageCache.key(4L, size, "png"), new Thumbnail(new byte[2 * 1024 * 1024], 100, 100));
+
+			assertNull(DerivedImageCache.get(DerivedImageCache.key(4L, size, "png")));
+			assertEquals(first, DerivedImageCache.get(DerivedImageCache.key(1L, size, "png")));
+
+		} finally {
+
+			Settings.ThumbnailCacheSize.setValue(cacheSize);
+			DerivedImageCache.clear();
+		}
+	}
+
+	// ----- private methods -----
+	private byte[] createStripedImage(final int width, final int height) throws IOException {
+
+		final BufferedImage image       = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+		final Graphics2D g              = image.createGraphics();
+		final Color[] colors            = { Color.GREEN, Color.RED, Color.BLUE, Color.GREEN };
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+		for (int i=0; i<colors.length; i++) {
+
+			g.setColor(colors[i]);
+			g.fillRect(i * width / colors.length, 0, width / colors.length, height);
+		}
+
+		g.dispose();
+
+		ImageIO.write(image, "png", out);
+
+		return out.toByteArray();
+	}
+
+	private boolean isColor(final int rgb, final Color expected) {
+
+		final Color color = new Color(rgb);
+
+		return Math.abs(color.getRed() - expected.getRed()) < 40 && Math.abs(color.getGreen() - expected.getGreen()) < 40 && Math.abs(color.getBlue() - expected.getBlue()) < 40;
+	}
+
 	private void createImage(final SecurityContext securityContext, final String name, final String folderPath) throws FrameworkException {
 
 		try( final InputStream is = ImageTest.class.getResourceAsStream("/test/thumbtest.png")) {
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.test.web.basic;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.eclipse.jetty.servlets.EventSource;
+import org.structr.test.web.StructrUiTest;
+import org.structr.web.servlet.EventSourceRegistry;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertFalse;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+import org.testng.annotations.Test;
+
+public class EventSourceRegistryTest extends StructrUiTest {
+
+	@Test
+	public void testBroadcastAndTargetedSend() {
+
+		final EventSourceRegistry registry = new EventSourceRegistry();
+
+		try {
+
+			final RecordingEmitter anonymous = open(registry, "session1", null, -1L);
+			final RecordingEmitter user1     = open(registry, "session2", "user1", -1L);
+			final RecordingEmitter user2     = open(registry, "session3", "user2", -1L);
+
+			registry.broadcast("auth", "data", true, false);
+			registry.broadcast("anon", "data", false, true);
+			registry.broadcast("all",  "data", true, true);
+
+			assertTrue("Send should report an open connection",     registry.send("direct", "data", Set.of("user1")));
+			assertFalse("Send should not report an open connection", registry.send("direct", "data", Set.of("user3")));
+
+			waitFor(anonymous, 2);
+			waitFor(user1, 4);
+			waitFor(user2, 3);
+
+			assertEquals("Invalid events for anonymous connection", List.of("anon", "all"),           anonymous.getNames());
+			assertEquals("Invalid events for user1 connection",     List.of("auth", "all", "direct"), user1.getNames());
+			assertEquals("Invalid events for user2 connection",     List.of("auth", "all"),           user2.getNames());
+
+		} catch (IOException ioex) {
+
+			ioex.printStackTrace();
+			fail("Unexpected exception");
+
+		} finally {
+
+			registry.shutdown();
+		}
+	}
+
+	@Test
+	public void testReplayAfterReconnect() {
+
+		final EventSourceRegistry registry = new EventSourceRegistry();
+
+		try {
+
+			final RecordingEmitter first = open(registry, "session1", "user1", -1L);
+
+			registry.broadcast("event1", "data1", true, true);
+
+			waitFor(first, 1);
+
+			final long lastEventId = first.getIds().get(0);
+
+			// events that were sent while the client was disconnected
+			registry.broadcast("event2", "data2", true, true);
+			registry.send("event3", "data3", Set.of("user1"));
+			registry.send("event4", "data4", Set.of("user2"));
+
+			final RecordingEmitter second = open(registry, "session1", "user1", lastEventId);
+
+			waitFor(second, 2);
+
+			assertEquals("Invalid replayed events", List.of("event2", "event3"), second.getNames());
+
+		} catch (IOException ioex) {
+
+			ioex.printStackTrace();
+			fail("Unexpected exception");
+
+		} finally {
+
+			registry.shutdown();
+		}
+	}
+
+	// ----- private methods -----
+	private RecordingEmitter open(final EventSourceRegistry registry, final String sessionId, final String principalId, final long lastEventId) throws IOException {
+
+		final RecordingEmitter emitter = new RecordingEmitter();
+
+		registry.newConnection(sessionId, principalId, lastEventId).onOpen(emitter);
+
+		return emitter;
+	}
+
+	private void waitFor(final RecordingEmitter emitter, final int count) {
+
+		final long timeout = System.currentTimeMillis() + 10000;
+
+		while (emitter.getNames().size() < count && System.currentTimeMillis() < timeout) {
+
+			try { Thread.sleep(10); } catch (InterruptedException ignore) {}
+		}
+
+		// wait a bit longer to detect unexpected events
+		try { Thread.sleep(100); } catch (InterruptedException ignore) {}
+	}
+
+	// ----- nested classes -----
+	private static class RecordingEmitter implements EventSource.Emitter {
+
+		private final List<String> names = new CopyOnWriteArrayList<>();
+		private final List<Long> ids     = new CopyOnWriteArrayList<>();
+
+		@Override
+		public void event(final String name, final String data) throws IOException {
+
+			// the event ID is appended to the name line
+			final String[] parts = name.split("\nid: ");
+
+			names.add(parts[0]);
+			ids.add(Long.valueOf(parts[1]));
+		}
+
+		@Override
+		public void data(final String data) throws IOException {
+		}
+
+		@Override
+		public void comment(final String comment) throws IOException {
+		}
+
+		@Override
+		public void close() {
+		}
+
+		public List<String> getNames() {
+			return names;
+		}
+
+		public List<Long> getIds() {
+			return ids;
+		}
+	}
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.test.web.basic;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.response.Response;
+import java.io.IOException;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import org.structr.common.error.FrameworkException;
+import org.structr.core.entity.AbstractNode;
+import org.structr.core.graph.Tx;
+import org.structr.test.web.StructrUiTest;
+import org.structr.web.common.FileHelper;
+import org.structr.web.entity.File;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the direct delivery of static files by the HtmlServlet.
+ */
+public class FileDeliveryTest extends StructrUiTest {
+
+	private static final String CONTENT = "0123456789abcdefghij";
+
+	@Test
+	public void testFullDelivery() {
+
+		createFile();
+
+		RestAssured
+			.given()
+			.expect()
+				.statusCode(200)
+				.header("Accept-Ranges", "bytes")
+				.header("ETag", notNullValue())
+				.header("Content-Length", "20")
+				.body(equalTo(CONTENT))
+			.when()
+				.get("/range.txt");
+	}
+
+	@Test
+	public void testSingleRanges() {
+
+		createFile();
+
+		expectRange("bytes=2-5",    "bytes 2-5/20",   "2345");
+		expectRange("bytes=15-",    "bytes 15-19/20", "fghij");
+		expectRange("bytes=-3",     "bytes 17-19/20", "hij");
+		expectRange("bytes=18-100", "bytes 18-19/20", "ij");
+		expectRange("bytes=-100",   "bytes 0-19/20",  CONTENT);
+
+		// unsatisfiable parts of a range set are ignored
+		expectRange("bytes=50-60,4-4", "bytes 4-4/20", "4");
+	}
+
+	@Test
+	public void testInvalidRanges() {
+
+		createFile();
+
+		// invalid Range headers are ignored and the whole file is delivered
+		for (final String range : new String[] { "items=0-5", "bytes=5-2", "bytes=abc", "bytes=1", "bytes=0-0,1-1,2-2,3-3,4-4,5-5,6-6,7-7,8-8,9-9,10-10,11-11,12-12,13-13,14-14,15-15,16-16" }) {
+
+			RestAssured
+				.given()
+					.header("Range", range)
+				.expect()
+					.statusCode(200)
+					.body(equalTo(CONTENT))
+				.when()
+					.get("/range.txt");
+		}
+	}
+
+	@Test
+	public void testUnsatisfiableRanges() {
+
+		createFile();
+
+		for (final String range : new String[] { "bytes=20-", "bytes=50-60", "bytes=-0", "bytes=30-40,50-" }) {
+
+			RestAssured
+				.given()
+					.header("Range", range)
+				.expect()
+					.statusCode(416)
+					.header("Content-Range", "bytes */20")
+				.when()
+					.get("/range.txt");
+		}
+	}
+
+	@Test
+	public void testMultipleRanges() {
+
+		createFile();
+
+		final Response response = RestAssured
+			.given()
+				.header("Range", "bytes=0-1,10-12")
+			.expect()
+				.statusCode(206)
+			.when()
+				.get("/range.txt");
+
+		final String contentType = response.getContentType();
+		final String boundary    = contentType.substring(contentType.indexOf("boundary=") + 9);
+		final String body        = response.asString();
+
+		assertTrue(contentType.startsWith("multipart/byteranges; boundary="));
+
+		assertEquals("Content-Length should match the multipart body", Integer.parseInt(response.getHeader("Content-Length")), body.length());
+
+		assertTrue(body.contains("--" + boundary + "\r\nContent-Type: text/plain"));
+		assertTrue(body.contains("Content-Range: bytes 0-1/20\r\n\r\n01\r\n"));
+		assertTrue(body.contains("--" + boundary + "\r\nContent-Type: text/plain"));
+		assertTrue(body.contains("Content-Range: bytes 10-12/20\r\n\r\nabc\r\n"));
+		assertTrue(body.endsWith("\r\n--" + boundary + "--\r\n"));
+		assertTrue("Parts should be in the requested order", body.indexOf("bytes 0-1/20") < body.indexOf("bytes 10-12/20"));
+	}
+
+	@Test
+	public void testIfRange() {
+
+		createFile();
+
+		final String etag = getETag();
+
+		// matching strong validator: the range is delivered
+		RestAssured
+			.given()
+				.header("Range", "bytes=2-5")
+				.header("If-Range", etag)
+			.expect()
+				.statusCode(206)
+				.body(equalTo("2345"))
+			.when()
+				.get("/range.txt");
+
+		// changed, weak or date validators: the whole file is delivered
+		for (final String ifRange : new String[] { "\"other\"", "W/" + etag, "Wed, 21 Oct 2015 07:28:00 GMT" }) {
+
+			RestAssured
+				.given()
+					.header("Range", "bytes=2-5")
+					.header("If-Range", ifRange)
+				.expect()
+					.statusCode(200)
+					.body(equalTo(CONTENT))
+				.when()
+					.get("/range.txt");
+		}
+	}
+
+	@Test
+	public void testIfNoneMatch() {
+
+		createFile();
+
+		final String etag = getETag();
+
+		for (final String ifNoneMatch : new String[] { etag, "W/" + etag, "\"other\", " + etag, "*" }) {
+
+			RestAssured
+				.given()
+					.header("If-None-Match", ifNoneMatch)
+				.expect()
+					.statusCode(304)
+					.header("ETag", etag)
+				.when()
+					.get("/range.txt");
+		}
+
+		// If-None-Match takes precedence over If-Modified-Since
+		RestAssured
+			.given()
+				.header("If-None-Match", "\"other\"")
+				.header("If-Modified-Since", "Fri, 01 Jan 2100 00:00:00 GMT")
+			.expect()
+				.statusCode(200)
+				.body(equalTo(CONTENT))
+			.when()
+				.get("/range.txt");
+
+		RestAssured
+			.given()
+				.header("If-None-Match", etag)
+				.header("If-Modified-Since", "Thu, 01 Jan 1970 00:00:00 GMT")
+			.expect()
+				.statusCode(304)
+			.when()
+				.get("/range.txt");
+	}
+
+	// ----- private methods -----
+	private void createFile() {
+
+		try (final Tx tx = app.tx()) {
+
+			final File file = FileHelper.createFile(securityContext, CONTENT.getBytes("utf-8"), "text/plain", File.class, "range.txt", true);
+
+			file.setProperty(AbstractNode.visibleToPublicUsers, true);
+
+			tx.success();
+
+		} catch (FrameworkException | IOException ex) {
+			ex.printStackTrace();
+			fail("Unexpected exception.");
+		}
+
+		RestAssured.basePath = htmlUrl;
+	}
+
+	private String getETag() {
+
+		return RestAssured
+			.given()
+			.expect()
+				.statusCode(200)
+			.when()
+				.get("/range.txt")
+			.getHeader("ETag");
+	}
+
+	private void expectRange(final String range, final String contentRange, final String content) {
+
+		RestAssured
+			.given()
+				.header("Range", range)
+			.expect()
+				.statusCode(206)
+				.header("Content-Range", contentRange)
+				.header("Content-Length", String.valueOf(content.length()))
+				.body(equalTo(content))
+			.when()
+				.get("/range.txt");
+	}
+}
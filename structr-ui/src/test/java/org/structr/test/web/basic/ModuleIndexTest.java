@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.test.web.basic;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.Map;
+import org.structr.api.config.Settings;
+import org.structr.core.app.StructrApp;
+import org.structr.core.graph.NodeAttribute;
+import org.structr.core.graph.Tx;
+import org.structr.module.ModuleIndex;
+import org.structr.rest.resource.MaintenanceParameterResource;
+import org.structr.test.web.StructrUiTest;
+import org.structr.web.entity.User;
+import org.structr.web.maintenance.DeployCommand;
+import org.structr.web.maintenance.DeployDataCommand;
+import org.structr.websocket.command.AppendChildCommand;
+import org.testng.annotations.Test;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+import static org.testng.AssertJUnit.fail;
+
+/**
+ * Classes that register themselves in a static initializer must still be
+ * initialized at startup when the module index is used.
+ */
+public class ModuleIndexTest extends StructrUiTest {
+
+	@Test
+	public void testModuleIndexContainsInitializers() {
+
+		final File indexFile = new File("target/classes/" + ModuleIndex.INDEX_PATH);
+
+		assertTrue("Module index should be enabled by default", Settings.UseModuleIndex.getValue());
+
+		if (indexFile.exists()) {
+
+			try (final InputStream in = new FileInputStream(indexFile)) {
+
+				final Map<String, String> index = ModuleIndex.read(in);
+
+				assertEquals("Maintenance command should be indexed", ModuleIndex.INITIALIZER, index.get(DeployCommand.class.getName()));
+				assertEquals("Maintenance command should be indexed", ModuleIndex.INITIALIZER, index.get(DeployDataCommand.class.getName()));
+				assertEquals("Websocket command should be indexed",   ModuleIndex.INITIALIZER, index.get(AppendChildCommand.class.getName()));
+
+			} catch (Throwable t) {
+
+				t.printStackTrace();
+				fail("Unexpected exception");
+			}
+		}
+
+		assertEquals("Maintenance command was not registered at startup", DeployCommand.class,     MaintenanceParameterResource.getMaintenanceCommandClass("deploy"));
+		assertEquals("Maintenance command was not registered at startup", DeployDataCommand.class, MaintenanceParameterResource.getMaintenanceCommandClass("deployData"));
+	}
+
+	@Test
+	public void testDeployMaintenanceResource() {
+
+		try (final Tx tx = app.tx()) {
+
+			app.create(User.class,
+				new NodeAttribute<>(StructrApp.key(User.class, "name"),     "admin"),
+				new NodeAttribute<>(StructrApp.key(User.class, "password"), "admin"),
+				new NodeAttribute<>(StructrApp.key(User.class, "isAdmin"),  true)
+			);
+
+			tx.success();
+
+		} catch (Throwable t) {
+
+			t.printStackTrace();
+			fail("Unexpected exception");
+		}
+
+		// an unsupported mode is ignored by the command, an unknown command would not resolve
+		RestAssured
+			.given()
+				.filter(ResponseLoggingFilter.logResponseTo(System.out))
+				.contentType("application/json; charset=UTF-8")
+				.headers("X-User", "admin" , "X-Password", "admin")
+				.body("{ \"mode\": \"none\" }")
+			.expect()
+				.statusCode(200)
+			.when()
+				.post("/maintenance/deploy");
+	}
+}
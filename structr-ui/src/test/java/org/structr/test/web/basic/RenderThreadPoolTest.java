@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.test.web.basic;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.structr.api.config.Settings;
+import org.structr.test.web.StructrUiTest;
+import org.structr.web.servlet.HtmlServlet;
+import static org.testng.AssertJUnit.assertEquals;
+import static org.testng.AssertJUnit.assertTrue;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the configuration of the asynchronous page render thread pool.
+ */
+public class RenderThreadPoolTest extends StructrUiTest {
+
+	@AfterMethod
+	public void resetSettings() {
+		Settings.AsyncRenderThreads.setValue(Settings.AsyncRenderThreads.getDefaultValue());
+	}
+
+	@Test
+	public void testDefaultRenderThreadPool() {
+
+		assertEquals(0, (int)Settings.AsyncRenderThreads.getValue());
+
+		final ThreadPoolExecutor executor = (ThreadPoolExecutor)HtmlServlet.createRenderThreadPool();
+
+		try {
+
+			// threads are created on demand without limit
+			assertEquals(0,                 executor.getCorePoolSize());
+			assertEquals(Integer.MAX_VALUE, executor.getMaximumPoolSize());
+
+		} finally {
+
+			executor.shutdown();
+		}
+
+		Settings.AsyncRenderThreads.setValue(-1);
+
+		final ThreadPoolExecutor negative = (ThreadPoolExecutor)HtmlServlet.createRenderThreadPool();
+
+		try {
+
+			assertEquals(Integer.MAX_VALUE, negative.getMaximumPoolSize());
+
+		} finally {
+
+			negative.shutdown();
+		}
+	}
+
+	@Test
+	public void testConfiguredRenderThreadPool() {
+
+		Settings.AsyncRenderThreads.setValue(4);
+
+		final ThreadPoolExecutor executor = (ThreadPoolExecutor)HtmlServlet.createRenderThreadPool();
+
+		try {
+
+			assertEquals(4, executor.getCorePoolSize());
+			assertEquals(4, executor.getMaximumPoolSize());
+
+		} finally {
+
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void testRenderThreadsLimitConcurrency() throws InterruptedException {
+
+		Settings.AsyncRenderThreads.setValue(2);
+
+		final ExecutorService executor = HtmlServlet.createRenderThreadPool();
+		final CountDownLatch latch     = new CountDownLatch(8);
+		final AtomicInteger active     = new AtomicInteger();
+		final AtomicInteger peak       = new AtomicInteger();
+
+		try {
+
+			for (int i=0; i<8; i++) {
+
+				executor.submit(() -> {
+
+					peak.accumulateAndGet(active.incrementAndGet(), Math::max);
+
+					try { Thread.sleep(50); } catch (InterruptedException iex) {}
+
+					active.decrementAndGet();
+					latch.countDown();
+				});
+			}
+
+			assertTrue("All render tasks should be executed", latch.await(10, TimeUnit.SECONDS));
+
+		} finally {
+
+			executor.shutdown();
+		}
+
+		assertEquals("Rendering should be limited to the configured number of threads", 2, peak.get());
+	}
+}
@@ -56,6 +56,7 @@ import org.structr.web.property.ThumbnailProperty;
 import static org.testng.Assert.assertNotEquals;
 import static org.testng.AssertJUnit.assertEquals;
 import static org.testng.AssertJUnit.assertNotNull;
+import static org.testng.AssertJUnit.assertNull;
 import static org.testng.AssertJUnit.assertTrue;
 import static org.testng.AssertJUnit.fail;
 import org.testng.annotations.Test;
@@ -308,6 +309,89 @@ public class UiTest extends StructrUiTest {
 
 	}
 
+	@Test
+	public void testFolderPathAfterRenameAndMove() {
+
+		final SecurityContext superUserContext = SecurityContext.getSuperUserInstance();
+
+		try (final Tx tx = app.tx()) {
+
+			FileHelper.createFolderPath(superUserContext, "/x/y/z");
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+			logger.error("", ex);
+		}
+
+		// resolve all paths once so they are indexed
+		try (final Tx tx = app.tx()) {
+
+			assertNotNull(FileHelper.getFileByAbsolutePath(superUserContext, "/x"));
+			assertNotNull(FileHelper.getFileByAbsolutePath(superUserContext, "/x/y"));
+			assertNotNull(FileHelper.getFileByAbsolutePath(superUserContext, "/x/y/z"));
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+			logger.error("", ex);
+		}
+
+		// rename top-level folder
+		try (final Tx tx = app.tx()) {
+
+			FileHelper.getFileByAbsolutePath(superUserContext, "/x").setProperty(AbstractNode.name, "w");
+
+			// path must be resolved correctly in the same transaction
+			assertNull(FileHelper.getFileByAbsolutePath(superUserContext, "/x/y/z"));
+			assertNotNull(FileHelper.getFileByAbsolutePath(superUserContext, "/w/y/z"));
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+			logger.error("", ex);
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNull(FileHelper.getFileByAbsolutePath(superUserContext, "/x/y/z"));
+			assertEquals("/w/y/z", FileHelper.getFileByAbsolutePath(superUserContext, "/w/y/z").getPath());
+
+			// move subfolder to root
+			FileHelper.getFileByAbsolutePath(superUserContext, "/w/y").setProperty(StructrApp.key(Folder.class, "parent"), null);
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+			logger.error("", ex);
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNull(FileHelper.getFileByAbsolutePath(superUserContext, "/w/y/z"));
+			assertEquals("/y/z", FileHelper.getFileByAbsolutePath(superUserContext, "/y/z").getPath());
+
+			// delete folder
+			app.delete((Folder)FileHelper.getFileByAbsolutePath(superUserContext, "/y/z"));
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+			logger.error("", ex);
+		}
+
+		try (final Tx tx = app.tx()) {
+
+			assertNull(FileHelper.getFileByAbsolutePath(superUserContext, "/y/z"));
+			assertNotNull(FileHelper.getFileByAbsolutePath(superUserContext, "/y"));
+
+			tx.success();
+
+		} catch (FrameworkException ex) {
+			logger.error("", ex);
+		}
+	}
+
 	@Test
 	public void testAllowedCharacters() {
 
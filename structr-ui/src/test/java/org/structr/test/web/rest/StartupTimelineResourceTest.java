@@ -0,0 +1,75 @@
+/*
+ * Copyright (C) 2010-2020 Structr GmbH
+ *
+ * This file is part of Structr <http://structr.org>.
+ *
+ * Structr is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * Structr is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with Structr.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.structr.test.web.rest;
+
+import com.jayway.restassured.RestAssured;
+import com.jayway.restassured.filter.log.ResponseLoggingFilter;
+import static org.hamcrest.Matchers.everyItem;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.hasItem;
+import static org.hamcrest.Matchers.hasItems;
+import static org.hamcrest.Matchers.notNullValue;
+import org.structr.test.web.StructrUiTest;
+import org.testng.annotations.Test;
+
+/**
+ * Tests for the _startupTimeline endpoint.
+ */
+public class StartupTimelineResourceTest extends StructrUiTest {
+
+	@Test
+	public void testStartupTimeline() {
+
+		RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.header("X-User", "superadmin")
+				.header("X-Password", "sehrgeheim")
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(401))
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(404))
+				.filter(ResponseLoggingFilter.logResponseIfStatusCodeIs(500))
+			.expect()
+				.statusCode(200)
+				.body("result_count",          greaterThan(0))
+				.body("result.phase",          hasItems("ModuleScan", "Service", "SchemaCompile"))
+				.body("result.name",           hasItems("NodeService", "SchemaService", "HttpService"))
+				.body("result.success",        hasItem(true))
+				.body("result.thread",         everyItem(notNullValue()))
+				.body("result.startTimestamp", everyItem(notNullValue()))
+				.body("result.offset",         everyItem(notNullValue()))
+				.body("result.duration",       everyItem(notNullValue()))
+			.when()
+				.get("/_startupTimeline");
+	}
+
+	@Test
+	public void testStartupTimelineIsReadOnly() {
+
+		RestAssured
+			.given()
+				.contentType("application/json; charset=UTF-8")
+				.header("X-User", "superadmin")
+				.header("X-Password", "sehrgeheim")
+				.body("{}")
+			.expect()
+				.statusCode(405)
+			.when()
+				.post("/_startupTimeline");
+	}
+}